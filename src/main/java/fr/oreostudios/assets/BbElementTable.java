@@ -0,0 +1,124 @@
+package fr.oreostudios.assets;
+
+import java.util.Arrays;
+
+/**
+ * Blockbench elements (cubes) decoded straight from the file, one row per
+ * element in flat primitive arrays: no JSON objects, strings or boxed
+ * numbers are kept once an element has been read. Element ids live in the
+ * importer's id table, which maps them to row numbers here.
+ */
+final class BbElementTable {
+
+    /** Face directions, in the codes stored by {@link #addFace}. */
+    static final String[] DIRECTIONS = {"north", "south", "west", "east", "up", "down"};
+
+    static final int BOX = 12;     // from xyz, to xyz, origin xyz, rotation xyz (degrees)
+    static final int FACE_UV = 4;  // u1 v1 u2 v2, in texture pixels
+
+    private static final byte HAS_BOX = 1;   // valid from/to
+    private static final byte HAS_FACES = 2; // a "faces" object was present (even if empty)
+
+    private int count;
+    private float[] boxes = new float[64 * BOX];
+    private float[] uvs = new float[64 * 6 * FACE_UV]; // 6 slots per element, filled in file order
+    private int[] faceDirs = new int[64];              // face count in bits 0-3, then 3 bits per face
+    private byte[] flags = new byte[64];
+
+    int size() {
+        return count;
+    }
+
+    /** Starts a new element row and returns its index. */
+    int add() {
+        if (count == flags.length) {
+            int n = count * 2;
+            boxes = Arrays.copyOf(boxes, n * BOX);
+            uvs = Arrays.copyOf(uvs, n * 6 * FACE_UV);
+            faceDirs = Arrays.copyOf(faceDirs, n);
+            flags = Arrays.copyOf(flags, n);
+        }
+        int e = count++;
+        Arrays.fill(boxes, e * BOX, (e + 1) * BOX, 0f);
+        faceDirs[e] = 0;
+        flags[e] = 0;
+        return e;
+    }
+
+    /** Raw box data of element {@code e}, starting at {@link #boxOffset}. */
+    float[] boxes() {
+        return boxes;
+    }
+
+    int boxOffset(int e) {
+        return e * BOX;
+    }
+
+    void setHasBox(int e) {
+        flags[e] |= HAS_BOX;
+    }
+
+    boolean hasBox(int e) {
+        return (flags[e] & HAS_BOX) != 0;
+    }
+
+    void setHasFaces(int e) {
+        flags[e] |= HAS_FACES;
+    }
+
+    boolean hasFaces(int e) {
+        return (flags[e] & HAS_FACES) != 0;
+    }
+
+    /**
+     * Adds a face to element {@code e}, or replaces the earlier face with the
+     * same direction (a repeated key overwrites in place, like a JSON object).
+     */
+    void addFace(int e, int dir, float u1, float v1, float u2, float v2) {
+        int info = faceDirs[e];
+        int n = info & 0xF;
+        int slot = n;
+        for (int k = 0; k < n; k++) {
+            if (((info >>> (4 + 3 * k)) & 7) == dir) {
+                slot = k;
+                break;
+            }
+        }
+        if (slot == n) faceDirs[e] = (info + 1) | (dir << (4 + 3 * n));
+        int o = (e * 6 + slot) * FACE_UV;
+        uvs[o] = u1;
+        uvs[o + 1] = v1;
+        uvs[o + 2] = u2;
+        uvs[o + 3] = v2;
+    }
+
+    int faceCount(int e) {
+        return faceDirs[e] & 0xF;
+    }
+
+    /** Direction code of the k-th face of element {@code e}, see {@link #DIRECTIONS}. */
+    int faceDir(int e, int k) {
+        return (faceDirs[e] >>> (4 + 3 * k)) & 7;
+    }
+
+    /** UVs of the k-th face, at {@code uvs()[uvOffset(e, k)]}. */
+    float[] uvs() {
+        return uvs;
+    }
+
+    int uvOffset(int e, int k) {
+        return (e * 6 + k) * FACE_UV;
+    }
+
+    static int direction(String name) {
+        for (int i = 0; i < DIRECTIONS.length; i++) {
+            if (DIRECTIONS[i].equals(name)) return i;
+        }
+        return -1;
+    }
+
+    /** Bytes held by the table, for the import log. */
+    long footprintBytes() {
+        return (long) boxes.length * 4 + uvs.length * 4L + faceDirs.length * 4L + flags.length;
+    }
+}
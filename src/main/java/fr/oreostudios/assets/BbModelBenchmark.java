@@ -0,0 +1,185 @@
+package fr.oreostudios.assets;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Random;
+
+/**
+ * Import cost of {@link BbModelImporter} on generated Blockbench files:
+ * thousands of cubes in nested groups, a few loose ones, and an embedded
+ * base64 texture like the ones Blockbench exports. Reports time, bytes
+ * allocated and heap still held, next to what building the Gson tree of
+ * the same file costs on its own (the old import path started with that).
+ *
+ * Run with: java -cp target/classes:... fr.oreostudios.assets.BbModelBenchmark [cubes] [textureKB]
+ */
+public class BbModelBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int cubes = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int textureKb = args.length > 1 ? Integer.parseInt(args[1]) : 4_096;
+
+        Path dir = Files.createTempDirectory("bbbench");
+        Path file = dir.resolve("bench.bbmodel");
+        writeSample(file, cubes, textureKb * 1024, 7);
+        System.out.printf("%s: %d cubes, %d KB embedded texture, %.1f MB on disk%n",
+                file.getFileName(), cubes, textureKb, Files.size(file) / 1e6);
+
+        PrintStream out = System.out;
+        for (int round = 0; round < 4; round++) {
+            boolean report = round == 3;
+
+            System.gc();
+            long heap0 = usedHeap();
+            long alloc0 = allocatedBytes();
+            long t0 = System.nanoTime();
+            JsonElement tree;
+            try (Reader r = Files.newBufferedReader(file)) {
+                tree = JsonParser.parseReader(r);
+            }
+            long t1 = System.nanoTime();
+            long treeAlloc = allocatedBytes() - alloc0;
+            System.gc();
+            long treeHeld = usedHeap() - heap0;
+            if (tree.isJsonNull()) return; // keeps the tree alive up to here
+
+            tree = null;
+            System.gc();
+            heap0 = usedHeap();
+            alloc0 = allocatedBytes();
+            System.setOut(new PrintStream(OutputStream.nullOutputStream())); // importer warnings
+            long t2 = System.nanoTime();
+            OreoModel model;
+            try {
+                model = new BbModelImporter().importModel(file.toFile());
+            } finally {
+                System.setOut(out);
+            }
+            long t3 = System.nanoTime();
+            long importAlloc = allocatedBytes() - alloc0;
+            System.gc();
+            long modelHeld = usedHeap() - heap0;
+
+            if (report) {
+                Mesh mesh = model.getMeshes().get(0);
+                long meshBytes = mesh.getVertices().length * 4L + mesh.getIndices().length * 4L
+                        + (mesh.getUvs() == null ? 0 : mesh.getUvs().length * 4L + mesh.getUvIndices().length * 4L);
+                System.out.printf("  gson tree only   %7.1f ms, %7.1f MB allocated, %7.1f MB held%n",
+                        (t1 - t0) / 1e6, treeAlloc / 1e6, treeHeld / 1e6);
+                System.out.printf("  streaming import %7.1f ms, %7.1f MB allocated, %7.1f MB held (mesh arrays %.1f MB)%n",
+                        (t3 - t2) / 1e6, importAlloc / 1e6, modelHeld / 1e6, meshBytes / 1e6);
+            }
+        }
+
+        Files.delete(file);
+        Files.delete(dir);
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Writes a Blockbench-style file: cubes spread over nested groups with
+     * rotations, about 1 in 20 left out of the outliner, and one texture
+     * whose "source" is a {@code textureBytes} data URL.
+     */
+    static void writeSample(Path path, int cubes, int textureBytes, long seed) throws IOException {
+        Random rnd = new Random(seed);
+        String[] dirs = {"north", "east", "south", "west", "up", "down"};
+        try (JsonWriter w = new JsonWriter(Files.newBufferedWriter(path))) {
+            w.beginObject();
+            w.name("meta").beginObject().name("format_version").value("4.5").name("model_format").value("free").endObject();
+            w.name("name").value("bench");
+            w.name("resolution").beginObject().name("width").value(64).name("height").value(64).endObject();
+
+            w.name("elements").beginArray();
+            for (int i = 0; i < cubes; i++) {
+                float x = rnd.nextInt(64) - 32, y = rnd.nextInt(64), z = rnd.nextInt(64) - 32;
+                w.beginObject();
+                w.name("name").value("cube");
+                w.name("box_uv").value(false);
+                w.name("from").beginArray().value(x).value(y).value(z).endArray();
+                w.name("to").beginArray().value(x + 1 + rnd.nextInt(4)).value(y + 1 + rnd.nextInt(4)).value(z + 1 + rnd.nextInt(4)).endArray();
+                w.name("autouv").value(0);
+                w.name("color").value(rnd.nextInt(8));
+                if (rnd.nextInt(3) == 0) {
+                    w.name("rotation").beginArray().value(0).value(22.5).value(rnd.nextInt(3) * 45 - 45).endArray();
+                }
+                w.name("origin").beginArray().value(x).value(y).value(z).endArray();
+                w.name("faces").beginObject();
+                for (String d : dirs) {
+                    int u = rnd.nextInt(60), v = rnd.nextInt(60);
+                    w.name(d).beginObject().name("uv").beginArray().value(u).value(v).value(u + 4).value(v + 4).endArray()
+                            .name("texture").value(0).endObject();
+                }
+                w.endObject();
+                w.name("type").value("cube");
+                w.name("uuid").value(uuid(i));
+                w.endObject();
+            }
+            w.endArray();
+
+            // outliner: groups of up to 32 cubes, nested 3 deep
+            w.name("outliner").beginArray();
+            int next = 0;
+            int group = 0;
+            while (next < cubes) {
+                next = writeGroup(w, rnd, cubes, next, group++, 0);
+            }
+            w.endArray();
+
+            w.name("textures").beginArray();
+            w.beginObject();
+            w.name("path").value("missing/bench.png");
+            w.name("name").value("bench.png");
+            w.name("id").value("0");
+            byte[] png = new byte[textureBytes];
+            rnd.nextBytes(png);
+            w.name("source").value("data:image/png;base64," + Base64.getEncoder().encodeToString(png));
+            w.endObject();
+            w.endArray();
+            w.endObject();
+        }
+    }
+
+    private static int writeGroup(JsonWriter w, Random rnd, int cubes, int next, int group, int depth) throws IOException {
+        w.beginObject();
+        w.name("name").value("group" + depth + "_" + group);
+        w.name("origin").beginArray().value(rnd.nextInt(16)).value(rnd.nextInt(16)).value(rnd.nextInt(16)).endArray();
+        w.name("rotation").beginArray().value(0).value(rnd.nextInt(4) * 15).value(0).endArray();
+        w.name("uuid").value("g" + depth + "-" + group);
+        w.name("export").value(true);
+        w.name("children").beginArray();
+        int n = 1 + rnd.nextInt(32);
+        for (int k = 0; k < n && next < cubes; k++) {
+            if (next % 20 != 7) w.value(uuid(next)); // every 20th cube stays loose
+            next++;
+        }
+        if (depth < 2 && next < cubes && rnd.nextBoolean()) {
+            next = writeGroup(w, rnd, cubes, next, group, depth + 1);
+        }
+        w.endArray();
+        w.endObject();
+        return next;
+    }
+
+    private static String uuid(int i) {
+        return String.format("%08x-0000-4000-8000-%012x", i * 2654435761L & 0xFFFFFFFFL, (long) i);
+    }
+}
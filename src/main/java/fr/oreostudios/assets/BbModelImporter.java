@@ -1,356 +1,604 @@
 package fr.oreostudios.assets;
 
-import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
 
 import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.io.File;
-import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
- * Blockbench .bbmodel importer with heavy debug logging.
+ * Blockbench .bbmodel importer.
  * - per-face UVs
  * - element rotation around origin
  * - simple bone hierarchy from "outliner" (accumulated transforms)
+ *
+ * The file is read once with a streaming {@link JsonReader}: elements are
+ * decoded straight into a {@link BbElementTable}, the outliner into a small
+ * bone tree, and everything else (embedded texture data first of all) is
+ * skipped. Outliner ids are resolved afterwards through an id -> row table,
+ * so the sections can come in any order and no JSON tree is ever built.
+ *
+ * Logging goes through an {@link ImportLog} (per-element and per-face lines
+ * at TRACE only), and each import attaches an {@link ImportReport} to the model.
+ * Warnings are counted by code; their text is only built when printed or kept.
+ * Skipped elements are warned about after the bake, in bake order.
+ *
+ * Baking computes each bone's world matrix once ({@link BoneNode#worldMatrix}),
+ * then bakes the elements on a fork-join pool, in contiguous runs merged back
+ * in outliner order: the mesh is identical to a serial bake. Serial mode can
+ * be forced with {@link #setSerial(boolean)} or {@code -Doreo.serialImport=true}.
  */
 public class BbModelImporter implements ModelImporter {
 
-    // Flip this to false when things are stable
-    private static final boolean DEBUG = true;
+    private static final String TAG = "BbModelImporter";
 
-    private static void dbg(String msg) {
-        if (DEBUG) System.out.println("[BbModelImporter] " + msg);
+    /** Bump when the baked output changes (see {@link ModelImporter#getVersion}). */
+    public static final int VERSION = 1;
+
+    private static final Matrix4f IDENTITY = new Matrix4f();
+
+    /** Fewest elements worth a run of their own; smaller models bake serially. */
+    private static final int MIN_RUN = 1024;
+    /** Runs per thread, so uneven runs still keep every thread busy. */
+    private static final int RUNS_PER_THREAD = 4;
+
+    private final ForkJoinPool pool;
+    private boolean serial = Boolean.getBoolean("oreo.serialImport");
+
+    // null = ImportLog's default level at the time of the import
+    private ImportLog.Level logLevel;
+
+    public BbModelImporter() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public BbModelImporter(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public void setSerial(boolean serial) {
+        this.serial = serial;
+    }
+
+    public boolean isSerial() {
+        return serial;
+    }
+
+    public void setLogLevel(ImportLog.Level logLevel) {
+        this.logLevel = logLevel;
     }
 
     @Override
     public OreoModel importModel(File file) throws Exception {
-        dbg("=== IMPORT START: " + file.getAbsolutePath() + " ===");
+        long alloc0 = ImportReport.threadAllocatedBytes();
+        long t0 = System.nanoTime();
+        ImportReport report = new ImportReport(file.getAbsolutePath());
+        ImportLog log = new ImportLog(TAG, logLevel != null ? logLevel : ImportLog.getDefaultLevel(), report);
+        log.info(() -> "=== IMPORT START: " + file.getAbsolutePath() + " ===");
+
+        String baseName = file.getName().replaceFirst("\\.bbmodel$", "");
+        File siblingPng = new File(file.getParentFile(), baseName + ".png");
 
-        JsonParser parser = new JsonParser();
-        JsonObject root;
-        try (FileReader reader = new FileReader(file)) {
-            root = parser.parse(reader).getAsJsonObject();
+        // one pass over the file: nothing but the decoded pieces is kept
+        Parsed parsed = new Parsed(file, siblingPng.exists(), log);
+        try (JsonReader reader = new JsonReader(Files.newBufferedReader(file.toPath()))) {
+            parseRoot(reader, parsed);
         }
 
         // ----- name -----
-        String baseName = file.getName().replaceFirst("\\.bbmodel$", "");
-        String name = baseName;
-        if (root.has("name") && root.get("name").isJsonPrimitive()) {
-            name = root.get("name").getAsString();
-        }
-        dbg("Model name = " + name);
+        String name = parsed.name != null ? parsed.name : baseName;
+        log.info(() -> "Model name = " + name);
 
         OreoModel model = new OreoModel(name);
 
         // ----- resolution (texture size) -----
-        int texWidth = 128;
-        int texHeight = 128;
-        if (root.has("resolution") && root.get("resolution").isJsonObject()) {
-            JsonObject res = root.getAsJsonObject("resolution");
-            if (res.has("width")) texWidth = res.get("width").getAsInt();
-            if (res.has("height")) texHeight = res.get("height").getAsInt();
-        }
-        dbg("Initial texture resolution from .bbmodel: " + texWidth + "x" + texHeight);
+        int texWidth = parsed.texWidth;
+        int texHeight = parsed.texHeight;
+        log.debug(() -> "Initial texture resolution from .bbmodel: " + parsed.texWidth + "x" + parsed.texHeight);
 
-        // ----- texture path: try sibling PNG first -----
-        File siblingPng = new File(file.getParentFile(), baseName + ".png");
+        // ----- texture path: sibling PNG first, then the first "path" found on disk -----
         String texturePath = null;
-
         if (siblingPng.exists()) {
             texturePath = siblingPng.getAbsolutePath();
-            dbg("Using sibling texture: " + texturePath);
-        } else if (root.has("textures") && root.get("textures").isJsonObject()) {
-            JsonObject texturesObj = root.getAsJsonObject("textures");
-            dbg("textures section found with " + texturesObj.entrySet().size() + " entries");
-            for (Map.Entry<String, JsonElement> entry : texturesObj.entrySet()) {
-                if (!entry.getValue().isJsonObject()) continue;
-                JsonObject tex = entry.getValue().getAsJsonObject();
-                if (tex.has("path")) {
-                    String p = tex.get("path").getAsString();
-                    File texFile = new File(p);
-                    if (!texFile.isAbsolute()) {
-                        texFile = new File(file.getParentFile(), p);
-                    }
-                    dbg("Trying texture path from json: " + texFile.getAbsolutePath());
-                    if (texFile.exists()) {
-                        texturePath = texFile.getAbsolutePath();
-                        dbg("Texture found: " + texturePath);
-                        break;
-                    } else {
-                        dbg("Texture does not exist on disk.");
-                    }
-                }
+            log.info(() -> "Using sibling texture: " + siblingPng.getAbsolutePath());
+        } else {
+            for (String missing : parsed.missingTextures) report.addMissingTexture(missing);
+            if (parsed.texturePath != null) {
+                texturePath = parsed.texturePath;
+                log.info(() -> "Texture found: " + parsed.texturePath);
             }
         }
 
         if (texturePath != null) {
             model.setTexturePath(texturePath);
             try {
-                BufferedImage img = ImageIO.read(new File(texturePath));
-                texWidth = img.getWidth();
-                texHeight = img.getHeight();
-                dbg("Texture size from image: " + texWidth + "x" + texHeight);
+                int[] size = readImageSize(new File(texturePath));
+                texWidth = size[0];
+                texHeight = size[1];
+                log.debug(() -> "Texture size from image: " + size[0] + "x" + size[1]);
             } catch (Exception ex) {
-                dbg("Failed to read texture image for size: " + ex.getMessage());
+                log.warn("texture-size", () -> "Failed to read texture image for size: " + ex.getMessage());
             }
         } else {
-            dbg("No usable texture found for model " + name);
+            log.warn("no-texture", () -> "No usable texture found for model " + name);
         }
 
-        // ----- collect elements into a map (uuid -> element) -----
-        Map<String, JsonObject> elementsById = new HashMap<>();
-        JsonArray elementsArr = root.getAsJsonArray("elements");
-        if (elementsArr != null) {
-            dbg("elements array size = " + elementsArr.size());
-            int idx = 0;
-            for (JsonElement el : elementsArr) {
-                if (!el.isJsonObject()) continue;
-                JsonObject elem = el.getAsJsonObject();
-                String id = null;
-                if (elem.has("uuid")) {
-                    id = elem.get("uuid").getAsString();
-                } else if (elem.has("name")) {
-                    id = elem.get("name").getAsString();
-                }
-                if (id != null) {
-                    elementsById.put(id, elem);
-
-                    dbg("Element #" + idx + " id=" + id);
-                    dbg("  from=" + elem.get("from"));
-                    dbg("  to  =" + elem.get("to"));
-                    if (elem.has("origin")) dbg("  origin=" + elem.get("origin"));
-                    if (elem.has("rotation")) dbg("  rotation=" + elem.get("rotation"));
-                } else {
-                    dbg("Element #" + idx + " has no uuid/name, skipping map key.");
-                }
-                idx++;
-            }
-        } else {
-            dbg("No 'elements' array present!");
-        }
-
-        // ----- build bone tree from "outliner" -----
-        List<BoneNode> rootBones = new ArrayList<>();
-        JsonArray outliner = root.getAsJsonArray("outliner");
-        if (outliner != null) {
-            dbg("outliner size = " + outliner.size());
-            int i = 0;
-            for (JsonElement entry : outliner) {
-                dbg("Outliner[" + i + "] type = " + entry.getClass().getSimpleName());
-                if (entry.isJsonPrimitive()) {
-                    // direct element id at root
-                    String id = entry.getAsString();
-                    dbg("  primitive id = " + id);
-                    BoneNode n = new BoneNode();
-                    n.name = "rootElement:" + id;
-                    n.elementIds.add(id);
-                    rootBones.add(n);
-                } else if (entry.isJsonObject()) {
-                    BoneNode bn = parseBoneNode(entry.getAsJsonObject(), 0);
-                    rootBones.add(bn);
-                }
-                i++;
-            }
-        } else {
-            dbg("No 'outliner' array present!");
-        }
+        // ----- second pass: resolve ids against the small id table -----
+        BbElementTable elements = parsed.elements;
+        Map<String, Integer> elementsById = parsed.elementsById;
+        log.info(() -> "elements: " + elements.size() + " (" + elementsById.size() + " with an id), "
+                + elements.footprintBytes() / 1024 + " KB decoded");
 
-        // geometry buffers
-        List<Float> vertList = new ArrayList<>();
-        List<Float> uvList = new ArrayList<>();
-        List<Integer> indexList = new ArrayList<>();
-        List<Integer> uvIndexList = new ArrayList<>();
+        List<BoneNode> rootBones = parsed.rootBones;
+        long t1 = System.nanoTime();
 
+        // ----- resolve the outliner into one bake job per element, in bake order -----
+        BakeList jobs = new BakeList();
         Set<String> visitedElements = new HashSet<>();
-
-        // ----- bake geometry using bones if outliner exists -----
         if (!rootBones.isEmpty()) {
-            dbg("Using outliner / bones to bake geometry. rootBones=" + rootBones.size());
-            List<BoneTransform> emptyChain = new ArrayList<>();
+            log.debug(() -> "Using outliner / bones to bake geometry. rootBones=" + rootBones.size());
             for (BoneNode rootBone : rootBones) {
-                dbg("Bake root bone: " + rootBone.name);
-                bakeNode(rootBone, emptyChain, elementsById,
-                        texWidth, texHeight,
-                        vertList, uvList, indexList, uvIndexList,
-                        visitedElements);
+                log.debug(() -> "Bake root bone: " + rootBone.name);
+                collectNode(rootBone, IDENTITY, elementsById, jobs, visitedElements, log);
             }
         } else {
-            dbg("No bones/outliner -> all elements will be baked with only their own rotations.");
+            log.debug(() -> "No bones/outliner -> all elements will be baked with only their own rotations.");
         }
 
         // ----- fallback: any elements not referenced in outliner -----
-        List<BoneTransform> emptyChain = new ArrayList<>();
-        for (Map.Entry<String, JsonObject> entry : elementsById.entrySet()) {
+        boolean debug = log.isEnabled(ImportLog.Level.DEBUG);
+        for (Map.Entry<String, Integer> entry : elementsById.entrySet()) {
             if (visitedElements.contains(entry.getKey())) continue;
-            dbg("Element not referenced by outliner, baking standalone: " + entry.getKey());
-            buildCubeFromElement(entry.getValue(), emptyChain,
-                    texWidth, texHeight,
-                    vertList, uvList, indexList, uvIndexList);
+            if (debug) log.print("Element not referenced by outliner, baking standalone: " + entry.getKey());
+            jobs.add(entry.getValue(), IDENTITY);
         }
 
+        // ----- bake: geometry sized for every job's faces (then handed to the Mesh as is) -----
+        GeometryBuilder geometry = new GeometryBuilder(jobs.quads(elements, 0, jobs.size));
+        bake(jobs, elements, texWidth, texHeight, geometry, log);
+
         // ----- finalize mesh -----
-        if (vertList.isEmpty() || indexList.isEmpty()) {
-            dbg("WARNING: no geometry produced, using stub triangle.");
+        Mesh mesh;
+        if (geometry.isEmpty()) {
+            log.warn("no-geometry", () -> "No geometry produced, using stub triangle.");
             float[] vertices = {0f, 0f, 0f, 1f, 0f, 0f, 0f, 1f, 0f};
             int[] indices = {0, 1, 2};
-            model.addMesh(new Mesh(vertices, indices));
+            mesh = new Mesh(vertices, indices);
         } else {
-            float[] vertices = new float[vertList.size()];
-            for (int i = 0; i < vertList.size(); i++) vertices[i] = vertList.get(i);
-
-            int[] indices = new int[indexList.size()];
-            for (int i = 0; i < indexList.size(); i++) indices[i] = indexList.get(i);
-
-            float[] uvsArr = null;
-            int[] uvIdxArr = null;
-            if (!uvList.isEmpty() && uvIndexList.size() == indexList.size()) {
-                uvsArr = new float[uvList.size()];
-                for (int i = 0; i < uvList.size(); i++) uvsArr[i] = uvList.get(i);
+            mesh = geometry.toMesh();
+            log.info(() -> "Built mesh: verts=" + mesh.getVertices().length +
+                    ", indices=" + mesh.getIndices().length +
+                    ", uvs=" + (mesh.getUvs() == null ? 0 : mesh.getUvs().length));
+        }
+        model.addMesh(mesh);
+        long t2 = System.nanoTime();
+
+        report.setParseNanos(t1 - t0);
+        report.setBakeNanos(t2 - t1);
+        report.setElements(elements.size());
+        report.setFaces(jobs.faces);
+        report.setVertices(mesh.getVertices().length / 3);
+        report.setTriangles(mesh.getIndices().length / 3);
+        long alloc1 = ImportReport.threadAllocatedBytes();
+        if (alloc0 >= 0 && alloc1 >= 0) report.setBytesAllocated(alloc1 - alloc0 + jobs.workerBytes);
+        model.setImportReport(report);
+
+        log.info(() -> "=== IMPORT END: " + report.summary() + " ===");
+        return model;
+    }
 
-                uvIdxArr = new int[uvIndexList.size()];
-                for (int i = 0; i < uvIndexList.size(); i++) uvIdxArr[i] = uvIndexList.get(i);
+    /** Width and height from the image header, without decoding the pixels. */
+    private static int[] readImageSize(File file) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            Iterator<ImageReader> readers = in == null ? Collections.emptyIterator() : ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) throw new IOException("no image reader for " + file);
+            ImageReader r = readers.next();
+            try {
+                r.setInput(in);
+                return new int[]{r.getWidth(0), r.getHeight(0)};
+            } finally {
+                r.dispose();
             }
-
-            dbg("Built mesh: verts=" + vertices.length +
-                    ", indices=" + indices.length +
-                    ", uvs=" + (uvsArr == null ? 0 : uvsArr.length));
-
-            model.addMesh(new Mesh(vertices, indices, uvsArr, uvIdxArr));
         }
-
-        dbg("=== IMPORT END ===");
-        return model;
     }
 
     // ------------------------------------------------------------------------
-    //  Bone tree (simple, no matrices)
+    //  Streaming parse (JsonReader): decode as we go, skip everything else
     // ------------------------------------------------------------------------
 
-    private static class BoneNode {
+    /** What one pass over the file leaves behind. */
+    private static class Parsed {
+        final File file;
+        final boolean skipTextures;
+        final ImportLog log;
+
         String name;
-        float ox, oy, oz;
-        float rx, ry, rz;
-        List<String> elementIds = new ArrayList<>();
-        List<BoneNode> children = new ArrayList<>();
+        int texWidth = 128;
+        int texHeight = 128;
+        String texturePath;
+        final List<String> missingTextures = new ArrayList<>(); // json paths tried before texturePath
+
+        final BbElementTable elements = new BbElementTable();
+        final Map<String, Integer> elementsById = new HashMap<>();
+        final List<BoneNode> rootBones = new ArrayList<>();
+
+        Parsed(File file, boolean skipTextures, ImportLog log) {
+            this.file = file;
+            this.skipTextures = skipTextures;
+            this.log = log;
+        }
     }
 
-    private static class BoneTransform {
-        final Vector3f origin;
-        final Vector3f rotationDeg;
+    private void parseRoot(JsonReader in, Parsed p) throws IOException {
+        in.beginObject();
+        while (in.hasNext()) {
+            String key = in.nextName();
+            JsonToken t = in.peek();
+            switch (key) {
+                case "name":
+                    if (t == JsonToken.STRING || t == JsonToken.NUMBER) p.name = in.nextString();
+                    else in.skipValue();
+                    break;
+                case "resolution":
+                    if (t == JsonToken.BEGIN_OBJECT) parseResolution(in, p);
+                    else in.skipValue();
+                    break;
+                case "textures":
+                    if (p.skipTextures) in.skipValue();
+                    else parseTextures(in, p);
+                    break;
+                case "elements":
+                    if (t == JsonToken.BEGIN_ARRAY) parseElements(in, p);
+                    else in.skipValue();
+                    break;
+                case "outliner":
+                    if (t == JsonToken.BEGIN_ARRAY) parseOutliner(in, p);
+                    else in.skipValue();
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        if (p.elements.size() == 0) p.log.warn("no-elements", () -> "No 'elements' array present!");
+        if (p.rootBones.isEmpty()) p.log.debug(() -> "No 'outliner' array present!");
+    }
 
-        BoneTransform(float ox, float oy, float oz, float rx, float ry, float rz) {
-            this.origin = new Vector3f(ox, oy, oz);
-            this.rotationDeg = new Vector3f(rx, ry, rz);
+    private void parseResolution(JsonReader in, Parsed p) throws IOException {
+        in.beginObject();
+        while (in.hasNext()) {
+            String key = in.nextName();
+            if (key.equals("width")) p.texWidth = in.nextInt();
+            else if (key.equals("height")) p.texHeight = in.nextInt();
+            else in.skipValue();
         }
+        in.endObject();
     }
 
-    private BoneNode parseBoneNode(JsonObject obj, int depth) {
-        BoneNode node = new BoneNode();
+    /**
+     * Only the "path" of each texture is read; embedded "source" data URLs
+     * (often most of the file) are skipped without being materialized.
+     * Textures may be an object keyed by id or an array, as exported.
+     */
+    private void parseTextures(JsonReader in, Parsed p) throws IOException {
+        JsonToken t = in.peek();
+        boolean object = t == JsonToken.BEGIN_OBJECT;
+        if (!object && t != JsonToken.BEGIN_ARRAY) {
+            in.skipValue();
+            return;
+        }
+        if (object) in.beginObject(); else in.beginArray();
+        int count = 0;
+        while (in.hasNext()) {
+            if (object) in.nextName();
+            count++;
+            if (p.texturePath != null || in.peek() != JsonToken.BEGIN_OBJECT) {
+                in.skipValue();
+                continue;
+            }
+            in.beginObject();
+            while (in.hasNext()) {
+                if (!in.nextName().equals("path") || in.peek() != JsonToken.STRING) {
+                    in.skipValue();
+                    continue;
+                }
+                File texFile = new File(in.nextString());
+                if (!texFile.isAbsolute()) {
+                    texFile = new File(p.file.getParentFile(), texFile.getPath());
+                }
+                File tried = texFile;
+                p.log.debug(() -> "Trying texture path from json: " + tried.getAbsolutePath());
+                if (texFile.exists()) {
+                    p.texturePath = texFile.getAbsolutePath();
+                } else {
+                    p.log.debug(() -> "Texture does not exist on disk.");
+                    p.missingTextures.add(texFile.getAbsolutePath());
+                }
+            }
+            in.endObject();
+        }
+        if (object) in.endObject(); else in.endArray();
+        int entries = count;
+        p.log.debug(() -> "textures section found with " + entries + " entries");
+    }
 
-        if (obj.has("name")) {
-            node.name = obj.get("name").getAsString();
-        } else if (obj.has("uuid")) {
-            node.name = "bone-" + obj.get("uuid").getAsString();
-        } else {
-            node.name = "bone-depth-" + depth;
+    private void parseElements(JsonReader in, Parsed p) throws IOException {
+        BbElementTable table = p.elements;
+        ImportLog log = p.log;
+        boolean trace = log.isEnabled(ImportLog.Level.TRACE);
+        float[] tmp = new float[4];
+        in.beginArray();
+        int idx = 0;
+        while (in.hasNext()) {
+            if (in.peek() != JsonToken.BEGIN_OBJECT) {
+                in.skipValue();
+                continue;
+            }
+            int e = table.add();
+            float[] box = table.boxes();
+            int o = table.boxOffset(e);
+            String uuid = null, name = null;
+            boolean hasFrom = false, hasTo = false, hasOrigin = false;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                String key = in.nextName();
+                switch (key) {
+                    case "uuid":
+                        uuid = in.nextString();
+                        break;
+                    case "name":
+                        name = in.nextString();
+                        break;
+                    case "from":
+                        hasFrom = readFloats(in, box, o, 3) >= 3;
+                        break;
+                    case "to":
+                        hasTo = readFloats(in, box, o + 3, 3) >= 3;
+                        break;
+                    case "origin":
+                        hasOrigin = readFloats(in, box, o + 6, 3) >= 3;
+                        break;
+                    case "rotation":
+                        if (readFloats(in, tmp, 0, 3) >= 3) System.arraycopy(tmp, 0, box, o + 9, 3);
+                        break;
+                    case "faces":
+                        if (in.peek() == JsonToken.BEGIN_OBJECT) parseFaces(in, table, e, tmp, log);
+                        else in.skipValue();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+
+            if (hasFrom && hasTo) table.setHasBox(e);
+            // origin defaults to "from"
+            if (!hasOrigin) System.arraycopy(box, o, box, o + 6, 3);
+
+            String id = uuid != null ? uuid : name;
+            if (id != null) {
+                p.elementsById.put(id, e);
+                if (trace) {
+                    log.print("Element #" + idx + " id=" + id);
+                    log.print("  from=" + Arrays.toString(Arrays.copyOfRange(box, o, o + 3)));
+                    log.print("  to  =" + Arrays.toString(Arrays.copyOfRange(box, o + 3, o + 6)));
+                    log.print("  origin=" + Arrays.toString(Arrays.copyOfRange(box, o + 6, o + 9)));
+                    log.print("  rotation=" + Arrays.toString(Arrays.copyOfRange(box, o + 9, o + 12)));
+                }
+            } else if (log.isEnabled(ImportLog.Level.DEBUG)) {
+                log.print("Element #" + idx + " has no uuid/name, skipping map key.");
+            }
+            idx++;
+        }
+        in.endArray();
+        int size = idx;
+        log.debug(() -> "elements array size = " + size);
+    }
+
+    private void parseFaces(JsonReader in, BbElementTable table, int e, float[] uv, ImportLog log) throws IOException {
+        table.setHasFaces(e);
+        in.beginObject();
+        while (in.hasNext()) {
+            String dirName = in.nextName();
+            int dir = BbElementTable.direction(dirName);
+            if (in.peek() != JsonToken.BEGIN_OBJECT) {
+                in.skipValue();
+                continue;
+            }
+            int n = 0;
+            in.beginObject();
+            while (in.hasNext()) {
+                if (in.nextName().equals("uv")) n = readFloats(in, uv, 0, 4);
+                else in.skipValue();
+            }
+            in.endObject();
+            if (dir < 0) {
+                log.warn("face-direction", () -> "Unknown face direction '" + dirName + "' -> skipped");
+            } else if (n < 4) {
+                log.warn("face-uv", () -> "Face '" + dirName + "' without a 4-value uv -> skipped");
+            } else {
+                table.addFace(e, dir, uv[0], uv[1], uv[2], uv[3]);
+            }
         }
+        in.endObject();
+    }
 
-        dbg(indent(depth) + "Parse bone '" + node.name + "'");
+    /**
+     * Reads a numeric array into {@code dst} (up to {@code max} values kept)
+     * and returns how many values it had. Anything that is not an array
+     * counts as 0 values.
+     */
+    private static int readFloats(JsonReader in, float[] dst, int offset, int max) throws IOException {
+        if (in.peek() != JsonToken.BEGIN_ARRAY) {
+            in.skipValue();
+            return 0;
+        }
+        int n = 0;
+        in.beginArray();
+        while (in.hasNext()) {
+            if (n < max) dst[offset + n] = Float.parseFloat(in.nextString()); // same rounding as getAsFloat()
+            else in.skipValue();
+            n++;
+        }
+        in.endArray();
+        return n;
+    }
 
-        // bone origin
-        if (obj.has("origin") && obj.get("origin").isJsonArray()) {
-            JsonArray o = obj.getAsJsonArray("origin");
-            if (o.size() >= 3) {
-                node.ox = o.get(0).getAsFloat();
-                node.oy = o.get(1).getAsFloat();
-                node.oz = o.get(2).getAsFloat();
+    private void parseOutliner(JsonReader in, Parsed p) throws IOException {
+        boolean debug = p.log.isEnabled(ImportLog.Level.DEBUG);
+        in.beginArray();
+        int i = 0;
+        while (in.hasNext()) {
+            JsonToken t = in.peek();
+            if (debug) p.log.print("Outliner[" + i + "] type = " + t);
+            if (t == JsonToken.BEGIN_OBJECT) {
+                p.rootBones.add(parseBoneNode(in, 0, p.log));
+            } else if (t == JsonToken.STRING || t == JsonToken.NUMBER) {
+                // direct element id at root
+                String id = in.nextString();
+                if (debug) p.log.print("  primitive id = " + id);
+                BoneNode n = new BoneNode();
+                n.name = "rootElement:" + id;
+                n.elementIds.add(id);
+                p.rootBones.add(n);
+            } else {
+                in.skipValue();
             }
+            i++;
         }
+        in.endArray();
+        int size = i;
+        p.log.debug(() -> "outliner size = " + size);
+    }
+
+    // ------------------------------------------------------------------------
+    //  Bone tree ({@link BoneNode}, world matrices filled in by collectNode)
+    // ------------------------------------------------------------------------
 
-        // bone rotation
-        if (obj.has("rotation") && obj.get("rotation").isJsonArray()) {
-            JsonArray r = obj.getAsJsonArray("rotation");
-            if (r.size() >= 3) {
-                node.rx = r.get(0).getAsFloat();
-                node.ry = r.get(1).getAsFloat();
-                node.rz = r.get(2).getAsFloat();
+    private BoneNode parseBoneNode(JsonReader in, int depth, ImportLog log) throws IOException {
+        BoneNode node = new BoneNode();
+        String name = null, uuid = null;
+        boolean hasChildren = false;
+        float[] v = new float[3];
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String key = in.nextName();
+            switch (key) {
+                case "name":
+                    name = in.nextString();
+                    break;
+                case "uuid":
+                    uuid = in.nextString();
+                    break;
+                case "origin":
+                    // bone origin
+                    if (readFloats(in, v, 0, 3) >= 3) {
+                        node.pivot.set(v[0], v[1], v[2]);
+                    }
+                    break;
+                case "rotation":
+                    // bone rotation
+                    if (readFloats(in, v, 0, 3) >= 3) {
+                        node.rotation.set(v[0], v[1], v[2]);
+                    }
+                    break;
+                case "children":
+                    if (in.peek() != JsonToken.BEGIN_ARRAY) {
+                        in.skipValue();
+                        break;
+                    }
+                    hasChildren = true;
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        JsonToken t = in.peek();
+                        if (t == JsonToken.STRING || t == JsonToken.NUMBER) {
+                            node.elementIds.add(in.nextString());
+                        } else if (t == JsonToken.BEGIN_OBJECT) {
+                            node.children.add(parseBoneNode(in, depth + 1, log));
+                        } else {
+                            in.skipValue();
+                        }
+                    }
+                    in.endArray();
+                    break;
+                default:
+                    in.skipValue();
             }
         }
+        in.endObject();
 
-        dbg(indent(depth) + "  origin=(" + node.ox + "," + node.oy + "," + node.oz + ")");
-        dbg(indent(depth) + "  rotation=(" + node.rx + "," + node.ry + "," + node.rz + ")");
+        if (name != null) {
+            node.name = name;
+        } else if (uuid != null) {
+            node.name = "bone-" + uuid;
+        } else {
+            node.name = "bone-depth-" + depth;
+        }
 
         // if this node directly references an element
-        if (obj.has("uuid") && !obj.has("children")) {
-            String eid = obj.get("uuid").getAsString();
-            node.elementIds.add(eid);
-            dbg(indent(depth) + "  direct element uuid=" + eid);
+        if (uuid != null && !hasChildren) {
+            node.elementIds.add(uuid);
         }
 
-        // children
-        if (obj.has("children") && obj.get("children").isJsonArray()) {
-            JsonArray ch = obj.getAsJsonArray("children");
-            dbg(indent(depth) + "  children count=" + ch.size());
-            for (JsonElement ce : ch) {
-                if (ce.isJsonPrimitive()) {
-                    String id = ce.getAsString();
-                    node.elementIds.add(id);
-                    dbg(indent(depth) + "    child element id=" + id);
-                } else if (ce.isJsonObject()) {
-                    BoneNode child = parseBoneNode(ce.getAsJsonObject(), depth + 1);
-                    node.children.add(child);
-                }
-            }
+        if (log.isEnabled(ImportLog.Level.DEBUG)) {
+            log.print(indent(depth) + "Parse bone '" + node.name + "'");
+            log.print(indent(depth) + "  origin=(" + node.pivot.x + "," + node.pivot.y + "," + node.pivot.z + ")");
+            log.print(indent(depth) + "  rotation=(" + node.rotation.x + "," + node.rotation.y + "," + node.rotation.z + ")");
+            log.print(indent(depth) + "  element ids=" + node.elementIds + ", child bones=" + node.children.size());
         }
 
         return node;
     }
 
-    private void bakeNode(
+    /**
+     * Sets the world matrix of {@code node} and its children (parent world,
+     * then translate to the pivot, rotate, translate back) and lists their
+     * elements as bake jobs, depth first, in outliner order.
+     */
+    private void collectNode(
             BoneNode node,
-            List<BoneTransform> parentChain,
-            Map<String, JsonObject> elementsById,
-            int texWidth, int texHeight,
-            List<Float> vertList, List<Float> uvList,
-            List<Integer> indexList, List<Integer> uvIndexList,
-            Set<String> visitedElements
+            Matrix4f parentWorld,
+            Map<String, Integer> elementsById,
+            BakeList jobs,
+            Set<String> visitedElements,
+            ImportLog log
     ) {
-        dbg("BakeNode '" + node.name + "'  parentChainSize=" + parentChain.size());
-
-        // extend transform chain with this bone
-        List<BoneTransform> chain = new ArrayList<>(parentChain);
-        chain.add(new BoneTransform(node.ox, node.oy, node.oz, node.rx, node.ry, node.rz));
+        Vector3f o = node.pivot;
+        Vector3f r = node.rotation;
+        node.worldMatrix.set(parentWorld)
+                .translate(o)
+                .rotateXYZ((float) Math.toRadians(r.x), (float) Math.toRadians(r.y), (float) Math.toRadians(r.z))
+                .translate(-o.x, -o.y, -o.z);
 
-        dbg("  Chain now:");
-        int idx = 0;
-        for (BoneTransform bt : chain) {
-            dbg("    [" + idx + "] origin=(" + bt.origin.x + "," + bt.origin.y + "," + bt.origin.z
-                    + ") rot=(" + bt.rotationDeg.x + "," + bt.rotationDeg.y + "," + bt.rotationDeg.z + ")");
-            idx++;
-        }
+        boolean debug = log.isEnabled(ImportLog.Level.DEBUG);
+        if (debug) log.print("BakeNode '" + node.name + "' world=" + node.worldMatrix.toString().replace('\n', ' '));
 
         // attach elements
         for (String elemId : node.elementIds) {
-            JsonObject elem = elementsById.get(elemId);
-            dbg("  Processing element id=" + elemId + " attached to bone '" + node.name + "'");
+            Integer elem = elementsById.get(elemId);
+            if (debug) log.print("  Processing element id=" + elemId + " attached to bone '" + node.name + "'");
             if (elem == null) {
-                dbg("    WARNING: element id not found in elementsById!");
+                log.warn("bone-element", () -> "Element id " + elemId + " of bone '" + node.name + "' not found in elements");
                 continue;
             }
-            buildCubeFromElement(elem, chain, texWidth, texHeight,
-                    vertList, uvList, indexList, uvIndexList);
+            jobs.add(elem, node.worldMatrix);
             visitedElements.add(elemId);
         }
 
         // recurse
         for (BoneNode child : node.children) {
-            bakeNode(child, chain, elementsById,
-                    texWidth, texHeight,
-                    vertList, uvList, indexList, uvIndexList,
-                    visitedElements);
+            collectNode(child, node.worldMatrix, elementsById, jobs, visitedElements, log);
         }
     }
 
@@ -359,222 +607,240 @@ public class BbModelImporter implements ModelImporter {
     }
 
     // ------------------------------------------------------------------------
-    //  Geometry from one Blockbench element (cube)
+    //  Baking: serial, or split over the pool and merged back in job order
     // ------------------------------------------------------------------------
 
-    private void buildCubeFromElement(
-            JsonObject elem,
-            List<BoneTransform> parentChain,
-            int texWidth, int texHeight,
-            List<Float> vertList, List<Float> uvList,
-            List<Integer> indexList, List<Integer> uvIndexList
-    ) {
-        JsonArray from = elem.getAsJsonArray("from");
-        JsonArray to   = elem.getAsJsonArray("to");
-        if (from == null || to == null || from.size() < 3 || to.size() < 3) {
-            dbg("buildCubeFromElement: element without valid from/to -> skipping");
-            return;
-        }
+    /** Elements to bake, each with the world matrix of its bone, in serial bake order. */
+    private static final class BakeList {
+        int size;
+        int[] elements = new int[256];
+        Matrix4f[] bones = new Matrix4f[256];
 
-        float fx = from.get(0).getAsFloat();
-        float fy = from.get(1).getAsFloat();
-        float fz = from.get(2).getAsFloat();
-        float tx = to.get(0).getAsFloat();
-        float ty = to.get(1).getAsFloat();
-        float tz = to.get(2).getAsFloat();
-
-        dbg("buildCubeFromElement: from=(" + fx + "," + fy + "," + fz + ") to=(" + tx + "," + ty + "," + tz + ")");
-
-        // element local origin / rotation
-        float ox = fx;
-        float oy = fy;
-        float oz = fz;
-        if (elem.has("origin") && elem.get("origin").isJsonArray()) {
-            JsonArray o = elem.getAsJsonArray("origin");
-            if (o.size() >= 3) {
-                ox = o.get(0).getAsFloat();
-                oy = o.get(1).getAsFloat();
-                oz = o.get(2).getAsFloat();
+        // results of bake()
+        int faces;
+        long workerBytes; // allocated on pool threads, which the importing thread's counter misses
+
+        void add(int element, Matrix4f bone) {
+            if (size == elements.length) {
+                elements = Arrays.copyOf(elements, size * 2);
+                bones = Arrays.copyOf(bones, size * 2);
             }
+            elements[size] = element;
+            bones[size] = bone;
+            size++;
         }
 
-        float rotX = 0, rotY = 0, rotZ = 0;
-        if (elem.has("rotation") && elem.get("rotation").isJsonArray()) {
-            JsonArray r = elem.getAsJsonArray("rotation");
-            if (r.size() >= 3) {
-                rotX = r.get(0).getAsFloat();
-                rotY = r.get(1).getAsFloat();
-                rotZ = r.get(2).getAsFloat();
+        /** UV-mapped quads the jobs in [from, to) will produce. */
+        int quads(BbElementTable table, int from, int to) {
+            int quads = 0;
+            for (int i = from; i < to; i++) {
+                int e = elements[i];
+                if (table.hasBox(e) && table.hasFaces(e)) quads += table.faceCount(e);
             }
+            return quads;
         }
+    }
 
-        dbg("  local origin=(" + ox + "," + oy + "," + oz + ") local rot=(" + rotX + "," + rotY + "," + rotZ + ")");
-        dbg("  parentChain size=" + parentChain.size());
-
-        // full transform chain = bones + this element
-        List<BoneTransform> fullChain = new ArrayList<>(parentChain);
-        fullChain.add(new BoneTransform(ox, oy, oz, rotX, rotY, rotZ));
-
-        // build local cube corners (unrotated)
-        float[][] cube = new float[8][3];
-        cube[0] = new float[]{fx, fy, fz};
-        cube[1] = new float[]{tx, fy, fz};
-        cube[2] = new float[]{tx, ty, fz};
-        cube[3] = new float[]{fx, ty, fz};
-        cube[4] = new float[]{fx, fy, tz};
-        cube[5] = new float[]{tx, fy, tz};
-        cube[6] = new float[]{tx, ty, tz};
-        cube[7] = new float[]{fx, ty, tz};
-
-        dbg("  cube corners BEFORE transform:");
-        for (int i = 0; i < 8; i++) {
-            dbg("    v" + i + " = (" + cube[i][0] + "," + cube[i][1] + "," + cube[i][2] + ")");
+    /**
+     * Bakes every job into {@code geometry}. Big models are cut into
+     * contiguous runs of jobs, each baked into its own buffer on the pool;
+     * the buffers are then appended in run order with their indices shifted,
+     * which gives exactly the arrays a serial bake would have written.
+     */
+    private void bake(BakeList jobs, BbElementTable elements, int texWidth, int texHeight,
+                      GeometryBuilder geometry, ImportLog log) {
+        int n = jobs.size;
+        // TRACE stays serial so the per-face lines come out in order
+        int runs = serial || pool.getParallelism() <= 1 || log.isEnabled(ImportLog.Level.TRACE)
+                ? 1 : Math.min(pool.getParallelism() * RUNS_PER_THREAD, n / MIN_RUN);
+        if (runs <= 1) {
+            CubeBaker baker = new CubeBaker(elements, texWidth, texHeight, geometry, log);
+            for (int i = 0; i < n; i++) baker.bake(jobs.elements[i], jobs.bones[i]);
+            jobs.faces = baker.faces;
+            warnSkipped(baker, log);
+            return;
         }
 
-        // === NEW: build combined transform matrix for the whole chain ===
-        Matrix4f transform = new Matrix4f().identity();
-        for (BoneTransform bt : fullChain) {
-            float rxRad = (float) Math.toRadians(bt.rotationDeg.x);
-            float ryRad = (float) Math.toRadians(bt.rotationDeg.y);
-            float rzRad = (float) Math.toRadians(bt.rotationDeg.z);
-
-            // translate to origin, rotate, translate back
-            transform.translate(bt.origin);
-            transform.rotateXYZ(rxRad, ryRad, rzRad);
-            transform.translate(-bt.origin.x, -bt.origin.y, -bt.origin.z);
+        Thread caller = Thread.currentThread();
+        CubeBaker[] bakers = new CubeBaker[runs];
+        long[] allocated = new long[runs];
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(runs);
+        for (int k = 0; k < runs; k++) {
+            int run = k;
+            int from = (int) ((long) n * k / runs);
+            int to = (int) ((long) n * (k + 1) / runs);
+            tasks.add(ForkJoinTask.adapt(() -> {
+                long a0 = Thread.currentThread() == caller ? -1 : ImportReport.threadAllocatedBytes();
+                CubeBaker baker = new CubeBaker(elements, texWidth, texHeight,
+                        new GeometryBuilder(jobs.quads(elements, from, to)), log);
+                for (int i = from; i < to; i++) baker.bake(jobs.elements[i], jobs.bones[i]);
+                bakers[run] = baker;
+                if (a0 >= 0) allocated[run] = ImportReport.threadAllocatedBytes() - a0;
+            }));
         }
-
-        // Apply matrix to all cube corners
-        for (int i = 0; i < 8; i++) {
-            Vector3f v = new Vector3f(cube[i][0], cube[i][1], cube[i][2]);
-            transform.transformPosition(v);
-            cube[i][0] = v.x;
-            cube[i][1] = v.y;
-            cube[i][2] = v.z;
-            dbg("    AFTER transform v" + i + " = (" + v.x + "," + v.y + "," + v.z + ")");
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+
+        int faces = 0;
+        long bytes = 0;
+        for (int k = 0; k < runs; k++) {
+            geometry.append(bakers[k].geometry);
+            faces += bakers[k].faces;
+            bytes += allocated[k];
+            warnSkipped(bakers[k], log);
         }
+        jobs.faces = faces;
+        jobs.workerBytes = bytes;
+        log.debug(() -> "Baked " + n + " elements in " + runs + " runs on " + pool.getParallelism() + " threads");
+    }
 
-        dbg("  cube corners AFTER transform (matrix baked)");
+    /** Warnings for the elements a baker skipped, in bake order whatever thread baked them. */
+    private static void warnSkipped(CubeBaker baker, ImportLog log) {
+        for (int i = 0; i < baker.skippedCount; i++) {
+            int e = baker.skipped[i];
+            log.warn("element-box", () -> "Element #" + e + " without valid from/to -> skipped");
+        }
+    }
 
-        // faces with UVs
-        JsonObject facesObj = elem.getAsJsonObject("faces");
-        if (facesObj == null) {
-            dbg("  no 'faces' object, using whole cube without UVs");
-            addWholeCubeWithoutUV(cube, vertList, indexList);
-            return;
+    /** Geometry from Blockbench elements (cubes), with its own scratch so each thread can have one. */
+    private static final class CubeBaker {
+        final BbElementTable elements;
+        final int texWidth, texHeight;
+        final GeometryBuilder geometry;
+        final ImportLog log;
+        final boolean trace;
+
+        final Matrix4f transform = new Matrix4f();
+        final Vector3f v = new Vector3f();
+        final float[] cube = new float[24]; // local cube corners, packed xyz
+        int faces;
+        int[] skipped = new int[16]; // elements without a valid box, warned about by bake() once merged
+        int skippedCount;
+
+        CubeBaker(BbElementTable elements, int texWidth, int texHeight, GeometryBuilder geometry, ImportLog log) {
+            this.elements = elements;
+            this.texWidth = texWidth;
+            this.texHeight = texHeight;
+            this.geometry = geometry;
+            this.log = log;
+            this.trace = log.isEnabled(ImportLog.Level.TRACE);
         }
 
-        for (Map.Entry<String, JsonElement> faceEntry : facesObj.entrySet()) {
-            String dir = faceEntry.getKey(); // north/south/east/west/up/down
-            JsonObject face = faceEntry.getValue().getAsJsonObject();
-            dbg("  face '" + dir + "'");
-            if (!face.has("uv")) {
-                dbg("    no uv -> skipped");
-                continue;
+        /** Bakes element {@code e} under the bone world matrix {@code bone}. */
+        void bake(int e, Matrix4f bone) {
+            if (!elements.hasBox(e)) {
+                if (trace) log.print("buildCubeFromElement: element #" + e + " without valid from/to -> skipped");
+                if (skippedCount == skipped.length) skipped = Arrays.copyOf(skipped, skippedCount * 2);
+                skipped[skippedCount++] = e;
+                return;
             }
-            JsonArray uvArr = face.getAsJsonArray("uv");
-            if (uvArr.size() < 4) {
-                dbg("    uv array < 4 -> skipped");
-                continue;
-            }
-
-            float u1 = uvArr.get(0).getAsFloat() / texWidth;
-            float v1 = uvArr.get(1).getAsFloat() / texHeight;
-            float u2 = uvArr.get(2).getAsFloat() / texWidth;
-            float v2 = uvArr.get(3).getAsFloat() / texHeight;
 
-            dbg("    uvPixels=" + uvArr + "  uvNorm=(" + u1 + "," + v1 + ")-(" + u2 + "," + v2 + ")");
-
-            float[][] quadUV = new float[][]{
-                    {u1, v1},
-                    {u2, v1},
-                    {u2, v2},
-                    {u1, v2}
-            };
-
-            int[] cornerIdx;
-            switch (dir) {
-                case "north": // -Z
-                    cornerIdx = new int[]{0, 1, 2, 3};
-                    break;
-                case "south": // +Z
-                    cornerIdx = new int[]{5, 4, 7, 6};
-                    break;
-                case "west":  // -X
-                    cornerIdx = new int[]{4, 0, 3, 7};
-                    break;
-                case "east":  // +X
-                    cornerIdx = new int[]{1, 5, 6, 2};
-                    break;
-                case "up":    // +Y
-                    cornerIdx = new int[]{3, 2, 6, 7};
-                    break;
-                case "down":  // -Y
-                    cornerIdx = new int[]{4, 5, 1, 0};
-                    break;
-                default:
-                    dbg("    unknown direction '" + dir + "' -> skipped");
-                    continue;
+            float[] box = elements.boxes();
+            int b = elements.boxOffset(e);
+            float fx = box[b];
+            float fy = box[b + 1];
+            float fz = box[b + 2];
+            float tx = box[b + 3];
+            float ty = box[b + 4];
+            float tz = box[b + 5];
+
+            if (trace) log.print("buildCubeFromElement: from=(" + fx + "," + fy + "," + fz + ") to=(" + tx + "," + ty + "," + tz + ")");
+
+            // element local origin (defaults to "from") / rotation
+            float ox = box[b + 6];
+            float oy = box[b + 7];
+            float oz = box[b + 8];
+            float rotX = box[b + 9];
+            float rotY = box[b + 10];
+            float rotZ = box[b + 11];
+
+            if (trace) {
+                log.print("  local origin=(" + ox + "," + oy + "," + oz + ") local rot=(" + rotX + "," + rotY + "," + rotZ + ")");
             }
 
-            dbg("    cornerIdx=" + Arrays.toString(cornerIdx));
-
-            int baseVertIndex = vertList.size() / 3;
-            int baseUvIndex = uvList.size() / 2;
-
-            // add 4 vertices + 4 uvs
-            for (int i = 0; i < 4; i++) {
-                float[] p = cube[cornerIdx[i]];
-                vertList.add(p[0]);
-                vertList.add(p[1]);
-                vertList.add(p[2]);
+            float[] cube = this.cube;
+            cube[0] = fx;  cube[1] = fy;  cube[2] = fz;
+            cube[3] = tx;  cube[4] = fy;  cube[5] = fz;
+            cube[6] = tx;  cube[7] = ty;  cube[8] = fz;
+            cube[9] = fx;  cube[10] = ty; cube[11] = fz;
+            cube[12] = fx; cube[13] = fy; cube[14] = tz;
+            cube[15] = tx; cube[16] = fy; cube[17] = tz;
+            cube[18] = tx; cube[19] = ty; cube[20] = tz;
+            cube[21] = fx; cube[22] = ty; cube[23] = tz;
+
+            if (trace) log.print("  cube corners BEFORE transform: " + Arrays.toString(cube));
+
+            // bone world matrix, then this element's own rotation around its origin
+            Matrix4f transform = this.transform.set(bone);
+            transform.translate(ox, oy, oz);
+            transform.rotateXYZ((float) Math.toRadians(rotX), (float) Math.toRadians(rotY), (float) Math.toRadians(rotZ));
+            transform.translate(-ox, -oy, -oz);
+
+            // Apply matrix to all cube corners
+            Vector3f v = this.v;
+            for (int i = 0; i < 24; i += 3) {
+                transform.transformPosition(v.set(cube[i], cube[i + 1], cube[i + 2]));
+                cube[i] = v.x;
+                cube[i + 1] = v.y;
+                cube[i + 2] = v.z;
+            }
 
-                float[] uv = quadUV[i];
-                uvList.add(uv[0]);
-                uvList.add(uv[1]);
+            if (trace) log.print("  cube corners AFTER transform (matrix baked): " + Arrays.toString(cube));
 
-                dbg("      add vert[" + (baseVertIndex + i) + "] pos=(" +
-                        p[0] + "," + p[1] + "," + p[2] + ") uv=(" + uv[0] + "," + uv[1] + ")");
+            // faces with UVs
+            if (!elements.hasFaces(e)) {
+                if (trace) log.print("  no 'faces' object, using whole cube without UVs");
+                addWholeCubeWithoutUV(cube, geometry);
+                faces += 6;
+                return;
             }
 
-            // triangles 0-1-2 / 2-3-0
-            int[] triVerts = {
-                    baseVertIndex, baseVertIndex + 1, baseVertIndex + 2,
-                    baseVertIndex + 2, baseVertIndex + 3, baseVertIndex
-            };
-            int[] triUvs = {
-                    baseUvIndex, baseUvIndex + 1, baseUvIndex + 2,
-                    baseUvIndex + 2, baseUvIndex + 3, baseUvIndex
-            };
-
-            for (int i = 0; i < triVerts.length; i++) {
-                indexList.add(triVerts[i]);
-                uvIndexList.add(triUvs[i]);
-                dbg("      faceIndex add p=" + triVerts[i] + " t=" + triUvs[i]);
+            float[] uvs = elements.uvs();
+            int count = elements.faceCount(e);
+            for (int k = 0; k < count; k++) {
+                int dir = elements.faceDir(e, k);
+                int u = elements.uvOffset(e, k);
+
+                float u1 = uvs[u] / texWidth;
+                float v1 = uvs[u + 1] / texHeight;
+                float u2 = uvs[u + 2] / texWidth;
+                float v2 = uvs[u + 3] / texHeight;
+
+                // 4 vertices + 4 uvs, triangles 0-1-2 / 2-3-0
+                int[] c = FACE_CORNERS[dir];
+                if (trace) {
+                    log.print("  face '" + BbElementTable.DIRECTIONS[dir] + "' cornerIdx=" + Arrays.toString(c)
+                            + " uvPixels=" + Arrays.toString(Arrays.copyOfRange(uvs, u, u + 4))
+                            + " uvNorm=(" + u1 + "," + v1 + ")-(" + u2 + "," + v2 + ")"
+                            + " firstVert=" + geometry.vertexCount());
+                }
+                geometry.appendQuad(cube, c[0], c[1], c[2], c[3], u1, v1, u2, v2);
             }
+            faces += count;
         }
     }
 
-    private void addWholeCubeWithoutUV(float[][] cube,
-                                       List<Float> vertList,
-                                       List<Integer> indexList) {
-        int baseIndex = vertList.size() / 3;
-        for (float[] p : cube) {
-            vertList.add(p[0]);
-            vertList.add(p[1]);
-            vertList.add(p[2]);
-        }
-        int[] faces = {
-                0,1,2,  2,3,0,  // back
-                4,5,6,  6,7,4,  // front
-                0,4,7,  7,3,0,  // left
-                1,5,6,  6,2,1,  // right
-                3,2,6,  6,7,3,  // top
-                0,1,5,  5,4,0   // bottom
-        };
-        for (int f : faces) {
-            indexList.add(baseIndex + f);
-        }
+    // cube corners of each face, by BbElementTable direction code
+    private static final int[][] FACE_CORNERS = {
+            {0, 1, 2, 3}, // north -Z
+            {5, 4, 7, 6}, // south +Z
+            {4, 0, 3, 7}, // west  -X
+            {1, 5, 6, 2}, // east  +X
+            {3, 2, 6, 7}, // up    +Y
+            {4, 5, 1, 0}  // down  -Y
+    };
+
+    private static final int[] WHOLE_CUBE = {
+            0,1,2,  2,3,0,  // back
+            4,5,6,  6,7,4,  // front
+            0,4,7,  7,3,0,  // left
+            1,5,6,  6,2,1,  // right
+            3,2,6,  6,7,3,  // top
+            0,1,5,  5,4,0   // bottom
+    };
+
+    private static void addWholeCubeWithoutUV(float[] cube, GeometryBuilder geometry) {
+        int baseIndex = geometry.addVertices(cube, 8);
+        geometry.addIndices(baseIndex, WHOLE_CUBE);
     }
 
     // kept for reference / possible future use
@@ -614,6 +880,11 @@ public class BbModelImporter implements ModelImporter {
         };
     }
 
+    @Override
+    public int getVersion() {
+        return VERSION;
+    }
+
     @Override
     public String getDescription() {
         return "Blockbench Model (*.bbmodel)";
@@ -0,0 +1,83 @@
+package fr.oreostudios.assets;
+
+import java.io.File;
+
+/**
+ * Wraps an importer with a {@link ModelCache}: a source file that was
+ * imported before (same bytes, same texture, same importer version) is
+ * loaded from its .oreomesh entry instead of being parsed and baked again.
+ * Cache failures are logged and fall back to the wrapped importer.
+ */
+public class CachedModelImporter implements ModelImporter {
+
+    private final ModelImporter importer;
+    private final ModelCache cache;
+
+    public CachedModelImporter(ModelImporter importer, ModelCache cache) {
+        this.importer = importer;
+        this.cache = cache;
+    }
+
+    public ModelImporter getImporter() {
+        return importer;
+    }
+
+    public ModelCache getCache() {
+        return cache;
+    }
+
+    @Override
+    public OreoModel importModel(File file) throws Exception {
+        long alloc0 = ImportReport.threadAllocatedBytes();
+        long t0 = System.nanoTime();
+
+        String key = null;
+        try {
+            key = cache.keyOf(file, importer);
+            ImportReport report = new ImportReport(file.getAbsolutePath());
+            OreoModel model = cache.load(key, report);
+            if (model != null) {
+                int vertices = 0, triangles = 0;
+                for (Mesh m : model.getMeshes()) {
+                    vertices += m.getVertices().length / 3;
+                    triangles += m.getIndices().length / 3;
+                }
+                report.setCached(true);
+                report.setParseNanos(System.nanoTime() - t0);
+                report.setVertices(vertices);
+                report.setTriangles(triangles);
+                long alloc1 = ImportReport.threadAllocatedBytes();
+                if (alloc0 >= 0 && alloc1 >= 0) report.setBytesAllocated(alloc1 - alloc0);
+                model.setImportReport(report);
+                return model;
+            }
+        } catch (Exception ex) {
+            System.out.println("[ModelCache] Lookup failed for " + file.getName() + ": " + ex.getMessage());
+        }
+
+        OreoModel model = importer.importModel(file);
+        if (key != null) {
+            try {
+                cache.store(key, model, importer, model.getImportReport());
+            } catch (Exception ex) {
+                System.out.println("[ModelCache] Could not cache " + file.getName() + ": " + ex.getMessage());
+            }
+        }
+        return model;
+    }
+
+    @Override
+    public String getDescription() {
+        return importer.getDescription();
+    }
+
+    @Override
+    public String[] getSupportedExtensions() {
+        return importer.getSupportedExtensions();
+    }
+
+    @Override
+    public int getVersion() {
+        return importer.getVersion();
+    }
+}
@@ -0,0 +1,186 @@
+package fr.oreostudios.assets;
+
+import java.util.Arrays;
+
+/**
+ * Growable float[]/int[] buffers for baking a {@link Mesh}: positions,
+ * UVs, triangle indices and the parallel UV indices, with no boxing.
+ * Arrays grow by half their size, so appends are amortized O(1).
+ *
+ * {@link #toMesh()} hands the arrays over as they are when they are full,
+ * which they are when the builder was sized with the exact quad count, and
+ * only trims them otherwise. The builder is empty again afterwards.
+ */
+public class GeometryBuilder {
+
+    private float[] vertices; // xyz xyz ...
+    private float[] uvs;      // u v u v ...
+    private int[] indices;
+    private int[] uvIndices;
+    private int vertexFloats, uvFloats, indexCount, uvIndexCount;
+
+    public GeometryBuilder() {
+        this(0);
+    }
+
+    /** Sized for {@code quads} UV-mapped quads: 4 vertices, 4 UVs and 6 indices each. */
+    public GeometryBuilder(int quads) {
+        vertices = new float[quads * 12];
+        uvs = new float[quads * 8];
+        indices = new int[quads * 6];
+        uvIndices = new int[quads * 6];
+    }
+
+    public int vertexCount() {
+        return vertexFloats / 3;
+    }
+
+    public int uvCount() {
+        return uvFloats / 2;
+    }
+
+    public int indexCount() {
+        return indexCount;
+    }
+
+    public boolean isEmpty() {
+        return vertexFloats == 0 || indexCount == 0;
+    }
+
+    /** Returns the new vertex's index. */
+    public int addVertex(float x, float y, float z) {
+        if (vertexFloats + 3 > vertices.length) vertices = grow(vertices, vertexFloats + 3);
+        vertices[vertexFloats++] = x;
+        vertices[vertexFloats++] = y;
+        vertices[vertexFloats++] = z;
+        return vertexFloats / 3 - 1;
+    }
+
+    /** Returns the new UV's index. */
+    public int addUv(float u, float v) {
+        if (uvFloats + 2 > uvs.length) uvs = grow(uvs, uvFloats + 2);
+        uvs[uvFloats++] = u;
+        uvs[uvFloats++] = v;
+        return uvFloats / 2 - 1;
+    }
+
+    /** Appends {@code count} points from {@code xyz} (packed xyz) in one copy; returns the first one's index. */
+    public int addVertices(float[] xyz, int count) {
+        int first = vertexCount();
+        int n = count * 3;
+        if (vertexFloats + n > vertices.length) vertices = grow(vertices, vertexFloats + n);
+        System.arraycopy(xyz, 0, vertices, vertexFloats, n);
+        vertexFloats += n;
+        return first;
+    }
+
+    /** Appends position indices {@code base + rel[i]}, with no UV indices. */
+    public void addIndices(int base, int[] rel) {
+        if (indexCount + rel.length > indices.length) indices = grow(indices, indexCount + rel.length);
+        for (int r : rel) indices[indexCount++] = base + r;
+    }
+
+    /**
+     * Appends one textured quad: corners {@code c0..c3} of the packed xyz
+     * array {@code corners}, mapped to the UV rectangle (u1, v1)-(u2, v2)
+     * in the same order (u1v1, u2v1, u2v2, u1v2), as the triangles 0-1-2
+     * and 2-3-0.
+     */
+    public void appendQuad(float[] corners, int c0, int c1, int c2, int c3,
+                           float u1, float v1, float u2, float v2) {
+        if (vertexFloats + 12 > vertices.length) vertices = grow(vertices, vertexFloats + 12);
+        if (uvFloats + 8 > uvs.length) uvs = grow(uvs, uvFloats + 8);
+        if (indexCount + 6 > indices.length) indices = grow(indices, indexCount + 6);
+        if (uvIndexCount + 6 > uvIndices.length) uvIndices = grow(uvIndices, uvIndexCount + 6);
+
+        int p = vertexFloats / 3;
+        int t = uvFloats / 2;
+        putCorner(corners, c0);
+        putCorner(corners, c1);
+        putCorner(corners, c2);
+        putCorner(corners, c3);
+
+        float[] uv = uvs;
+        int o = uvFloats;
+        uv[o] = u1; uv[o + 1] = v1;
+        uv[o + 2] = u2; uv[o + 3] = v1;
+        uv[o + 4] = u2; uv[o + 5] = v2;
+        uv[o + 6] = u1; uv[o + 7] = v2;
+        uvFloats += 8;
+
+        int[] ix = indices;
+        int i = indexCount;
+        ix[i] = p; ix[i + 1] = p + 1; ix[i + 2] = p + 2;
+        ix[i + 3] = p + 2; ix[i + 4] = p + 3; ix[i + 5] = p;
+        indexCount += 6;
+
+        int[] tx = uvIndices;
+        i = uvIndexCount;
+        tx[i] = t; tx[i + 1] = t + 1; tx[i + 2] = t + 2;
+        tx[i + 3] = t + 2; tx[i + 4] = t + 3; tx[i + 5] = t;
+        uvIndexCount += 6;
+    }
+
+    /**
+     * Appends everything in {@code other} after what is already here, with
+     * its indices shifted to match: the same arrays as if its vertices, UVs
+     * and indices had been added to this builder directly.
+     */
+    public void append(GeometryBuilder other) {
+        int vBase = vertexCount();
+        int tBase = uvCount();
+        if (vertexFloats + other.vertexFloats > vertices.length) vertices = grow(vertices, vertexFloats + other.vertexFloats);
+        if (uvFloats + other.uvFloats > uvs.length) uvs = grow(uvs, uvFloats + other.uvFloats);
+        if (indexCount + other.indexCount > indices.length) indices = grow(indices, indexCount + other.indexCount);
+        if (uvIndexCount + other.uvIndexCount > uvIndices.length) uvIndices = grow(uvIndices, uvIndexCount + other.uvIndexCount);
+
+        System.arraycopy(other.vertices, 0, vertices, vertexFloats, other.vertexFloats);
+        vertexFloats += other.vertexFloats;
+        System.arraycopy(other.uvs, 0, uvs, uvFloats, other.uvFloats);
+        uvFloats += other.uvFloats;
+        for (int i = 0; i < other.indexCount; i++) indices[indexCount++] = vBase + other.indices[i];
+        for (int i = 0; i < other.uvIndexCount; i++) uvIndices[uvIndexCount++] = tBase + other.uvIndices[i];
+    }
+
+    private void putCorner(float[] corners, int c) {
+        System.arraycopy(corners, c * 3, vertices, vertexFloats, 3);
+        vertexFloats += 3;
+    }
+
+    /**
+     * Builds the mesh and resets the builder. UVs are kept only if every
+     * index has a UV index, as the {@link Mesh} contract requires.
+     */
+    public Mesh toMesh() {
+        float[] v = fit(vertices, vertexFloats);
+        int[] ix = fit(indices, indexCount);
+        float[] t = null;
+        int[] tx = null;
+        if (uvFloats > 0 && uvIndexCount == indexCount) {
+            t = fit(uvs, uvFloats);
+            tx = fit(uvIndices, uvIndexCount);
+        }
+        vertices = new float[0];
+        uvs = new float[0];
+        indices = new int[0];
+        uvIndices = new int[0];
+        vertexFloats = uvFloats = indexCount = uvIndexCount = 0;
+        return new Mesh(v, ix, t, tx);
+    }
+
+    private static float[] grow(float[] a, int min) {
+        return Arrays.copyOf(a, Math.max(min, a.length + (a.length >> 1) + 16));
+    }
+
+    private static int[] grow(int[] a, int min) {
+        return Arrays.copyOf(a, Math.max(min, a.length + (a.length >> 1) + 16));
+    }
+
+    private static float[] fit(float[] a, int n) {
+        return a.length == n ? a : Arrays.copyOf(a, n);
+    }
+
+    private static int[] fit(int[] a, int n) {
+        return a.length == n ? a : Arrays.copyOf(a, n);
+    }
+}
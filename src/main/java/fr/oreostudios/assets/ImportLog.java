@@ -0,0 +1,85 @@
+package fr.oreostudios.assets;
+
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * Leveled log for model importers. Messages are passed as suppliers (or
+ * built behind an {@link #isEnabled} check in hot loops), so nothing is
+ * formatted for a level that is off. Warnings are counted in the
+ * {@link ImportReport} under a code whatever the level; their text is
+ * only built to be printed or kept by the report.
+ *
+ * The level of new imports comes from {@link #setDefaultLevel}, which
+ * starts from the {@code oreo.import.log} system property
+ * (off, warn, info, debug or trace; warn when unset).
+ */
+public final class ImportLog {
+
+    public enum Level { OFF, WARN, INFO, DEBUG, TRACE }
+
+    public static final String PROPERTY = "oreo.import.log";
+
+    private static volatile Level defaultLevel = parse(System.getProperty(PROPERTY), Level.WARN);
+
+    private final String prefix;
+    private final Level level;
+    private final ImportReport report;
+
+    public ImportLog(String tag, Level level, ImportReport report) {
+        this.prefix = "[" + tag + "] ";
+        this.level = level;
+        this.report = report;
+    }
+
+    public static Level getDefaultLevel() {
+        return defaultLevel;
+    }
+
+    public static void setDefaultLevel(Level level) {
+        defaultLevel = level;
+    }
+
+    /** Level by name, case-insensitive; {@code fallback} when null or unknown. */
+    public static Level parse(String name, Level fallback) {
+        if (name == null || name.isBlank()) return fallback;
+        try {
+            return Level.valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            System.out.println("[ImportLog] Unknown level '" + name + "', using " + fallback);
+            return fallback;
+        }
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    public boolean isEnabled(Level l) {
+        return l != Level.OFF && l.ordinal() <= level.ordinal();
+    }
+
+    public void warn(String code, Supplier<String> msg) {
+        boolean print = isEnabled(Level.WARN);
+        String text = print || report.wantsWarningText() ? msg.get() : null;
+        report.addWarning(code, text);
+        if (print) print("WARNING: " + text);
+    }
+
+    public void info(Supplier<String> msg) {
+        if (isEnabled(Level.INFO)) print(msg.get());
+    }
+
+    public void debug(Supplier<String> msg) {
+        if (isEnabled(Level.DEBUG)) print(msg.get());
+    }
+
+    public void trace(Supplier<String> msg) {
+        if (isEnabled(Level.TRACE)) print(msg.get());
+    }
+
+    /** Prints as is; callers check {@link #isEnabled} first. */
+    public void print(String msg) {
+        System.out.println(prefix + msg);
+    }
+}
@@ -0,0 +1,199 @@
+package fr.oreostudios.assets;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * What one model import did: time spent parsing and baking, how much it
+ * produced, bytes allocated on the importing thread, and the warnings it
+ * ran into. Importers fill it in and attach it to the {@link OreoModel}.
+ *
+ * Warnings are counted per code (a short name chosen by the importer,
+ * like {@code face-uv}); only the text of the first ones is kept.
+ */
+public class ImportReport {
+
+    /** Only the first warnings are kept; the rest are counted. */
+    public static final int MAX_WARNINGS = 50;
+
+    private final String source;
+    private long parseNanos;
+    private long bakeNanos;
+    private int elements;
+    private int faces;
+    private int vertices;
+    private int triangles;
+    private long bytesAllocated = -1;
+    private boolean cached;
+    private final List<String> warnings = new ArrayList<>();
+    private final Map<String, int[]> warningCodes = new TreeMap<>();
+    private int warningCount;
+    private final List<String> missingTextures = new ArrayList<>();
+
+    public ImportReport(String source) {
+        this.source = source;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public long getParseNanos() {
+        return parseNanos;
+    }
+
+    public void setParseNanos(long parseNanos) {
+        this.parseNanos = parseNanos;
+    }
+
+    public long getBakeNanos() {
+        return bakeNanos;
+    }
+
+    public void setBakeNanos(long bakeNanos) {
+        this.bakeNanos = bakeNanos;
+    }
+
+    public int getElements() {
+        return elements;
+    }
+
+    public void setElements(int elements) {
+        this.elements = elements;
+    }
+
+    public int getFaces() {
+        return faces;
+    }
+
+    public void setFaces(int faces) {
+        this.faces = faces;
+    }
+
+    public int getVertices() {
+        return vertices;
+    }
+
+    public void setVertices(int vertices) {
+        this.vertices = vertices;
+    }
+
+    public int getTriangles() {
+        return triangles;
+    }
+
+    public void setTriangles(int triangles) {
+        this.triangles = triangles;
+    }
+
+    /** Bytes allocated by the import, or -1 when the JVM can't tell. */
+    public long getBytesAllocated() {
+        return bytesAllocated;
+    }
+
+    public void setBytesAllocated(long bytesAllocated) {
+        this.bytesAllocated = bytesAllocated;
+    }
+
+    /** True when the model came from the {@link ModelCache} instead of being parsed and baked. */
+    public boolean isCached() {
+        return cached;
+    }
+
+    public void setCached(boolean cached) {
+        this.cached = cached;
+    }
+
+    /**
+     * Texture files the importer looked for, in order, and did not find
+     * before settling on one (or on none). The {@link ModelCache} checks
+     * that they are still missing.
+     */
+    public synchronized List<String> getMissingTextures() {
+        return Collections.unmodifiableList(new ArrayList<>(missingTextures));
+    }
+
+    public synchronized void addMissingTexture(String path) {
+        missingTextures.add(path);
+    }
+
+    /** Counts a warning under {@code code}; {@code text} may be null when not {@link #wantsWarningText wanted}. */
+    public synchronized void addWarning(String code, String text) {
+        if (text != null && warnings.size() < MAX_WARNINGS) warnings.add(text);
+        warningCodes.computeIfAbsent(code, c -> new int[1])[0]++;
+        warningCount++;
+    }
+
+    /** False once {@link #MAX_WARNINGS} texts are kept, so callers can skip formatting them. */
+    public synchronized boolean wantsWarningText() {
+        return warnings.size() < MAX_WARNINGS;
+    }
+
+    public synchronized List<String> getWarnings() {
+        return Collections.unmodifiableList(new ArrayList<>(warnings));
+    }
+
+    public synchronized int getWarningCount() {
+        return warningCount;
+    }
+
+    /** Warning count per code, sorted by code. */
+    public synchronized Map<String, Integer> getWarningCounts() {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        warningCodes.forEach((code, n) -> counts.put(code, n[0]));
+        return counts;
+    }
+
+    /**
+     * Bytes allocated so far by the current thread, or -1 if the JVM doesn't
+     * support it. Take the difference of two calls around the work.
+     */
+    public static long threadAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean sun && sun.isThreadAllocatedMemorySupported()
+                && sun.isThreadAllocatedMemoryEnabled()) {
+            return sun.getCurrentThreadAllocatedBytes();
+        }
+        return -1;
+    }
+
+    /** One line, for status bars. */
+    public String summary() {
+        return String.format("%d elements, %d faces, %d triangles in %.1f ms%s%s",
+                elements, faces, triangles, (parseNanos + bakeNanos) / 1e6,
+                cached ? " (cached)" : "",
+                warningCount > 0 ? ", " + warningCount + " warning(s)" : "");
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Import report: ").append(source).append('\n');
+        if (cached) sb.append("  loaded from the model cache\n");
+        sb.append(String.format("  parse:     %.1f ms%n", parseNanos / 1e6));
+        sb.append(String.format("  bake:      %.1f ms%n", bakeNanos / 1e6));
+        sb.append("  elements:  ").append(elements).append('\n');
+        sb.append("  faces:     ").append(faces).append('\n');
+        sb.append("  vertices:  ").append(vertices).append('\n');
+        sb.append("  triangles: ").append(triangles).append('\n');
+        sb.append("  allocated: ").append(bytesAllocated < 0 ? "n/a" : String.format("%.1f MB", bytesAllocated / 1e6)).append('\n');
+        sb.append("  warnings:  ").append(warningCount);
+        if (!warningCodes.isEmpty()) {
+            StringBuilder codes = new StringBuilder();
+            warningCodes.forEach((code, n) -> codes.append(codes.length() == 0 ? "" : ", ").append(code).append(' ').append(n[0]));
+            sb.append(" (").append(codes).append(')');
+        }
+        sb.append('\n');
+        for (String w : warnings) sb.append("    - ").append(w).append('\n');
+        if (warningCount > warnings.size()) {
+            sb.append("    ... ").append(warningCount - warnings.size()).append(" more\n");
+        }
+        return sb.toString();
+    }
+}
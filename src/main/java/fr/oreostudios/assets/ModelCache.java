@@ -0,0 +1,511 @@
+package fr.oreostudios.assets;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Cache of baked models (.oreomesh files), so an unchanged source file is
+ * not parsed and baked again.
+ *
+ * Files are named by a SHA-256 over everything the bake depends on: this
+ * format's version, the importer class and {@link ModelImporter#getVersion},
+ * the source bytes and the bytes of a sibling {@code <name>.png}. Editing
+ * the model or its texture, or bumping an importer's version, gives a new
+ * key, and the old file just ages out. A texture found elsewhere is checked
+ * by size and modification time, recorded when the entry was written, and
+ * so are the texture paths the importer tried first and did not find
+ * ({@link ImportReport#getMissingTextures}): one of them showing up makes
+ * the entry stale. Keys are remembered for the session by file size and
+ * modification time, so opening an unchanged file again does not hash it again.
+ *
+ * Source files are hashed with plain reads, and entries are written from a
+ * reused buffer, so nothing outside the cache is ever mapped. Only the
+ * arrays of an entry that passed its header checks are read through
+ * {@link FileChannel#map}, as bulk copies with no decoding. When the
+ * directory grows past its byte budget, the least recently used entries are
+ * deleted (a hit touches its file). Entries are written to a temporary name
+ * and moved into place, so a crash never leaves half a file under a real
+ * key; temporary files left by a crash count toward the budget and are
+ * deleted once they are a minute old. A file that can't be deleted yet (on
+ * Windows, while a mapping of it is still alive) is skipped until next time.
+ *
+ * Layout, little-endian:
+ * <pre>
+ *   header (52 bytes)
+ *     int   magic 'OMS1'
+ *     short version, short flags
+ *     int   importer version
+ *     int   mesh count
+ *     int   elements, faces (for the import report)
+ *     int   name bytes, texture path bytes (-1 if none)
+ *     long  texture size, texture modification time (ms)
+ *     int   missing texture bytes
+ *   name, texture path, then the missing texture paths separated by '\n'
+ *   (UTF-8), padded to 4 bytes
+ *   per mesh, 16 bytes
+ *     int   vertex floats, index count, uv floats, uv index count (-1 if no UVs)
+ *   per mesh: vertices, indices, uvs, uv indices
+ * </pre>
+ */
+public class ModelCache {
+
+    public static final int MAGIC = 0x31534D4F; // "OMS1" in little-endian
+    public static final short VERSION = 2;
+    public static final String EXTENSION = ".oreomesh";
+
+    /** Default directory, overridden by {@code -Doreo.modelCache=<dir>}. */
+    public static final String DIR_PROPERTY = "oreo.modelCache";
+    /** Default budget in MB, overridden by {@code -Doreo.modelCache.maxMB=<n>}. */
+    public static final String MAX_MB_PROPERTY = "oreo.modelCache.maxMB";
+
+    private static final int HEADER_BYTES = 52;
+    private static final int MESH_BYTES = 16;
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final long STALE_TEMP_MILLIS = 60_000; // older than this, a crash left it behind
+
+    private static volatile ModelCache defaultCache;
+
+    private final Path dir;
+    private final long maxBytes;
+
+    // source path + importer -> key, valid while the stamps still match
+    private final Map<String, Stamped> keys = new ConcurrentHashMap<>();
+
+    // store() encodes through this, one entry at a time
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+
+    private record Stamped(long size, long modified, long pngSize, long pngModified, String key) {
+    }
+
+    public ModelCache(Path dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+    }
+
+    /** Shared cache under {@code ~/.oreo/cache/models}, 256 MB unless configured. */
+    public static ModelCache getDefault() {
+        ModelCache c = defaultCache;
+        if (c == null) {
+            synchronized (ModelCache.class) {
+                c = defaultCache;
+                if (c == null) {
+                    String d = System.getProperty(DIR_PROPERTY);
+                    Path path = d != null ? Paths.get(d)
+                            : Paths.get(System.getProperty("user.home"), ".oreo", "cache", "models");
+                    long mb = Long.getLong(MAX_MB_PROPERTY, 256);
+                    c = defaultCache = new ModelCache(path, mb << 20);
+                }
+            }
+        }
+        return c;
+    }
+
+    public Path getDirectory() {
+        return dir;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    // ------------------------------------------------------------------------
+    //  Keys
+    // ------------------------------------------------------------------------
+
+    /** Cache key of {@code source} as baked by {@code importer}: 64 hex digits. */
+    public String keyOf(File source, ModelImporter importer) throws IOException {
+        File png = siblingPng(source);
+        String id = source.getAbsolutePath() + '\n' + importer.getClass().getName() + ' ' + importer.getVersion();
+        long size = source.length(), modified = source.lastModified();
+        long pngSize = png.length(), pngModified = png.lastModified(); // 0 when missing
+        Stamped s = keys.get(id);
+        if (s != null && s.size == size && s.modified == modified && s.pngSize == pngSize && s.pngModified == pngModified) {
+            return s.key;
+        }
+        String key = hash(source, png, importer);
+        keys.put(id, new Stamped(size, modified, pngSize, pngModified, key));
+        return key;
+    }
+
+    private static File siblingPng(File source) {
+        String base = source.getName();
+        int dot = base.lastIndexOf('.');
+        if (dot > 0) base = base.substring(0, dot);
+        return new File(source.getParentFile(), base + ".png");
+    }
+
+    private static String hash(File source, File siblingPng, ModelImporter importer) throws IOException {
+        MessageDigest sha = sha256();
+        sha.update(("oreomesh " + VERSION + '\n'
+                + importer.getClass().getName() + ' ' + importer.getVersion() + '\n')
+                .getBytes(StandardCharsets.UTF_8));
+        ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+        digestFile(sha, source.toPath(), buf);
+        if (siblingPng.isFile()) {
+            sha.update((byte) 1);
+            digestFile(sha, siblingPng.toPath(), buf);
+        } else {
+            sha.update((byte) 0);
+        }
+        return HexFormat.of().formatHex(sha.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JVM has SHA-256
+        }
+    }
+
+    /** Length, then contents, read through {@code buf}: the user's file is closed when this returns. */
+    private static void digestFile(MessageDigest sha, Path p, ByteBuffer buf) throws IOException {
+        try (FileChannel ch = FileChannel.open(p, StandardOpenOption.READ)) {
+            long size = ch.size();
+            for (int i = 0; i < 8; i++) sha.update((byte) (size >>> (i * 8)));
+            buf.clear();
+            while (ch.read(buf) >= 0) {
+                buf.flip();
+                sha.update(buf);
+                buf.clear();
+            }
+        }
+    }
+
+    private Path pathOf(String key) {
+        return dir.resolve(key + EXTENSION);
+    }
+
+    // ------------------------------------------------------------------------
+    //  Reading
+    // ------------------------------------------------------------------------
+
+    /**
+     * The model cached under {@code key}, or null if there is none or it is
+     * stale (entries that fail to read are deleted). {@code report}, if not
+     * null, gets the element and face counts stored with the entry.
+     */
+    public OreoModel load(String key, ImportReport report) {
+        Path p = pathOf(key);
+        if (!Files.isRegularFile(p)) return null;
+        try {
+            OreoModel model = read(p, report);
+            if (model != null) Files.setLastModifiedTime(p, FileTime.fromMillis(System.currentTimeMillis()));
+            else delete(p); // stale: caught before anything was mapped
+            return model;
+        } catch (IOException | RuntimeException ex) {
+            System.out.println("[ModelCache] Dropping unreadable entry " + p.getFileName() + ": " + ex.getMessage());
+            delete(p);
+            return null;
+        }
+    }
+
+    /** Checks the header with plain reads, and only maps the arrays of an entry that is still valid. */
+    private static OreoModel read(Path p, ImportReport report) throws IOException {
+        try (FileChannel ch = FileChannel.open(p, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size > Integer.MAX_VALUE) throw new IOException(p + " is too large");
+            if (size < HEADER_BYTES) throw new IOException("truncated header");
+            ByteBuffer head = readAt(ch, 0, HEADER_BYTES);
+
+            if (head.getInt() != MAGIC) throw new IOException("bad magic");
+            short version = head.getShort();
+            if (version != VERSION) throw new IOException("unsupported version " + version);
+            head.getShort(); // flags
+            head.getInt();   // importer version, already part of the key
+            int meshCount = head.getInt();
+            int elements = head.getInt();
+            int faces = head.getInt();
+            int nameBytes = head.getInt();
+            int textureBytes = head.getInt();
+            long textureSize = head.getLong();
+            long textureTime = head.getLong();
+            int missingBytes = head.getInt();
+
+            long textBytes = (long) nameBytes + Math.max(0, textureBytes) + missingBytes;
+            if (nameBytes < 0 || missingBytes < 0 || HEADER_BYTES + textBytes > size) throw new IOException("bad string lengths");
+            ByteBuffer text = readAt(ch, HEADER_BYTES, (int) textBytes);
+            String name = getString(text, nameBytes);
+            String texturePath = getString(text, textureBytes);
+            String missing = getString(text, missingBytes);
+
+            // the texture is outside the key: it must still be the one the UVs were baked
+            // against, and none of the paths tried before it may have appeared since
+            if (texturePath != null) {
+                File tex = new File(texturePath);
+                if (!tex.isFile() || tex.length() != textureSize || tex.lastModified() != textureTime) return null;
+            }
+            if (!missing.isEmpty()) {
+                for (String m : missing.split("\n")) {
+                    if (new File(m).exists()) return null;
+                }
+            }
+
+            long body = (HEADER_BYTES + textBytes + 3) & ~3L;
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, body, size - body);
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+
+            int[] counts = new int[meshCount * 4];
+            buf.asIntBuffer().get(counts);
+            buf.position(buf.position() + counts.length * 4);
+
+            OreoModel model = new OreoModel(name);
+            model.setTexturePath(texturePath);
+            for (int m = 0; m < meshCount; m++) {
+                float[] vertices = getFloats(buf, counts[m * 4]);
+                int[] indices = getInts(buf, counts[m * 4 + 1]);
+                float[] uvs = counts[m * 4 + 2] < 0 ? null : getFloats(buf, counts[m * 4 + 2]);
+                int[] uvIndices = counts[m * 4 + 3] < 0 ? null : getInts(buf, counts[m * 4 + 3]);
+                model.addMesh(new Mesh(vertices, indices, uvs, uvIndices));
+            }
+            if (report != null) {
+                report.setElements(elements);
+                report.setFaces(faces);
+            }
+            return model;
+        }
+    }
+
+    private static ByteBuffer readAt(FileChannel ch, long pos, int n) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(n).order(ByteOrder.LITTLE_ENDIAN);
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, pos + buf.position()) < 0) throw new IOException("truncated entry");
+        }
+        buf.flip();
+        return buf;
+    }
+
+    private static String getString(ByteBuffer buf, int n) {
+        if (n < 0) return null;
+        byte[] b = new byte[n];
+        buf.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static float[] getFloats(MappedByteBuffer buf, int n) {
+        float[] a = new float[n];
+        buf.asFloatBuffer().get(a);
+        buf.position(buf.position() + n * 4);
+        return a;
+    }
+
+    private static int[] getInts(MappedByteBuffer buf, int n) {
+        int[] a = new int[n];
+        buf.asIntBuffer().get(a);
+        buf.position(buf.position() + n * 4);
+        return a;
+    }
+
+    // ------------------------------------------------------------------------
+    //  Writing
+    // ------------------------------------------------------------------------
+
+    /** Stores {@code model} under {@code key}, then trims the directory to its budget. */
+    public void store(String key, OreoModel model, ModelImporter importer, ImportReport report) throws IOException {
+        Files.createDirectories(dir);
+        Path p = pathOf(key);
+        Path tmp = p.resolveSibling(p.getFileName() + TEMP_SUFFIX);
+
+        byte[] name = model.getName().getBytes(StandardCharsets.UTF_8);
+        String texturePath = model.getTexturePath();
+        byte[] texture = texturePath == null ? null : texturePath.getBytes(StandardCharsets.UTF_8);
+        File tex = texturePath == null ? null : new File(texturePath);
+        List<String> misses = report != null ? report.getMissingTextures() : List.of();
+        byte[] missing = String.join("\n", misses).getBytes(StandardCharsets.UTF_8);
+
+        List<Mesh> meshes = model.getMeshes();
+        long size = (HEADER_BYTES + name.length + (texture == null ? 0 : texture.length) + missing.length + 3) & ~3L;
+        size += (long) meshes.size() * MESH_BYTES;
+        for (Mesh m : meshes) {
+            size += 4L * (m.getVertices().length + m.getIndices().length);
+            if (hasUvs(m)) size += 4L * (m.getUvs().length + m.getUvIndices().length);
+        }
+        if (size > Integer.MAX_VALUE) throw new IOException("Model too large to cache: " + size + " bytes");
+        if (size > maxBytes) {
+            System.out.println("[ModelCache] Not caching " + model.getName() + ": " + size / 1024 + " KB is over the "
+                    + maxBytes / 1024 + " KB budget");
+            return;
+        }
+
+        synchronized (buffer) {
+            try {
+                try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                    buffer.clear();
+                    buffer.putInt(MAGIC).putShort(VERSION).putShort((short) 0);
+                    buffer.putInt(importer.getVersion());
+                    buffer.putInt(meshes.size());
+                    buffer.putInt(report != null ? report.getElements() : 0);
+                    buffer.putInt(report != null ? report.getFaces() : 0);
+                    buffer.putInt(name.length);
+                    buffer.putInt(texture == null ? -1 : texture.length);
+                    buffer.putLong(tex == null ? 0 : tex.length());
+                    buffer.putLong(tex == null ? 0 : tex.lastModified());
+                    buffer.putInt(missing.length);
+                    long pos = putBytes(ch, 0, name);
+                    if (texture != null) pos = putBytes(ch, pos, texture);
+                    pos = putBytes(ch, pos, missing);
+                    pos = putBytes(ch, pos, new byte[(int) (-(pos + buffer.position()) & 3)]);
+
+                    for (Mesh m : meshes) {
+                        if (buffer.remaining() < MESH_BYTES) pos = flush(ch, pos);
+                        boolean uv = hasUvs(m);
+                        buffer.putInt(m.getVertices().length).putInt(m.getIndices().length);
+                        buffer.putInt(uv ? m.getUvs().length : -1).putInt(uv ? m.getUvIndices().length : -1);
+                    }
+                    for (Mesh m : meshes) {
+                        pos = putFloats(ch, pos, m.getVertices());
+                        pos = putInts(ch, pos, m.getIndices());
+                        if (hasUvs(m)) {
+                            pos = putFloats(ch, pos, m.getUvs());
+                            pos = putInts(ch, pos, m.getUvIndices());
+                        }
+                    }
+                    flush(ch, pos);
+                }
+                Files.move(tmp, p, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException | RuntimeException ex) {
+                delete(tmp);
+                throw ex;
+            }
+        }
+        evict();
+    }
+
+    private static boolean hasUvs(Mesh m) {
+        return m.getUvs() != null && m.getUvIndices() != null;
+    }
+
+    private long putBytes(FileChannel ch, long pos, byte[] a) throws IOException {
+        for (int off = 0; off < a.length; ) {
+            if (!buffer.hasRemaining()) pos = flush(ch, pos);
+            int k = Math.min(buffer.remaining(), a.length - off);
+            buffer.put(a, off, k);
+            off += k;
+        }
+        return pos;
+    }
+
+    private long putFloats(FileChannel ch, long pos, float[] a) throws IOException {
+        for (int off = 0; off < a.length; ) {
+            if (buffer.remaining() < 4) pos = flush(ch, pos);
+            int k = Math.min(buffer.remaining() / 4, a.length - off);
+            buffer.asFloatBuffer().put(a, off, k);
+            buffer.position(buffer.position() + k * 4);
+            off += k;
+        }
+        return pos;
+    }
+
+    private long putInts(FileChannel ch, long pos, int[] a) throws IOException {
+        for (int off = 0; off < a.length; ) {
+            if (buffer.remaining() < 4) pos = flush(ch, pos);
+            int k = Math.min(buffer.remaining() / 4, a.length - off);
+            buffer.asIntBuffer().put(a, off, k);
+            buffer.position(buffer.position() + k * 4);
+            off += k;
+        }
+        return pos;
+    }
+
+    /** Writes out the buffer; returns the new file position. */
+    private long flush(FileChannel ch, long pos) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) pos += ch.write(buffer, pos);
+        buffer.clear();
+        return pos;
+    }
+
+    // ------------------------------------------------------------------------
+    //  Size bound
+    // ------------------------------------------------------------------------
+
+    /** Bytes used by cache entries, temporary files included. */
+    public long sizeBytes() throws IOException {
+        long total = 0;
+        for (Entry e : entries()) total += e.size;
+        return total;
+    }
+
+    /**
+     * Deletes temporary files left by a crash, then least recently used
+     * entries until the directory fits its budget.
+     */
+    public void evict() throws IOException {
+        List<Entry> entries = entries();
+        long now = System.currentTimeMillis();
+        long total = 0;
+        for (Iterator<Entry> it = entries.iterator(); it.hasNext(); ) {
+            Entry e = it.next();
+            if (e.temp && now - e.lastUsed > STALE_TEMP_MILLIS && delete(e.path)) {
+                it.remove();
+                continue;
+            }
+            total += e.size;
+            if (e.temp) it.remove(); // still being written: counts, but is not ours to evict
+        }
+        if (total <= maxBytes) return;
+
+        entries.sort(Comparator.comparingLong(e -> e.lastUsed));
+        for (Entry e : entries) {
+            if (total <= maxBytes) break;
+            if (delete(e.path)) {
+                total -= e.size;
+                System.out.println("[ModelCache] Evicted " + e.path.getFileName() + " (" + e.size / 1024 + " KB)");
+            }
+        }
+    }
+
+    /** Deletes every entry and temporary file (except those that can't go yet). */
+    public void clear() throws IOException {
+        for (Entry e : entries()) delete(e.path);
+    }
+
+    /** Deletes {@code p}; false if it was gone, or can't be deleted yet (still mapped, on Windows). */
+    private static boolean delete(Path p) {
+        try {
+            return Files.deleteIfExists(p);
+        } catch (IOException ex) {
+            System.out.println("[ModelCache] Could not delete " + p.getFileName() + " yet: " + ex.getMessage());
+            return false;
+        }
+    }
+
+    private record Entry(Path path, long size, long lastUsed, boolean temp) {
+    }
+
+    private List<Entry> entries() throws IOException {
+        List<Entry> list = new ArrayList<>();
+        if (!Files.isDirectory(dir)) return list;
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) files::iterator) {
+                String name = p.getFileName().toString();
+                boolean temp = name.endsWith(EXTENSION + TEMP_SUFFIX);
+                if (!temp && !name.endsWith(EXTENSION)) continue;
+                try {
+                    list.add(new Entry(p, Files.size(p), Files.getLastModifiedTime(p).toMillis(), temp));
+                } catch (NoSuchFileException ignored) {
+                    // removed by another import meanwhile
+                }
+            }
+        }
+        return list;
+    }
+}
@@ -0,0 +1,152 @@
+package fr.oreostudios.assets;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+/**
+ * {@link ModelCache} against a full import, on generated Blockbench files
+ * from 1k to 50k cubes (see {@link BbModelBenchmark#writeSample}): time of
+ * a cold import (parse, bake and store), of the first hit in a session
+ * (which hashes the file), of opening it again, and the entry size. Every
+ * hit is compared array by array with the fresh import. Then checks that
+ * editing the source, bumping the importer version or a missing texture
+ * showing up misses, that a temporary file left by a crash is counted and
+ * cleaned up, and that the least recently used entry goes when the budget
+ * is exceeded.
+ *
+ * Run with: java -cp target/classes:... fr.oreostudios.assets.ModelCacheBenchmark
+ */
+public class ModelCacheBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        ImportLog.setDefaultLevel(ImportLog.Level.OFF);
+        Path dir = Files.createTempDirectory("oreomesh");
+        Path cacheDir = dir.resolve("cache");
+        BbModelImporter bb = new BbModelImporter();
+
+        for (int cubes : new int[]{1_000, 10_000, 50_000}) {
+            File file = dir.resolve("m" + cubes + ".bbmodel").toFile();
+            BbModelBenchmark.writeSample(file.toPath(), cubes, 64 * 1024, cubes);
+
+            long importNanos = Long.MAX_VALUE, firstNanos = Long.MAX_VALUE, againNanos = Long.MAX_VALUE;
+            long entryBytes = 0;
+            boolean same = true;
+            for (int round = 0; round < 5; round++) {
+                ModelCache cache = new ModelCache(cacheDir, 1L << 30);
+                cache.clear();
+                long t0 = System.nanoTime();
+                OreoModel fresh = new CachedModelImporter(bb, cache).importModel(file);
+                long t1 = System.nanoTime();
+                entryBytes = cache.sizeBytes();
+
+                // a new session: the key has to be hashed from the file once
+                CachedModelImporter session = new CachedModelImporter(bb, new ModelCache(cacheDir, 1L << 30));
+                long t2 = System.nanoTime();
+                OreoModel first = session.importModel(file);
+                long t3 = System.nanoTime();
+                OreoModel again = session.importModel(file);
+                long t4 = System.nanoTime();
+
+                importNanos = Math.min(importNanos, t1 - t0);
+                firstNanos = Math.min(firstNanos, t3 - t2);
+                againNanos = Math.min(againNanos, t4 - t3);
+                same &= first.getImportReport().isCached() && again.getImportReport().isCached()
+                        && sameMeshes(fresh, first) && sameMeshes(fresh, again);
+            }
+            System.out.printf("%6d cubes (%5.1f MB .bbmodel, %5.1f MB entry): import + store %7.1f ms,"
+                            + " first hit %6.2f ms, reopen %6.2f ms, %s%n",
+                    cubes, file.length() / 1e6, entryBytes / 1e6, importNanos / 1e6, firstNanos / 1e6,
+                    againNanos / 1e6, same ? "identical" : "MESHES DIFFER");
+        }
+
+        // invalidation: edited source, new importer version
+        ModelCache cache = new ModelCache(cacheDir, 1L << 30);
+        File file = dir.resolve("m1000.bbmodel").toFile();
+        CachedModelImporter importer = new CachedModelImporter(bb, cache);
+        importer.importModel(file);
+        boolean hitBefore = importer.importModel(file).getImportReport().isCached();
+        Files.writeString(file.toPath(), " ", StandardOpenOption.APPEND);
+        boolean hitAfterEdit = importer.importModel(file).getImportReport().isCached();
+        CachedModelImporter bumped = new CachedModelImporter(new BbModelImporter() {
+            @Override
+            public int getVersion() {
+                return VERSION + 1;
+            }
+        }, cache);
+        boolean hitAfterBump = bumped.importModel(file).getImportReport().isCached();
+        System.out.printf("hit before edit: %b, after editing the source: %b, after a version bump: %b%n",
+                hitBefore, hitAfterEdit, hitAfterBump);
+
+        // a texture the model points at, missing when the entry was written, shows up
+        File textured = dir.resolve("textured.bbmodel").toFile();
+        Files.writeString(textured.toPath(),
+                Files.readString(file.toPath()).replaceFirst("\\{", "{\"textures\":[{\"path\":\"skin.png\"}],"));
+        importer.importModel(textured);
+        boolean hitWithout = importer.importModel(textured).getImportReport().isCached();
+        ImageIO.write(new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB), "png", dir.resolve("skin.png").toFile());
+        OreoModel withTexture = importer.importModel(textured);
+        boolean hitOnceThere = importer.importModel(textured).getImportReport().isCached();
+
+        // a temporary file from a crash mid-store: counted, then deleted once it is old
+        Path orphan = cacheDir.resolve("0".repeat(64) + ModelCache.EXTENSION + ".tmp");
+        long before = cache.sizeBytes();
+        Files.write(orphan, new byte[64 * 1024]);
+        Files.setLastModifiedTime(orphan, FileTime.fromMillis(System.currentTimeMillis() - 3_600_000));
+        boolean counted = cache.sizeBytes() == before + 64 * 1024;
+        cache.evict();
+        System.out.printf("texture missing when stored: hit %b, after it appeared: %b (then %s, hit %b);"
+                        + " crash leftover counted %b, deleted %b%n",
+                hitWithout, withTexture.getImportReport().isCached(), withTexture.getTexturePath() != null
+                        ? "textured" : "untextured", hitOnceThere, counted, !Files.exists(orphan));
+
+        // eviction: room for the 1k model and one 10k model; the 1k one is used again
+        // before a second 10k model comes in, so the first 10k one is the one to go
+        File small = file, a = dir.resolve("m10000.bbmodel").toFile(), b = dir.resolve("b10000.bbmodel").toFile();
+        BbModelBenchmark.writeSample(b.toPath(), 10_000, 64 * 1024, 99);
+        Path boundedDir = dir.resolve("bounded");
+        ModelCache probe = new ModelCache(boundedDir, 1L << 30);
+        new CachedModelImporter(bb, probe).importModel(small);
+        new CachedModelImporter(bb, probe).importModel(a);
+        long budget = probe.sizeBytes() * 3 / 2;
+        probe.clear();
+
+        ModelCache bounded = new ModelCache(boundedDir, budget);
+        CachedModelImporter lru = new CachedModelImporter(bb, bounded);
+        lru.importModel(small);
+        Thread.sleep(20); // distinct modification times
+        lru.importModel(a);
+        Thread.sleep(20);
+        lru.importModel(small);
+        Thread.sleep(20);
+        lru.importModel(b);
+        System.out.printf("budget %.1f MB, %.1f MB kept; still cached: 1k %b, first 10k %b, second 10k %b%n",
+                budget / 1e6, bounded.sizeBytes() / 1e6,
+                lru.importModel(small).getImportReport().isCached(),
+                Files.exists(boundedDir.resolve(bounded.keyOf(a, bb) + ModelCache.EXTENSION)),
+                lru.importModel(b).getImportReport().isCached());
+
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted((x, y) -> y.getNameCount() - x.getNameCount()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private static boolean sameMeshes(OreoModel a, OreoModel b) {
+        if (a.getMeshes().size() != b.getMeshes().size()) return false;
+        if (!a.getName().equals(b.getName())) return false;
+        for (int i = 0; i < a.getMeshes().size(); i++) {
+            Mesh x = a.getMeshes().get(i), y = b.getMeshes().get(i);
+            if (!Arrays.equals(x.getVertices(), y.getVertices()) || !Arrays.equals(x.getIndices(), y.getIndices())
+                    || !Arrays.equals(x.getUvs(), y.getUvs()) || !Arrays.equals(x.getUvIndices(), y.getUvIndices())) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -9,4 +9,13 @@ public interface ModelImporter {
     String getDescription();
 
     String[] getSupportedExtensions();
+
+    /**
+     * Version of what this importer produces. Bump it whenever the same
+     * source file would import differently, so {@link ModelCache} entries
+     * from the older version are no longer used.
+     */
+    default int getVersion() {
+        return 1;
+    }
 }
@@ -12,6 +12,9 @@ public class OreoModel {
     // Optional texture (absolute path on disk)
     private String texturePath;
 
+    // What the importer measured, if it filled one in
+    private ImportReport importReport;
+
     public OreoModel(String name) {
         this.name = name;
     }
@@ -38,6 +41,14 @@ public class OreoModel {
         this.texturePath = texturePath;
     }
 
+    public ImportReport getImportReport() {
+        return importReport;
+    }
+
+    public void setImportReport(ImportReport importReport) {
+        this.importReport = importReport;
+    }
+
     @Override
     public String toString() {
         return "OreoModel{name='" + name + "', meshCount=" + meshes.size() +
@@ -1,7 +1,11 @@
 package fr.oreostudios.editor.ui;
 
 import fr.oreostudios.assets.BbModelImporter;
+import fr.oreostudios.assets.CachedModelImporter;
 import fr.oreostudios.assets.FbxModelImporter;
+import fr.oreostudios.assets.ImportLog;
+import fr.oreostudios.assets.ImportReport;
+import fr.oreostudios.assets.ModelCache;
 import fr.oreostudios.assets.ModelImporter;
 import fr.oreostudios.assets.OreoModel;
 import javafx.geometry.Insets;
@@ -69,12 +73,35 @@ public class EditorLayout {
         // IMPORT
         Menu importMenu = new Menu("Import");
         MenuItem importBbItem = new MenuItem("Blockbench Model (.bbmodel)");
-        importBbItem.setOnAction(e -> openImportDialog(new BbModelImporter()));
+        // baked models are cached, so reopening an unchanged .bbmodel skips parse + bake
+        importBbItem.setOnAction(e -> openImportDialog(new CachedModelImporter(new BbModelImporter(), ModelCache.getDefault())));
 
         MenuItem importFbxItem = new MenuItem("FBX Model (.fbx)");
         importFbxItem.setOnAction(e -> openImportDialog(new FbxModelImporter()));
 
-        importMenu.getItems().addAll(importBbItem, importFbxItem);
+        // importer log level (warnings only unless asked for more)
+        Menu logLevelMenu = new Menu("Import Log Level");
+        ToggleGroup logLevels = new ToggleGroup();
+        for (ImportLog.Level level : ImportLog.Level.values()) {
+            RadioMenuItem item = new RadioMenuItem(level.name());
+            item.setToggleGroup(logLevels);
+            item.setSelected(level == ImportLog.getDefaultLevel());
+            item.setOnAction(e -> ImportLog.setDefaultLevel(level));
+            logLevelMenu.getItems().add(item);
+        }
+
+        MenuItem clearCacheItem = new MenuItem("Clear Model Cache");
+        clearCacheItem.setOnAction(e -> {
+            try {
+                ModelCache.getDefault().clear();
+                setStatus("Model cache cleared.");
+            } catch (Exception ex) {
+                ex.printStackTrace();
+                setStatus("Failed to clear model cache: " + ex.getMessage());
+            }
+        });
+
+        importMenu.getItems().addAll(importBbItem, importFbxItem, new SeparatorMenuItem(), logLevelMenu, clearCacheItem);
 
         // VIEW (placeholder)
         Menu viewMenu = new Menu("View");
@@ -111,9 +138,11 @@ public class EditorLayout {
 
         try {
             OreoModel model = importer.importModel(file);
-            setStatus("Imported model: " + model.getName() + " (" + importer.getDescription() + ")");
+            ImportReport report = model.getImportReport();
+            setStatus("Imported model: " + model.getName() + " (" + importer.getDescription() + ")"
+                    + (report != null ? " - " + report.summary() : ""));
             updateHierarchyWithModel(model);
-            inspector.setText("Imported model:\n" + model);
+            inspector.setText("Imported model:\n" + model + (report != null ? "\n\n" + report : ""));
 
             // 🔹 THIS was missing: send the model to the viewport
             viewport.showModel(model);
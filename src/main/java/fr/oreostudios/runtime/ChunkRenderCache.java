@@ -0,0 +1,164 @@
+package fr.oreostudios.runtime;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Draws each {@link TileMap} chunk once into an image and blits whole chunks
+ * afterwards, so the per-frame map cost depends on the number of visible
+ * chunks instead of the number of visible tiles.
+ *
+ * Images are re-rasterized only when the chunk version changes, and the
+ * least recently drawn chunks are dropped once the memory budget is exceeded.
+ * Snapshots of the map (see {@link TileMap#snapshot}) keep its chunk
+ * versions, so they can be drawn through the same cache.
+ *
+ * Lit chunks (see {@link LightMap}) are cached the same way, keyed on the
+ * tile chunk version plus {@link LightMap#getChunkVersion}: a chunk whose
+ * tiles and light did not change costs one drawImage.
+ */
+public class ChunkRenderCache {
+
+    private static class Entry {
+        BufferedImage image;
+        int version;
+        int lightVersion;
+        LightMap light; // what the image was shaded with, null: unlit
+        long lastFrame;
+    }
+
+    private final TileMap map;
+    private final long budgetBytes;
+
+    // access-ordered: iteration starts at the least recently used chunk
+    private final LinkedHashMap<Integer, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long usedBytes;
+    private long frame;
+
+    public ChunkRenderCache(TileMap map, long budgetBytes) {
+        this.map = map;
+        this.budgetBytes = budgetBytes;
+    }
+
+    public void render(Graphics g, int camX, int camY, int screenW, int screenH) {
+        render(g, map, camX, camY, screenW, screenH);
+    }
+
+    /** Draws {@code map}, which must be the cached map or a snapshot of it. */
+    public void render(Graphics g, TileMap map, int camX, int camY, int screenW, int screenH) {
+        render(g, map, null, camX, camY, screenW, screenH);
+    }
+
+    /**
+     * Draws {@code map} shaded by {@code light} (see
+     * {@link TileMap#render(Graphics, int, int, int, int, LightMap)}), or
+     * unlit when {@code light} is null.
+     */
+    public void render(Graphics g, TileMap map, LightMap light, int camX, int camY, int screenW, int screenH) {
+        frame++;
+
+        int chunkPx = TileMap.CHUNK_SIZE * map.getTileSize();
+        int startCX = Math.max(0, Math.floorDiv(camX, chunkPx));
+        int startCY = Math.max(0, Math.floorDiv(camY, chunkPx));
+        int endCX = Math.min(map.getChunksX() - 1, Math.floorDiv(camX + screenW - 1, chunkPx));
+        int endCY = Math.min(map.getChunksY() - 1, Math.floorDiv(camY + screenH - 1, chunkPx));
+
+        GraphicsConfiguration gc = g instanceof Graphics2D g2 ? g2.getDeviceConfiguration() : null;
+
+        for (int cy = startCY; cy <= endCY; cy++) {
+            for (int cx = startCX; cx <= endCX; cx++) {
+                BufferedImage img = chunkImage(map, light, cx, cy, chunkPx, gc);
+                g.drawImage(img, cx * chunkPx - camX, cy * chunkPx - camY, null);
+            }
+        }
+
+        evict();
+    }
+
+    /** Drops every cached image; they will be redrawn on demand. */
+    public void invalidateAll() {
+        for (Entry e : entries.values()) e.image.flush();
+        entries.clear();
+        usedBytes = 0;
+    }
+
+    public int getCachedChunkCount() {
+        return entries.size();
+    }
+
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    private BufferedImage chunkImage(TileMap map, LightMap light, int cx, int cy, int chunkPx, GraphicsConfiguration gc) {
+        int key = cy * map.getChunksX() + cx;
+        int version = map.getChunkVersion(cx, cy);
+        int lightVersion = light != null ? light.getChunkVersion(cx, cy) : 0;
+
+        Entry e = entries.get(key);
+        if (e == null) {
+            e = new Entry();
+            e.image = gc != null
+                    ? gc.createCompatibleImage(chunkPx, chunkPx, Transparency.OPAQUE)
+                    : new BufferedImage(chunkPx, chunkPx, BufferedImage.TYPE_INT_RGB);
+            e.version = version - 1; // force the first draw
+            entries.put(key, e);
+            usedBytes += imageBytes(chunkPx);
+        }
+
+        if (e.version != version || e.light != light || e.lightVersion != lightVersion) {
+            rasterize(map, light, e.image, cx, cy);
+            e.version = version;
+            e.light = light;
+            e.lightVersion = lightVersion;
+        }
+        e.lastFrame = frame;
+        return e.image;
+    }
+
+    private void rasterize(TileMap map, LightMap light, BufferedImage img, int cx, int cy) {
+        int tileSize = map.getTileSize();
+        int baseX = cx * TileMap.CHUNK_SIZE;
+        int baseY = cy * TileMap.CHUNK_SIZE;
+
+        Graphics2D g = img.createGraphics();
+        try {
+            g.setColor(Color.BLACK);
+            g.fillRect(0, 0, img.getWidth(), img.getHeight());
+            if (light != null) {
+                map.fillLitChunk(g, light, cx, cy, 0, 0);
+                return;
+            }
+
+            int endX = Math.min(TileMap.CHUNK_SIZE, map.getWidth() - baseX);
+            int endY = Math.min(TileMap.CHUNK_SIZE, map.getHeight() - baseY);
+            g.setColor(TileMap.tileColor(TileMap.FLOOR));
+            g.fillRect(0, 0, endX * tileSize, endY * tileSize);
+            g.setColor(TileMap.tileColor(TileMap.WALL));
+            map.fillWallRects(g, cx, cy, 0, 0);
+        } finally {
+            g.dispose();
+        }
+    }
+
+    private void evict() {
+        if (usedBytes <= budgetBytes) return;
+
+        Iterator<Map.Entry<Integer, Entry>> it = entries.entrySet().iterator();
+        while (usedBytes > budgetBytes && it.hasNext()) {
+            Entry e = it.next().getValue();
+            // never drop something that is on screen right now
+            if (e.lastFrame == frame) break;
+            e.image.flush();
+            usedBytes -= imageBytes(e.image.getWidth());
+            it.remove();
+        }
+    }
+
+    private static long imageBytes(int chunkPx) {
+        return (long) chunkPx * chunkPx * 4;
+    }
+}
@@ -0,0 +1,203 @@
+package fr.oreostudios.runtime;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Keeps the chunks around the camera resident in a {@link TileMap} backed
+ * by a {@link TileMapFile}, so map size is bounded by disk rather than heap.
+ *
+ * A background thread reads and decodes chunks in rings around the camera
+ * chunk (nearest first) and queues them. The game thread only ever does the
+ * cheap part in {@link #applyLoaded()}: installing queued chunks and
+ * unloading the ones now further than {@code keepRadius} chunks away. All
+ * TileMap mutations thus stay on the game thread and a chunk crossing never
+ * waits on I/O.
+ *
+ * Chunks the game modified since they were loaded are kept resident rather
+ * than evicted, since the file is read-only.
+ *
+ * The streamer owns its file: {@link #close()} stops the loader and closes it.
+ */
+public class ChunkStreamer implements Runnable, AutoCloseable {
+
+    private record Loaded(int cx, int cy, TileChunk chunk) {
+    }
+
+    private final TileMapFile file;
+    private final TileMap map;
+    private final int loadRadius;
+    private final int keepRadius;
+
+    private final ConcurrentLinkedQueue<Loaded> loaded = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Integer> evicted = new ConcurrentLinkedQueue<>();
+
+    // camera chunk, packed cy << 32 | cx; written by the game thread
+    private volatile long center = Long.MIN_VALUE;
+    private volatile boolean running;
+    private volatile Thread thread;
+    private boolean closed;
+
+    // game thread only
+    private final List<int[]> resident = new ArrayList<>(); // {cx, cy, versionAtLoad}
+
+    // loader thread only: chunks loaded or queued
+    private final BitSet requested = new BitSet();
+
+    /**
+     * @param loadRadius chunks (Chebyshev distance) prefetched around the camera
+     * @param keepRadius chunks further than this are unloaded; must be > loadRadius
+     */
+    public ChunkStreamer(TileMapFile file, TileMap map, int loadRadius, int keepRadius) {
+        if (keepRadius <= loadRadius) throw new IllegalArgumentException("keepRadius must exceed loadRadius");
+        this.file = file;
+        this.map = map;
+        this.loadRadius = loadRadius;
+        this.keepRadius = keepRadius;
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        thread = new Thread(this, "ChunkStreamer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Stops the loader thread and closes the file; the streamer can't be
+     * restarted. Further calls do nothing.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        stop();
+        file.close();
+    }
+
+    /**
+     * Synchronously loads the area around a world position, for the spawn
+     * point before the first frame. Game thread only, before {@link #start()}.
+     */
+    public void preload(float worldX, float worldY) throws IOException {
+        int ccx = chunkOf(worldX);
+        int ccy = chunkOf(worldY);
+        for (int cy = ccy - loadRadius; cy <= ccy + loadRadius; cy++) {
+            for (int cx = ccx - loadRadius; cx <= ccx + loadRadius; cx++) {
+                if (!inBounds(cx, cy)) continue;
+                requested.set(cy * map.getChunksX() + cx);
+                install(cx, cy, file.readChunk(cx, cy));
+            }
+        }
+        center = pack(ccx, ccy);
+    }
+
+    /** Tells the loader where the camera is (world pixels). Cheap, call every frame. */
+    public void updateCamera(float worldX, float worldY) {
+        long c = pack(chunkOf(worldX), chunkOf(worldY));
+        if (c != center) {
+            center = c;
+            Thread t = thread;
+            if (t != null) LockSupport.unpark(t);
+        }
+    }
+
+    /** Installs chunks the loader finished and evicts far ones. Game thread only. */
+    public void applyLoaded() {
+        Loaded l;
+        while ((l = loaded.poll()) != null) {
+            install(l.cx, l.cy, l.chunk);
+        }
+
+        long c = center;
+        if (c == Long.MIN_VALUE) return;
+        int ccx = (int) c;
+        int ccy = (int) (c >> 32);
+
+        for (int i = resident.size() - 1; i >= 0; i--) {
+            int[] r = resident.get(i);
+            int dist = Math.max(Math.abs(r[0] - ccx), Math.abs(r[1] - ccy));
+            if (dist <= keepRadius) continue;
+            if (map.getChunkVersion(r[0], r[1]) != r[2]) continue; // modified in game: keep
+
+            map.unloadChunk(r[0], r[1]);
+            evicted.add(r[1] * map.getChunksX() + r[0]);
+            resident.set(i, resident.get(resident.size() - 1));
+            resident.remove(resident.size() - 1);
+        }
+    }
+
+    public int getResidentChunkCount() {
+        return resident.size();
+    }
+
+    private void install(int cx, int cy, TileChunk chunk) {
+        map.installChunk(cx, cy, chunk);
+        resident.add(new int[]{cx, cy, map.getChunkVersion(cx, cy)});
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            Integer gone;
+            while ((gone = evicted.poll()) != null) requested.clear(gone);
+
+            long c = center;
+            boolean didWork = c != Long.MIN_VALUE && loadAround((int) c, (int) (c >> 32));
+            if (!didWork) LockSupport.parkNanos(50_000_000L);
+        }
+    }
+
+    /** Loads the nearest missing chunk ring by ring; returns false when all are present. */
+    private boolean loadAround(int ccx, int ccy) {
+        for (int r = 0; r <= loadRadius; r++) {
+            for (int cy = ccy - r; cy <= ccy + r; cy++) {
+                for (int cx = ccx - r; cx <= ccx + r; cx++) {
+                    if (Math.max(Math.abs(cx - ccx), Math.abs(cy - ccy)) != r) continue;
+                    if (!inBounds(cx, cy)) continue;
+
+                    int idx = cy * map.getChunksX() + cx;
+                    if (requested.get(idx)) continue;
+                    requested.set(idx);
+                    try {
+                        loaded.add(new Loaded(cx, cy, file.readChunk(cx, cy)));
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                    // the camera may have moved: re-check from the center
+                    if (center != pack(ccx, ccy)) return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean inBounds(int cx, int cy) {
+        return cx >= 0 && cy >= 0 && cx < map.getChunksX() && cy < map.getChunksY();
+    }
+
+    private int chunkOf(float world) {
+        return Math.floorDiv((int) Math.floor(world), TileMap.CHUNK_SIZE * map.getTileSize());
+    }
+
+    private static long pack(int cx, int cy) {
+        return ((long) cy << 32) | (cx & 0xFFFFFFFFL);
+    }
+}
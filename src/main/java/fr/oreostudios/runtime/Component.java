@@ -0,0 +1,16 @@
+package fr.oreostudios.runtime;
+
+/**
+ * Data a {@link GameSystem} can declare it reads or writes, so the
+ * {@link SystemScheduler} knows which systems may run at the same time.
+ * Mostly {@link EntityStore} columns, plus shared world structures.
+ */
+public enum Component {
+    POSITION,   // x, y, prevX, prevY
+    VELOCITY,   // vx, vy
+    EXTENT,     // width, height
+    COLOR,
+    FLAGS,
+    TILES,      // the TileMap itself
+    SPATIAL     // the SpatialGrid broadphase
+}
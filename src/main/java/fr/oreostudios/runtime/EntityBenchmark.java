@@ -0,0 +1,130 @@
+package fr.oreostudios.runtime;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures the cost of one movement tick for 100k actors, stored either in
+ * the {@link EntityStore} or as one object per actor (the old Player layout),
+ * then the same tick through the {@link SystemScheduler} in serial and
+ * parallel mode, checking both end in the same state.
+ *
+ * Run with: java -cp target/classes fr.oreostudios.runtime.EntityBenchmark [threads]
+ */
+public class EntityBenchmark {
+
+    private static final int ENTITIES = 100_000;
+    private static final int WARMUP_TICKS = 200;
+    private static final int TICKS = 500;
+    private static final float DT = 1f / 60f;
+
+    public static void main(String[] args) {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        TileMap map = new TileMap(1024, 1024, 32);
+
+        EntityStore store = populate(new EntityStore(ENTITIES));
+        List<Actor> actors = new ArrayList<>(ENTITIES);
+        for (int i = 0; i < ENTITIES; i++) {
+            actors.add(new Actor(store.x[i], store.y[i], store.vx[i], store.vy[i], map));
+        }
+
+        MovementSystem movement = new MovementSystem(map);
+        double soa = measure(() -> movement.update(store, DT));
+        double objects = measure(() -> {
+            for (Actor a : actors) a.update(DT);
+        });
+
+        System.out.printf("struct-of-arrays: %.3f ms per tick per 100k entities%n", soa);
+        System.out.printf("object per actor: %.3f ms per tick per 100k entities%n", objects);
+
+        // ----- scheduler: serial vs fork-join -----
+        EntityStore serialStore = populate(new EntityStore(ENTITIES));
+        EntityStore parallelStore = populate(new EntityStore(ENTITIES));
+
+        SystemScheduler serial = new SystemScheduler();
+        serial.add(movement);
+        serial.setSerial(true);
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        SystemScheduler parallel = new SystemScheduler(pool);
+        parallel.add(movement);
+
+        double serialMs = measure(() -> serial.update(serialStore, DT));
+        double parallelMs = measure(() -> parallel.update(parallelStore, DT));
+        pool.shutdown();
+
+        System.out.printf("scheduler serial:      %.3f ms per tick per 100k entities%n", serialMs);
+        System.out.printf("scheduler %2d threads:  %.3f ms per tick per 100k entities%n", threads, parallelMs);
+        System.out.println("serial and parallel states identical: " + sameState(serialStore, parallelStore));
+    }
+
+    private static EntityStore populate(EntityStore store) {
+        Random rnd = new Random(42);
+        for (int i = 0; i < ENTITIES; i++) {
+            float px = 64 + rnd.nextFloat() * (1020 * 32 - 128);
+            float py = 64 + rnd.nextFloat() * (1020 * 32 - 128);
+            int e = store.create(px, py, 16, 16);
+            int idx = store.indexOf(e);
+            store.vx[idx] = (rnd.nextFloat() - 0.5f) * 200f;
+            store.vy[idx] = (rnd.nextFloat() - 0.5f) * 200f;
+            store.flags[idx] = EntityStore.FLAG_BOUNCE;
+        }
+        return store;
+    }
+
+    private static boolean sameState(EntityStore a, EntityStore b) {
+        if (a.size() != b.size()) return false;
+        for (int i = 0; i < a.size(); i++) {
+            if (Float.floatToRawIntBits(a.x[i]) != Float.floatToRawIntBits(b.x[i])
+                    || Float.floatToRawIntBits(a.y[i]) != Float.floatToRawIntBits(b.y[i])
+                    || Float.floatToRawIntBits(a.vx[i]) != Float.floatToRawIntBits(b.vx[i])
+                    || Float.floatToRawIntBits(a.vy[i]) != Float.floatToRawIntBits(b.vy[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static double measure(Runnable tick) {
+        for (int i = 0; i < WARMUP_TICKS; i++) tick.run();
+        long start = System.nanoTime();
+        for (int i = 0; i < TICKS; i++) tick.run();
+        long elapsed = System.nanoTime() - start;
+        return elapsed / (double) TICKS / 1_000_000.0 * (100_000.0 / ENTITIES);
+    }
+
+    /** Same logic as MovementSystem, shaped like the pre-EntityStore Player. */
+    private static final class Actor {
+        float x, y, prevX, prevY, vx, vy;
+        final float w = 16, h = 16;
+        final TileMap map;
+
+        Actor(float x, float y, float vx, float vy, TileMap map) {
+            this.x = x;
+            this.y = y;
+            this.vx = vx;
+            this.vy = vy;
+            this.map = map;
+        }
+
+        void update(float dt) {
+            prevX = x;
+            prevY = y;
+            float newX = x + vx * dt;
+            if (!collides(newX, y)) x = newX;
+            else vx = -vx;
+            float newY = y + vy * dt;
+            if (!collides(x, newY)) y = newY;
+            else vy = -vy;
+        }
+
+        boolean collides(float left, float top) {
+            return map.isWallAt(left, top)
+                    || map.isWallAt(left + w, top)
+                    || map.isWallAt(left, top + h)
+                    || map.isWallAt(left + w, top + h);
+        }
+    }
+}
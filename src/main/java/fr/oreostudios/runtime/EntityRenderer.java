@@ -0,0 +1,50 @@
+package fr.oreostudios.runtime;
+
+import java.awt.*;
+
+/**
+ * Draws every entity of a store as a filled rectangle, skipping the ones
+ * outside the screen. Works on a Graphics or on a {@link RenderTarget}.
+ */
+public class EntityRenderer {
+
+    public void render(Graphics g, EntityStore store, int camX, int camY,
+                       int screenW, int screenH, float alpha) {
+        int lastColor = -1;
+
+        for (int i = 0, n = store.size(); i < n; i++) {
+            float px = store.prevX[i] + (store.x[i] - store.prevX[i]) * alpha;
+            float py = store.prevY[i] + (store.y[i] - store.prevY[i]) * alpha;
+            int drawX = (int) (px - camX);
+            int drawY = (int) (py - camY);
+            int w = (int) store.width[i];
+            int h = (int) store.height[i];
+
+            if (drawX + w < 0 || drawY + h < 0 || drawX >= screenW || drawY >= screenH) continue;
+
+            int c = store.color[i];
+            if (c != lastColor) {
+                g.setColor(new Color(c));
+                lastColor = c;
+            }
+            g.fillRect(drawX, drawY, w, h);
+        }
+    }
+
+    public void render(RenderTarget r, EntityStore store, int camX, int camY, float alpha) {
+        int screenW = r.getWidth();
+        int screenH = r.getHeight();
+
+        for (int i = 0, n = store.size(); i < n; i++) {
+            float px = store.prevX[i] + (store.x[i] - store.prevX[i]) * alpha;
+            float py = store.prevY[i] + (store.y[i] - store.prevY[i]) * alpha;
+            int drawX = (int) (px - camX);
+            int drawY = (int) (py - camY);
+            int w = (int) store.width[i];
+            int h = (int) store.height[i];
+
+            if (drawX + w < 0 || drawY + h < 0 || drawX >= screenW || drawY >= screenH) continue;
+            r.fillRect(drawX, drawY, w, h, store.color[i]);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package fr.oreostudios.runtime;
+
+import java.util.Arrays;
+
+/**
+ * Struct-of-arrays storage for every moving actor of a map.
+ *
+ * Component data lives in parallel primitive arrays indexed by a dense index
+ * in [0, size). Removing an entity moves the last one into its slot, so the
+ * arrays never have holes and systems can loop over them linearly.
+ *
+ * Because dense indices move around, other code keeps entities by handle:
+ * a slot id plus a generation counter. A handle stops resolving as soon as its
+ * entity is destroyed, even if the slot gets reused later.
+ *
+ * The arrays are public for the systems' inner loops. They are replaced when
+ * the store grows, so never keep a reference to one across a {@link #create}.
+ */
+public class EntityStore {
+
+    /** Handle value that never refers to an entity. */
+    public static final int NULL = 0;
+
+    /** Blocked movement reverses velocity instead of zeroing it. */
+    public static final int FLAG_BOUNCE = 1;
+
+    private static final int INDEX_BITS = 20;
+    private static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+    private static final int GENERATION_MASK = (1 << (32 - INDEX_BITS)) - 1;
+
+    /** Upper bound on live entities, set by the handle layout. */
+    public static final int MAX_ENTITIES = 1 << INDEX_BITS;
+
+    // ----- components, indexed by dense index -----
+    public float[] x, y;           // top-left corner, world pixels
+    public float[] prevX, prevY;   // position before the last movement step
+    public float[] vx, vy;         // pixels per second
+    public float[] width, height;
+    public int[] color;            // 0xRRGGBB
+    public int[] flags;
+
+    // ----- handle bookkeeping -----
+    private int[] denseToSlot;
+    private int[] slotToDense;     // -1 when the slot is free
+    private int[] generation;      // per slot
+    private int[] freeSlots;
+    private int freeCount;
+    private int slotCount;
+
+    private int size;
+
+    public EntityStore() {
+        this(256);
+    }
+
+    public EntityStore(int initialCapacity) {
+        int cap = Math.max(16, initialCapacity);
+        x = new float[cap];
+        y = new float[cap];
+        prevX = new float[cap];
+        prevY = new float[cap];
+        vx = new float[cap];
+        vy = new float[cap];
+        width = new float[cap];
+        height = new float[cap];
+        color = new int[cap];
+        flags = new int[cap];
+
+        denseToSlot = new int[cap];
+        slotToDense = new int[cap];
+        generation = new int[cap];
+        freeSlots = new int[cap];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int create(float px, float py, float w, float h) {
+        if (size == MAX_ENTITIES) {
+            throw new IllegalStateException("EntityStore full (" + MAX_ENTITIES + " entities)");
+        }
+        if (size == x.length) grow(x.length * 2);
+
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            slot = slotCount++;
+            if (slot == slotToDense.length) growSlots(slotToDense.length * 2);
+            generation[slot] = 1;
+        }
+
+        int i = size++;
+        denseToSlot[i] = slot;
+        slotToDense[slot] = i;
+
+        x[i] = px;
+        y[i] = py;
+        prevX[i] = px;
+        prevY[i] = py;
+        vx[i] = 0;
+        vy[i] = 0;
+        width[i] = w;
+        height[i] = h;
+        color[i] = 0xFFFFFF;
+        flags[i] = 0;
+
+        return (generation[slot] << INDEX_BITS) | slot;
+    }
+
+    /** Removes the entity; does nothing if the handle is already stale. */
+    public void destroy(int handle) {
+        int i = indexOf(handle);
+        if (i < 0) return;
+
+        int slot = handle & INDEX_MASK;
+        int last = --size;
+        if (i != last) {
+            int movedSlot = denseToSlot[last];
+            x[i] = x[last];
+            y[i] = y[last];
+            prevX[i] = prevX[last];
+            prevY[i] = prevY[last];
+            vx[i] = vx[last];
+            vy[i] = vy[last];
+            width[i] = width[last];
+            height[i] = height[last];
+            color[i] = color[last];
+            flags[i] = flags[last];
+            denseToSlot[i] = movedSlot;
+            slotToDense[movedSlot] = i;
+        }
+
+        slotToDense[slot] = -1;
+        int gen = (generation[slot] + 1) & GENERATION_MASK;
+        generation[slot] = gen == 0 ? 1 : gen; // 0 is reserved so NULL never resolves
+        if (freeCount == freeSlots.length) freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        freeSlots[freeCount++] = slot;
+    }
+
+    /** Dense index of a live entity, or -1 if the handle is stale. */
+    public int indexOf(int handle) {
+        int slot = handle & INDEX_MASK;
+        if (slot >= slotCount) return -1;
+        if (generation[slot] != handle >>> INDEX_BITS) return -1;
+        return slotToDense[slot];
+    }
+
+    public boolean isAlive(int handle) {
+        return indexOf(handle) >= 0;
+    }
+
+    /** Handle of the entity currently stored at a dense index. */
+    public int handleAt(int index) {
+        int slot = denseToSlot[index];
+        return (generation[slot] << INDEX_BITS) | slot;
+    }
+
+    /**
+     * Makes this store a copy of the component data of {@code src}, for
+     * rendering on another thread. Only the dense arrays and size are
+     * copied, not the handles: the copy is for reading, not for
+     * create/destroy.
+     */
+    public void copyFrom(EntityStore src) {
+        int n = src.size;
+        if (x.length < n) grow(src.x.length);
+        System.arraycopy(src.x, 0, x, 0, n);
+        System.arraycopy(src.y, 0, y, 0, n);
+        System.arraycopy(src.prevX, 0, prevX, 0, n);
+        System.arraycopy(src.prevY, 0, prevY, 0, n);
+        System.arraycopy(src.vx, 0, vx, 0, n);
+        System.arraycopy(src.vy, 0, vy, 0, n);
+        System.arraycopy(src.width, 0, width, 0, n);
+        System.arraycopy(src.height, 0, height, 0, n);
+        System.arraycopy(src.color, 0, color, 0, n);
+        System.arraycopy(src.flags, 0, flags, 0, n);
+        size = n;
+    }
+
+    public void clear() {
+        for (int i = size - 1; i >= 0; i--) destroy(handleAt(i));
+    }
+
+    private void grow(int cap) {
+        cap = Math.min(cap, MAX_ENTITIES);
+        x = Arrays.copyOf(x, cap);
+        y = Arrays.copyOf(y, cap);
+        prevX = Arrays.copyOf(prevX, cap);
+        prevY = Arrays.copyOf(prevY, cap);
+        vx = Arrays.copyOf(vx, cap);
+        vy = Arrays.copyOf(vy, cap);
+        width = Arrays.copyOf(width, cap);
+        height = Arrays.copyOf(height, cap);
+        color = Arrays.copyOf(color, cap);
+        flags = Arrays.copyOf(flags, cap);
+        denseToSlot = Arrays.copyOf(denseToSlot, cap);
+    }
+
+    private void growSlots(int cap) {
+        cap = Math.min(cap, MAX_ENTITIES);
+        slotToDense = Arrays.copyOf(slotToDense, cap);
+        generation = Arrays.copyOf(generation, cap);
+    }
+}
@@ -0,0 +1,146 @@
+package fr.oreostudios.runtime;
+
+import java.util.Arrays;
+
+/**
+ * What can be seen from one tile, by recursive shadowcasting over the
+ * eight octants. Writes the visible/explored bits of a {@link LightMap},
+ * so lighting and sight end up in the same packed bytes.
+ *
+ * {@link #update} does nothing when the origin has not moved and none of
+ * the map chunks in range changed; otherwise it costs about one visit per
+ * tile in the radius, and only the tiles that were visible get cleared.
+ */
+public class FieldOfView {
+
+    // octant transforms: {xx, xy, yx, yy}
+    private static final int[][] OCTANTS = {
+            {1, 0, 0, 1}, {0, 1, 1, 0}, {0, -1, 1, 0}, {-1, 0, 0, 1},
+            {-1, 0, 0, -1}, {0, -1, -1, 0}, {0, 1, -1, 0}, {1, 0, 0, -1}
+    };
+
+    private final LightMap light;
+    private final TileMap map;
+    private final int radius;
+
+    private int originX = Integer.MIN_VALUE, originY;
+    private int[] chunkVersions = new int[0];
+    private int[] visible = new int[256]; // packed x,y of the tiles marked visible
+    private int visibleCount;
+    private long recomputes;
+
+    public FieldOfView(LightMap light, int radius) {
+        this.light = light;
+        this.map = light.getMap();
+        this.radius = radius;
+    }
+
+    public int getRadius() {
+        return radius;
+    }
+
+    public int getVisibleCount() {
+        return visibleCount;
+    }
+
+    public long getRecomputes() {
+        return recomputes;
+    }
+
+    /** Recomputes sight from tile (ox, oy) if anything it depends on changed. */
+    public void update(int ox, int oy) {
+        if (ox == originX && oy == originY && !chunksChanged(ox, oy)) return;
+        originX = ox;
+        originY = oy;
+        rememberChunks(ox, oy);
+        recomputes++;
+
+        for (int i = 0; i < visibleCount; i++) {
+            int x = visible[i] >>> 16, y = visible[i] & 0xFFFF;
+            light.setFlags(x, y, light.getFlags(x, y) & ~LightMap.VISIBLE);
+        }
+        visibleCount = 0;
+
+        if (ox < 0 || oy < 0 || ox >= map.getWidth() || oy >= map.getHeight()) return;
+        mark(ox, oy);
+        for (int[] o : OCTANTS) {
+            castLight(ox, oy, 1, 1.0f, 0.0f, o[0], o[1], o[2], o[3]);
+        }
+    }
+
+    /** Forces the next {@link #update} to recompute. */
+    public void invalidate() {
+        originX = Integer.MIN_VALUE;
+    }
+
+    private void castLight(int ox, int oy, int row, float start, float end, int xx, int xy, int yx, int yy) {
+        if (start < end) return;
+        int r2 = radius * radius;
+        float newStart = 0;
+        for (int j = row; j <= radius; j++) {
+            boolean blocked = false;
+            for (int dx = -j, dy = -j; dx <= 0; dx++) {
+                float lSlope = (dx - 0.5f) / (dy + 0.5f);
+                float rSlope = (dx + 0.5f) / (dy - 0.5f);
+                if (start < rSlope) continue;
+                if (end > lSlope) break;
+
+                int x = ox + dx * xx + dy * xy;
+                int y = oy + dx * yx + dy * yy;
+                boolean inMap = x >= 0 && y >= 0 && x < map.getWidth() && y < map.getHeight();
+                if (inMap && dx * dx + dy * dy <= r2) mark(x, y);
+
+                boolean wall = !inMap || map.isWall(x, y);
+                if (blocked) {
+                    if (wall) {
+                        newStart = rSlope;
+                    } else {
+                        blocked = false;
+                        start = newStart;
+                    }
+                } else if (wall && j < radius) {
+                    blocked = true;
+                    castLight(ox, oy, j + 1, start, lSlope, xx, xy, yx, yy);
+                    newStart = rSlope;
+                }
+            }
+            if (blocked) break;
+        }
+    }
+
+    private void mark(int x, int y) {
+        int f = light.getFlags(x, y);
+        if ((f & LightMap.VISIBLE) != 0) return; // octant edges overlap
+        light.setFlags(x, y, f | LightMap.VISIBLE | LightMap.EXPLORED);
+        if (visibleCount == visible.length) visible = Arrays.copyOf(visible, visibleCount * 2);
+        visible[visibleCount++] = (x << 16) | y;
+    }
+
+    // ---- change detection over the chunks in range ----
+
+    private int minCx(int ox) { return Math.max(0, (ox - radius) >> TileChunk.SHIFT); }
+    private int minCy(int oy) { return Math.max(0, (oy - radius) >> TileChunk.SHIFT); }
+    private int maxCx(int ox) { return Math.min(map.getChunksX() - 1, (ox + radius) >> TileChunk.SHIFT); }
+    private int maxCy(int oy) { return Math.min(map.getChunksY() - 1, (oy + radius) >> TileChunk.SHIFT); }
+
+    private boolean chunksChanged(int ox, int oy) {
+        int k = 0;
+        for (int cy = minCy(oy); cy <= maxCy(oy); cy++) {
+            for (int cx = minCx(ox); cx <= maxCx(ox); cx++) {
+                if (map.getChunkVersion(cx, cy) != chunkVersions[k++]) return true;
+            }
+        }
+        return false;
+    }
+
+    private void rememberChunks(int ox, int oy) {
+        int n = Math.max(0, maxCx(ox) - minCx(ox) + 1) * Math.max(0, maxCy(oy) - minCy(oy) + 1);
+        if (chunkVersions.length < n) chunkVersions = new int[n];
+        int k = 0;
+        for (int cy = minCy(oy); cy <= maxCy(oy); cy++) {
+            for (int cx = minCx(ox); cx <= maxCx(ox); cx++) {
+                chunkVersions[k++] = map.getChunkVersion(cx, cy);
+            }
+        }
+    }
+}
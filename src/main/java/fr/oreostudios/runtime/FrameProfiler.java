@@ -0,0 +1,189 @@
+package fr.oreostudios.runtime;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import java.awt.*;
+import java.util.Arrays;
+
+/**
+ * Low-overhead timing of named scopes (update, render, present...).
+ *
+ * Usage:
+ * <pre>
+ *   long t = profiler.begin();
+ *   ...work...
+ *   profiler.end(SCOPE_ID, t);
+ * </pre>
+ * Each scope keeps its last {@link #WINDOW} durations in a preallocated ring;
+ * p50/p99/max are computed from it on demand. When the profiler is disabled
+ * {@code begin()} returns 0 and {@code end()} returns right away, nothing is
+ * allocated and no clock is read, so calls can stay in production builds.
+ *
+ * While a JFR recording is running, every scope also emits a
+ * {@code fr.oreostudios.Phase} event and every frame a {@code fr.oreostudios.Frame} event.
+ */
+public class FrameProfiler {
+
+    public static final int WINDOW = 512; // power of two
+    private static final int MAX_SCOPES = 32;
+    private static final int STATS_EVERY = 30; // frames between overlay refreshes
+
+    private static final Font OVERLAY_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+    private static final Color OVERLAY_BACKGROUND = new Color(0, 0, 0, 170);
+    private static final String OVERLAY_HEADER = String.format("%-10s %7s %7s %7s", "ms", "p50", "p99", "max");
+
+    @Name("fr.oreostudios.Phase")
+    @Label("Frame Phase")
+    @Category({"OreoGame", "Runtime"})
+    @Description("Duration of one profiled scope of the game loop")
+    @StackTrace(false)
+    static class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+
+        @Label("Duration")
+        @Timespan(Timespan.NANOSECONDS)
+        long nanos;
+    }
+
+    @Name("fr.oreostudios.Frame")
+    @Label("Frame")
+    @Category({"OreoGame", "Runtime"})
+    @Description("One iteration of the game loop")
+    @StackTrace(false)
+    static class FrameEvent extends Event {
+        @Label("Frame")
+        long frame;
+
+        @Label("Duration")
+        @Timespan(Timespan.NANOSECONDS)
+        long nanos;
+    }
+
+    private static final EventType PHASE_TYPE = EventType.getEventType(PhaseEvent.class);
+    private static final EventType FRAME_TYPE = EventType.getEventType(FrameEvent.class);
+
+    private final String[] names = new String[MAX_SCOPES];
+    private final long[][] samples = new long[MAX_SCOPES][];
+    private final int[] counts = new int[MAX_SCOPES];
+    private final long[] cursor = new long[MAX_SCOPES];
+    private int scopeCount;
+
+    // last computed percentiles, in nanos: [scope][p50, p99, max]
+    private final long[][] stats = new long[MAX_SCOPES][3];
+    private final long[] sortScratch = new long[WINDOW];
+    // overlay lines, formatted when the stats change rather than every frame
+    private volatile String[] overlayLines = new String[0];
+
+    private volatile boolean enabled;
+    private long frame;
+
+    public FrameProfiler(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /** Registers a scope and returns its id. Call once at startup, not per frame. */
+    public synchronized int register(String name) {
+        if (scopeCount == MAX_SCOPES) throw new IllegalStateException("Too many profiler scopes");
+        int id = scopeCount;
+        names[id] = name;
+        samples[id] = new long[WINDOW];
+        scopeCount++;
+        return id;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /** Start time for {@link #end}, or 0 when disabled. */
+    public long begin() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public void end(int scope, long beginNanos) {
+        if (beginNanos == 0) return;
+        long d = System.nanoTime() - beginNanos;
+
+        long c = cursor[scope]++;
+        samples[scope][(int) c & (WINDOW - 1)] = d;
+        if (counts[scope] < WINDOW) counts[scope]++;
+
+        if (PHASE_TYPE.isEnabled()) {
+            PhaseEvent e = new PhaseEvent();
+            e.phase = names[scope];
+            e.nanos = d;
+            e.commit();
+        }
+    }
+
+    /**
+     * Closes a frame: records the frame scope like {@link #end} and
+     * refreshes the percentiles every few frames.
+     */
+    public void endFrame(int frameScope, long beginNanos) {
+        if (beginNanos == 0) return;
+        end(frameScope, beginNanos);
+        frame++;
+
+        if (FRAME_TYPE.isEnabled()) {
+            FrameEvent e = new FrameEvent();
+            e.frame = frame;
+            e.nanos = samples[frameScope][(int) (cursor[frameScope] - 1) & (WINDOW - 1)];
+            e.commit();
+        }
+
+        if (frame % STATS_EVERY == 0) computeStats();
+    }
+
+    /** Nanoseconds for p50, p99 and max of a scope, as of the last refresh. */
+    public long[] getStats(int scope) {
+        return stats[scope].clone();
+    }
+
+    private void computeStats() {
+        for (int s = 0; s < scopeCount; s++) {
+            int n = counts[s];
+            if (n == 0) continue;
+            System.arraycopy(samples[s], 0, sortScratch, 0, n);
+            Arrays.sort(sortScratch, 0, n);
+            stats[s][0] = sortScratch[(n - 1) / 2];
+            stats[s][1] = sortScratch[(int) ((n - 1) * 0.99)];
+            stats[s][2] = sortScratch[n - 1];
+        }
+        String[] lines = new String[scopeCount];
+        for (int s = 0; s < scopeCount; s++) {
+            lines[s] = String.format("%-10s %7.2f %7.2f %7.2f", names[s],
+                    stats[s][0] / 1e6, stats[s][1] / 1e6, stats[s][2] / 1e6);
+        }
+        overlayLines = lines;
+    }
+
+    /** Draws a small table of the scopes in the top-left corner. */
+    public void drawOverlay(Graphics g, int x, int y) {
+        if (!enabled) return;
+
+        String[] lines = overlayLines;
+        int lineH = 14;
+        g.setColor(OVERLAY_BACKGROUND);
+        g.fillRect(x, y, 300, lineH * (lines.length + 1) + 6);
+
+        g.setFont(OVERLAY_FONT);
+        g.setColor(Color.WHITE);
+        g.drawString(OVERLAY_HEADER, x + 4, y + lineH);
+        for (int s = 0; s < lines.length; s++) {
+            g.drawString(lines[s], x + 4, y + lineH * (s + 2));
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package fr.oreostudios.runtime;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Decides how long the game loop waits between two rendered frames.
+ *
+ * - {@link #uncapped()}: no wait at all, renders as fast as possible
+ * - {@link #targetFps(int)}: parks for most of the frame, then spins the last
+ *   fraction of a millisecond to hit the deadline precisely
+ * - {@link #powerSaving(int)}: parks only, lower precision but no spinning
+ */
+public abstract class FrameScheduler {
+
+    /**
+     * Called once per frame, after rendering.
+     *
+     * @param frameStartNanos {@link System#nanoTime()} taken when the frame began
+     */
+    public abstract void awaitNextFrame(long frameStartNanos);
+
+    public abstract String getName();
+
+    public static FrameScheduler uncapped() {
+        return new Uncapped();
+    }
+
+    public static FrameScheduler targetFps(int fps) {
+        return new Paced(fps, true);
+    }
+
+    public static FrameScheduler powerSaving(int fps) {
+        return new Paced(fps, false);
+    }
+
+    private static final class Uncapped extends FrameScheduler {
+        @Override
+        public void awaitNextFrame(long frameStartNanos) {
+            // nothing, the loop goes straight to the next frame
+        }
+
+        @Override
+        public String getName() {
+            return "uncapped";
+        }
+    }
+
+    private static final class Paced extends FrameScheduler {
+
+        private static final long MIN_SPIN_NANOS = 100_000;    // 0.1 ms
+        private static final long MAX_SPIN_NANOS = 2_000_000;  // 2 ms
+
+        private final int fps;
+        private final long periodNanos;
+        private final boolean spin;
+
+        private long deadline;
+        // how much parkNanos tends to oversleep, learned while running
+        private long spinNanos = 1_000_000;
+
+        Paced(int fps, boolean spin) {
+            if (fps <= 0) throw new IllegalArgumentException("fps must be > 0: " + fps);
+            this.fps = fps;
+            this.periodNanos = 1_000_000_000L / fps;
+            this.spin = spin;
+        }
+
+        @Override
+        public void awaitNextFrame(long frameStartNanos) {
+            if (deadline == 0) deadline = frameStartNanos;
+            deadline += periodNanos;
+
+            long now = System.nanoTime();
+            if (now - deadline > periodNanos) {
+                // we fell more than a frame behind: re-anchor instead of rushing frames
+                deadline = now;
+                return;
+            }
+
+            long parkUntil = spin ? deadline - spinNanos : deadline;
+            long remaining = parkUntil - now;
+            if (remaining > 0) {
+                LockSupport.parkNanos(remaining);
+                if (spin) learnOversleep(System.nanoTime() - parkUntil);
+            }
+
+            if (spin) {
+                while (System.nanoTime() < deadline) {
+                    Thread.onSpinWait();
+                }
+            }
+        }
+
+        private void learnOversleep(long oversleep) {
+            // grow fast, shrink slowly
+            long target = Math.max(MIN_SPIN_NANOS, Math.min(MAX_SPIN_NANOS, oversleep * 2));
+            spinNanos = target > spinNanos ? target : spinNanos - (spinNanos - target) / 16;
+        }
+
+        @Override
+        public String getName() {
+            return (spin ? "target " : "power-saving ") + fps + " fps";
+        }
+    }
+}
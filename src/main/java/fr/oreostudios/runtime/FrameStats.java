@@ -0,0 +1,61 @@
+package fr.oreostudios.runtime;
+
+/**
+ * Rolling window of frame durations. Jitter is the standard deviation of
+ * the frame time, which is what makes motion look uneven.
+ */
+public class FrameStats {
+
+    private final long[] samples;
+    private int count;
+    private int next;
+
+    public FrameStats(int window) {
+        this.samples = new long[window];
+    }
+
+    public void record(long frameNanos) {
+        samples[next] = frameNanos;
+        next = (next + 1) % samples.length;
+        if (count < samples.length) count++;
+    }
+
+    public int getSampleCount() {
+        return count;
+    }
+
+    public double getMeanMillis() {
+        if (count == 0) return 0;
+        long sum = 0;
+        for (int i = 0; i < count; i++) sum += samples[i];
+        return sum / (double) count / 1_000_000.0;
+    }
+
+    public double getJitterMillis() {
+        if (count < 2) return 0;
+        double mean = getMeanMillis() * 1_000_000.0;
+        double var = 0;
+        for (int i = 0; i < count; i++) {
+            double d = samples[i] - mean;
+            var += d * d;
+        }
+        return Math.sqrt(var / (count - 1)) / 1_000_000.0;
+    }
+
+    public double getMaxMillis() {
+        long max = 0;
+        for (int i = 0; i < count; i++) max = Math.max(max, samples[i]);
+        return max / 1_000_000.0;
+    }
+
+    public double getFps() {
+        double mean = getMeanMillis();
+        return mean > 0 ? 1000.0 / mean : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.0f fps, mean %.2f ms, jitter %.3f ms, max %.2f ms",
+                getFps(), getMeanMillis(), getJitterMillis(), getMaxMillis());
+    }
+}
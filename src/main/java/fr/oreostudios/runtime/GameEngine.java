@@ -1,22 +1,87 @@
 package fr.oreostudios.runtime;
 
+import fr.oreostudios.runtime.net.GameServer;
+
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
 import java.awt.image.BufferStrategy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
 
 public class GameEngine extends Canvas implements Runnable {
 
-    private boolean running = false;
+    // after a stall, run at most this many updates per frame and drop the rest
+    private static final int MAX_SUBSTEPS = 5;
+
+    private volatile boolean running = false;
+    private boolean stopped;
+    private Thread shutdownHook;
     private Thread gameThread;
+    private Thread updateThread; // pipelined mode only
 
     private final int width = 800;
     private final int height = 600;
 
-    private final TileMap map;
-    private final Player player;
+    private final JFrame frame;
+    private final FrameStats frameStats = new FrameStats(240);
+    private FrameScheduler scheduler = FrameScheduler.targetFps(60);
+
+    private final Simulation sim;
+    private final ChunkRenderCache mapCache;
+    private final EntityRenderer entityRenderer = new EntityRenderer();
+    private final Input input = new Input();
+
+    private final FrameProfiler profiler = new FrameProfiler(Boolean.getBoolean("oreo.profile"));
+    private final int profFrame = profiler.register("frame");
+    private final int profUpdate = profiler.register("update");
+    private final int profSnapshot = profiler.register("snapshot");
+    private final int profRender = profiler.register("render");
+    private final int profMap = profiler.register("map");
+    private final int profEntities = profiler.register("entities");
+    private final int profRaster = profiler.register("raster");
+    private final int profPresent = profiler.register("present");
+
+    private final ChunkStreamer streamer; // null unless the map is streamed from disk; closed by stop()
+
+    // null: draw with Graphics calls
+    private SoftwareRenderer software;
+    private TileAtlas atlas;
+    private RenderCommandList commands;
+    private final ParallelRasterizer rasterizer = new ParallelRasterizer();
+
+    // null: update and render take turns on the GameLoop thread
+    private TripleBuffer<RenderSnapshot> snapshots;
+
+    private InputRecorder recorder; // null unless recording
+
+    private SaveGame saveGame; // null unless saving is set up
+    private volatile boolean saveRequested; // F5, served by the thread that steps the simulation
+
+    private LightMap lighting; // null unless lighting is on
+    private FieldOfView fov;
+    private int playerLight;
 
     public GameEngine() {
-        JFrame frame = new JFrame("OreoGame Runtime");
+        this(new TileMap(30, 22, 32), null);
+    }
+
+    /**
+     * @param streamer keeps {@code map} filled around the camera, or null
+     *                 for a fully resident map
+     */
+    public GameEngine(TileMap map, ChunkStreamer streamer) {
+        this(new Simulation(map), streamer);
+    }
+
+    /** Runs an existing simulation, e.g. one from {@link SaveGame#load}. */
+    public GameEngine(Simulation sim, ChunkStreamer streamer) {
+        frame = new JFrame("OreoGame Runtime");
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         frame.setResizable(false);
 
@@ -26,81 +91,465 @@ public class GameEngine extends Canvas implements Runnable {
         frame.setLocationRelativeTo(null);
         frame.setVisible(true);
 
-        this.map = new TileMap(30, 22, 32);
-        this.player = new Player(2 * 32, 2 * 32, 32, 32, map);
+        this.sim = sim;
+        this.streamer = streamer;
+        this.mapCache = new ChunkRenderCache(sim.getMap(), 64L * 1024 * 1024);
 
-        Input input = new Input();
         addKeyListener(input);
+        addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                if (e.getKeyCode() == KeyEvent.VK_F3) profiler.setEnabled(!profiler.isEnabled());
+                if (e.getKeyCode() == KeyEvent.VK_F5 && saveGame != null) saveRequested = true;
+            }
+        });
         setFocusable(true);
         requestFocusInWindow();
-        player.setInput(input);
+        sim.setInput(input);
     }
 
     public synchronized void start() {
         if (running) return;
+        if (lighting != null && (software != null || snapshots != null)) {
+            // only the default mode draws the light, and the pipelined update thread writes the map it reads
+            throw new IllegalStateException("Lighting can't be combined with software or pipelined rendering");
+        }
         running = true;
+        if (shutdownHook == null) {
+            // the window closes with System.exit: stop the loops and finish saves and files first
+            shutdownHook = new Thread(this::stop, "EngineShutdown");
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        }
+        if (streamer != null) streamer.start();
+        if (snapshots != null) {
+            // the renderer always has something to draw, even before the first tick
+            snapshots.back().capture(sim, System.nanoTime());
+            snapshots.publish();
+            updateThread = new Thread(this::updateLoop, "Update");
+            updateThread.start();
+        }
         gameThread = new Thread(this, "GameLoop");
         gameThread.start();
     }
 
+    /**
+     * Stops the loops, then serves a pending F5 and closes the save,
+     * recording and streamed map. Runs at exit too; only the first call
+     * does anything.
+     */
     public synchronized void stop() {
+        if (stopped) return;
+        stopped = true;
         running = false;
         try {
             if (gameThread != null) gameThread.join();
+            if (updateThread != null) updateThread.join();
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
+        // the loops are done, so this thread owns the simulation now
+        if (saveGame != null) serveSaveRequest();
+        if (streamer != null) {
+            try {
+                streamer.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (recorder != null) {
+            try {
+                recorder.close();
+                System.out.printf("[Replay] Recorded %.1f s of input%n", recorder.getRecordedSeconds());
+                recorder = null;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (saveGame != null) saveGame.close();
+    }
+
+    public void setFrameScheduler(FrameScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Switches to the {@link SoftwareRenderer}: the frame is recorded as a
+     * command list, rasterized into an int[] in parallel stripes and
+     * presented with one drawImage. Call before {@link #start()}.
+     */
+    public void setSoftwareRendering(boolean on) {
+        if (on) {
+            software = new SoftwareRenderer(width, height);
+            atlas = TileAtlas.solid(sim.getMap().getTileSize(), 2);
+            commands = new RenderCommandList(width, height);
+        } else {
+            software = null;
+            atlas = null;
+            commands = null;
+        }
+    }
+
+    /**
+     * Runs the simulation on its own "Update" thread, one tick ahead of the
+     * frame being drawn. After each tick the update thread copies what the
+     * renderer needs into a {@link RenderSnapshot} and publishes it through
+     * a {@link TripleBuffer}; the GameLoop thread draws the newest one. The
+     * handoff is one atomic swap per side, so a slow frame never delays a
+     * tick and a slow tick never blocks a frame. Call before {@link #start()}.
+     */
+    public void setPipelined(boolean on) {
+        snapshots = on ? new TripleBuffer<>(RenderSnapshot::new) : null;
+    }
+
+    /**
+     * Records the session's input to {@code path} for {@link ReplayRunner}.
+     * Needs a resident map: a streamed one depends on load timing, which a
+     * replay cannot reproduce. Needs a simulation at tick 0 too (not one from
+     * a save), since a replay rebuilds the world from scratch. Call before
+     * {@link #start()}.
+     */
+    public void setRecording(Path path) throws IOException {
+        if (streamer != null) throw new IllegalStateException("Cannot record on a streamed map");
+        if (sim.getTick() != 0) {
+            throw new IllegalStateException("Cannot record from tick " + sim.getTick() + ": replays start at tick 0");
+        }
+        recorder = new InputRecorder(sim, input, path, 0, 0);
+        sim.setInput(recorder);
+    }
+
+    /**
+     * F5 saves the game to {@code path} in the background: a full save the
+     * first time, then deltas (see {@link SaveGame}).
+     */
+    public void setSaveFile(Path path) {
+        saveGame = new SaveGame(path);
+    }
+
+    /** Called between ticks by the thread that steps the simulation, or by {@link #stop()} after it. */
+    private void serveSaveRequest() {
+        if (!saveRequested) return;
+        saveRequested = false;
+        saveGame.save(sim);
+        System.out.printf("[Save] Tick %d queued, game thread paused %.2f ms%n",
+                sim.getTick(), saveGame.getLastCaptureNanos() / 1e6);
+    }
+
+    /**
+     * Draws the map through a {@link LightMap}: a light and a
+     * {@link FieldOfView} follow the player, and a few fixed lights are
+     * scattered over the floor. Only in the default mode: {@link #start()}
+     * refuses it with software or pipelined rendering. Needs a resident
+     * map: lights are placed once and LightMap only watches chunks it has
+     * seen, so chunks streamed in later would stay dark. Call before
+     * {@link #start()}.
+     */
+    public void setLighting(boolean on) {
+        if (!on) {
+            lighting = null;
+            fov = null;
+            return;
+        }
+        if (streamer != null) throw new IllegalStateException("Cannot light a streamed map");
+        TileMap map = sim.getMap();
+        lighting = new LightMap(map);
+        fov = new FieldOfView(lighting, 12);
+        Random rnd = new Random(19);
+        int lights = Math.max(1, map.getWidth() * map.getHeight() / 150);
+        for (int i = 0; i < lights; i++) {
+            int tx = rnd.nextInt(map.getWidth()), ty = rnd.nextInt(map.getHeight());
+            if (!map.isWall(tx, ty)) lighting.addLight(tx, ty, 6 + rnd.nextInt(6));
+        }
+        playerLight = lighting.addLight(0, 0, 10);
+        updateLighting();
+    }
+
+    /** Follows the player and picks up wall changes; game thread, after the ticks. */
+    private void updateLighting() {
+        EntityStore entities = sim.getEntities();
+        int i = entities.indexOf(sim.getPlayer().getEntity());
+        if (i < 0) return;
+        int ts = sim.getMap().getTileSize();
+        int tx = (int) ((entities.x[i] + entities.width[i] / 2) / ts);
+        int ty = (int) ((entities.y[i] + entities.height[i] / 2) / ts);
+        lighting.update();
+        lighting.moveLight(playerLight, tx, ty);
+        fov.update(tx, ty);
+    }
+
+    public FrameStats getFrameStats() {
+        return frameStats;
+    }
+
+    public FrameProfiler getProfiler() {
+        return profiler;
     }
 
     @Override
     public void run() {
-        final double nsPerUpdate = 1_000_000_000.0 / 60.0;
+        if (snapshots != null) {
+            runPipelined();
+            return;
+        }
+        final long nsPerUpdate = 1_000_000_000L / Simulation.TICKS_PER_SECOND;
         long lastTime = System.nanoTime();
-        double delta = 0;
+        long accumulator = 0;
+        long lastTitleUpdate = lastTime;
 
         while (running) {
-            long now = System.nanoTime();
-            delta += (now - lastTime) / nsPerUpdate;
-            lastTime = now;
+            long frameStart = System.nanoTime();
+            long profFrameStart = profiler.begin();
+            long elapsed = frameStart - lastTime;
+            lastTime = frameStart;
+            frameStats.record(elapsed);
+            accumulator += elapsed;
+
+            if (streamer != null) streamer.applyLoaded();
+
+            long t = profiler.begin();
+            int steps = 0;
+            while (accumulator >= nsPerUpdate && steps < MAX_SUBSTEPS) {
+                sim.step();
+                accumulator -= nsPerUpdate;
+                steps++;
+            }
+            if (accumulator >= nsPerUpdate) {
+                // spiral-of-death guard: forget the time we could not catch up on
+                accumulator %= nsPerUpdate;
+            }
+            if (steps > 0) {
+                if (lighting != null) updateLighting();
+                profiler.end(profUpdate, t);
+            }
+            serveSaveRequest();
+
+            EntityStore entities = sim.getEntities();
+            render(sim.getMap(), entities, entities.indexOf(sim.getPlayer().getEntity()),
+                    accumulator / (float) nsPerUpdate);
+            profiler.endFrame(profFrame, profFrameStart);
+
+            if (frameStart - lastTitleUpdate >= 1_000_000_000L) {
+                lastTitleUpdate = frameStart;
+                updateTitle();
+            }
+
+            scheduler.awaitNextFrame(frameStart);
+        }
+    }
 
-            while (delta >= 1) {
-                update(1f / 60f);
-                delta--;
+    /** GameLoop side of the pipelined mode: only draws snapshots. */
+    private void runPipelined() {
+        final long nsPerUpdate = 1_000_000_000L / Simulation.TICKS_PER_SECOND;
+        long lastTime = System.nanoTime();
+        long lastTitleUpdate = lastTime;
+
+        while (running) {
+            long frameStart = System.nanoTime();
+            long profFrameStart = profiler.begin();
+            frameStats.record(frameStart - lastTime);
+            lastTime = frameStart;
+
+            snapshots.acquire();
+            RenderSnapshot snap = snapshots.front();
+            // the snapshot is the state at its tick; interpolate towards it
+            // by how far we are into the following tick
+            float alpha = Math.min(1f, Math.max(0f, (frameStart - snap.getTickNanos()) / (float) nsPerUpdate));
+            render(snap.getMap(), snap.getEntities(), snap.getPlayerIndex(), alpha);
+            profiler.endFrame(profFrame, profFrameStart);
+
+            if (frameStart - lastTitleUpdate >= 1_000_000_000L) {
+                lastTitleUpdate = frameStart;
+                updateTitle();
             }
 
-            render();
+            scheduler.awaitNextFrame(frameStart);
         }
+    }
+
+    /** Update side of the pipelined mode: fixed ticks, each published as a snapshot. */
+    private void updateLoop() {
+        final long nsPerUpdate = 1_000_000_000L / Simulation.TICKS_PER_SECOND;
+        long nextTick = System.nanoTime() + nsPerUpdate;
+
+        while (running) {
+            long now = System.nanoTime();
+            if (now < nextTick) {
+                LockSupport.parkNanos(nextTick - now);
+                continue;
+            }
+            if (now - nextTick >= MAX_SUBSTEPS * nsPerUpdate) {
+                // same spiral-of-death guard as the single-threaded loop
+                nextTick = now - (now - nextTick) % nsPerUpdate;
+            }
 
-        stop();
+            if (streamer != null) streamer.applyLoaded();
+
+            long t = profiler.begin();
+            sim.step();
+            profiler.end(profUpdate, t);
+
+            t = profiler.begin();
+            snapshots.back().capture(sim, nextTick);
+            snapshots.publish();
+            profiler.end(profSnapshot, t);
+            serveSaveRequest();
+
+            nextTick += nsPerUpdate;
+        }
     }
 
-    private void update(float dt) {
-        player.update(dt);
+    private void updateTitle() {
+        FrameStats lat = input.getLatencyStats();
+        String title = "OreoGame Runtime - " + scheduler.getName() + " - " + frameStats
+                + String.format(" - input latency %.1f ms (max %.1f)", lat.getMeanMillis(), lat.getMaxMillis());
+        SwingUtilities.invokeLater(() -> frame.setTitle(title));
     }
 
-    private void render() {
+    /**
+     * @param map         the live map or a snapshot of it
+     * @param entities    the live store or a snapshot of it
+     * @param playerIndex dense index of the player in {@code entities}, the camera follows it
+     * @param alpha       how far we are between the last update and the next one
+     *                    (0..1), used to interpolate positions
+     */
+    private void render(TileMap map, EntityStore entities, int playerIndex, float alpha) {
         BufferStrategy bs = getBufferStrategy();
         if (bs == null) {
             createBufferStrategy(3);
             return;
         }
 
+        long t = profiler.begin();
         Graphics g = bs.getDrawGraphics();
 
-        g.setColor(Color.BLACK);
-        g.fillRect(0, 0, width, height);
+        float px = 0, py = 0;
+        if (playerIndex >= 0) {
+            px = entities.prevX[playerIndex] + (entities.x[playerIndex] - entities.prevX[playerIndex]) * alpha;
+            py = entities.prevY[playerIndex] + (entities.y[playerIndex] - entities.prevY[playerIndex]) * alpha;
+        }
+        int camX = (int) (px - width / 2f);
+        int camY = (int) (py - height / 2f);
+        if (streamer != null) streamer.updateCamera(camX + width / 2f, camY + height / 2f);
+
+        if (software != null) {
+            long tMap = profiler.begin();
+            commands.reset();
+            commands.clear(0);
+            commands.drawMap(map, atlas, camX, camY);
+            profiler.end(profMap, tMap);
 
-        int camX = (int) (player.getX() - width / 2f);
-        int camY = (int) (player.getY() - height / 2f);
+            long tEntities = profiler.begin();
+            entityRenderer.render(commands, entities, camX, camY, alpha);
+            profiler.end(profEntities, tEntities);
 
-        map.render(g, camX, camY, width, height);
-        player.render(g, camX, camY);
+            long tRaster = profiler.begin();
+            rasterizer.rasterize(commands, software);
+            profiler.end(profRaster, tRaster);
 
+            g.drawImage(software.getImage(), 0, 0, null);
+        } else {
+            g.setColor(Color.BLACK);
+            g.fillRect(0, 0, width, height);
+
+            long tMap = profiler.begin();
+            mapCache.render(g, map, lighting, camX, camY, width, height);
+            profiler.end(profMap, tMap);
+
+            long tEntities = profiler.begin();
+            entityRenderer.render(g, entities, camX, camY, width, height, alpha);
+            profiler.end(profEntities, tEntities);
+        }
+
+        profiler.drawOverlay(g, 8, 8);
         g.dispose();
+        profiler.end(profRender, t);
+
+        long tPresent = profiler.begin();
         bs.show();
+        input.markPresented(System.nanoTime());
+        profiler.end(profPresent, tPresent);
     }
 
-    public static void main(String[] args) {
-        new GameEngine().start();
+    /**
+     * Optional argument picks the frame pacing: {@code --uncapped},
+     * {@code --fps=N} or {@code --powersave[=N]}. Default is 60 fps.
+     * F3 (or {@code -Doreo.profile=true}) toggles the profiler overlay.
+     * {@code --map=file.otm} streams the map from a {@link TileMapFile},
+     * {@code --software} draws through the {@link SoftwareRenderer},
+     * {@code --pipelined} runs updates and rendering on separate threads,
+     * {@code --record=file.orpl} saves the input for {@link ReplayRunner}
+     * (not after loading a save: a replay starts from tick 0),
+     * {@code --save=file.osav} loads that save if it exists and makes F5 save to it
+     * (not with {@code --map}: a save only holds resident chunks).
+     * {@code --lighting} shades the map with lights and the player's field of view
+     * (not with {@code --map}, {@code --software} or {@code --pipelined}).
+     * {@code --server} runs a dedicated {@link GameServer} instead, with its own options.
+     */
+    public static void main(String[] args) throws IOException {
+        for (String arg : args) {
+            if (arg.equals("--server")) {
+                // dedicated server: no window at all
+                GameServer.main(args);
+                return;
+            }
+        }
+        TileMap map = new TileMap(30, 22, 32);
+        ChunkStreamer streamer = null;
+        for (String arg : args) {
+            if (arg.startsWith("--map=")) {
+                TileMapFile file = TileMapFile.open(Path.of(arg.substring(6)));
+                map = file.createUnloadedMap();
+                streamer = new ChunkStreamer(file, map, 2, 3);
+                // same spawn point as Simulation's player
+                streamer.preload(2 * map.getTileSize(), 2 * map.getTileSize());
+            }
+        }
+
+        Path save = null;
+        for (String arg : args) {
+            if (arg.startsWith("--save=")) save = Path.of(arg.substring(7));
+        }
+        if (save != null && streamer != null) {
+            // a streamed map has chunks that aren't resident: a save would store them as holes
+            throw new IllegalArgumentException("--save can't be combined with --map (streamed maps can't be saved yet)");
+        }
+        List<String> flags = List.of(args);
+        if (flags.contains("--lighting") && streamer != null) {
+            // lights are placed on the preloaded chunks only: everything streamed in later would stay dark
+            throw new IllegalArgumentException("--lighting can't be combined with --map (streamed maps can't be lit yet)");
+        }
+        if (flags.contains("--lighting") && (flags.contains("--software") || flags.contains("--pipelined"))) {
+            // checked here too, so we fail before the window opens
+            throw new IllegalArgumentException("--lighting can't be combined with --software or --pipelined");
+        }
+        Simulation sim;
+        if (save != null && Files.exists(save)) {
+            sim = SaveGame.load(save);
+            System.out.println("[Save] Loaded " + save + " at tick " + sim.getTick());
+        } else {
+            sim = new Simulation(map);
+        }
+
+        GameEngine engine = new GameEngine(sim, streamer);
+        if (save != null) engine.setSaveFile(save);
+        for (String arg : args) {
+            if (arg.equals("--uncapped")) {
+                engine.setFrameScheduler(FrameScheduler.uncapped());
+            } else if (arg.startsWith("--fps=")) {
+                engine.setFrameScheduler(FrameScheduler.targetFps(Integer.parseInt(arg.substring(6))));
+            } else if (arg.equals("--powersave")) {
+                engine.setFrameScheduler(FrameScheduler.powerSaving(30));
+            } else if (arg.startsWith("--powersave=")) {
+                engine.setFrameScheduler(FrameScheduler.powerSaving(Integer.parseInt(arg.substring(12))));
+            } else if (arg.equals("--software")) {
+                engine.setSoftwareRendering(true);
+            } else if (arg.equals("--pipelined")) {
+                engine.setPipelined(true);
+            } else if (arg.startsWith("--record=")) {
+                engine.setRecording(Path.of(arg.substring(9)));
+            } else if (arg.equals("--lighting")) {
+                engine.setLighting(true);
+            }
+        }
+        engine.start();
     }
 }
@@ -0,0 +1,27 @@
+package fr.oreostudios.runtime;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * One piece of per-tick game logic working on the {@link EntityStore}.
+ * Systems are run in registration order by the {@link SystemScheduler};
+ * ones whose declared component sets don't conflict may run concurrently.
+ * The sets are read once, when the system is added to the scheduler.
+ *
+ * Systems must not create or destroy entities from inside {@link #update}.
+ */
+public interface GameSystem {
+
+    void update(EntityStore store, float dt);
+
+    /** Components this system reads. Defaults to everything. */
+    default Set<Component> reads() {
+        return EnumSet.allOf(Component.class);
+    }
+
+    /** Components this system writes. Defaults to everything. */
+    default Set<Component> writes() {
+        return EnumSet.allOf(Component.class);
+    }
+}
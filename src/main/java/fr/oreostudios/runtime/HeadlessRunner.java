@@ -0,0 +1,93 @@
+package fr.oreostudios.runtime;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Runs the {@link Simulation} with no window, as fast as possible, from a
+ * scripted input. Prints ticks per second and the final state hash; with
+ * {@code --verify} the run is done twice and the hashes compared.
+ * {@code --record=file.orpl} saves the run for {@link ReplayRunner}.
+ *
+ * Usage: HeadlessRunner [--ticks=N] [--map=SIZE] [--npcs=N] [--seed=S] [--serial] [--verify] [--record=FILE]
+ */
+public class HeadlessRunner {
+
+    public static void main(String[] args) throws IOException {
+        long ticks = 36_000; // ten minutes of game time
+        int mapSize = 256;
+        int npcs = 10_000;
+        long seed = 1;
+        boolean serial = false;
+        boolean verify = false;
+        Path record = null;
+
+        for (String arg : args) {
+            if (arg.startsWith("--ticks=")) ticks = Long.parseLong(arg.substring(8));
+            else if (arg.startsWith("--map=")) mapSize = Integer.parseInt(arg.substring(6));
+            else if (arg.startsWith("--npcs=")) npcs = Integer.parseInt(arg.substring(7));
+            else if (arg.startsWith("--seed=")) seed = Long.parseLong(arg.substring(7));
+            else if (arg.equals("--serial")) serial = true;
+            else if (arg.equals("--verify")) verify = true;
+            else if (arg.startsWith("--record=")) record = Path.of(arg.substring(9));
+            else throw new IllegalArgumentException("Unknown argument: " + arg);
+        }
+
+        long hash = run(ticks, mapSize, npcs, seed, serial, record);
+        if (verify) {
+            long again = run(ticks, mapSize, npcs, seed, serial, null);
+            System.out.println(hash == again
+                    ? "[Headless] verify OK: both runs ended in the same state"
+                    : "[Headless] verify FAILED: " + Long.toHexString(hash) + " != " + Long.toHexString(again));
+            if (hash != again) System.exit(1);
+        }
+    }
+
+    static long run(long ticks, int mapSize, int npcs, long seed, boolean serial, Path record) throws IOException {
+        Simulation sim = new Simulation(new TileMap(mapSize, mapSize, 32));
+        sim.getSystems().setSerial(serial);
+        spawnNpcs(sim, npcs, seed);
+        InputSource input = ScriptedInput.random(seed, 3600, 45);
+        InputRecorder recorder = record != null ? new InputRecorder(sim, input, record, npcs, seed) : null;
+        sim.setInput(recorder != null ? recorder : input);
+
+        long start = System.nanoTime();
+        for (long t = 0; t < ticks; t++) {
+            sim.step();
+        }
+        long elapsed = System.nanoTime() - start;
+        if (recorder != null) recorder.close();
+
+        double seconds = elapsed / 1e9;
+        double tps = ticks / seconds;
+        long hash = sim.stateHash();
+        System.out.printf("[Headless] %d ticks, %d entities, %.2f s -> %.0f ticks/s (%.1fx real time), hash %016x%n",
+                ticks, sim.getEntities().size(), seconds, tps, tps / Simulation.TICKS_PER_SECOND, hash);
+        return hash;
+    }
+
+    /** Bouncing actors at random floor positions, fully determined by the seed. */
+    public static void spawnNpcs(Simulation sim, int count, long seed) {
+        TileMap map = sim.getMap();
+        EntityStore store = sim.getEntities();
+        int ts = map.getTileSize();
+        float size = ts * 0.5f;
+        Random rnd = new Random(seed * 31 + 7);
+
+        for (int n = 0; n < count; n++) {
+            int tx, ty;
+            do {
+                tx = 1 + rnd.nextInt(map.getWidth() - 2);
+                ty = 1 + rnd.nextInt(map.getHeight() - 2);
+            } while (map.isWall(tx, ty));
+
+            int e = store.create(tx * ts, ty * ts, size, size);
+            int i = store.indexOf(e);
+            store.vx[i] = (rnd.nextFloat() - 0.5f) * 240f;
+            store.vy[i] = (rnd.nextFloat() - 0.5f) * 240f;
+            store.color[i] = 0xC04040;
+            store.flags[i] = EntityStore.FLAG_BOUNCE;
+        }
+    }
+}
@@ -2,32 +2,91 @@ package fr.oreostudios.runtime;
 
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class Input extends KeyAdapter {
+/**
+ * Keyboard input. The AWT thread only pushes timestamped events into an
+ * {@link InputEventQueue}; the game thread drains them in {@link #poll} at
+ * the start of each fixed step and rebuilds the key state from them.
+ *
+ * A key pressed and released between two steps still counts as held for
+ * the next step, so short taps are never lost.
+ */
+public class Input extends KeyAdapter implements InputSource {
 
-    private boolean up, down, left, right;
+    private final InputEventQueue queue = new InputEventQueue(256);
+    private final InputEventQueue.Consumer applyEvent = this::apply;
+
+    // game thread only
+    private int held;       // keys down after the last drained event
+    private int tapped;     // keys that went down during the current drain
+    private int stepMask;   // what the current step sees
+
+    // oldest event not shown on screen yet, 0 if none
+    private final AtomicLong pendingEventTime = new AtomicLong();
+    private final FrameStats latency = new FrameStats(120);
 
     @Override
     public void keyPressed(KeyEvent e) {
-        setKey(e.getKeyCode(), true);
+        queue.offer(System.nanoTime(), e.getKeyCode(), true);
     }
 
     @Override
     public void keyReleased(KeyEvent e) {
-        setKey(e.getKeyCode(), false);
+        queue.offer(System.nanoTime(), e.getKeyCode(), false);
+    }
+
+    @Override
+    public void poll(long tick) {
+        tapped = 0;
+        queue.drain(applyEvent);
+        stepMask = held | tapped;
     }
 
-    private void setKey(int keyCode, boolean pressed) {
-        switch (keyCode) {
-            case KeyEvent.VK_W, KeyEvent.VK_UP -> up = pressed;
-            case KeyEvent.VK_S, KeyEvent.VK_DOWN -> down = pressed;
-            case KeyEvent.VK_A, KeyEvent.VK_LEFT -> left = pressed;
-            case KeyEvent.VK_D, KeyEvent.VK_RIGHT -> right = pressed;
+    private void apply(long timeNanos, int keyCode, boolean pressed) {
+        int bit = switch (keyCode) {
+            case KeyEvent.VK_W, KeyEvent.VK_UP -> UP;
+            case KeyEvent.VK_S, KeyEvent.VK_DOWN -> DOWN;
+            case KeyEvent.VK_A, KeyEvent.VK_LEFT -> LEFT;
+            case KeyEvent.VK_D, KeyEvent.VK_RIGHT -> RIGHT;
+            default -> 0;
+        };
+        if (bit == 0) return;
+
+        if (pressed) {
+            held |= bit;
+            tapped |= bit;
+        } else {
+            held &= ~bit;
         }
+        pendingEventTime.compareAndSet(0, timeNanos);
+    }
+
+    /**
+     * Called right after a frame was presented ({@code bs.show()}). Records
+     * the input-to-photon latency of the oldest event that frame reflects.
+     */
+    public void markPresented(long presentNanos) {
+        long eventTime = pendingEventTime.getAndSet(0);
+        if (eventTime != 0) latency.record(presentNanos - eventTime);
+    }
+
+    /** Rolling input-to-photon latency, in the same units as frame stats. */
+    public FrameStats getLatencyStats() {
+        return latency;
+    }
+
+    public long getDroppedEventCount() {
+        return queue.getDroppedCount();
+    }
+
+    @Override
+    public int getMask() {
+        return stepMask;
     }
 
-    public boolean isUp()    { return up; }
-    public boolean isDown()  { return down; }
-    public boolean isLeft()  { return left; }
-    public boolean isRight() { return right; }
+    @Override public boolean isUp()    { return (stepMask & UP) != 0; }
+    @Override public boolean isDown()  { return (stepMask & DOWN) != 0; }
+    @Override public boolean isLeft()  { return (stepMask & LEFT) != 0; }
+    @Override public boolean isRight() { return (stepMask & RIGHT) != 0; }
 }
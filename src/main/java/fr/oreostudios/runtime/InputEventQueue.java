@@ -0,0 +1,66 @@
+package fr.oreostudios.runtime;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single-producer/single-consumer ring buffer of timestamped key events,
+ * handing input from the AWT event thread to the game loop without locks.
+ *
+ * The producer fills a slot and then publishes it by moving {@code tail} with
+ * release semantics; the consumer reads {@code tail} with acquire semantics,
+ * so it always sees fully written slots. When the buffer is full new events
+ * are dropped and counted rather than blocking the AWT thread.
+ */
+public class InputEventQueue {
+
+    /** Receives drained events, oldest first. */
+    public interface Consumer {
+        void accept(long timeNanos, int keyCode, boolean pressed);
+    }
+
+    private final long[] times;
+    private final int[] codes;   // keyCode << 1 | pressed
+    private final int mask;
+
+    private final AtomicLong head = new AtomicLong(); // next slot to read
+    private final AtomicLong tail = new AtomicLong(); // next slot to write
+    private final AtomicLong dropped = new AtomicLong();
+
+    public InputEventQueue(int capacity) {
+        int cap = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.times = new long[cap];
+        this.codes = new int[cap];
+        this.mask = cap - 1;
+    }
+
+    /** Producer side (AWT thread). Returns false if the event was dropped. */
+    public boolean offer(long timeNanos, int keyCode, boolean pressed) {
+        long t = tail.get();
+        if (t - head.getAcquire() == times.length) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        int slot = (int) t & mask;
+        times[slot] = timeNanos;
+        codes[slot] = keyCode << 1 | (pressed ? 1 : 0);
+        tail.setRelease(t + 1);
+        return true;
+    }
+
+    /** Consumer side (game thread). Returns the number of events handed out. */
+    public int drain(Consumer consumer) {
+        long h = head.get();
+        long t = tail.getAcquire();
+        for (long i = h; i < t; i++) {
+            int slot = (int) i & mask;
+            int code = codes[slot];
+            consumer.accept(times[slot], code >>> 1, (code & 1) != 0);
+        }
+        head.setRelease(t);
+        return (int) (t - h);
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+}
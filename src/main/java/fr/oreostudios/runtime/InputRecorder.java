@@ -0,0 +1,170 @@
+package fr.oreostudios.runtime;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Records the per-tick input of a {@link Simulation} into a replay file
+ * (.orpl) that {@link InputReplay} can play back. Wraps the real
+ * {@link InputSource}: install it with {@link Simulation#setInput} right
+ * after the world is set up, before the first step.
+ *
+ * Layout, little-endian:
+ * <pre>
+ *   header (64 bytes)
+ *     int   magic 'ORP1'
+ *     short version, short ticks per second
+ *     int   map width, height (tiles), tileSize (px), map version
+ *     long  map content hash (see {@link TileMap#contentHash()})
+ *     int   npc count, int reserved
+ *     long  npc seed (see {@link HeadlessRunner#spawnNpcs})
+ *     long  start tick
+ *     long  state hash at the start tick
+ *   records, one tag byte each
+ *     0..15 one tick: the tag is the key mask, followed by a varint of
+ *           the microseconds since the previous tick (or since the start)
+ *     0x10  checkpoint: long tick, long state hash before that tick runs
+ *     0x11  end: long tick, long state hash
+ * </pre>
+ * A tick costs 3-4 bytes, about 13 KB per minute of play. A file cut short
+ * (crash, killed process) is still readable up to its last full record.
+ */
+public class InputRecorder implements InputSource, AutoCloseable {
+
+    public static final int MAGIC = 0x3150524F; // "ORP1" in little-endian
+    public static final short VERSION = 1;
+
+    static final int HEADER_BYTES = 64;
+    static final byte TAG_CHECKPOINT = 0x10;
+    static final byte TAG_END = 0x11;
+
+    /** Ticks between two state hash checkpoints. */
+    public static final int CHECKPOINT_EVERY = 60;
+
+    private final Simulation sim;
+    private final InputSource source;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+    private final long startNanos;
+    private long lastNanos;
+    private long written;
+    private int current;
+    private boolean closed;
+
+    /**
+     * @param npcs    NPCs spawned by {@link HeadlessRunner#spawnNpcs}, 0 if none,
+     *                so a replay can rebuild the same world
+     * @param npcSeed seed they were spawned with
+     */
+    public InputRecorder(Simulation sim, InputSource source, Path path, int npcs, long npcSeed) throws IOException {
+        this.sim = sim;
+        this.source = source;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+
+        TileMap map = sim.getMap();
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.putShort((short) Simulation.TICKS_PER_SECOND);
+        buffer.putInt(map.getWidth());
+        buffer.putInt(map.getHeight());
+        buffer.putInt(map.getTileSize());
+        buffer.putInt(map.getVersion());
+        buffer.putLong(map.contentHash());
+        buffer.putInt(npcs);
+        buffer.putInt(0);
+        buffer.putLong(npcSeed);
+        buffer.putLong(sim.getTick());
+        buffer.putLong(sim.stateHash());
+
+        startNanos = lastNanos = System.nanoTime();
+    }
+
+    @Override
+    public synchronized void poll(long tick) {
+        source.poll(tick);
+        current = source.getMask();
+        if (closed) return;
+
+        try {
+            if (buffer.remaining() < 32) flush();
+            if (tick % CHECKPOINT_EVERY == 0) {
+                // poll runs before the systems, so this is the state the tick starts from
+                buffer.put(TAG_CHECKPOINT);
+                buffer.putLong(tick);
+                buffer.putLong(sim.stateHash());
+            }
+            long now = System.nanoTime();
+            buffer.put((byte) current);
+            putVarint((now - lastNanos) / 1000);
+            lastNanos = now;
+        } catch (IOException e) {
+            System.out.println("[Replay] Recording stopped: " + e.getMessage());
+            e.printStackTrace();
+            closeQuietly();
+        }
+    }
+
+    @Override
+    public int getMask() {
+        return current;
+    }
+
+    @Override public boolean isUp()    { return (current & UP) != 0; }
+    @Override public boolean isDown()  { return (current & DOWN) != 0; }
+    @Override public boolean isLeft()  { return (current & LEFT) != 0; }
+    @Override public boolean isRight() { return (current & RIGHT) != 0; }
+
+    /** Seconds of wall-clock time recorded so far. */
+    public synchronized double getRecordedSeconds() {
+        return (lastNanos - startNanos) / 1e9;
+    }
+
+    /**
+     * Writes the end record (final tick and state hash) and closes the file.
+     * Call it from the thread that steps the simulation, or after that
+     * thread has stopped.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) return;
+        try {
+            if (buffer.remaining() < 17) flush();
+            buffer.put(TAG_END);
+            buffer.putLong(sim.getTick());
+            buffer.putLong(sim.stateHash());
+            flush();
+        } finally {
+            closed = true;
+            channel.close();
+        }
+    }
+
+    private void closeQuietly() {
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void putVarint(long v) {
+        while ((v & ~0x7FL) != 0) {
+            buffer.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buffer.put((byte) v);
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, written);
+        }
+        buffer.clear();
+    }
+}
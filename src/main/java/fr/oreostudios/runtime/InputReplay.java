@@ -0,0 +1,213 @@
+package fr.oreostudios.runtime;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Plays back a file written by {@link InputRecorder}. The whole recording
+ * is decoded up front into flat arrays, so playing it adds nothing but an
+ * array read per tick to the loop being measured.
+ *
+ * {@link #createSimulation} rebuilds the world the recording started from.
+ * While it runs, every recorded checkpoint is compared with
+ * {@link Simulation#stateHash()}; {@link #getFirstMismatchTick()} reports
+ * the first tick where the replay went its own way.
+ */
+public class InputReplay implements InputSource {
+
+    private final int ticksPerSecond;
+    private final int mapWidth, mapHeight, tileSize, mapVersion;
+    private final long mapHash;
+    private final int npcs;
+    private final long npcSeed;
+    private final long startTick;
+    private final long startHash;
+
+    // per recorded tick
+    private int[] masks = new int[1024];
+    private long[] micros = new long[1024]; // since the start of the recording
+    private int tickCount;
+
+    private long[] checkpointTicks = new long[64];
+    private long[] checkpointHashes = new long[64];
+    private int checkpointCount;
+
+    private long endTick = -1; // -1 if the file has no end record
+    private long endHash;
+
+    private Simulation sim;
+    private int nextCheckpoint;
+    private long firstMismatch = -1;
+    private int current;
+
+    private InputReplay(ByteBuffer in) throws IOException {
+        if (in.remaining() < InputRecorder.HEADER_BYTES || in.getInt() != InputRecorder.MAGIC) {
+            throw new IOException("Not a replay file (bad magic)");
+        }
+        short version = in.getShort();
+        if (version != InputRecorder.VERSION) throw new IOException("Unsupported replay version " + version);
+        ticksPerSecond = in.getShort();
+        mapWidth = in.getInt();
+        mapHeight = in.getInt();
+        tileSize = in.getInt();
+        mapVersion = in.getInt();
+        mapHash = in.getLong();
+        npcs = in.getInt();
+        in.getInt(); // reserved
+        npcSeed = in.getLong();
+        startTick = in.getLong();
+        startHash = in.getLong();
+
+        long time = 0;
+        try {
+            while (in.hasRemaining()) {
+                int mark = in.position();
+                byte tag = in.get();
+                if (tag < 16 && tag >= 0) {
+                    time += getVarint(in);
+                    if (tickCount == masks.length) {
+                        masks = Arrays.copyOf(masks, tickCount * 2);
+                        micros = Arrays.copyOf(micros, tickCount * 2);
+                    }
+                    masks[tickCount] = tag;
+                    micros[tickCount] = time;
+                    tickCount++;
+                } else if (tag == InputRecorder.TAG_CHECKPOINT) {
+                    long tick = in.getLong();
+                    long hash = in.getLong();
+                    if (checkpointCount == checkpointTicks.length) {
+                        checkpointTicks = Arrays.copyOf(checkpointTicks, checkpointCount * 2);
+                        checkpointHashes = Arrays.copyOf(checkpointHashes, checkpointCount * 2);
+                    }
+                    checkpointTicks[checkpointCount] = tick;
+                    checkpointHashes[checkpointCount] = hash;
+                    checkpointCount++;
+                } else if (tag == InputRecorder.TAG_END) {
+                    endTick = in.getLong();
+                    endHash = in.getLong();
+                    break;
+                } else {
+                    throw new IOException("Corrupt replay file: unknown record " + tag + " at byte " + mark);
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            // cut short: keep what was complete
+            System.out.println("[Replay] File ends mid-record after " + tickCount + " ticks, playing what is there");
+        }
+    }
+
+    public static InputReplay open(Path path) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+        return new InputReplay(in);
+    }
+
+    /**
+     * Builds the simulation the recording started from and attaches this
+     * replay as its input: the recorded map (a fresh generated map when
+     * {@code mapFile} is null, else that file loaded fully), then the
+     * recorded NPCs. Fails if the map or starting state differs from the
+     * recording.
+     */
+    public Simulation createSimulation(Path mapFile) throws IOException {
+        if (ticksPerSecond != Simulation.TICKS_PER_SECOND) {
+            throw new IOException("Recorded at " + ticksPerSecond + " ticks/s, the simulation runs at " + Simulation.TICKS_PER_SECOND);
+        }
+        if (startTick != 0) throw new IOException("Recording starts at tick " + startTick + ", only recordings from tick 0 can be rebuilt");
+
+        TileMap map = mapFile != null ? TileMapFile.load(mapFile) : new TileMap(mapWidth, mapHeight, tileSize);
+        if (map.getWidth() != mapWidth || map.getHeight() != mapHeight || map.getTileSize() != tileSize
+                || map.contentHash() != mapHash) {
+            throw new IOException("Map does not match the recording (recorded " + mapWidth + "x" + mapHeight
+                    + ", version " + mapVersion + ", hash " + Long.toHexString(mapHash) + ")");
+        }
+
+        Simulation s = new Simulation(map);
+        if (npcs > 0) HeadlessRunner.spawnNpcs(s, npcs, npcSeed);
+        if (s.stateHash() != startHash) throw new IOException("Starting state does not match the recording");
+
+        attach(s);
+        return s;
+    }
+
+    /** Plays into an already built simulation and checks its checkpoints. */
+    public void attach(Simulation s) {
+        this.sim = s;
+        nextCheckpoint = 0;
+        firstMismatch = -1;
+        s.setInput(this);
+    }
+
+    @Override
+    public void poll(long tick) {
+        while (nextCheckpoint < checkpointCount && checkpointTicks[nextCheckpoint] <= tick) {
+            if (checkpointTicks[nextCheckpoint] == tick && firstMismatch < 0
+                    && sim.stateHash() != checkpointHashes[nextCheckpoint]) {
+                firstMismatch = tick;
+            }
+            nextCheckpoint++;
+        }
+        long i = tick - startTick;
+        current = i >= 0 && i < tickCount ? masks[(int) i] : 0;
+    }
+
+    @Override
+    public int getMask() {
+        return current;
+    }
+
+    @Override public boolean isUp()    { return (current & UP) != 0; }
+    @Override public boolean isDown()  { return (current & DOWN) != 0; }
+    @Override public boolean isLeft()  { return (current & LEFT) != 0; }
+    @Override public boolean isRight() { return (current & RIGHT) != 0; }
+
+    /** Number of recorded ticks. */
+    public int getTickCount() {
+        return tickCount;
+    }
+
+    /** When tick {@code i} (counted from the start) ran, in microseconds since the start. */
+    public long getTickMicros(int i) {
+        return micros[i];
+    }
+
+    public int getCheckpointCount() {
+        return checkpointCount;
+    }
+
+    /** First checkpoint tick whose state hash differed, -1 if none so far. */
+    public long getFirstMismatchTick() {
+        return firstMismatch;
+    }
+
+    /** Whether the file has an end record, i.e. the recording was closed properly. */
+    public boolean hasEnd() {
+        return endTick >= 0;
+    }
+
+    public long getEndTick() {
+        return endTick;
+    }
+
+    public long getEndHash() {
+        return endHash;
+    }
+
+    public int getNpcCount() {
+        return npcs;
+    }
+
+    private static long getVarint(ByteBuffer in) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            v |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return v;
+        }
+        throw new IOException("Corrupt replay file: varint too long");
+    }
+}
@@ -0,0 +1,27 @@
+package fr.oreostudios.runtime;
+
+/**
+ * Directional input as seen by the simulation. The keyboard ({@link Input})
+ * is one implementation; headless runs use {@link ScriptedInput}.
+ */
+public interface InputSource {
+
+    int UP = 1;
+    int DOWN = 2;
+    int LEFT = 4;
+    int RIGHT = 8;
+
+    /** Called by the {@link Simulation} at the start of every fixed step. */
+    default void poll(long tick) {
+    }
+
+    boolean isUp();
+    boolean isDown();
+    boolean isLeft();
+    boolean isRight();
+
+    /** Current state as a combination of {@link #UP}, {@link #DOWN}, {@link #LEFT}, {@link #RIGHT}. */
+    default int getMask() {
+        return (isUp() ? UP : 0) | (isDown() ? DOWN : 0) | (isLeft() ? LEFT : 0) | (isRight() ? RIGHT : 0);
+    }
+}
@@ -0,0 +1,118 @@
+package fr.oreostudios.runtime;
+
+import java.util.Random;
+
+/**
+ * Cost of incremental {@link LightMap} updates on a 1024x1024 map with
+ * random walls and a few thousand lights: moving lights one tile, toggling
+ * walls next to them, and recomputing a {@link FieldOfView} while walking.
+ * A full rebuild is timed too, as what every change would cost without the
+ * incremental path. After each phase the light levels are compared with a
+ * map rebuilt from scratch.
+ *
+ * Run with: java -cp target/classes fr.oreostudios.runtime.LightBenchmark [lights]
+ */
+public class LightBenchmark {
+
+    private static final int SIZE = 1024;
+    private static final int OPS = 20_000;
+
+    public static void main(String[] args) {
+        int lights = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        Random rnd = new Random(19);
+        TileMap map = new TileMap(SIZE, SIZE, 32);
+        for (int i = 0; i < SIZE * SIZE / 5; i++) map.setTile(rnd.nextInt(SIZE), rnd.nextInt(SIZE), TileMap.WALL);
+
+        LightMap light = new LightMap(map);
+        int[] lx = new int[lights], ly = new int[lights], level = new int[lights];
+        long t0 = System.nanoTime();
+        for (int i = 0; i < lights; i++) {
+            lx[i] = rnd.nextInt(SIZE);
+            ly[i] = rnd.nextInt(SIZE);
+            level[i] = 4 + rnd.nextInt(LightMap.MAX_LEVEL - 3);
+            light.addLight(lx[i], ly[i], level[i]);
+        }
+        long t1 = System.nanoTime();
+        System.out.printf("%dx%d map, %d lights: added in %.1f ms%n", SIZE, SIZE, lights, (t1 - t0) / 1e6);
+
+        // warm up, then time a full rebuild
+        for (int i = 0; i < 5; i++) light.rebuild();
+        t0 = System.nanoTime();
+        for (int i = 0; i < 5; i++) light.rebuild();
+        double rebuildMs = (System.nanoTime() - t0) / 1e6 / 5;
+        System.out.printf("  full rebuild          %9.2f ms%n", rebuildMs);
+
+        // lights moving one tile at a time
+        for (int round = 0; round < 2; round++) {
+            long visited0 = light.getTilesVisited();
+            t0 = System.nanoTime();
+            for (int k = 0; k < OPS; k++) {
+                int i = rnd.nextInt(lights);
+                lx[i] = Math.max(0, Math.min(SIZE - 1, lx[i] + rnd.nextInt(3) - 1));
+                ly[i] = Math.max(0, Math.min(SIZE - 1, ly[i] + rnd.nextInt(3) - 1));
+                light.moveLight(i, lx[i], ly[i]);
+            }
+            long nanos = System.nanoTime() - t0;
+            if (round == 1) {
+                System.out.printf("  move light            %9.2f us, %6.0f tile visits (%.0fx cheaper than a rebuild)%n",
+                        nanos / 1e3 / OPS, (double) (light.getTilesVisited() - visited0) / OPS, rebuildMs * 1e6 / (nanos / OPS));
+            }
+        }
+        check("moves", light, map, lx, ly, level);
+
+        // walls appearing and disappearing next to lights
+        for (int round = 0; round < 2; round++) {
+            long visited0 = light.getTilesVisited();
+            t0 = System.nanoTime();
+            for (int k = 0; k < OPS; k++) {
+                int i = rnd.nextInt(lights);
+                int x = Math.max(0, Math.min(SIZE - 1, lx[i] + rnd.nextInt(7) - 3));
+                int y = Math.max(0, Math.min(SIZE - 1, ly[i] + rnd.nextInt(7) - 3));
+                map.setTile(x, y, map.isWall(x, y) ? TileMap.FLOOR : TileMap.WALL);
+                light.update();
+            }
+            long nanos = System.nanoTime() - t0;
+            if (round == 1) {
+                System.out.printf("  toggle wall + update  %9.2f us, %6.0f tile visits%n",
+                        nanos / 1e3 / OPS, (double) (light.getTilesVisited() - visited0) / OPS);
+            }
+        }
+        check("walls", light, map, lx, ly, level);
+
+        // walking with a field of view
+        FieldOfView fov = new FieldOfView(light, 12);
+        int px = SIZE / 2, py = SIZE / 2;
+        for (int round = 0; round < 2; round++) {
+            long recomputes0 = fov.getRecomputes();
+            long visible = 0;
+            t0 = System.nanoTime();
+            for (int k = 0; k < OPS; k++) {
+                if (k % 4 == 0) {
+                    px = Math.max(1, Math.min(SIZE - 2, px + rnd.nextInt(3) - 1));
+                    py = Math.max(1, Math.min(SIZE - 2, py + rnd.nextInt(3) - 1));
+                }
+                fov.update(px, py);
+                visible += fov.getVisibleCount();
+            }
+            long nanos = System.nanoTime() - t0;
+            long recomputes = fov.getRecomputes() - recomputes0;
+            if (round == 1) {
+                System.out.printf("  fov update            %9.2f us per call, %.2f us per recompute (%d of %d calls), %.0f tiles visible%n",
+                        nanos / 1e3 / OPS, nanos / 1e3 / Math.max(1, recomputes), recomputes, OPS, (double) visible / OPS);
+            }
+        }
+    }
+
+    /** Compares every tile with a LightMap built from scratch with the same lights. */
+    private static void check(String phase, LightMap light, TileMap map, int[] lx, int[] ly, int[] level) {
+        LightMap fresh = new LightMap(map);
+        for (int i = 0; i < lx.length; i++) fresh.addLight(lx[i], ly[i], level[i]);
+        int mismatches = 0;
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                if (light.getLight(x, y) != fresh.getLight(x, y)) mismatches++;
+            }
+        }
+        System.out.printf("  after %-6s %d tiles differ from a fresh build%n", phase + ":", mismatches);
+    }
+}
@@ -0,0 +1,447 @@
+package fr.oreostudios.runtime;
+
+import java.util.Arrays;
+
+/**
+ * Tile lighting for a {@link TileMap}, plus the visibility bits written by
+ * {@link FieldOfView}, packed into one byte per tile and stored per chunk
+ * (same {@link TileChunk#SIZE} grid). Chunks with no light and nothing
+ * seen have no array at all.
+ *
+ * Light spreads from point sources with flood fill: one level lost per
+ * 4-connected step, up to {@link #MAX_LEVEL}. Walls are lit by their
+ * neighbours but do not pass light on, and a light on a wall tile is
+ * dark until the wall goes away. The result is the maximum over all
+ * lights of (level - path length).
+ *
+ * Updates are incremental: moving or removing a light, or a wall
+ * appearing or disappearing, first clears the tiles whose light may have
+ * come through that spot, then refills them from the lit border around
+ * them. Only tiles within {@link #MAX_LEVEL} steps of the change are ever
+ * touched, so one update costs at most a few (2*15+1)^2 tile visits
+ * whatever the map size. Lights are indexed by tile (a list per tile,
+ * in per-chunk head arrays), so the number of lights elsewhere on the
+ * map does not count either. Wall edits are picked up in {@link #update()}
+ * from the chunk versions, like the other tile caches.
+ */
+public class LightMap {
+
+    public static final int MAX_LEVEL = 15;
+
+    static final int LEVEL_MASK = 0x0F;
+    static final int VISIBLE = 0x10;  // in view right now
+    static final int EXPLORED = 0x20; // has been in view once
+    static final int SOURCE = 0x40;   // at least one light stands here
+
+    private static final int[] DX = {1, -1, 0, 0};
+    private static final int[] DY = {0, 0, 1, -1};
+
+    private final TileMap map;
+    private final int width, height, chunksX;
+
+    private final byte[][] cells;     // per chunk, null until something is stored there
+    private final byte[][] seenTiles; // per chunk: the tiles as of the last update()
+    private final int[] seenVersions;
+    private final int[] versions;     // per chunk, bumped whenever a byte changes
+    private int[] allocated = new int[16]; // indices of the chunks that have cells
+    private int allocatedCount;
+
+    // lights
+    private int[] lightX = new int[16], lightY = new int[16], lightLevel = new int[16];
+    private boolean[] lightAlive = new boolean[16];
+    private int[] lightNext = new int[16]; // next light on the same tile, or next free id
+    private int lightCount;
+    private int freeLight = -1;            // dead ids, linked through lightNext
+    private final int[][] lightHeads;      // per chunk: first light on each tile, null until one stands there
+
+    // flood fill queues: tile index, and the level the tile had (removal only)
+    private int[] addQueue = new int[1024];
+    private int addHead, addTail;
+    private int[] removeQueue = new int[1024];
+    private int[] removeLevel = new int[1024];
+    private int removeHead, removeTail;
+
+    private final byte[] scratch = new byte[TileChunk.AREA];
+    private long tilesVisited; // cost counter, see getTilesVisited()
+
+    public LightMap(TileMap map) {
+        this.map = map;
+        this.width = map.getWidth();
+        this.height = map.getHeight();
+        this.chunksX = map.getChunksX();
+        int chunks = chunksX * map.getChunksY();
+        cells = new byte[chunks][];
+        seenTiles = new byte[chunks][];
+        seenVersions = new int[chunks];
+        versions = new int[chunks];
+        lightHeads = new int[chunks][];
+    }
+
+    public TileMap getMap() {
+        return map;
+    }
+
+    // ---- queries ----
+
+    /** Light level 0..{@link #MAX_LEVEL}; out of bounds is dark. */
+    public int getLight(int tx, int ty) {
+        return get(tx, ty) & LEVEL_MASK;
+    }
+
+    public boolean isVisible(int tx, int ty) {
+        return (get(tx, ty) & VISIBLE) != 0;
+    }
+
+    public boolean isExplored(int tx, int ty) {
+        return (get(tx, ty) & EXPLORED) != 0;
+    }
+
+    /** Change counter of one chunk's light and visibility, for render caches. */
+    public int getChunkVersion(int cx, int cy) {
+        return versions[cy * chunksX + cx];
+    }
+
+    /** Tiles read or written by light updates so far; divide by updates for the average cost. */
+    public long getTilesVisited() {
+        return tilesVisited;
+    }
+
+    // ---- lights ----
+
+    /** Adds a light of {@code level} (1..15) at a tile; returns its id. */
+    public int addLight(int tx, int ty, int level) {
+        int id = freeLight;
+        if (id >= 0) {
+            freeLight = lightNext[id];
+        } else {
+            if (lightCount == lightX.length) {
+                int n = lightCount * 2;
+                lightX = Arrays.copyOf(lightX, n);
+                lightY = Arrays.copyOf(lightY, n);
+                lightLevel = Arrays.copyOf(lightLevel, n);
+                lightAlive = Arrays.copyOf(lightAlive, n);
+                lightNext = Arrays.copyOf(lightNext, n);
+            }
+            id = lightCount++;
+        }
+        lightX[id] = tx;
+        lightY[id] = ty;
+        lightLevel[id] = Math.max(1, Math.min(MAX_LEVEL, level));
+        lightAlive[id] = true;
+        if (inBounds(tx, ty)) {
+            link(id, tx, ty);
+            track(tx, ty);
+            markSource(tx, ty);
+            lightRaised(ty * width + tx);
+            flush();
+        }
+        return id;
+    }
+
+    public void moveLight(int id, int tx, int ty) {
+        int ox = lightX[id], oy = lightY[id];
+        if (ox == tx && oy == ty) return;
+        lightX[id] = tx;
+        lightY[id] = ty;
+        if (inBounds(ox, oy)) {
+            unlink(id, ox, oy);
+            markSource(ox, oy);
+            lightLowered(oy * width + ox);
+        }
+        if (inBounds(tx, ty)) {
+            link(id, tx, ty);
+            track(tx, ty);
+            markSource(tx, ty);
+            lightRaised(ty * width + tx);
+        }
+        flush();
+    }
+
+    public void removeLight(int id) {
+        if (!lightAlive[id]) return;
+        lightAlive[id] = false;
+        if (inBounds(lightX[id], lightY[id])) {
+            unlink(id, lightX[id], lightY[id]);
+            markSource(lightX[id], lightY[id]);
+            lightLowered(lightY[id] * width + lightX[id]);
+            flush();
+        }
+        lightNext[id] = freeLight;
+        freeLight = id;
+    }
+
+    /**
+     * Applies the wall changes made to the map since the last call. Only
+     * chunks holding light are checked, and only those whose version moved.
+     */
+    public void update() {
+        for (int k = 0, n = allocatedCount; k < n; k++) {
+            int ci = allocated[k];
+            int cx = ci % chunksX, cy = ci / chunksX;
+            int v = map.getChunkVersion(cx, cy);
+            if (v == seenVersions[ci]) continue;
+            seenVersions[ci] = v;
+
+            copyTiles(ci, scratch);
+            byte[] seen = seenTiles[ci];
+            int baseX = cx * TileChunk.SIZE, baseY = cy * TileChunk.SIZE;
+            for (int i = 0; i < TileChunk.AREA; i++) {
+                boolean wasWall = seen[i] == TileMap.WALL;
+                boolean isWall = scratch[i] == TileMap.WALL;
+                seen[i] = scratch[i];
+                if (wasWall == isWall) continue;
+                int tx = baseX + (i & TileChunk.MASK), ty = baseY + (i >> TileChunk.SHIFT);
+                if (!inBounds(tx, ty)) continue;
+                int t = ty * width + tx;
+                if (isWall) {
+                    lightLowered(t);
+                } else {
+                    // light can go through now; the light of a lamp standing here comes back too
+                    lightRaised(t);
+                    if (level(t) > 0) pushAdd(t);
+                }
+                flush();
+            }
+        }
+    }
+
+    /** Recomputes every tile from scratch; for the initial state and for checking the incremental path. */
+    public void rebuild() {
+        for (int k = 0; k < allocatedCount; k++) {
+            int ci = allocated[k];
+            byte[] c = cells[ci];
+            for (int i = 0; i < c.length; i++) c[i] &= ~LEVEL_MASK;
+            versions[ci]++;
+            copyTiles(ci, seenTiles[ci]);
+            seenVersions[ci] = map.getChunkVersion(ci % chunksX, ci / chunksX);
+        }
+        for (int i = 0; i < lightCount; i++) {
+            if (lightAlive[i] && inBounds(lightX[i], lightY[i])) lightRaised(lightY[i] * width + lightX[i]);
+        }
+        flush();
+    }
+
+    // ---- flood fill ----
+
+    /** Highest light standing on tile {@code t}, 0 if none or if it is a wall. */
+    private int emission(int t) {
+        int tx = t % width, ty = t / width;
+        if ((get(tx, ty) & SOURCE) == 0 || map.isWall(tx, ty)) return 0;
+        int e = 0;
+        for (int i = firstLight(tx, ty); i >= 0; i = lightNext[i]) e = Math.max(e, lightLevel[i]);
+        return e;
+    }
+
+    /** Keeps the {@link #SOURCE} bit of a tile in sync after a light arrived or left. */
+    private void markSource(int tx, int ty) {
+        int v = get(tx, ty);
+        set(tx, ty, firstLight(tx, ty) >= 0 ? v | SOURCE : v & ~SOURCE);
+    }
+
+    // ---- lights by tile ----
+
+    private int firstLight(int tx, int ty) {
+        int[] heads = lightHeads[(ty >> TileChunk.SHIFT) * chunksX + (tx >> TileChunk.SHIFT)];
+        return heads == null ? -1 : heads[((ty & TileChunk.MASK) << TileChunk.SHIFT) | (tx & TileChunk.MASK)];
+    }
+
+    private void link(int id, int tx, int ty) {
+        int ci = (ty >> TileChunk.SHIFT) * chunksX + (tx >> TileChunk.SHIFT);
+        int[] heads = lightHeads[ci];
+        if (heads == null) {
+            heads = new int[TileChunk.AREA];
+            Arrays.fill(heads, -1);
+            lightHeads[ci] = heads;
+        }
+        int i = ((ty & TileChunk.MASK) << TileChunk.SHIFT) | (tx & TileChunk.MASK);
+        lightNext[id] = heads[i];
+        heads[i] = id;
+    }
+
+    /** Takes a light off its tile's list; a tile rarely holds more than one. */
+    private void unlink(int id, int tx, int ty) {
+        int[] heads = lightHeads[(ty >> TileChunk.SHIFT) * chunksX + (tx >> TileChunk.SHIFT)];
+        int i = ((ty & TileChunk.MASK) << TileChunk.SHIFT) | (tx & TileChunk.MASK);
+        if (heads[i] == id) {
+            heads[i] = lightNext[id];
+            return;
+        }
+        int p = heads[i];
+        while (lightNext[p] != id) p = lightNext[p];
+        lightNext[p] = lightNext[id];
+    }
+
+    private void lightRaised(int t) {
+        int e = emission(t);
+        if (e > level(t)) {
+            setLevel(t, e);
+            pushAdd(t);
+        }
+    }
+
+    /**
+     * Whatever came from {@code t} may be gone: clear it and everything
+     * that was lit through it, then let the surroundings (and any other
+     * light on {@code t}) fill the hole again.
+     */
+    private void lightLowered(int t) {
+        int old = level(t);
+        if (old == 0) return;
+        setLevel(t, 0);
+        pushRemove(t, old);
+        int e = emission(t);
+        if (e > 0) {
+            setLevel(t, e);
+            pushAdd(t);
+        }
+    }
+
+    private void flush() {
+        while (removeHead < removeTail) {
+            int t = removeQueue[removeHead];
+            int old = removeLevel[removeHead];
+            removeHead++;
+            int tx = t % width, ty = t / width;
+            for (int d = 0; d < 4; d++) {
+                int nx = tx + DX[d], ny = ty + DY[d];
+                if (!inBounds(nx, ny)) continue;
+                int n = ny * width + nx;
+                int nl = level(n);
+                tilesVisited++;
+                if (nl == 0) continue;
+                if (nl < old) {
+                    // could have come from t: clear it too
+                    setLevel(n, 0);
+                    int e = emission(n);
+                    if (e > 0) {
+                        setLevel(n, e);
+                        pushAdd(n);
+                    }
+                    if (map.isWall(nx, ny)) {
+                        relightWall(nx, ny);
+                    } else {
+                        pushRemove(n, nl);
+                    }
+                } else if (!map.isWall(nx, ny)) {
+                    pushAdd(n); // lit from elsewhere: refills the cleared area
+                }
+            }
+        }
+        removeHead = removeTail = 0;
+
+        while (addHead < addTail) {
+            int t = addQueue[addHead++];
+            int tx = t % width, ty = t / width;
+            if (map.isWall(tx, ty)) continue;
+            int next = level(t) - 1;
+            if (next <= 0) continue;
+            for (int d = 0; d < 4; d++) {
+                int nx = tx + DX[d], ny = ty + DY[d];
+                if (!inBounds(nx, ny)) continue;
+                int n = ny * width + nx;
+                tilesVisited++;
+                if (level(n) < next) {
+                    setLevel(n, next);
+                    if (!map.isWall(nx, ny)) pushAdd(n);
+                }
+            }
+        }
+        addHead = addTail = 0;
+    }
+
+    /** A cleared wall takes its light back from whatever lit floor surrounds it. */
+    private void relightWall(int wx, int wy) {
+        for (int d = 0; d < 4; d++) {
+            int nx = wx + DX[d], ny = wy + DY[d];
+            if (inBounds(nx, ny) && !map.isWall(nx, ny) && level(ny * width + nx) > 1) pushAdd(ny * width + nx);
+        }
+    }
+
+    private void pushAdd(int t) {
+        if (addTail == addQueue.length) addQueue = Arrays.copyOf(addQueue, addTail * 2);
+        addQueue[addTail++] = t;
+    }
+
+    private void pushRemove(int t, int level) {
+        if (removeTail == removeQueue.length) {
+            removeQueue = Arrays.copyOf(removeQueue, removeTail * 2);
+            removeLevel = Arrays.copyOf(removeLevel, removeTail * 2);
+        }
+        removeQueue[removeTail] = t;
+        removeLevel[removeTail] = level;
+        removeTail++;
+    }
+
+    // ---- packed storage ----
+
+    private boolean inBounds(int tx, int ty) {
+        return tx >= 0 && ty >= 0 && tx < width && ty < height;
+    }
+
+    private int get(int tx, int ty) {
+        if (!inBounds(tx, ty)) return 0;
+        byte[] c = cells[(ty >> TileChunk.SHIFT) * chunksX + (tx >> TileChunk.SHIFT)];
+        return c == null ? 0 : c[((ty & TileChunk.MASK) << TileChunk.SHIFT) | (tx & TileChunk.MASK)];
+    }
+
+    private int level(int t) {
+        return get(t % width, t / width) & LEVEL_MASK;
+    }
+
+    private void setLevel(int t, int level) {
+        int tx = t % width, ty = t / width;
+        int v = get(tx, ty);
+        set(tx, ty, (v & ~LEVEL_MASK) | level);
+    }
+
+    /** Visibility bits, for {@link FieldOfView}. */
+    int getFlags(int tx, int ty) {
+        return get(tx, ty) & ~LEVEL_MASK;
+    }
+
+    void setFlags(int tx, int ty, int flags) {
+        if (!inBounds(tx, ty)) return;
+        set(tx, ty, (get(tx, ty) & LEVEL_MASK) | flags);
+    }
+
+    private void set(int tx, int ty, int value) {
+        int ci = (ty >> TileChunk.SHIFT) * chunksX + (tx >> TileChunk.SHIFT);
+        byte[] c = cells[ci];
+        int i = ((ty & TileChunk.MASK) << TileChunk.SHIFT) | (tx & TileChunk.MASK);
+        if (c == null) {
+            if (value == 0) return;
+            c = allocate(ci);
+        }
+        if (c[i] != (byte) value) {
+            c[i] = (byte) value;
+            versions[ci]++;
+        }
+    }
+
+    /**
+     * Starts watching the chunk under a light even while it is dark (a
+     * light on a wall), so update() notices when the wall goes away.
+     */
+    private void track(int tx, int ty) {
+        int ci = (ty >> TileChunk.SHIFT) * chunksX + (tx >> TileChunk.SHIFT);
+        if (cells[ci] == null) allocate(ci);
+    }
+
+    private void copyTiles(int ci, byte[] dst) {
+        TileChunk chunk = map.getChunk(ci % chunksX, ci / chunksX);
+        if (chunk != null) chunk.copyTo(dst, 0);
+        else Arrays.fill(dst, (byte) TileMap.WALL);
+    }
+
+    private byte[] allocate(int ci) {
+        byte[] c = new byte[TileChunk.AREA];
+        cells[ci] = c;
+        // remember the tiles, so update() can tell which ones change
+        seenTiles[ci] = new byte[TileChunk.AREA];
+        copyTiles(ci, seenTiles[ci]);
+        seenVersions[ci] = map.getChunkVersion(ci % chunksX, ci / chunksX);
+        if (allocatedCount == allocated.length) allocated = Arrays.copyOf(allocated, allocatedCount * 2);
+        allocated[allocatedCount++] = ci;
+        return c;
+    }
+}
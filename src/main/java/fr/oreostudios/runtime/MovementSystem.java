@@ -0,0 +1,55 @@
+package fr.oreostudios.runtime;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Integrates velocities and resolves collisions against the tile map with
+ * a swept box ({@link TileCollision#move}), so actors slide along walls and
+ * fast ones can't tunnel through them.
+ */
+public class MovementSystem implements ParallelSystem {
+
+    private final TileCollision collision;
+
+    public MovementSystem(TileMap map) {
+        this.collision = new TileCollision(map);
+    }
+
+    @Override
+    public Set<Component> reads() {
+        return EnumSet.of(Component.POSITION, Component.VELOCITY, Component.EXTENT,
+                Component.FLAGS, Component.TILES);
+    }
+
+    @Override
+    public Set<Component> writes() {
+        return EnumSet.of(Component.POSITION, Component.VELOCITY);
+    }
+
+    @Override
+    public void update(EntityStore store, float dt, int from, int to) {
+        float[] x = store.x, y = store.y;
+        float[] prevX = store.prevX, prevY = store.prevY;
+        float[] vx = store.vx, vy = store.vy;
+        float[] w = store.width, h = store.height;
+        int[] flags = store.flags;
+
+        // one per call, not per entity
+        TileCollision.Result result = new TileCollision.Result();
+
+        for (int i = from; i < to; i++) {
+            prevX[i] = x[i];
+            prevY[i] = y[i];
+            if (vx[i] == 0 && vy[i] == 0) continue;
+
+            collision.move(x[i], y[i], w[i], h[i], vx[i] * dt, vy[i] * dt, result);
+            x[i] = result.x;
+            y[i] = result.y;
+
+            boolean bounce = (flags[i] & EntityStore.FLAG_BOUNCE) != 0;
+            if (result.blockedX) vx[i] = bounce ? -vx[i] : 0;
+            if (result.blockedY) vy[i] = bounce ? -vy[i] : 0;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package fr.oreostudios.runtime;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Rasterizes a {@link RenderCommandList} into a {@link SoftwareRenderer}
+ * on a fork-join pool.
+ *
+ * The frame is cut into horizontal stripes. Each command is binned into
+ * the stripes its rows overlap, then every stripe replays its bin through
+ * its own clipped view of the framebuffer. Stripes never share a pixel, so
+ * no locking is needed, and within a stripe commands keep their recorded
+ * order, which makes the result identical to drawing serially.
+ *
+ * Serial mode (for debugging) can be forced with {@link #setSerial(boolean)}
+ * or {@code -Doreo.serialRender=true}.
+ */
+public class ParallelRasterizer {
+
+    /** Rows per stripe; several stripes per thread keep the load balanced. */
+    private static final int DEFAULT_STRIPE_HEIGHT = 32;
+
+    private final ForkJoinPool pool;
+    private boolean serial = Boolean.getBoolean("oreo.serialRender");
+    private int stripeHeight = DEFAULT_STRIPE_HEIGHT;
+
+    // per-frame scratch, reused
+    private int[][] bins = new int[0][];
+    private int[] binSizes = new int[0];
+    private SoftwareRenderer[] views = new SoftwareRenderer[0];
+    private SoftwareRenderer viewsOf;
+    private final List<ForkJoinTask<?>> tasks = new ArrayList<>();
+
+    public ParallelRasterizer() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public ParallelRasterizer(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public void setSerial(boolean serial) {
+        this.serial = serial;
+    }
+
+    public boolean isSerial() {
+        return serial;
+    }
+
+    public void setStripeHeight(int rows) {
+        this.stripeHeight = Math.max(1, rows);
+        viewsOf = null; // re-cut the stripes
+    }
+
+    public void rasterize(RenderCommandList commands, SoftwareRenderer target) {
+        int n = commands.size();
+        if (serial || pool.getParallelism() <= 1) {
+            target.setClip(0, target.getHeight());
+            for (int i = 0; i < n; i++) commands.execute(i, target);
+            return;
+        }
+
+        int stripes = (target.getHeight() + stripeHeight - 1) / stripeHeight;
+        prepare(stripes, target);
+
+        for (int i = 0; i < n; i++) {
+            int first = Math.max(0, commands.top(i) / stripeHeight);
+            int last = Math.min(stripes - 1, (commands.bottom(i) - 1) / stripeHeight);
+            for (int s = first; s <= last; s++) {
+                if (binSizes[s] == bins[s].length) bins[s] = Arrays.copyOf(bins[s], binSizes[s] * 2);
+                bins[s][binSizes[s]++] = i;
+            }
+        }
+
+        tasks.clear();
+        for (int s = 0; s < stripes; s++) {
+            int stripe = s;
+            tasks.add(ForkJoinTask.adapt(() -> {
+                SoftwareRenderer view = views[stripe];
+                int[] bin = bins[stripe];
+                for (int k = 0, size = binSizes[stripe]; k < size; k++) {
+                    commands.execute(bin[k], view);
+                }
+            }));
+        }
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+    }
+
+    private void prepare(int stripes, SoftwareRenderer target) {
+        if (bins.length != stripes || viewsOf != target) {
+            bins = new int[stripes][256];
+            binSizes = new int[stripes];
+            views = new SoftwareRenderer[stripes];
+            for (int s = 0; s < stripes; s++) {
+                views[s] = target.view();
+                views[s].setClip(s * stripeHeight, (s + 1) * stripeHeight);
+            }
+            viewsOf = target;
+        }
+        Arrays.fill(binSizes, 0);
+    }
+}
@@ -0,0 +1,17 @@
+package fr.oreostudios.runtime;
+
+/**
+ * A {@link GameSystem} whose work on entity {@code i} only writes entity
+ * {@code i}'s own components. The scheduler may then split the dense range
+ * into chunks and update them on several threads.
+ */
+public interface ParallelSystem extends GameSystem {
+
+    /** Updates entities with dense index in [from, to). */
+    void update(EntityStore store, float dt, int from, int to);
+
+    @Override
+    default void update(EntityStore store, float dt) {
+        update(store, dt, 0, store.size());
+    }
+}
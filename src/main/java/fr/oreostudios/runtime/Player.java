@@ -1,38 +1,72 @@
 package fr.oreostudios.runtime;
 
-import java.awt.*;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * The locally controlled actor. Its position lives in the {@link EntityStore};
+ * as a system it only turns the current input into a velocity, the
+ * {@link MovementSystem} does the actual moving.
+ */
+public class Player implements GameSystem {
+
+    /** Walking speed, pixels per second. */
+    public static final float SPEED = 150f;
+
+    private final EntityStore store;
+    private int entity;
+    private InputSource input;
+
+    public Player(EntityStore store, float x, float y, int width, int height) {
+        this.store = store;
+        this.entity = store.create(x, y, width, height);
+        store.color[store.indexOf(entity)] = 0x0000FF;
+    }
 
-public class Player {
+    public void setInput(InputSource input) {
+        this.input = input;
+    }
 
-    private float x, y;
-    private final int width, height;
-    private final float speed = 150f;
+    public int getEntity() {
+        return entity;
+    }
 
-    private final TileMap map;
-    private Input input;
+    /** Points the player at another entity, used when a save is loaded. */
+    void setEntity(int entity) {
+        this.entity = entity;
+    }
 
-    public Player(float x, float y, int width, int height, TileMap map) {
-        this.x = x;
-        this.y = y;
-        this.width = width;
-        this.height = height;
-        this.map = map;
+    @Override
+    public Set<Component> reads() {
+        return EnumSet.noneOf(Component.class);
     }
 
-    public void setInput(Input input) {
-        this.input = input;
+    @Override
+    public Set<Component> writes() {
+        return EnumSet.of(Component.VELOCITY);
     }
 
-    public void update(float dt) {
-        if (input == null) return;
+    @Override
+    public void update(EntityStore store, float dt) {
+        int i = store.indexOf(entity);
+        if (i < 0) return;
 
+        steer(store, i, input != null ? input.getMask() : 0);
+    }
+
+    /**
+     * Sets the velocity of entity {@code i} from a key mask (see
+     * {@link InputSource}), the way the local player moves. Also used for
+     * remote players on the server.
+     */
+    public static void steer(EntityStore store, int i, int mask) {
         float dx = 0;
         float dy = 0;
 
-        if (input.isUp()) dy -= 1;
-        if (input.isDown()) dy += 1;
-        if (input.isLeft()) dx -= 1;
-        if (input.isRight()) dx += 1;
+        if ((mask & InputSource.UP) != 0) dy -= 1;
+        if ((mask & InputSource.DOWN) != 0) dy += 1;
+        if ((mask & InputSource.LEFT) != 0) dx -= 1;
+        if ((mask & InputSource.RIGHT) != 0) dx += 1;
 
         if (dx != 0 && dy != 0) {
             float inv = (float) (1 / Math.sqrt(2));
@@ -40,34 +74,31 @@ public class Player {
             dy *= inv;
         }
 
-        float newX = x + dx * speed * dt;
-        float newY = y + dy * speed * dt;
-
-        if (!collides(newX, y)) x = newX;
-        if (!collides(x, newY)) y = newY;
+        store.vx[i] = dx * SPEED;
+        store.vy[i] = dy * SPEED;
     }
 
-    private boolean collides(float testX, float testY) {
-        int tileSize = map.getTileSize();
-
-        float left = testX;
-        float right = testX + width;
-        float top = testY;
-        float bottom = testY + height;
+    // without a live entity (destroyed, or EntityStore.NULL) the player reads as standing at 0, 0
+    public float getX() {
+        int i = store.indexOf(entity);
+        return i < 0 ? 0 : store.x[i];
+    }
 
-        return map.isWallAt(left, top)
-                || map.isWallAt(right, top)
-                || map.isWallAt(left, bottom)
-                || map.isWallAt(right, bottom);
+    public float getY() {
+        int i = store.indexOf(entity);
+        return i < 0 ? 0 : store.y[i];
     }
 
-    public void render(Graphics g, int camX, int camY) {
-        g.setColor(Color.BLUE);
-        int drawX = (int) (x - camX);
-        int drawY = (int) (y - camY);
-        g.fillRect(drawX, drawY, width, height);
+    /** Position blended between the previous and current update. */
+    public float getRenderX(float alpha) {
+        int i = store.indexOf(entity);
+        if (i < 0) return 0;
+        return store.prevX[i] + (store.x[i] - store.prevX[i]) * alpha;
     }
 
-    public float getX() { return x; }
-    public float getY() { return y; }
+    public float getRenderY(float alpha) {
+        int i = store.indexOf(entity);
+        if (i < 0) return 0;
+        return store.prevY[i] + (store.y[i] - store.prevY[i]) * alpha;
+    }
 }
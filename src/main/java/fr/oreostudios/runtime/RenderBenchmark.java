@@ -0,0 +1,142 @@
+package fr.oreostudios.runtime;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Graphics calls against {@link SoftwareRenderer} on an 800x600 frame:
+ * the visible map, 10k filled rects (entities) and 10k alpha-blended
+ * 16x16 sprites. Also checks the two paths draw the same pixels.
+ *
+ * Run with: java -cp target/classes fr.oreostudios.runtime.RenderBenchmark
+ */
+public class RenderBenchmark {
+
+    private static final int WIDTH = 800;
+    private static final int HEIGHT = 600;
+    private static final int SPRITES = 10_000;
+    private static final int FRAMES = 200;
+
+    public static void main(String[] args) {
+        TileMap map = new TileMap(64, 64, 32);
+        BufferedImage spriteImage = makeSprite(16);
+        Sprite sprite = Sprite.fromImage(spriteImage);
+        TileAtlas atlas = TileAtlas.solid(32, 2);
+
+        Random rnd = new Random(11);
+        int[] xs = new int[SPRITES];
+        int[] ys = new int[SPRITES];
+        int[] colors = new int[SPRITES];
+        for (int i = 0; i < SPRITES; i++) {
+            xs[i] = rnd.nextInt(WIDTH + 16) - 16;
+            ys[i] = rnd.nextInt(HEIGHT + 16) - 16;
+            colors[i] = rnd.nextInt(8) * 0x1F2F3F & 0xFFFFFF;
+        }
+
+        BufferedImage target = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        SoftwareRenderer soft = new SoftwareRenderer(WIDTH, HEIGHT);
+        Color[] awtColors = new Color[SPRITES];
+        for (int i = 0; i < SPRITES; i++) awtColors[i] = new Color(colors[i]);
+
+        long[] g2d = new long[3];
+        long[] sw = new long[3];
+        for (int f = 0; f < FRAMES * 2; f++) {
+            boolean timed = f >= FRAMES; // first half is warm-up
+            int camX = (f * 3) % 700;
+            int camY = (f * 2) % 700;
+
+            Graphics g = target.getGraphics();
+            long t0 = System.nanoTime();
+            g.setColor(Color.BLACK);
+            g.fillRect(0, 0, WIDTH, HEIGHT);
+            map.render(g, camX, camY, WIDTH, HEIGHT);
+            long t1 = System.nanoTime();
+            for (int i = 0; i < SPRITES; i++) {
+                g.setColor(awtColors[i]);
+                g.fillRect(xs[i], ys[i], 12, 12);
+            }
+            long t2 = System.nanoTime();
+            for (int i = 0; i < SPRITES; i++) {
+                g.drawImage(spriteImage, xs[i], ys[i], null);
+            }
+            long t3 = System.nanoTime();
+            g.dispose();
+
+            long s0 = System.nanoTime();
+            soft.clear(0);
+            soft.drawMap(map, atlas, camX, camY);
+            long s1 = System.nanoTime();
+            for (int i = 0; i < SPRITES; i++) {
+                soft.fillRect(xs[i], ys[i], 12, 12, colors[i]);
+            }
+            long s2 = System.nanoTime();
+            for (int i = 0; i < SPRITES; i++) {
+                soft.blit(sprite, xs[i], ys[i]);
+            }
+            long s3 = System.nanoTime();
+
+            if (timed) {
+                g2d[0] += t1 - t0;
+                g2d[1] += t2 - t1;
+                g2d[2] += t3 - t2;
+                sw[0] += s1 - s0;
+                sw[1] += s2 - s1;
+                sw[2] += s3 - s2;
+            }
+        }
+
+        System.out.printf("%dx%d frame, %d sprites, ms per frame:%n", WIDTH, HEIGHT, SPRITES);
+        System.out.printf("  %-22s %9s %9s %7s%n", "", "Graphics", "software", "speedup");
+        String[] names = {"clear + map", SPRITES + " rects", SPRITES + " alpha sprites"};
+        for (int k = 0; k < 3; k++) {
+            double a = g2d[k] / 1e6 / FRAMES;
+            double b = sw[k] / 1e6 / FRAMES;
+            System.out.printf("  %-22s %9.3f %9.3f %6.1fx%n", names[k], a, b, a / b);
+        }
+
+        // both paths must produce the same pixels
+        BufferedImage ref = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics g = ref.getGraphics();
+        g.setColor(Color.BLACK);
+        g.fillRect(0, 0, WIDTH, HEIGHT);
+        map.render(g, 100, 50, WIDTH, HEIGHT);
+        for (int i = 0; i < SPRITES; i++) {
+            g.setColor(awtColors[i]);
+            g.fillRect(xs[i], ys[i], 12, 12);
+        }
+        soft.clear(0);
+        soft.drawMap(map, atlas, 100, 50);
+        for (int i = 0; i < SPRITES; i++) soft.fillRect(xs[i], ys[i], 12, 12, colors[i]);
+        System.out.printf("  map + rects: %d differing pixels%n", countDiffs(ref, soft.getImage()));
+
+        for (int i = 0; i < SPRITES; i++) g.drawImage(spriteImage, xs[i], ys[i], null);
+        g.dispose();
+        for (int i = 0; i < SPRITES; i++) soft.blit(sprite, xs[i], ys[i]);
+        System.out.printf("  + sprites:   %d differing pixels%n", countDiffs(ref, soft.getImage()));
+    }
+
+    private static int countDiffs(BufferedImage a, BufferedImage b) {
+        int diffs = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                if (a.getRGB(x, y) != b.getRGB(x, y)) diffs++;
+            }
+        }
+        return diffs;
+    }
+
+    /** A disc with a soft, translucent edge. */
+    private static BufferedImage makeSprite(int size) {
+        BufferedImage img = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        float r = size / 2f;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                float d = (float) Math.hypot(x + 0.5f - r, y + 0.5f - r);
+                int a = (int) Math.max(0, Math.min(255, (r - d) * 128));
+                img.setRGB(x, y, (a << 24) | 0xE0A030);
+            }
+        }
+        return img;
+    }
+}
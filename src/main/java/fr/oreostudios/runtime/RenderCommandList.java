@@ -0,0 +1,124 @@
+package fr.oreostudios.runtime;
+
+import java.util.Arrays;
+
+/**
+ * Records software drawing calls instead of executing them, so a frame can
+ * be built once and rasterized later by {@link ParallelRasterizer}.
+ *
+ * Commands are kept as parallel arrays (op, rect, argument, resource)
+ * that are reused from frame to frame: after warm-up, recording a frame
+ * allocates nothing.
+ */
+public class RenderCommandList implements RenderTarget {
+
+    static final byte CLEAR = 0;
+    static final byte FILL_RECT = 1;
+    static final byte BLIT = 2;
+    static final byte BLIT_TILE = 3;
+
+    private final int width;
+    private final int height;
+
+    private byte[] op = new byte[1024];
+    private int[] x = new int[1024];
+    private int[] y = new int[1024];
+    private int[] w = new int[1024];
+    private int[] h = new int[1024];
+    private int[] arg = new int[1024];       // color or tile id
+    private Object[] ref = new Object[1024]; // sprite or atlas
+    private int size;
+
+    public RenderCommandList(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /** Forgets every command; call at the start of each frame. */
+    public void reset() {
+        Arrays.fill(ref, 0, size, null);
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public void clear(int rgb) {
+        add(CLEAR, 0, 0, width, height, rgb, null);
+    }
+
+    @Override
+    public void fillRect(int x, int y, int w, int h, int rgb) {
+        if (w <= 0 || h <= 0 || y >= height || y + h <= 0) return;
+        add(FILL_RECT, x, y, w, h, rgb, null);
+    }
+
+    @Override
+    public void blit(Sprite sprite, int x, int y) {
+        if (y >= height || y + sprite.getHeight() <= 0) return;
+        add(BLIT, x, y, sprite.getWidth(), sprite.getHeight(), 0, sprite);
+    }
+
+    @Override
+    public void blitTile(TileAtlas atlas, int tile, int x, int y) {
+        int ts = atlas.getTileSize();
+        if (y >= height || y + ts <= 0) return;
+        add(BLIT_TILE, x, y, ts, ts, tile, atlas);
+    }
+
+    /** First screen row command {@code i} touches. */
+    int top(int i) {
+        return y[i];
+    }
+
+    /** One past the last screen row command {@code i} touches. */
+    int bottom(int i) {
+        return y[i] + h[i];
+    }
+
+    /** Runs command {@code i} on a renderer, which applies its own clip. */
+    void execute(int i, SoftwareRenderer r) {
+        switch (op[i]) {
+            case CLEAR -> r.clear(arg[i]);
+            case FILL_RECT -> r.fillRect(x[i], y[i], w[i], h[i], arg[i]);
+            case BLIT -> r.blit((Sprite) ref[i], x[i], y[i]);
+            case BLIT_TILE -> r.blitTile((TileAtlas) ref[i], arg[i], x[i], y[i]);
+            default -> throw new IllegalStateException("Unknown render command " + op[i]);
+        }
+    }
+
+    private void add(byte code, int cx, int cy, int cw, int ch, int a, Object r) {
+        if (size == op.length) grow();
+        op[size] = code;
+        x[size] = cx;
+        y[size] = cy;
+        w[size] = cw;
+        h[size] = ch;
+        arg[size] = a;
+        ref[size] = r;
+        size++;
+    }
+
+    private void grow() {
+        int n = op.length * 2;
+        op = Arrays.copyOf(op, n);
+        x = Arrays.copyOf(x, n);
+        y = Arrays.copyOf(y, n);
+        w = Arrays.copyOf(w, n);
+        h = Arrays.copyOf(h, n);
+        arg = Arrays.copyOf(arg, n);
+        ref = Arrays.copyOf(ref, n);
+    }
+}
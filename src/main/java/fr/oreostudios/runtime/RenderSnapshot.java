@@ -0,0 +1,48 @@
+package fr.oreostudios.runtime;
+
+/**
+ * Everything a frame needs from one simulation tick, copied out so the
+ * render thread can draw it while the next tick runs. The tiles are a
+ * copy-on-write {@link TileMap#snapshot}, the entities a dense copy.
+ * Instances are recycled through a {@link TripleBuffer}.
+ */
+public class RenderSnapshot {
+
+    private long tick = -1;
+    private long tickNanos;
+    private TileMap map;
+    private final EntityStore entities = new EntityStore();
+    private int playerIndex = -1;
+
+    /** Copies the state at the end of the last tick; update thread only. */
+    public void capture(Simulation sim, long tickNanos) {
+        this.tick = sim.getTick();
+        this.tickNanos = tickNanos;
+        this.map = sim.getMap().snapshot(map);
+        entities.copyFrom(sim.getEntities());
+        playerIndex = sim.getEntities().indexOf(sim.getPlayer().getEntity());
+    }
+
+    /** -1 until the first capture. */
+    public long getTick() {
+        return tick;
+    }
+
+    /** When the tick was due, on the {@code System.nanoTime} clock. */
+    public long getTickNanos() {
+        return tickNanos;
+    }
+
+    public TileMap getMap() {
+        return map;
+    }
+
+    public EntityStore getEntities() {
+        return entities;
+    }
+
+    /** Dense index of the player in {@link #getEntities()}, -1 if gone. */
+    public int getPlayerIndex() {
+        return playerIndex;
+    }
+}
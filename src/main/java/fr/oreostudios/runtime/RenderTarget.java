@@ -0,0 +1,43 @@
+package fr.oreostudios.runtime;
+
+/**
+ * Something the software drawing calls can go to: the framebuffer itself
+ * ({@link SoftwareRenderer}) or a {@link RenderCommandList} that records
+ * them for parallel rasterization later. Colors are 0xRRGGBB.
+ */
+public interface RenderTarget {
+
+    int getWidth();
+
+    int getHeight();
+
+    void clear(int rgb);
+
+    void fillRect(int x, int y, int w, int h, int rgb);
+
+    void blit(Sprite sprite, int x, int y);
+
+    void blitTile(TileAtlas atlas, int tile, int x, int y);
+
+    /** The visible part of the map, one atlas blit per tile. */
+    default void drawMap(TileMap map, TileAtlas atlas, int camX, int camY) {
+        drawMapRows(map, atlas, camX, camY, 0, getHeight());
+    }
+
+    /** Tiles of the map overlapping screen rows [y0, y1). */
+    default void drawMapRows(TileMap map, TileAtlas atlas, int camX, int camY, int y0, int y1) {
+        int ts = map.getTileSize();
+        int startX = Math.max(0, Math.floorDiv(camX, ts));
+        int startY = Math.max(0, Math.floorDiv(camY + y0, ts));
+        int endX = Math.min(map.getWidth(), Math.floorDiv(camX + getWidth() - 1, ts) + 1);
+        int endY = Math.min(map.getHeight(), Math.floorDiv(camY + y1 - 1, ts) + 1);
+        int maxTile = atlas.getTileCount() - 1;
+
+        for (int ty = startY; ty < endY; ty++) {
+            for (int tx = startX; tx < endX; tx++) {
+                int tile = Math.min(map.getTile(tx, ty), maxTile);
+                blitTile(atlas, tile, tx * ts - camX, ty * ts - camY);
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package fr.oreostudios.runtime;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays an {@link InputRecorder} file through the fixed-step loop with no
+ * window, checks that it ends in the recorded state, and prints ticks per
+ * second, so a captured session doubles as a repeatable macro-benchmark.
+ * Exits with status 1 when a state hash differs.
+ *
+ * Usage: ReplayRunner file.orpl [--map=file.otm] [--realtime] [--repeat=N] [--serial]
+ *
+ * By default ticks run back to back; {@code --realtime} runs each one at
+ * the moment it ran when it was recorded instead, hitches included.
+ */
+public class ReplayRunner {
+
+    public static void main(String[] args) throws IOException {
+        Path file = null;
+        Path mapFile = null;
+        boolean realtime = false;
+        boolean serial = false;
+        int repeat = 1;
+
+        for (String arg : args) {
+            if (arg.startsWith("--map=")) mapFile = Path.of(arg.substring(6));
+            else if (arg.equals("--realtime")) realtime = true;
+            else if (arg.equals("--serial")) serial = true;
+            else if (arg.startsWith("--repeat=")) repeat = Integer.parseInt(arg.substring(9));
+            else if (arg.startsWith("--")) throw new IllegalArgumentException("Unknown argument: " + arg);
+            else file = Path.of(arg);
+        }
+        if (file == null) throw new IllegalArgumentException("Usage: ReplayRunner file.orpl [--map=file.otm] [--realtime] [--repeat=N] [--serial]");
+
+        InputReplay replay = InputReplay.open(file);
+        System.out.printf("[Replay] %s: %d ticks (%.1f s recorded), %d NPCs, %d checkpoints%s%n",
+                file.getFileName(), replay.getTickCount(),
+                replay.getTickCount() == 0 ? 0 : replay.getTickMicros(replay.getTickCount() - 1) / 1e6,
+                replay.getNpcCount(), replay.getCheckpointCount(), replay.hasEnd() ? "" : ", no end record");
+
+        boolean ok = true;
+        for (int r = 0; r < repeat; r++) {
+            ok &= run(replay, mapFile, realtime, serial);
+        }
+        if (!ok) System.exit(1);
+    }
+
+    /** One playback; returns whether every state hash matched. */
+    public static boolean run(InputReplay replay, Path mapFile, boolean realtime, boolean serial) throws IOException {
+        Simulation sim = replay.createSimulation(mapFile);
+        sim.getSystems().setSerial(serial);
+
+        int ticks = replay.getTickCount();
+        long start = System.nanoTime();
+        for (int i = 0; i < ticks; i++) {
+            if (realtime) {
+                long due = start + replay.getTickMicros(i) * 1000;
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0) LockSupport.parkNanos(wait);
+            }
+            sim.step();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        boolean ok = replay.getFirstMismatchTick() < 0;
+        if (replay.hasEnd()) ok &= sim.getTick() == replay.getEndTick() && sim.stateHash() == replay.getEndHash();
+
+        double seconds = elapsed / 1e9;
+        System.out.printf("[Replay] %d ticks, %d entities, %.2f s -> %.0f ticks/s, hash %016x: %s%n",
+                ticks, sim.getEntities().size(), seconds, ticks / seconds, sim.stateHash(),
+                ok ? "matches the recording"
+                        : replay.getFirstMismatchTick() >= 0 ? "DIVERGED at tick " + replay.getFirstMismatchTick()
+                        : "DIVERGED (final state)");
+        return ok;
+    }
+}
@@ -0,0 +1,83 @@
+package fr.oreostudios.runtime;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * {@link SaveGame} timings on large maps with every chunk dense (worst
+ * case): the game-thread capture, the background full save, a delta after
+ * a second of play with some tile edits, and loading. Also checks that the
+ * loaded world hashes like the saved one and keeps simulating identically.
+ *
+ * Run with: java -cp target/classes fr.oreostudios.runtime.SaveBenchmark [dir] [sizes...]
+ */
+public class SaveBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        Path dir = args.length > 0 ? Path.of(args[0]) : Files.createTempDirectory("oreo-save");
+        int[] sizes = {1024, 4096, 8192};
+        if (args.length > 1) {
+            sizes = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) sizes[i - 1] = Integer.parseInt(args[i]);
+        }
+        for (int size : sizes) run(dir.resolve("bench" + size + ".osav"), size);
+    }
+
+    private static void run(Path file, int size) throws IOException {
+        TileMap map = new TileMap(size, size, 32);
+        Random rnd = new Random(size);
+        for (int y = 1; y < size - 1; y++) {
+            for (int x = 1; x < size - 1; x++) {
+                if (rnd.nextInt(8) == 0) map.setTile(x, y, TileMap.WALL);
+            }
+        }
+        Simulation sim = new Simulation(map);
+        HeadlessRunner.spawnNpcs(sim, 10_000, 1);
+        sim.setInput(ScriptedInput.random(1, 600, 30));
+        for (int t = 0; t < 60; t++) sim.step();
+
+        SaveGame save = new SaveGame(file);
+        // warm-up pass, then the measured one
+        for (int pass = 0; pass < 2; pass++) {
+            save.saveFull(sim);
+            save.awaitIdle();
+        }
+        System.out.printf("%dx%d map, %d chunks, %d entities:%n", size, size,
+                map.getChunksX() * map.getChunksY(), sim.getEntities().size());
+        report("full save", save);
+
+        for (int t = 0; t < 60; t++) {
+            sim.step();
+            map.setTile(1 + rnd.nextInt(size - 2), 1 + rnd.nextInt(size - 2), TileMap.FLOOR);
+        }
+        long savedHash = sim.stateHash();
+        save.save(sim);
+        save.awaitIdle();
+        report("delta (60 edits)", save);
+        save.close();
+
+        long t0 = System.nanoTime();
+        Simulation loaded = SaveGame.load(file);
+        long t1 = System.nanoTime();
+        System.out.printf("  load full+delta    %8.1f ms, state %s%n", (t1 - t0) / 1e6,
+                loaded.stateHash() == savedHash ? "matches" : "DIFFERS");
+
+        loaded.setInput(ScriptedInput.random(1, 600, 30));
+        for (int t = 0; t < 120; t++) {
+            sim.step();
+            loaded.step();
+        }
+        boolean same = sim.stateHash() == loaded.stateHash() && sim.getMap().contentHash() == loaded.getMap().contentHash();
+        System.out.printf("  120 more ticks     %s%n", same ? "identical" : "DIVERGED");
+
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(file.resolveSibling(file.getFileName() + ".delta"));
+    }
+
+    private static void report(String what, SaveGame save) {
+        System.out.printf("  %-18s %8.1f ms in the background, %8.3f ms on the game thread, %7.2f MB%n",
+                what, save.getLastWriteNanos() / 1e6, save.getLastCaptureNanos() / 1e6, save.getLastBytes() / 1e6);
+    }
+}
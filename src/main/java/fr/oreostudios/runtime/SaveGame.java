@@ -0,0 +1,505 @@
+package fr.oreostudios.runtime;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Saves and loads the state of a {@link Simulation}: tiles, entities, the
+ * player and the tick count.
+ *
+ * The game thread only takes a copy-on-write view of the world
+ * ({@link TileMap#snapshot} plus a copy of the entity arrays, about
+ * 0.25 ms with 10k entities); encoding and disk writes happen on a background
+ * "SaveWriter" thread, so the loop never waits for the disk.
+ *
+ * The first {@link #save} writes a full save to {@code path}. Later ones
+ * write {@code path + ".delta"} with only the chunks whose version moved
+ * since that full save, and only the entities whose components changed
+ * (all of them if any entity was created or destroyed, to keep the dense
+ * order exact). Each delta replaces the previous one, so loading is always
+ * the full save plus at most one delta. Files are written to a temporary
+ * name and moved into place, so a crash mid-save keeps the previous save.
+ *
+ * Layout, little-endian:
+ * <pre>
+ *   header (64 bytes)
+ *     int   magic 'OSV1'
+ *     short version, short kind (0 full, 1 delta)
+ *     long  save id (a delta carries the id of its full save)
+ *     long  tick
+ *     int   map width, height (tiles), tileSize (px)
+ *     int   chunk records
+ *     int   entity count at that tick, int entity records
+ *     int   player dense index (-1 if none)
+ *     byte  entity mode (0 complete, 1 patch by dense index), 3 bytes padding
+ *   chunk records
+ *     int   chunk index
+ *     byte  encoding (0 uniform, 1 raw, 2 not resident), byte fill tile, short reserved
+ *     raw chunks only: chunkSize^2 tile bytes
+ *   entity records, as arrays (SoA, like {@link EntityStore})
+ *     patch mode only: int dense index[records]
+ *     float x, y, prevX, prevY, vx, vy, width, height [records each]
+ *     int   color, flags [records each]
+ * </pre>
+ */
+public class SaveGame implements AutoCloseable {
+
+    public static final int MAGIC = 0x3156534F; // "OSV1" in little-endian
+    public static final short VERSION = 1;
+
+    private static final int HEADER_BYTES = 64;
+    private static final short KIND_FULL = 0;
+    private static final short KIND_DELTA = 1;
+    private static final byte ENC_UNIFORM = 0;
+    private static final byte ENC_RAW = 1;
+    private static final byte ENC_ABSENT = 2;
+    private static final byte MODE_COMPLETE = 0;
+    private static final byte MODE_PATCH = 1;
+
+    /** What the game thread hands to the writer. */
+    private static final class Capture {
+        long tick;
+        TileMap map;
+        final EntityStore entities = new EntityStore();
+        int[] handles;
+        int playerIndex;
+    }
+
+    private final Path path;
+    private final Path deltaPath;
+    private final ExecutorService writer;
+    private boolean hasFull; // game thread: a full save has been queued
+
+    // writer thread only
+    private Capture base;
+    private long baseId;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+    private float[] gatherF = new float[0];
+    private int[] gatherI = new int[0];
+
+    private volatile long lastCaptureNanos;
+    private volatile long lastWriteNanos;
+    private volatile long lastBytes;
+
+    public SaveGame(Path path) {
+        this.path = path;
+        this.deltaPath = path.resolveSibling(path.getFileName() + ".delta");
+        this.writer = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "SaveWriter");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Queues a delta save, or a full one if there is none yet. Game thread only. */
+    public void save(Simulation sim) {
+        if (hasFull) {
+            queue(sim, false);
+        } else {
+            saveFull(sim);
+        }
+    }
+
+    /** Queues a full save; the following deltas are relative to it. Game thread only. */
+    public void saveFull(Simulation sim) {
+        hasFull = true;
+        queue(sim, true);
+    }
+
+    private void queue(Simulation sim, boolean full) {
+        long t0 = System.nanoTime();
+        Capture c = capture(sim);
+        lastCaptureNanos = System.nanoTime() - t0;
+
+        writer.execute(() -> {
+            long w0 = System.nanoTime();
+            try {
+                long bytes = full ? writeFull(c) : writeDelta(c);
+                lastWriteNanos = System.nanoTime() - w0;
+                lastBytes = bytes;
+            } catch (IOException e) {
+                System.out.println("[Save] Save of tick " + c.tick + " failed: " + e.getMessage());
+                e.printStackTrace();
+            }
+        });
+    }
+
+    private static Capture capture(Simulation sim) {
+        EntityStore store = sim.getEntities();
+        Capture c = new Capture();
+        c.tick = sim.getTick();
+        c.map = sim.getMap().snapshot(null);
+        c.entities.copyFrom(store);
+        c.handles = new int[store.size()];
+        for (int i = 0; i < c.handles.length; i++) c.handles[i] = store.handleAt(i);
+        c.playerIndex = store.indexOf(sim.getPlayer().getEntity());
+        return c;
+    }
+
+    /** Blocks until every queued save is on disk. */
+    public void awaitIdle() {
+        try {
+            writer.submit(() -> { }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Time the game thread spent in the last {@link #save} call. */
+    public long getLastCaptureNanos() {
+        return lastCaptureNanos;
+    }
+
+    /** Background time of the last finished save (encode + write + move). */
+    public long getLastWriteNanos() {
+        return lastWriteNanos;
+    }
+
+    public long getLastBytes() {
+        return lastBytes;
+    }
+
+    /** Finishes the queued saves and stops the writer thread. */
+    @Override
+    public void close() {
+        awaitIdle();
+        writer.shutdown();
+    }
+
+    // ---- writing (SaveWriter thread) ----
+
+    private long writeFull(Capture c) throws IOException {
+        long id = ThreadLocalRandom.current().nextLong();
+        TileMap map = c.map;
+        int chunks = map.getChunksX() * map.getChunksY();
+        int n = c.entities.size();
+
+        long bytes;
+        Path tmp = tempFile(path);
+        try (FileChannel ch = open(tmp)) {
+            buffer.clear();
+            putHeader(KIND_FULL, id, c, chunks, n, MODE_COMPLETE);
+            long pos = 0;
+            for (int ci = 0; ci < chunks; ci++) pos = putChunk(ch, pos, map, ci);
+            pos = putEntities(ch, pos, c.entities, null, n);
+            bytes = flush(ch, pos);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(deltaPath); // it belonged to the previous full save
+
+        base = c;
+        baseId = id;
+        return bytes;
+    }
+
+    private long writeDelta(Capture c) throws IOException {
+        if (base == null) return writeFull(c); // the full save failed
+        TileMap map = c.map;
+        TileMap baseMap = base.map;
+        int chunksX = map.getChunksX();
+        int chunks = chunksX * map.getChunksY();
+
+        int changedChunks = 0;
+        for (int ci = 0; ci < chunks; ci++) {
+            if (chunkChanged(map, baseMap, ci, chunksX)) changedChunks++;
+        }
+
+        // patch by dense index only while the dense order is the one of the full save
+        EntityStore e = c.entities;
+        EntityStore b = base.entities;
+        int n = e.size();
+        int[] changed = null;
+        int records = n;
+        if (Arrays.equals(c.handles, base.handles)) {
+            changed = new int[n];
+            records = 0;
+            for (int i = 0; i < n; i++) {
+                if (entityChanged(e, b, i)) changed[records++] = i;
+            }
+        }
+
+        long bytes;
+        Path tmp = tempFile(deltaPath);
+        try (FileChannel ch = open(tmp)) {
+            buffer.clear();
+            putHeader(KIND_DELTA, baseId, c, changedChunks, records, changed != null ? MODE_PATCH : MODE_COMPLETE);
+            long pos = 0;
+            for (int ci = 0; ci < chunks; ci++) {
+                if (chunkChanged(map, baseMap, ci, chunksX)) pos = putChunk(ch, pos, map, ci);
+            }
+            if (changed != null) {
+                pos = putInts(ch, pos, changed, null, records);
+            }
+            pos = putEntities(ch, pos, e, changed, records);
+            bytes = flush(ch, pos);
+        }
+        Files.move(tmp, deltaPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return bytes;
+    }
+
+    private static boolean chunkChanged(TileMap map, TileMap baseMap, int ci, int chunksX) {
+        int cx = ci % chunksX;
+        int cy = ci / chunksX;
+        return map.getChunkVersion(cx, cy) != baseMap.getChunkVersion(cx, cy);
+    }
+
+    private static boolean entityChanged(EntityStore e, EntityStore b, int i) {
+        return Float.floatToRawIntBits(e.x[i]) != Float.floatToRawIntBits(b.x[i])
+                || Float.floatToRawIntBits(e.y[i]) != Float.floatToRawIntBits(b.y[i])
+                || Float.floatToRawIntBits(e.prevX[i]) != Float.floatToRawIntBits(b.prevX[i])
+                || Float.floatToRawIntBits(e.prevY[i]) != Float.floatToRawIntBits(b.prevY[i])
+                || Float.floatToRawIntBits(e.vx[i]) != Float.floatToRawIntBits(b.vx[i])
+                || Float.floatToRawIntBits(e.vy[i]) != Float.floatToRawIntBits(b.vy[i])
+                || Float.floatToRawIntBits(e.width[i]) != Float.floatToRawIntBits(b.width[i])
+                || Float.floatToRawIntBits(e.height[i]) != Float.floatToRawIntBits(b.height[i])
+                || e.color[i] != b.color[i]
+                || e.flags[i] != b.flags[i];
+    }
+
+    private void putHeader(short kind, long id, Capture c, int chunkRecords, int entityRecords, byte mode) {
+        TileMap map = c.map;
+        buffer.putInt(MAGIC).putShort(VERSION).putShort(kind)
+                .putLong(id).putLong(c.tick)
+                .putInt(map.getWidth()).putInt(map.getHeight()).putInt(map.getTileSize())
+                .putInt(chunkRecords)
+                .putInt(c.entities.size()).putInt(entityRecords)
+                .putInt(c.playerIndex)
+                .put(mode).put((byte) 0).putShort((short) 0);
+        while (buffer.position() < HEADER_BYTES) buffer.put((byte) 0);
+    }
+
+    private long putChunk(FileChannel ch, long pos, TileMap map, int ci) throws IOException {
+        if (buffer.remaining() < 8 + TileChunk.AREA) pos = flush(ch, pos);
+        TileChunk chunk = map.getChunk(ci % map.getChunksX(), ci / map.getChunksX());
+        buffer.putInt(ci);
+        if (chunk == null) {
+            buffer.put(ENC_ABSENT).put((byte) 0).putShort((short) 0);
+        } else if (chunk.isUniform()) {
+            buffer.put(ENC_UNIFORM).put((byte) chunk.getFill()).putShort((short) 0);
+        } else {
+            buffer.put(ENC_RAW).put((byte) 0).putShort((short) 0);
+            chunk.writeTo(buffer);
+        }
+        return pos;
+    }
+
+    /** Entity arrays, each either the first {@code n} entries or gathered at {@code index}. */
+    private long putEntities(FileChannel ch, long pos, EntityStore e, int[] index, int n) throws IOException {
+        for (float[] a : new float[][]{e.x, e.y, e.prevX, e.prevY, e.vx, e.vy, e.width, e.height}) {
+            pos = putFloats(ch, pos, a, index, n);
+        }
+        pos = putInts(ch, pos, e.color, index, n);
+        return putInts(ch, pos, e.flags, index, n);
+    }
+
+    private long putFloats(FileChannel ch, long pos, float[] a, int[] index, int n) throws IOException {
+        if (index != null) {
+            if (gatherF.length < n) gatherF = new float[n];
+            for (int k = 0; k < n; k++) gatherF[k] = a[index[k]];
+            a = gatherF;
+        }
+        for (int off = 0; off < n; ) {
+            if (buffer.remaining() < 4) pos = flush(ch, pos);
+            int k = Math.min(buffer.remaining() / 4, n - off);
+            buffer.asFloatBuffer().put(a, off, k);
+            buffer.position(buffer.position() + k * 4);
+            off += k;
+        }
+        return pos;
+    }
+
+    private long putInts(FileChannel ch, long pos, int[] a, int[] index, int n) throws IOException {
+        if (index != null) {
+            if (gatherI.length < n) gatherI = new int[n];
+            for (int k = 0; k < n; k++) gatherI[k] = a[index[k]];
+            a = gatherI;
+        }
+        for (int off = 0; off < n; ) {
+            if (buffer.remaining() < 4) pos = flush(ch, pos);
+            int k = Math.min(buffer.remaining() / 4, n - off);
+            buffer.asIntBuffer().put(a, off, k);
+            buffer.position(buffer.position() + k * 4);
+            off += k;
+        }
+        return pos;
+    }
+
+    /** Writes out the buffer; returns the new file position. */
+    private long flush(FileChannel ch, long pos) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) pos += ch.write(buffer, pos);
+        buffer.clear();
+        return pos;
+    }
+
+    private static FileChannel open(Path p) throws IOException {
+        return FileChannel.open(p, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private static Path tempFile(Path p) {
+        return p.resolveSibling(p.getFileName() + ".tmp");
+    }
+
+    // ---- loading ----
+
+    /**
+     * Rebuilds a simulation from {@code path} and, when it belongs to that
+     * full save, its ".delta" file. Entities keep their dense order, so the
+     * result has the same {@link Simulation#stateHash()} as the saved one.
+     */
+    public static Simulation load(Path path) throws IOException {
+        ByteBuffer full = read(path);
+        int kind = readHeader(full, path);
+        if (kind != KIND_FULL) throw new IOException(path + " is a delta, load its full save instead");
+        long id = full.getLong(8);
+        int width = full.getInt(24);
+        int height = full.getInt(28);
+        int tileSize = full.getInt(32);
+
+        TileMap map = TileMap.unloaded(width, height, tileSize);
+        Loaded state = new Loaded();
+        apply(full, map, state);
+
+        Path deltaPath = path.resolveSibling(path.getFileName() + ".delta");
+        if (Files.exists(deltaPath)) {
+            ByteBuffer delta = read(deltaPath);
+            if (readHeader(delta, deltaPath) == KIND_DELTA && delta.getLong(8) == id) {
+                apply(delta, map, state);
+            } else {
+                System.out.println("[Save] Ignoring " + deltaPath.getFileName() + ": it belongs to another save");
+            }
+        }
+
+        Simulation sim = new Simulation(map);
+        EntityStore store = sim.getEntities();
+        store.clear(); // drops the player entity the constructor made
+        int n = state.count;
+        for (int i = 0; i < n; i++) store.create(0, 0, 0, 0);
+        System.arraycopy(state.x, 0, store.x, 0, n);
+        System.arraycopy(state.y, 0, store.y, 0, n);
+        System.arraycopy(state.prevX, 0, store.prevX, 0, n);
+        System.arraycopy(state.prevY, 0, store.prevY, 0, n);
+        System.arraycopy(state.vx, 0, store.vx, 0, n);
+        System.arraycopy(state.vy, 0, store.vy, 0, n);
+        System.arraycopy(state.width, 0, store.width, 0, n);
+        System.arraycopy(state.height, 0, store.height, 0, n);
+        System.arraycopy(state.color, 0, store.color, 0, n);
+        System.arraycopy(state.flags, 0, store.flags, 0, n);
+        sim.getPlayer().setEntity(state.playerIndex >= 0 ? store.handleAt(state.playerIndex) : EntityStore.NULL);
+        sim.setTick(state.tick);
+        return sim;
+    }
+
+    /** Entity arrays being rebuilt from a full save and its delta. */
+    private static final class Loaded {
+        long tick;
+        int count;
+        int playerIndex;
+        float[] x, y, prevX, prevY, vx, vy, width, height;
+        int[] color, flags;
+    }
+
+    private static ByteBuffer read(Path p) throws IOException {
+        try (FileChannel ch = FileChannel.open(p, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size > Integer.MAX_VALUE) throw new IOException(p + " is too large");
+            ByteBuffer buf = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+            while (buf.hasRemaining()) {
+                if (ch.read(buf) < 0) throw new IOException("Unexpected end of file");
+            }
+            buf.flip();
+            return buf;
+        }
+    }
+
+    private static int readHeader(ByteBuffer buf, Path p) throws IOException {
+        if (buf.remaining() < HEADER_BYTES || buf.getInt(0) != MAGIC) throw new IOException("Not a save file (bad magic): " + p);
+        short version = buf.getShort(4);
+        if (version != VERSION) throw new IOException("Unsupported save version " + version);
+        return buf.getShort(6);
+    }
+
+    private static void apply(ByteBuffer buf, TileMap map, Loaded state) throws IOException {
+        if (buf.getInt(24) != map.getWidth() || buf.getInt(28) != map.getHeight() || buf.getInt(32) != map.getTileSize()) {
+            throw new IOException("Delta does not match the map size of its full save");
+        }
+        state.tick = buf.getLong(16);
+        int chunkRecords = buf.getInt(36);
+        int count = buf.getInt(40);
+        int records = buf.getInt(44);
+        state.playerIndex = buf.getInt(48);
+        byte mode = buf.get(52);
+
+        buf.position(HEADER_BYTES);
+        int chunksX = map.getChunksX();
+        for (int r = 0; r < chunkRecords; r++) {
+            int ci = buf.getInt();
+            byte encoding = buf.get();
+            int fill = buf.get() & 0xFF;
+            buf.getShort();
+            TileChunk chunk = switch (encoding) {
+                case ENC_UNIFORM -> TileChunk.uniform(fill);
+                case ENC_RAW -> {
+                    byte[] tiles = new byte[TileChunk.AREA];
+                    buf.get(tiles);
+                    yield TileChunk.of(tiles);
+                }
+                case ENC_ABSENT -> null;
+                default -> throw new IOException("Corrupt save: unknown chunk encoding " + encoding);
+            };
+            map.installChunk(ci % chunksX, ci / chunksX, chunk);
+        }
+
+        if (mode == MODE_COMPLETE) {
+            state.count = count;
+            state.x = getFloats(buf, records);
+            state.y = getFloats(buf, records);
+            state.prevX = getFloats(buf, records);
+            state.prevY = getFloats(buf, records);
+            state.vx = getFloats(buf, records);
+            state.vy = getFloats(buf, records);
+            state.width = getFloats(buf, records);
+            state.height = getFloats(buf, records);
+            state.color = getInts(buf, records);
+            state.flags = getInts(buf, records);
+        } else {
+            if (count != state.count) throw new IOException("Corrupt save: patch for " + count + " entities, have " + state.count);
+            int[] index = getInts(buf, records);
+            for (float[] a : new float[][]{state.x, state.y, state.prevX, state.prevY, state.vx, state.vy, state.width, state.height}) {
+                float[] v = getFloats(buf, records);
+                for (int k = 0; k < records; k++) a[index[k]] = v[k];
+            }
+            for (int[] a : new int[][]{state.color, state.flags}) {
+                int[] v = getInts(buf, records);
+                for (int k = 0; k < records; k++) a[index[k]] = v[k];
+            }
+        }
+    }
+
+    private static float[] getFloats(ByteBuffer buf, int n) {
+        float[] a = new float[n];
+        buf.asFloatBuffer().get(a);
+        buf.position(buf.position() + n * 4);
+        return a;
+    }
+
+    private static int[] getInts(ByteBuffer buf, int n) {
+        int[] a = new int[n];
+        buf.asIntBuffer().get(a);
+        buf.position(buf.position() + n * 4);
+        return a;
+    }
+}
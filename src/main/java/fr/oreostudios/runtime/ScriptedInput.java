@@ -0,0 +1,48 @@
+package fr.oreostudios.runtime;
+
+import java.util.Random;
+
+/**
+ * Input that plays back a fixed list of per-tick key masks (looping), for
+ * headless runs where there is no keyboard.
+ */
+public class ScriptedInput implements InputSource {
+
+    private final int[] masks;
+    private int current;
+
+    public ScriptedInput(int[] masks) {
+        if (masks.length == 0) throw new IllegalArgumentException("empty input script");
+        this.masks = masks.clone();
+    }
+
+    /**
+     * Random walk: a new direction (possibly diagonal or none) every
+     * {@code holdTicks} ticks. Same seed, same script.
+     */
+    public static ScriptedInput random(long seed, int length, int holdTicks) {
+        Random rnd = new Random(seed);
+        int[] masks = new int[length];
+        int mask = 0;
+        for (int i = 0; i < length; i++) {
+            if (i % holdTicks == 0) mask = rnd.nextInt(16);
+            masks[i] = mask;
+        }
+        return new ScriptedInput(masks);
+    }
+
+    @Override
+    public void poll(long tick) {
+        current = masks[(int) (tick % masks.length)];
+    }
+
+    @Override
+    public int getMask() {
+        return current;
+    }
+
+    @Override public boolean isUp()    { return (current & UP) != 0; }
+    @Override public boolean isDown()  { return (current & DOWN) != 0; }
+    @Override public boolean isLeft()  { return (current & LEFT) != 0; }
+    @Override public boolean isRight() { return (current & RIGHT) != 0; }
+}
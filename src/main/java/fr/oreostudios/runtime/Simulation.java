@@ -0,0 +1,111 @@
+package fr.oreostudios.runtime;
+
+/**
+ * The game world without any presentation: map, entities and the systems
+ * run at a fixed 60 Hz step. {@link GameEngine} wraps it in a window;
+ * {@link HeadlessRunner} drives it directly, with no display needed.
+ *
+ * Given the same map, spawns and input, {@link #step()} produces the same
+ * state bit for bit, which {@link #stateHash()} summarizes.
+ */
+public class Simulation {
+
+    public static final int TICKS_PER_SECOND = 60;
+    public static final float STEP = 1f / TICKS_PER_SECOND;
+
+    private final TileMap map;
+    private final EntityStore entities = new EntityStore();
+    private final SystemScheduler systems = new SystemScheduler();
+    private final SpatialGrid grid;
+    private final Player player;
+
+    private InputSource input;
+    private long tick;
+
+    public Simulation(TileMap map) {
+        this.map = map;
+        int ts = map.getTileSize();
+        this.player = new Player(entities, 2 * ts, 2 * ts, ts, ts);
+        this.grid = new SpatialGrid(map);
+
+        systems.add(player);
+        systems.add(new MovementSystem(map));
+        systems.add(grid);
+    }
+
+    public void setInput(InputSource input) {
+        this.input = input;
+        player.setInput(input);
+    }
+
+    /** Advances the world by one fixed step. */
+    public void step() {
+        if (input != null) input.poll(tick);
+        systems.update(entities, STEP);
+        tick++;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * Adds a system that drives velocities from input, like {@link Player}
+     * (e.g. remote players on a server). It runs right after the player and
+     * before movement.
+     */
+    public void addControlSystem(GameSystem system) {
+        systems.add(systems.getSystems().indexOf(player) + 1, system);
+    }
+
+    /** Used when a save is loaded. */
+    void setTick(long tick) {
+        this.tick = tick;
+    }
+
+    public TileMap getMap() {
+        return map;
+    }
+
+    public EntityStore getEntities() {
+        return entities;
+    }
+
+    public SystemScheduler getSystems() {
+        return systems;
+    }
+
+    public SpatialGrid getSpatialGrid() {
+        return grid;
+    }
+
+    public Player getPlayer() {
+        return player;
+    }
+
+    /**
+     * 64-bit FNV-1a over the tick count and the raw bits of every entity's
+     * position and velocity, in dense order.
+     */
+    public long stateHash() {
+        long h = 0xcbf29ce484222325L;
+        h = mix(h, (int) tick);
+        h = mix(h, (int) (tick >>> 32));
+        h = mix(h, entities.size());
+        for (int i = 0, n = entities.size(); i < n; i++) {
+            h = mix(h, Float.floatToRawIntBits(entities.x[i]));
+            h = mix(h, Float.floatToRawIntBits(entities.y[i]));
+            h = mix(h, Float.floatToRawIntBits(entities.vx[i]));
+            h = mix(h, Float.floatToRawIntBits(entities.vy[i]));
+        }
+        return h;
+    }
+
+    private static long mix(long h, int v) {
+        for (int b = 0; b < 4; b++) {
+            h ^= (v >>> (b * 8)) & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+}
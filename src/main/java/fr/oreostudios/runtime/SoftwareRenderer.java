@@ -0,0 +1,171 @@
+package fr.oreostudios.runtime;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * Draws straight into the int[] behind a {@link BufferedImage}, with no
+ * Graphics state or per-call pipeline validation: rect fills are
+ * {@code Arrays.fill} per row, opaque blits {@code System.arraycopy} per
+ * row, and only translucent sprite pixels are blended one by one.
+ * The finished frame goes to the screen with a single {@code drawImage}.
+ *
+ * Everything is clipped to the image and to the current row band
+ * ({@link #setClip}), which lets several threads fill disjoint bands of
+ * one frame.
+ */
+public class SoftwareRenderer implements RenderTarget {
+
+    private final BufferedImage image;
+    private final int[] pixels;
+    private final int width;
+    private final int height;
+
+    // rows drawn: [clipY0, clipY1)
+    private int clipY0;
+    private int clipY1;
+
+    public SoftwareRenderer(int width, int height) {
+        this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        this.pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        this.width = width;
+        this.height = height;
+        this.clipY1 = height;
+    }
+
+    // another view of the same pixels, with its own clip
+    private SoftwareRenderer(SoftwareRenderer of) {
+        this.image = of.image;
+        this.pixels = of.pixels;
+        this.width = of.width;
+        this.height = of.height;
+        this.clipY1 = height;
+    }
+
+    /**
+     * A renderer drawing into the same framebuffer with an independent
+     * clip, for one thread's band.
+     */
+    public SoftwareRenderer view() {
+        return new SoftwareRenderer(this);
+    }
+
+    /** The frame, for {@code Graphics.drawImage}. */
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    /** Restricts drawing to rows [y0, y1). */
+    public void setClip(int y0, int y1) {
+        clipY0 = Math.max(0, y0);
+        clipY1 = Math.min(height, y1);
+    }
+
+    @Override
+    public void clear(int rgb) {
+        Arrays.fill(pixels, clipY0 * width, clipY1 * width, rgb);
+    }
+
+    @Override
+    public void fillRect(int x, int y, int w, int h, int rgb) {
+        int x0 = Math.max(x, 0);
+        int y0 = Math.max(y, clipY0);
+        int x1 = Math.min(x + w, width);
+        int y1 = Math.min(y + h, clipY1);
+        if (x0 >= x1 || y0 >= y1) return;
+
+        for (int row = y0; row < y1; row++) {
+            int off = row * width;
+            Arrays.fill(pixels, off + x0, off + x1, rgb);
+        }
+    }
+
+    /** Draws a sprite with its top-left corner at (x, y), blending by source alpha. */
+    @Override
+    public void blit(Sprite sprite, int x, int y) {
+        int sw = sprite.getWidth();
+        int x0 = Math.max(x, 0);
+        int y0 = Math.max(y, clipY0);
+        int x1 = Math.min(x + sw, width);
+        int y1 = Math.min(y + sprite.getHeight(), clipY1);
+        if (x0 >= x1 || y0 >= y1) return;
+
+        if (sprite.isOpaque()) {
+            copyRows(sprite.getPixels(), (y0 - y) * sw + (x0 - x), sw, x0, y0, x1 - x0, y1 - y0);
+            return;
+        }
+
+        int[] src = sprite.getPremultipliedPixels();
+        for (int row = y0; row < y1; row++) {
+            int s = (row - y) * sw + (x0 - x);
+            int d = row * width + x0;
+            for (int end = d + (x1 - x0); d < end; d++, s++) {
+                int p = src[s];
+                int a = p >>> 24;
+                if (a == 0) continue;
+                if (a == 0xFF) {
+                    pixels[d] = p & 0xFFFFFF;
+                    continue;
+                }
+                pixels[d] = blendPremultiplied(p, pixels[d], a);
+            }
+        }
+    }
+
+    /** Draws tile {@code tile} of the atlas with its top-left corner at (x, y). */
+    @Override
+    public void blitTile(TileAtlas atlas, int tile, int x, int y) {
+        int ts = atlas.getTileSize();
+        int x0 = Math.max(x, 0);
+        int y0 = Math.max(y, clipY0);
+        int x1 = Math.min(x + ts, width);
+        int y1 = Math.min(y + ts, clipY1);
+        if (x0 >= x1 || y0 >= y1) return;
+
+        int base = tile * ts * ts;
+        copyRows(atlas.getPixels(), base + (y0 - y) * ts + (x0 - x), ts, x0, y0, x1 - x0, y1 - y0);
+    }
+
+    /** Only the tiles overlapping the clip band. */
+    @Override
+    public void drawMap(TileMap map, TileAtlas atlas, int camX, int camY) {
+        drawMapRows(map, atlas, camX, camY, clipY0, clipY1);
+    }
+
+    private void copyRows(int[] src, int srcOff, int srcStride, int x, int y, int w, int h) {
+        int d = y * width + x;
+        for (int row = 0; row < h; row++) {
+            System.arraycopy(src, srcOff, pixels, d, w);
+            srcOff += srcStride;
+            d += width;
+        }
+    }
+
+    /**
+     * Premultiplied src over dst. Each product is rounded like Java2D's own
+     * blending loops, so both paths produce the same pixels.
+     */
+    private static int blendPremultiplied(int src, int dst, int alpha) {
+        int ia = 255 - alpha;
+        int r = ((src >> 16) & 0xFF) + mul8(ia, (dst >> 16) & 0xFF);
+        int g = ((src >> 8) & 0xFF) + mul8(ia, (dst >> 8) & 0xFF);
+        int b = (src & 0xFF) + mul8(ia, dst & 0xFF);
+        return (r << 16) | (g << 8) | b;
+    }
+
+    /** round(a * b / 255) for 8-bit a and b. */
+    static int mul8(int a, int b) {
+        return ((a * b + 128) * 257) >> 16;
+    }
+}
@@ -0,0 +1,286 @@
+package fr.oreostudios.runtime;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Uniform-grid broadphase for entity-vs-entity queries, with cells of
+ * {@link #CELL_TILES} x {@link #CELL_TILES} map tiles.
+ *
+ * Each entity is binned by the cell of its center. Cells live in an
+ * open-addressing table indexed by cell: grids of up to {@link #DIRECT_CELLS}
+ * cells get a slot per cell (no hashing, no probing), bigger ones a hashed
+ * table sized by the entity count, so a streamed 8192x8192 map costs no
+ * more memory than a small one. {@link #rebuild} redoes the whole grid
+ * with a counting sort into flat int arrays (O(n), no per-entity
+ * allocation), clearing only the slots the previous rebuild used, which is
+ * cheaper than tracking moves incrementally when most entities move every
+ * tick. Queries widen their cell range by the largest
+ * half-extent seen during the rebuild, so entities bigger than a cell are
+ * still found.
+ *
+ * Queries write dense entity indices into a caller-supplied array and return
+ * how many were found; nothing allocates after the first rebuild.
+ * The grid reflects the store as of the last rebuild only. As a system it
+ * rebuilds once per tick; systems querying it should read {@link Component#SPATIAL}.
+ */
+public class SpatialGrid implements GameSystem {
+
+    /** Receives each overlapping pair once, with {@code a < b}. */
+    public interface PairVisitor {
+        void visit(int a, int b);
+    }
+
+    /** Tiles per cell side for {@link #SpatialGrid(TileMap)}. */
+    public static final int CELL_TILES = 2;
+
+    /** Largest grid given one slot per cell (about 4 MB of table; 1024x1024 tiles at 2 tiles per cell). */
+    public static final int DIRECT_CELLS = 1 << 18;
+
+    private static final int EMPTY = -1;
+
+    private final float cellSize;
+    private final float invCellSize;
+    private final int cols;
+    private final int rows;
+
+    // occupied cells, 3 ints per slot: cell index (or EMPTY), then its entities
+    // are entries[start .. start + count]. One array, so a lookup touches one cache line.
+    private int[] table = new int[0];
+    private int[] usedSlots = new int[0]; // slots filled by the last rebuild, to clear them next time
+    private int usedCount;
+    private int shift; // 32 - log2(slot count)
+    private final boolean direct; // one slot per cell: the slot is the cell index
+
+    private int[] entries = new int[0];
+    private int[] entrySlot = new int[0]; // per dense index: table offset of its cell, from the last rebuild
+
+    private EntityStore store;
+    private int count;
+    private float maxHalfW, maxHalfH;
+
+    public SpatialGrid(TileMap map) {
+        this((map.getWidth() + CELL_TILES - 1) / CELL_TILES, (map.getHeight() + CELL_TILES - 1) / CELL_TILES,
+                map.getTileSize() * CELL_TILES);
+    }
+
+    public SpatialGrid(int cols, int rows, float cellSize) {
+        if ((long) cols * rows > Integer.MAX_VALUE) throw new IllegalArgumentException("Grid too large: " + cols + "x" + rows);
+        this.cols = cols;
+        this.rows = rows;
+        this.cellSize = cellSize;
+        this.invCellSize = 1f / cellSize;
+        this.direct = cols * rows <= DIRECT_CELLS;
+    }
+
+    @Override
+    public Set<Component> reads() {
+        return EnumSet.of(Component.POSITION, Component.EXTENT);
+    }
+
+    @Override
+    public Set<Component> writes() {
+        return EnumSet.of(Component.SPATIAL);
+    }
+
+    @Override
+    public void update(EntityStore store, float dt) {
+        rebuild(store);
+    }
+
+    public void rebuild(EntityStore store) {
+        this.store = store;
+        int n = store.size();
+        this.count = n;
+        if (entries.length < n) {
+            int cap = Math.max(n, entries.length * 2);
+            entries = new int[cap];
+            entrySlot = new int[cap];
+        }
+        int slots = table.length / 3;
+        if (slots == 0 || (!direct && slots < 2 * n)) {
+            // direct: a slot per cell; hashed: at most n cells are occupied, keep the table at most half full
+            slots = Integer.highestOneBit(Math.max(32, (direct ? cols * rows : 2 * n) - 1)) << 1;
+            table = new int[slots * 3];
+            for (int s = 0; s < slots; s++) table[s * 3] = EMPTY;
+            usedSlots = new int[slots];
+            shift = 32 - Integer.numberOfTrailingZeros(slots);
+        } else {
+            for (int u = 0; u < usedCount; u++) table[usedSlots[u] * 3] = EMPTY;
+        }
+        usedCount = 0;
+
+        float[] x = store.x, y = store.y, w = store.width, h = store.height;
+        int[] t = table;
+        int mask = slots - 1;
+
+        float mhw = 0, mhh = 0;
+        for (int i = 0; i < n; i++) {
+            float hw = w[i] * 0.5f;
+            float hh = h[i] * 0.5f;
+            if (hw > mhw) mhw = hw;
+            if (hh > mhh) mhh = hh;
+            int c = cellIndex(x[i] + hw, y[i] + hh);
+            int slot = hash(c);
+            while (t[slot * 3] != c && t[slot * 3] != EMPTY) slot = (slot + 1) & mask;
+            int at = slot * 3;
+            if (t[at] == EMPTY) {
+                t[at] = c;
+                t[at + 2] = 0;
+                usedSlots[usedCount++] = slot;
+            }
+            t[at + 2]++;
+            entrySlot[i] = at;
+        }
+        maxHalfW = mhw;
+        maxHalfH = mhh;
+
+        int start = 0;
+        for (int u = 0; u < usedCount; u++) {
+            int at = usedSlots[u] * 3;
+            t[at + 1] = start;
+            start += t[at + 2];
+        }
+
+        // scatter, advancing each cell's start as we go
+        for (int i = 0; i < n; i++) {
+            entries[t[entrySlot[i] + 1]++] = i;
+        }
+        // the starts now hold the end of each cell: move them back
+        for (int u = 0; u < usedCount; u++) {
+            int at = usedSlots[u] * 3;
+            t[at + 1] -= t[at + 2];
+        }
+    }
+
+    private int hash(int c) {
+        return direct ? c : (c * 0x9E3779B9) >>> shift;
+    }
+
+    /** Table offset of cell {@code c} (key, start, count), or -1 when no entity is in it. */
+    private int slotOf(int c) {
+        int[] t = table;
+        int mask = t.length / 3 - 1;
+        int slot = hash(c);
+        int k;
+        while ((k = t[slot * 3]) != c) {
+            if (k == EMPTY) return -1;
+            slot = (slot + 1) & mask;
+        }
+        return slot * 3;
+    }
+
+    /**
+     * Entities whose box overlaps the given rectangle.
+     *
+     * @return number of indices written to {@code out} (capped at its length)
+     */
+    public int queryRect(float qx, float qy, float qw, float qh, int[] out) {
+        return queryRect(qx, qy, qw, qh, -1, out);
+    }
+
+    /** Entities whose box overlaps the circle (box-vs-circle test). */
+    public int queryRadius(float cx, float cy, float radius, int[] out) {
+        float[] x = store.x, y = store.y, w = store.width, h = store.height;
+        float r2 = radius * radius;
+
+        int c0 = clampCol(cx - radius - maxHalfW);
+        int c1 = clampCol(cx + radius + maxHalfW);
+        int r0 = clampRow(cy - radius - maxHalfH);
+        int r1 = clampRow(cy + radius + maxHalfH);
+
+        int found = 0;
+        for (int row = r0; row <= r1; row++) {
+            for (int col = c0; col <= c1; col++) {
+                int slot = slotOf(row * cols + col);
+                if (slot < 0) continue;
+                for (int k = table[slot + 1], end = k + table[slot + 2]; k < end; k++) {
+                    int i = entries[k];
+                    float nx = Math.max(x[i], Math.min(cx, x[i] + w[i]));
+                    float ny = Math.max(y[i], Math.min(cy, y[i] + h[i]));
+                    float dx = cx - nx, dy = cy - ny;
+                    if (dx * dx + dy * dy <= r2) {
+                        if (found == out.length) return found;
+                        out[found++] = i;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /** Calls the visitor once for every pair of overlapping entities. */
+    public void forEachPair(PairVisitor visitor) {
+        float[] x = store.x, y = store.y, w = store.width, h = store.height;
+        for (int a = 0; a < count; a++) {
+            float ax = x[a], ay = y[a], aw = w[a], ah = h[a];
+            int c0 = clampCol(ax - maxHalfW);
+            int c1 = clampCol(ax + aw + maxHalfW);
+            int r0 = clampRow(ay - maxHalfH);
+            int r1 = clampRow(ay + ah + maxHalfH);
+
+            for (int row = r0; row <= r1; row++) {
+                for (int col = c0; col <= c1; col++) {
+                    int slot = slotOf(row * cols + col);
+                    if (slot < 0) continue;
+                    for (int k = table[slot + 1], end = k + table[slot + 2]; k < end; k++) {
+                        int b = entries[k];
+                        if (b <= a) continue;
+                        if (ax < x[b] + w[b] && x[b] < ax + aw && ay < y[b] + h[b] && y[b] < ay + ah) {
+                            visitor.visit(a, b);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private int queryRect(float qx, float qy, float qw, float qh, int skip, int[] out) {
+        float[] x = store.x, y = store.y, w = store.width, h = store.height;
+        int c0 = clampCol(qx - maxHalfW);
+        int c1 = clampCol(qx + qw + maxHalfW);
+        int r0 = clampRow(qy - maxHalfH);
+        int r1 = clampRow(qy + qh + maxHalfH);
+
+        int found = 0;
+        for (int row = r0; row <= r1; row++) {
+            for (int col = c0; col <= c1; col++) {
+                int slot = slotOf(row * cols + col);
+                if (slot < 0) continue;
+                for (int k = table[slot + 1], end = k + table[slot + 2]; k < end; k++) {
+                    int i = entries[k];
+                    if (i == skip) continue;
+                    if (qx < x[i] + w[i] && x[i] < qx + qw && qy < y[i] + h[i] && y[i] < qy + qh) {
+                        if (found == out.length) return found;
+                        out[found++] = i;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /** Entities overlapping entity {@code index}, excluding itself. */
+    public int queryOverlapping(int index, int[] out) {
+        return queryRect(store.x[index], store.y[index], store.width[index], store.height[index], index, out);
+    }
+
+    private int cellIndex(float wx, float wy) {
+        return clampRow(wy) * cols + clampCol(wx);
+    }
+
+    // positions outside the map end up in the border cells
+    private int clampCol(float wx) {
+        int c = (int) Math.floor(wx * invCellSize);
+        return c < 0 ? 0 : (c >= cols ? cols - 1 : c);
+    }
+
+    private int clampRow(float wy) {
+        int r = (int) Math.floor(wy * invCellSize);
+        return r < 0 ? 0 : (r >= rows ? rows - 1 : r);
+    }
+
+    public float getCellSize() {
+        return cellSize;
+    }
+}
@@ -0,0 +1,76 @@
+package fr.oreostudios.runtime;
+
+import java.util.Random;
+
+/**
+ * One tick for 50k moving entities: movement, grid rebuild and full pair
+ * enumeration against the 16 ms budget, plus the cost of one radius query
+ * per entity on top.
+ *
+ * Run with: java -cp target/classes fr.oreostudios.runtime.SpatialGridBenchmark
+ */
+public class SpatialGridBenchmark {
+
+    private static final int ENTITIES = 50_000;
+    private static final int MAP_SIZE = 512;
+    private static final int WARMUP_TICKS = 100;
+    private static final int TICKS = 300;
+    private static final float DT = 1f / 60f;
+
+    private static long pairs;
+
+    public static void main(String[] args) {
+        TileMap map = new TileMap(MAP_SIZE, MAP_SIZE, 32);
+        EntityStore store = new EntityStore(ENTITIES);
+        Random rnd = new Random(7);
+        for (int i = 0; i < ENTITIES; i++) {
+            float px = 64 + rnd.nextFloat() * ((MAP_SIZE - 4) * 32);
+            float py = 64 + rnd.nextFloat() * ((MAP_SIZE - 4) * 32);
+            int e = store.create(px, py, 12, 12);
+            int idx = store.indexOf(e);
+            store.vx[idx] = (rnd.nextFloat() - 0.5f) * 300f;
+            store.vy[idx] = (rnd.nextFloat() - 0.5f) * 300f;
+            store.flags[idx] = EntityStore.FLAG_BOUNCE;
+        }
+
+        MovementSystem movement = new MovementSystem(map);
+        SpatialGrid grid = new SpatialGrid(map);
+        SpatialGrid.PairVisitor counter = (a, b) -> pairs++;
+        int[] scratch = new int[256];
+
+        long[] phase = new long[4];
+        long queryHits = 0;
+        for (int t = 0; t < WARMUP_TICKS + TICKS; t++) {
+            boolean timed = t >= WARMUP_TICKS;
+            long t0 = System.nanoTime();
+            movement.update(store, DT);
+            long t1 = System.nanoTime();
+            grid.rebuild(store);
+            long t2 = System.nanoTime();
+            grid.forEachPair(counter);
+            long t3 = System.nanoTime();
+            for (int i = 0; i < ENTITIES; i++) {
+                queryHits += grid.queryRadius(store.x[i] + 6, store.y[i] + 6, 48, scratch);
+            }
+            long t4 = System.nanoTime();
+            if (timed) {
+                phase[0] += t1 - t0;
+                phase[1] += t2 - t1;
+                phase[2] += t3 - t2;
+                phase[3] += t4 - t3;
+            }
+        }
+
+        double move = phase[0] / (double) TICKS / 1e6;
+        double rebuild = phase[1] / (double) TICKS / 1e6;
+        double pairMs = phase[2] / (double) TICKS / 1e6;
+        double radius = phase[3] / (double) TICKS / 1e6;
+        System.out.printf("%d entities on a %dx%d map, per tick:%n", ENTITIES, MAP_SIZE, MAP_SIZE);
+        System.out.printf("  movement           %.3f ms%n", move);
+        System.out.printf("  grid rebuild       %.3f ms%n", rebuild);
+        System.out.printf("  pair enumerate     %.3f ms (%d pairs/tick)%n", pairMs, pairs / (WARMUP_TICKS + TICKS));
+        System.out.printf("  move+rebuild+pairs %.3f ms of a 16.67 ms tick%n", move + rebuild + pairMs);
+        System.out.printf("  50k radius(48)     %.3f ms extra (%d hits/tick, %.0f ns/query)%n",
+                radius, queryHits / (WARMUP_TICKS + TICKS), phase[3] / (double) TICKS / ENTITIES);
+    }
+}
@@ -0,0 +1,63 @@
+package fr.oreostudios.runtime;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * ARGB pixels for {@link SoftwareRenderer#blit}. Remembers whether any
+ * pixel is translucent so fully opaque sprites can be copied row by row,
+ * and keeps a premultiplied copy so blending only scales the destination.
+ */
+public final class Sprite {
+
+    private final int width;
+    private final int height;
+    private final int[] argb;
+    private final int[] premultiplied; // alpha kept in the top byte
+    private final boolean opaque;
+
+    public Sprite(int width, int height, int[] argb) {
+        if (argb.length != width * height) throw new IllegalArgumentException("sprite needs " + width * height + " pixels");
+        this.width = width;
+        this.height = height;
+        this.argb = argb;
+
+        this.premultiplied = new int[argb.length];
+        boolean o = true;
+        for (int i = 0; i < argb.length; i++) {
+            int p = argb[i];
+            int a = p >>> 24;
+            if (a != 0xFF) o = false;
+            premultiplied[i] = (a << 24)
+                    | (SoftwareRenderer.mul8(a, (p >> 16) & 0xFF) << 16)
+                    | (SoftwareRenderer.mul8(a, (p >> 8) & 0xFF) << 8)
+                    | SoftwareRenderer.mul8(a, p & 0xFF);
+        }
+        this.opaque = o;
+    }
+
+    public static Sprite fromImage(BufferedImage img) {
+        int w = img.getWidth();
+        int h = img.getHeight();
+        return new Sprite(w, h, img.getRGB(0, 0, w, h, null, 0, w));
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    int[] getPixels() {
+        return argb;
+    }
+
+    int[] getPremultipliedPixels() {
+        return premultiplied;
+    }
+
+    public boolean isOpaque() {
+        return opaque;
+    }
+}
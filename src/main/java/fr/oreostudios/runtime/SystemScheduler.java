@@ -0,0 +1,157 @@
+package fr.oreostudios.runtime;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Runs the registered {@link GameSystem}s once per tick on a fork-join pool.
+ *
+ * The systems are grouped into waves: a system goes into the wave after
+ * the last earlier system it conflicts with (one writes what the other
+ * reads or writes). Access sets are read once, when a system is added, and
+ * the waves are only worked out again after the system list changed.
+ * Systems of one wave run concurrently, and large {@link ParallelSystem}s
+ * are further split into entity ranges. Since conflicting systems keep
+ * their registration order and range chunks only touch their own entities,
+ * the result is identical to running everything serially in order.
+ *
+ * Serial mode (for debugging) can be forced with {@link #setSerial(boolean)}
+ * or {@code -Doreo.serialSystems=true}.
+ */
+public class SystemScheduler {
+
+    /** Below this many entities per chunk, splitting costs more than it saves. */
+    private static final int DEFAULT_MIN_CHUNK = 4096;
+
+    private final List<GameSystem> systems = new ArrayList<>();
+    private final List<Set<Component>> reads = new ArrayList<>();  // per system, taken at add()
+    private final List<Set<Component>> writes = new ArrayList<>();
+    private final ForkJoinPool pool;
+
+    private boolean serial = Boolean.getBoolean("oreo.serialSystems");
+    private int minChunk = DEFAULT_MIN_CHUNK;
+
+    private int[] wave = new int[0];
+    private int waveCount = -1; // -1: systems changed, waves to rebuild
+
+    // per-tick scratch
+    private final List<ForkJoinTask<?>> tasks = new ArrayList<>();
+
+    public SystemScheduler() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public SystemScheduler(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public void add(GameSystem system) {
+        add(systems.size(), system);
+    }
+
+    /** Inserts a system at a position in the run order. */
+    public void add(int index, GameSystem system) {
+        systems.add(index, system);
+        reads.add(index, access(system.reads()));
+        writes.add(index, access(system.writes()));
+        waveCount = -1;
+    }
+
+    private static Set<Component> access(Set<Component> declared) {
+        Set<Component> set = EnumSet.noneOf(Component.class);
+        set.addAll(declared);
+        return set;
+    }
+
+    public List<GameSystem> getSystems() {
+        return Collections.unmodifiableList(systems);
+    }
+
+    public void setSerial(boolean serial) {
+        this.serial = serial;
+    }
+
+    public boolean isSerial() {
+        return serial;
+    }
+
+    public void setMinChunk(int minChunk) {
+        this.minChunk = Math.max(1, minChunk);
+    }
+
+    public void update(EntityStore store, float dt) {
+        if (serial || pool.getParallelism() <= 1) {
+            for (GameSystem system : systems) system.update(store, dt);
+            return;
+        }
+
+        if (waveCount < 0) waveCount = buildWaves();
+        for (int w = 0; w < waveCount; w++) {
+            runWave(w, store, dt);
+        }
+    }
+
+    /** Assigns each system its wave index; returns the number of waves. */
+    private int buildWaves() {
+        int n = systems.size();
+        if (wave.length < n) wave = new int[n];
+
+        int waveCount = 0;
+        for (int i = 0; i < n; i++) {
+            int w = 0;
+            for (int j = 0; j < i; j++) {
+                if (wave[j] >= w && conflicts(j, i)) w = wave[j] + 1;
+            }
+            wave[i] = w;
+            waveCount = Math.max(waveCount, w + 1);
+        }
+        return waveCount;
+    }
+
+    private void runWave(int w, EntityStore store, float dt) {
+        tasks.clear();
+        int size = store.size();
+        int maxChunks = pool.getParallelism() * 4;
+
+        for (int i = 0, n = systems.size(); i < n; i++) {
+            if (wave[i] != w) continue;
+            GameSystem s = systems.get(i);
+
+            if (s instanceof ParallelSystem ps && size >= 2 * minChunk) {
+                int chunks = Math.min(maxChunks, size / minChunk);
+                int per = (size + chunks - 1) / chunks;
+                for (int from = 0; from < size; from += per) {
+                    int start = from;
+                    int end = Math.min(size, from + per);
+                    tasks.add(ForkJoinTask.adapt(() -> ps.update(store, dt, start, end)));
+                }
+            } else {
+                tasks.add(ForkJoinTask.adapt(() -> s.update(store, dt)));
+            }
+        }
+
+        if (tasks.size() == 1) {
+            tasks.get(0).invoke();
+        } else {
+            pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+        }
+    }
+
+    private boolean conflicts(int a, int b) {
+        return intersects(writes.get(a), reads.get(b))
+                || intersects(writes.get(a), writes.get(b))
+                || intersects(reads.get(a), writes.get(b));
+    }
+
+    private static boolean intersects(Set<Component> a, Set<Component> b) {
+        for (Component c : a) {
+            if (b.contains(c)) return true;
+        }
+        return false;
+    }
+}
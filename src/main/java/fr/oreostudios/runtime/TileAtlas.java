@@ -0,0 +1,43 @@
+package fr.oreostudios.runtime;
+
+import java.util.Arrays;
+
+/**
+ * Every tile id's image in one int[] column (tile t occupies rows
+ * t * tileSize to (t + 1) * tileSize), so a tile blit is a few
+ * {@code System.arraycopy} calls from a single array.
+ */
+public final class TileAtlas {
+
+    private final int tileSize;
+    private final int tileCount;
+    private final int[] pixels;
+
+    private TileAtlas(int tileSize, int tileCount) {
+        this.tileSize = tileSize;
+        this.tileCount = tileCount;
+        this.pixels = new int[tileSize * tileSize * tileCount];
+    }
+
+    /** Plain colored squares, same look as {@link TileMap#render}. */
+    public static TileAtlas solid(int tileSize, int tileCount) {
+        TileAtlas atlas = new TileAtlas(tileSize, tileCount);
+        for (int t = 0; t < tileCount; t++) {
+            int rgb = TileMap.tileColor(t).getRGB() & 0xFFFFFF;
+            Arrays.fill(atlas.pixels, t * tileSize * tileSize, (t + 1) * tileSize * tileSize, rgb);
+        }
+        return atlas;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public int getTileCount() {
+        return tileCount;
+    }
+
+    int[] getPixels() {
+        return pixels;
+    }
+}
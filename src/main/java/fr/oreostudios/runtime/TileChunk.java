@@ -0,0 +1,175 @@
+package fr.oreostudios.runtime;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Fixed-size square block of tiles (SIZE x SIZE), one byte per tile.
+ * Chunks where every tile is the same id carry no array at all: they are
+ * shared singletons (see {@link #uniform(int)}) and get swapped for a dense
+ * copy the first time one of their tiles is written.
+ *
+ * The wall tiles of a chunk can also be read as a short list of rectangles
+ * (see {@link #wallRects()}), built on first use and dropped on the next write.
+ */
+final class TileChunk {
+
+    static final int SHIFT = 5;
+    static final int SIZE = 1 << SHIFT;   // 32 tiles per side
+    static final int MASK = SIZE - 1;
+    static final int AREA = SIZE * SIZE;
+
+    private static final TileChunk[] UNIFORM = new TileChunk[256];
+
+    static {
+        for (int i = 0; i < UNIFORM.length; i++) {
+            UNIFORM[i] = new TileChunk((byte) i, null);
+        }
+    }
+
+    private final byte fill;      // tile id when uniform
+    private final byte[] tiles;   // row-major, null when uniform
+
+    // packed wall rectangles, see rect(); null until asked for after a write.
+    // Chunks shared with a snapshot are never written, so racing builds agree.
+    private volatile int[] wallRects;
+
+    private static final int[] NO_RECTS = new int[0];
+    private static final int[] FULL_RECT = {rect(0, 0, SIZE, SIZE)};
+
+    // epoch of the TileMap allowed to write this chunk in place; any other
+    // map (or a later epoch) has to copy it first, see TileMap#snapshot
+    int owner;
+
+    private TileChunk(byte fill, byte[] tiles) {
+        this.fill = fill;
+        this.tiles = tiles;
+    }
+
+    /** Shared, immutable chunk where every tile is {@code tile}. */
+    static TileChunk uniform(int tile) {
+        return UNIFORM[tile & 0xFF];
+    }
+
+    /**
+     * Chunk over a full SIZE*SIZE row-major array, which it takes ownership
+     * of. Returns the shared instance instead if all tiles are equal.
+     */
+    static TileChunk of(byte[] tiles) {
+        if (tiles.length != AREA) throw new IllegalArgumentException("chunk needs " + AREA + " tiles");
+        return new TileChunk(tiles[0], tiles).compact();
+    }
+
+    boolean isUniform() {
+        return tiles == null;
+    }
+
+    int get(int localX, int localY) {
+        if (tiles == null) return fill & 0xFF;
+        return tiles[(localY << SHIFT) | localX] & 0xFF;
+    }
+
+    /** Only valid on dense chunks; uniform ones must go through {@link #toDense()} first. */
+    void set(int localX, int localY, int tile) {
+        tiles[(localY << SHIFT) | localX] = (byte) tile;
+        if (wallRects != null) wallRects = null;
+    }
+
+    /** Tile id of a uniform chunk. */
+    int getFill() {
+        return fill & 0xFF;
+    }
+
+    /** Copies all tiles, row-major, into {@code dst} at {@code offset}. */
+    void copyTo(byte[] dst, int offset) {
+        if (tiles == null) Arrays.fill(dst, offset, offset + AREA, fill);
+        else System.arraycopy(tiles, 0, dst, offset, AREA);
+    }
+
+    /** Puts all tiles, row-major, into {@code dst} in one bulk copy. */
+    void writeTo(ByteBuffer dst) {
+        if (tiles == null) {
+            for (int i = 0; i < AREA; i++) dst.put(fill);
+        } else {
+            dst.put(tiles);
+        }
+    }
+
+    /**
+     * {@link TileMap#WALL} tiles merged greedily into non-overlapping
+     * rectangles, in chunk-local tiles; unpack with {@link #rectX} etc.
+     * Each rectangle is grown as far right as the row allows, then down
+     * while the rows below are walls over the same span. A long wall run
+     * becomes one rectangle, a solid chunk one rectangle.
+     */
+    int[] wallRects() {
+        int[] rects = wallRects;
+        if (rects != null) return rects;
+        if (tiles == null) return (fill & 0xFF) == TileMap.WALL ? FULL_RECT : NO_RECTS;
+
+        // one bit per wall tile, one int per row
+        int[] rows = new int[SIZE];
+        for (int y = 0; y < SIZE; y++) {
+            int bits = 0;
+            for (int x = 0; x < SIZE; x++) {
+                if (tiles[(y << SHIFT) | x] == TileMap.WALL) bits |= 1 << x;
+            }
+            rows[y] = bits;
+        }
+        int[] out = new int[16];
+        int n = 0;
+        for (int y = 0; y < SIZE; y++) {
+            while (rows[y] != 0) {
+                int x = Integer.numberOfTrailingZeros(rows[y]);
+                int w = Integer.numberOfTrailingZeros(~(rows[y] >>> x));
+                int span = w == SIZE ? -1 : ((1 << w) - 1) << x;
+                int h = 1;
+                while (y + h < SIZE && (rows[y + h] & span) == span) h++;
+                for (int r = y; r < y + h; r++) rows[r] &= ~span;
+                if (n == out.length) out = Arrays.copyOf(out, n * 2);
+                out[n++] = rect(x, y, w, h);
+            }
+        }
+        rects = Arrays.copyOf(out, n);
+        wallRects = rects;
+        return rects;
+    }
+
+    /** Full-chunk rectangle, what a non-resident chunk amounts to. */
+    static int[] fullRect() {
+        return FULL_RECT;
+    }
+
+    static int rect(int x, int y, int w, int h) {
+        return x | (y << 5) | ((w - 1) << 10) | ((h - 1) << 15);
+    }
+
+    static int rectX(int r) { return r & 31; }
+    static int rectY(int r) { return (r >>> 5) & 31; }
+    static int rectW(int r) { return ((r >>> 10) & 31) + 1; }
+    static int rectH(int r) { return ((r >>> 15) & 31) + 1; }
+
+    /** Fresh dense copy of this chunk, safe to write to. */
+    TileChunk toDense() {
+        byte[] copy = new byte[AREA];
+        if (tiles == null) {
+            if (fill != 0) Arrays.fill(copy, fill);
+        } else {
+            System.arraycopy(tiles, 0, copy, 0, AREA);
+        }
+        return new TileChunk(fill, copy);
+    }
+
+    /**
+     * Returns the shared uniform chunk if every tile has the same id,
+     * otherwise this chunk. Used to fold chunks back after bulk edits.
+     */
+    TileChunk compact() {
+        if (tiles == null) return this;
+        byte first = tiles[0];
+        for (int i = 1; i < AREA; i++) {
+            if (tiles[i] != first) return this;
+        }
+        return UNIFORM[first & 0xFF];
+    }
+}
@@ -0,0 +1,250 @@
+package fr.oreostudios.runtime;
+
+/**
+ * Axis-aligned box queries against the walls of a {@link TileMap}.
+ *
+ * Boxes are half-open: a box at x with width w covers [x, x + w), so an actor
+ * can sit flush against a wall without overlapping it.
+ *
+ * {@link #sweep} walks the tile columns/rows the leading edges of a moving box
+ * cross, in time order, and stops at the first wall. Only the tiles the
+ * motion actually enters are looked at, so a fast mover can't skip a wall and
+ * a box larger than a tile can't slip past one in its middle.
+ *
+ * Larger area queries go through the map's merged wall rectangles (see
+ * {@link TileMap#getWallRects}): a few rectangle tests per chunk instead
+ * of one lookup per tile. Actor-sized ones, and noisy chunks with more
+ * rectangles than tiles in range, just read the tiles. A long {@link #sweep}
+ * checks its whole swept box that way first and skips the tile walk when
+ * there is no wall in it.
+ *
+ * Nothing here allocates; results go into a caller-owned {@link Result}.
+ * Instances are stateless and can be shared between threads.
+ */
+public class TileCollision {
+
+    /** Output of {@link #sweep} and {@link #move}. Reuse one per thread. */
+    public static final class Result {
+        /** Fraction of the motion done before the first contact, 1 if none. */
+        public float time;
+        /** Surface normal of the first contact, (0, 0) if none. */
+        public int normalX, normalY;
+        /** Wall tile hit first. */
+        public int tileX, tileY;
+
+        /** Final position after {@link #move}. */
+        public float x, y;
+        /** Whether {@link #move} was stopped along each axis. */
+        public boolean blockedX, blockedY;
+    }
+
+    // up to this many tiles, reading them beats walking the rectangle lists
+    private static final int SMALL_AREA = 16;
+
+    private final TileMap map;
+
+    public TileCollision(TileMap map) {
+        this.map = map;
+    }
+
+    /** True if any wall tile intersects the box. */
+    public boolean overlaps(float x, float y, float w, float h) {
+        float ts = map.getTileSize();
+        int tx0 = (int) Math.floor(x / ts);
+        int ty0 = (int) Math.floor(y / ts);
+        int tx1 = (int) Math.ceil((x + w) / ts) - 1;
+        int ty1 = (int) Math.ceil((y + h) / ts) - 1;
+        return anyWall(tx0, ty0, tx1, ty1);
+    }
+
+    /** True if any tile in the inclusive tile range is a wall. */
+    public boolean anyWall(int tx0, int ty0, int tx1, int ty1) {
+        if (tx0 > tx1 || ty0 > ty1) return false;
+        // outside the map reads as wall
+        if (tx0 < 0 || ty0 < 0 || tx1 >= map.getWidth() || ty1 >= map.getHeight()) return true;
+        if ((tx1 - tx0 + 1) * (ty1 - ty0 + 1) <= SMALL_AREA) return anyWallTile(tx0, ty0, tx1, ty1);
+
+        for (int cy = ty0 >> TileChunk.SHIFT; cy <= ty1 >> TileChunk.SHIFT; cy++) {
+            int baseY = cy << TileChunk.SHIFT;
+            int ly0 = Math.max(ty0 - baseY, 0), ly1 = Math.min(ty1 - baseY, TileChunk.MASK);
+            for (int cx = tx0 >> TileChunk.SHIFT; cx <= tx1 >> TileChunk.SHIFT; cx++) {
+                int baseX = cx << TileChunk.SHIFT;
+                int lx0 = Math.max(tx0 - baseX, 0), lx1 = Math.min(tx1 - baseX, TileChunk.MASK);
+                int[] rects = map.getWallRects(cx, cy);
+                if (rects.length > (lx1 - lx0 + 1) * (ly1 - ly0 + 1)) {
+                    // noisy chunk: fewer tiles than rectangles to look at
+                    if (anyWallTile(baseX + lx0, baseY + ly0, baseX + lx1, baseY + ly1)) return true;
+                    continue;
+                }
+                for (int r : rects) {
+                    int ry = TileChunk.rectY(r);
+                    if (ry > ly1) break; // sorted by top row
+                    int rx = TileChunk.rectX(r);
+                    if (rx <= lx1 && rx + TileChunk.rectW(r) > lx0 && ry + TileChunk.rectH(r) > ly0) return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean anyWallTile(int tx0, int ty0, int tx1, int ty1) {
+        for (int ty = ty0; ty <= ty1; ty++) {
+            for (int tx = tx0; tx <= tx1; tx++) {
+                if (map.isWall(tx, ty)) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sweeps the box by (dx, dy) and reports the first wall it would enter.
+     * Tiles the box already overlaps at the start are ignored, so a stuck
+     * actor can always move out.
+     *
+     * @return true if a wall was hit, with time/normal/tile filled in
+     */
+    public boolean sweep(float x, float y, float w, float h, float dx, float dy, Result out) {
+        out.time = 1f;
+        out.normalX = 0;
+        out.normalY = 0;
+        if (dx == 0 && dy == 0) return false;
+
+        float ts = map.getTileSize();
+        // broadphase for long moves: nothing to hit anywhere in the swept box.
+        // Closed and padded a little, so touching at t = 1 and float rounding
+        // still fall through to the exact walk below.
+        if (Math.abs(dx) + Math.abs(dy) > 2 * ts) {
+            float pad = ts / 256;
+            int bx0 = (int) Math.floor((Math.min(x, x + dx) - pad) / ts);
+            int by0 = (int) Math.floor((Math.min(y, y + dy) - pad) / ts);
+            int bx1 = (int) Math.floor((Math.max(x, x + dx) + w + pad) / ts);
+            int by1 = (int) Math.floor((Math.max(y, y + dy) + h + pad) / ts);
+            if (!anyWall(bx0, by0, bx1, by1)) return false;
+        }
+
+        int stepX = dx > 0 ? 1 : -1;
+        int stepY = dy > 0 ? 1 : -1;
+
+        // next column/row the leading edges will enter
+        int col = dx > 0 ? (int) Math.ceil((x + w) / ts) : (int) Math.floor(x / ts) - 1;
+        int row = dy > 0 ? (int) Math.ceil((y + h) / ts) : (int) Math.floor(y / ts) - 1;
+
+        while (true) {
+            float tX = dx == 0 ? Float.POSITIVE_INFINITY
+                    : (dx > 0 ? col * ts - (x + w) : (col + 1) * ts - x) / dx;
+            float tY = dy == 0 ? Float.POSITIVE_INFINITY
+                    : (dy > 0 ? row * ts - (y + h) : (row + 1) * ts - y) / dy;
+            float t = Math.min(tX, tY);
+            if (t > 1f) return false;
+            if (t < 0) t = 0;
+
+            boolean crossX = tX <= tY;
+            boolean crossY = tY <= tX;
+
+            if (crossX) {
+                // rows the box covers when its edge reaches the column
+                int r0 = (int) Math.floor((y + dy * t) / ts);
+                int r1 = (int) Math.ceil((y + dy * t + h) / ts) - 1;
+                if (crossY) {
+                    // entering a row at the same instant: include the diagonal tile
+                    if (stepY > 0) r1 = row; else r0 = row;
+                }
+                int hitRow = firstWallInColumn(col, r0, r1, stepY);
+                if (hitRow != Integer.MIN_VALUE) {
+                    return hit(out, t, -stepX, 0, col, hitRow);
+                }
+            }
+
+            if (crossY) {
+                int c0 = (int) Math.floor((x + dx * t) / ts);
+                int c1 = (int) Math.ceil((x + dx * t + w) / ts) - 1;
+                if (crossX) {
+                    if (stepX > 0) c1 = col; else c0 = col;
+                }
+                int hitCol = firstWallInRow(row, c0, c1, stepX);
+                if (hitCol != Integer.MIN_VALUE) {
+                    return hit(out, t, 0, -stepY, hitCol, row);
+                }
+            }
+
+            if (crossX) col += stepX;
+            if (crossY) row += stepY;
+        }
+    }
+
+    /**
+     * Moves the box by (dx, dy), stopping at walls and sliding along them
+     * with the remaining motion. The final position is put in
+     * {@code out.x/out.y}.
+     *
+     * @return true if any wall was touched
+     */
+    public boolean move(float x, float y, float w, float h, float dx, float dy, Result out) {
+        boolean blockedX = false;
+        boolean blockedY = false;
+        float ts = map.getTileSize();
+
+        // at most one slide per axis
+        for (int i = 0; i < 3 && (dx != 0 || dy != 0); i++) {
+            if (!sweep(x, y, w, h, dx, dy, out)) {
+                x += dx;
+                y += dy;
+                break;
+            }
+
+            float t = out.time;
+            if (out.normalX != 0) {
+                // snap exactly onto the tile edge so the next sweep starts flush
+                float edge = (out.normalX < 0 ? out.tileX : out.tileX + 1) * ts;
+                x = out.normalX < 0 ? edge - w : edge;
+                if (out.normalX < 0 && x + w > edge) x = Math.nextDown(x);
+                y += dy * t;
+                dy *= 1 - t;
+                dx = 0;
+                blockedX = true;
+            } else {
+                float edge = (out.normalY < 0 ? out.tileY : out.tileY + 1) * ts;
+                y = out.normalY < 0 ? edge - h : edge;
+                if (out.normalY < 0 && y + h > edge) y = Math.nextDown(y);
+                x += dx * t;
+                dx *= 1 - t;
+                dy = 0;
+                blockedY = true;
+            }
+        }
+
+        out.x = x;
+        out.y = y;
+        out.blockedX = blockedX;
+        out.blockedY = blockedY;
+        return blockedX || blockedY;
+    }
+
+    private int firstWallInColumn(int col, int r0, int r1, int stepY) {
+        // check in travel order so a tie reports the tile met first
+        if (stepY > 0) {
+            for (int r = r0; r <= r1; r++) if (map.isWall(col, r)) return r;
+        } else {
+            for (int r = r1; r >= r0; r--) if (map.isWall(col, r)) return r;
+        }
+        return Integer.MIN_VALUE;
+    }
+
+    private int firstWallInRow(int row, int c0, int c1, int stepX) {
+        if (stepX > 0) {
+            for (int c = c0; c <= c1; c++) if (map.isWall(c, row)) return c;
+        } else {
+            for (int c = c1; c >= c0; c--) if (map.isWall(c, row)) return c;
+        }
+        return Integer.MIN_VALUE;
+    }
+
+    private static boolean hit(Result out, float t, int nx, int ny, int tx, int ty) {
+        out.time = t;
+        out.normalX = nx;
+        out.normalY = ny;
+        out.tileX = tx;
+        out.tileY = ty;
+        return true;
+    }
+}
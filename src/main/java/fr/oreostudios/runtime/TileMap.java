@@ -1,66 +1,343 @@
 package fr.oreostudios.runtime;
 
 import java.awt.*;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Tile grid stored as fixed-size chunks (see {@link TileChunk}).
+ * Uniform areas (open floor, solid rock) share one singleton chunk, so
+ * memory grows with the amount of detail rather than with the map area.
+ *
+ * A chunk can also be non-resident (streamed maps, see {@link ChunkStreamer});
+ * its tiles then read as {@link #WALL} and writes to it are ignored.
+ *
+ * {@link #snapshot} hands out a frozen copy in O(chunks) by sharing the
+ * chunk objects: dense chunks are copy-on-write, keyed by an epoch that
+ * every snapshot renews.
+ */
 public class TileMap {
 
+    public static final int FLOOR = 0;
+    public static final int WALL = 1;
+
+    /** Side length of a storage chunk, in tiles. */
+    public static final int CHUNK_SIZE = TileChunk.SIZE;
+
     private final int width;
     private final int height;
     private final int tileSize;
-    private final int[][] tiles; // 0 floor, 1 wall
+
+    private final int chunksX;
+    private final int chunksY;
+    private final TileChunk[] chunks; // row-major, chunksX * chunksY
+    private final int[] chunkVersions; // bumped on every tile change
+    private int version; // sum of all chunk changes
+
+    private static final AtomicInteger EPOCHS = new AtomicInteger();
+    private int epoch = EPOCHS.incrementAndGet(); // chunks owned by another epoch are shared
 
     public TileMap(int width, int height, int tileSize) {
+        this(width, height, tileSize, TileChunk.uniform(FLOOR));
+        generateTestMap();
+    }
+
+    private TileMap(int width, int height, int tileSize, TileChunk initial) {
         this.width = width;
         this.height = height;
         this.tileSize = tileSize;
-        this.tiles = new int[height][width];
 
-        generateTestMap();
+        this.chunksX = (width + TileChunk.MASK) >> TileChunk.SHIFT;
+        this.chunksY = (height + TileChunk.MASK) >> TileChunk.SHIFT;
+        this.chunks = new TileChunk[chunksX * chunksY];
+        Arrays.fill(chunks, initial);
+        this.chunkVersions = new int[chunks.length];
+    }
+
+    /** Map with no chunk resident yet, to be filled by a loader. */
+    static TileMap unloaded(int width, int height, int tileSize) {
+        return new TileMap(width, height, tileSize, null);
     }
 
     private void generateTestMap() {
         for (int y = 0; y < height; y++) {
             for (int x = 0; x < width; x++) {
                 if (x == 0 || y == 0 || x == width - 1 || y == height - 1) {
-                    tiles[y][x] = 1;
-                } else {
-                    tiles[y][x] = 0;
+                    put(x, y, WALL);
                 }
             }
         }
 
-        for (int x = 5; x < 15; x++) tiles[5][x] = 1;
-        for (int y = 8; y < 15; y++) tiles[y][10] = 1;
+        for (int x = 5; x < 15; x++) put(x, 5, WALL);
+        for (int y = 8; y < 15; y++) put(10, y, WALL);
+    }
+
+    /** Tile id at tile coordinates; out of bounds reads as {@link #WALL}. */
+    public int getTile(int tx, int ty) {
+        if (tx < 0 || ty < 0 || tx >= width || ty >= height) return WALL;
+        TileChunk chunk = chunks[(ty >> TileChunk.SHIFT) * chunksX + (tx >> TileChunk.SHIFT)];
+        if (chunk == null) return WALL;
+        return chunk.get(tx & TileChunk.MASK, ty & TileChunk.MASK);
+    }
+
+    public void setTile(int tx, int ty, int tile) {
+        put(tx, ty, tile);
+    }
+
+    // setTile's body, private so the constructor never calls an overridable method
+    private void put(int tx, int ty, int tile) {
+        if (tx < 0 || ty < 0 || tx >= width || ty >= height) return;
+
+        int ci = (ty >> TileChunk.SHIFT) * chunksX + (tx >> TileChunk.SHIFT);
+        TileChunk chunk = chunks[ci];
+        if (chunk == null) return;
+        int lx = tx & TileChunk.MASK;
+        int ly = ty & TileChunk.MASK;
+
+        if (chunk.get(lx, ly) == tile) return;
+        if (chunk.isUniform() || chunk.owner != epoch) {
+            chunk = chunk.toDense();
+            chunk.owner = epoch;
+            chunks[ci] = chunk;
+        }
+        chunk.set(lx, ly, tile);
+        chunkVersions[ci]++;
+        version++;
+    }
+
+    public boolean isWall(int tx, int ty) {
+        return getTile(tx, ty) == WALL;
     }
 
     public boolean isWallAt(float worldX, float worldY) {
         int tx = (int) (worldX / tileSize);
         int ty = (int) (worldY / tileSize);
+        return isWall(tx, ty);
+    }
+
+    /**
+     * Folds dense chunks whose tiles all ended up identical back into the
+     * shared uniform instances. Worth calling after bulk generation/edits.
+     */
+    public void compact() {
+        for (int i = 0; i < chunks.length; i++) {
+            if (chunks[i] != null) chunks[i] = chunks[i].compact();
+        }
+    }
 
-        if (tx < 0 || ty < 0 || tx >= width || ty >= height) return true;
-        return tiles[ty][tx] == 1;
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
     }
 
     public int getTileSize() {
         return tileSize;
     }
 
-    public void render(Graphics g, int camX, int camY, int screenW, int screenH) {
-        int startX = Math.max(0, camX / tileSize);
-        int startY = Math.max(0, camY / tileSize);
+    public int getChunksX() {
+        return chunksX;
+    }
+
+    public int getChunksY() {
+        return chunksY;
+    }
 
-        int endX = Math.min(width, (camX + screenW) / tileSize + 2);
-        int endY = Math.min(height, (camY + screenH) / tileSize + 2);
+    /**
+     * Change counter of one chunk. Caches derived from tiles (render images,
+     * collision data...) compare it against the value they were built from.
+     */
+    public int getChunkVersion(int cx, int cy) {
+        return chunkVersions[cy * chunksX + cx];
+    }
 
-        for (int y = startY; y < endY; y++) {
-            for (int x = startX; x < endX; x++) {
-                int tile = tiles[y][x];
-                g.setColor(tile == 1 ? Color.DARK_GRAY : Color.LIGHT_GRAY);
+    /** Change counter of the whole map: moves whenever any chunk version does. */
+    public int getVersion() {
+        return version;
+    }
 
-                int drawX = x * tileSize - camX;
-                int drawY = y * tileSize - camY;
-                g.fillRect(drawX, drawY, tileSize, tileSize);
+    /**
+     * 64-bit FNV-1a over every tile, row-major. Identifies the map a
+     * recording was made on, independently of how its versions got there.
+     * Non-resident chunks hash as walls.
+     */
+    public long contentHash() {
+        long h = 0xcbf29ce484222325L;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                h ^= getTile(x, y) & 0xFF;
+                h *= 0x100000001b3L;
             }
         }
+        return h;
+    }
+
+    boolean isChunkLoaded(int cx, int cy) {
+        return chunks[cy * chunksX + cx] != null;
+    }
+
+    TileChunk getChunk(int cx, int cy) {
+        return chunks[cy * chunksX + cx];
+    }
+
+    /**
+     * Walls of one chunk as packed rectangles in chunk-local tiles (see
+     * {@link TileChunk#wallRects()}). A non-resident chunk is one full
+     * rectangle. Rectangles of edge chunks can reach past the map border.
+     */
+    int[] getWallRects(int cx, int cy) {
+        TileChunk chunk = chunks[cy * chunksX + cx];
+        return chunk == null ? TileChunk.fullRect() : chunk.wallRects();
+    }
+
+    /** Number of wall rectangles over the whole map, i.e. fill calls for a full redraw. */
+    public int countWallRects() {
+        int n = 0;
+        for (int cy = 0; cy < chunksY; cy++) {
+            for (int cx = 0; cx < chunksX; cx++) n += getWallRects(cx, cy).length;
+        }
+        return n;
+    }
+
+    /**
+     * Frozen copy of the current tiles and chunk versions, for reading on
+     * another thread while this map keeps changing. Reuses {@code into}
+     * when it came from an earlier call on this map. The chunks are shared,
+     * and the next write to one of them from either map copies it first.
+     * The snapshot itself should be treated as read-only.
+     */
+    public TileMap snapshot(TileMap into) {
+        TileMap s = into;
+        if (s == null || s.chunks.length != chunks.length || s.width != width || s.height != height) {
+            s = new TileMap(width, height, tileSize, null);
+        }
+        System.arraycopy(chunks, 0, s.chunks, 0, chunks.length);
+        System.arraycopy(chunkVersions, 0, s.chunkVersions, 0, chunks.length);
+        s.version = version;
+        s.epoch = EPOCHS.incrementAndGet();
+        epoch = EPOCHS.incrementAndGet(); // everything we hold is shared from now on
+        return s;
+    }
+
+    /** Makes a chunk resident (or replaces it). Game thread only. */
+    void installChunk(int cx, int cy, TileChunk chunk) {
+        int ci = cy * chunksX + cx;
+        chunks[ci] = chunk;
+        chunkVersions[ci]++;
+        version++;
+    }
+
+    /** Drops a chunk; its tiles read as walls until it is installed again. */
+    void unloadChunk(int cx, int cy) {
+        installChunk(cx, cy, null);
+    }
+
+    static Color tileColor(int tile) {
+        return tile == WALL ? Color.DARK_GRAY : Color.LIGHT_GRAY;
+    }
+
+    // lit colors: [tile][light level], plus the dimmed colors of explored tiles out of sight
+    private static final int AMBIENT = 3;
+    private static final Color[][] LIT = new Color[2][LightMap.MAX_LEVEL + 1];
+    private static final Color[] REMEMBERED = new Color[2];
+
+    static {
+        for (int tile = 0; tile < 2; tile++) {
+            Color base = tileColor(tile);
+            for (int l = 0; l <= LightMap.MAX_LEVEL; l++) {
+                float k = (float) (AMBIENT + l) / (AMBIENT + LightMap.MAX_LEVEL);
+                LIT[tile][l] = new Color((int) (base.getRed() * k), (int) (base.getGreen() * k), (int) (base.getBlue() * k));
+            }
+            REMEMBERED[tile] = new Color(base.getRed() / 6, base.getGreen() / 6, base.getBlue() / 5);
+        }
+    }
+
+    /**
+     * Same as {@link #render(Graphics, int, int, int, int)}, but shaded by
+     * {@code light}: tiles in view by their light level, explored tiles out
+     * of view dimmed, never seen tiles left undrawn (black on a cleared
+     * frame). Draws every chunk afresh; {@link ChunkRenderCache} keeps the
+     * lit chunks as images instead.
+     */
+    public void render(Graphics g, int camX, int camY, int screenW, int screenH, LightMap light) {
+        int x0 = Math.max(0, camX), y0 = Math.max(0, camY);
+        int x1 = Math.min(width * tileSize, camX + screenW);
+        int y1 = Math.min(height * tileSize, camY + screenH);
+        if (x0 >= x1 || y0 >= y1) return;
+
+        int chunkPx = CHUNK_SIZE * tileSize;
+        for (int cy = y0 / chunkPx; cy <= (y1 - 1) / chunkPx; cy++) {
+            for (int cx = x0 / chunkPx; cx <= (x1 - 1) / chunkPx; cx++) {
+                fillLitChunk(g, light, cx, cy, cx * chunkPx - camX, cy * chunkPx - camY);
+            }
+        }
+    }
+
+    /**
+     * Fills the lit tiles of one chunk whose top-left corner is at (ox, oy),
+     * one rectangle per run of same-colored tiles in a row. Never seen
+     * tiles are left as they are (black in a cleared image).
+     */
+    void fillLitChunk(Graphics g, LightMap light, int cx, int cy, int ox, int oy) {
+        int baseX = cx * CHUNK_SIZE, baseY = cy * CHUNK_SIZE;
+        int endX = Math.min(CHUNK_SIZE, width - baseX);
+        int endY = Math.min(CHUNK_SIZE, height - baseY);
+        for (int y = 0; y < endY; y++) {
+            int x = 0;
+            while (x < endX) {
+                Color c = litColor(light, baseX + x, baseY + y);
+                int run = 1;
+                while (x + run < endX && litColor(light, baseX + x + run, baseY + y) == c) run++;
+                if (c != null) {
+                    g.setColor(c);
+                    g.fillRect(ox + x * tileSize, oy + y * tileSize, run * tileSize, tileSize);
+                }
+                x += run;
+            }
+        }
+    }
+
+    /** Shared color of a tile under {@code light}, null if it was never seen. */
+    private Color litColor(LightMap light, int x, int y) {
+        int tile = getTile(x, y) == WALL ? 1 : 0;
+        if (light.isVisible(x, y)) return LIT[tile][light.getLight(x, y)];
+        if (light.isExplored(x, y)) return REMEMBERED[tile];
+        return null;
+    }
+
+    /**
+     * Floor in one fill, then the walls one merged rectangle at a time
+     * (see {@link #getWallRects}), so a long wall costs one call.
+     */
+    public void render(Graphics g, int camX, int camY, int screenW, int screenH) {
+        int x0 = Math.max(0, camX), y0 = Math.max(0, camY);
+        int x1 = Math.min(width * tileSize, camX + screenW);
+        int y1 = Math.min(height * tileSize, camY + screenH);
+        if (x0 >= x1 || y0 >= y1) return;
+        g.setColor(tileColor(FLOOR));
+        g.fillRect(x0 - camX, y0 - camY, x1 - x0, y1 - y0);
+
+        g.setColor(tileColor(WALL));
+        int chunkPx = CHUNK_SIZE * tileSize;
+        for (int cy = y0 / chunkPx; cy <= (y1 - 1) / chunkPx; cy++) {
+            for (int cx = x0 / chunkPx; cx <= (x1 - 1) / chunkPx; cx++) {
+                fillWallRects(g, cx, cy, cx * chunkPx - camX, cy * chunkPx - camY);
+            }
+        }
+    }
+
+    /** Fills the wall rectangles of one chunk whose top-left corner is at (ox, oy). */
+    void fillWallRects(Graphics g, int cx, int cy, int ox, int oy) {
+        // tiles of edge chunks past the border are not part of the map
+        int maxW = width - cx * CHUNK_SIZE, maxH = height - cy * CHUNK_SIZE;
+        for (int r : getWallRects(cx, cy)) {
+            int rx = TileChunk.rectX(r), ry = TileChunk.rectY(r);
+            if (rx >= maxW || ry >= maxH) continue;
+            int rw = Math.min(TileChunk.rectW(r), maxW - rx);
+            int rh = Math.min(TileChunk.rectH(r), maxH - ry);
+            g.fillRect(ox + rx * tileSize, oy + ry * tileSize, rw * tileSize, rh * tileSize);
+        }
     }
 }
@@ -0,0 +1,268 @@
+package fr.oreostudios.runtime;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Binary tile map file (.otm), read through memory mapping so only the
+ * chunks actually touched are paged in.
+ *
+ * Layout, little-endian:
+ * <pre>
+ *   header (32 bytes)
+ *     int   magic 'OTM1'
+ *     short version, short flags
+ *     int   width, height (tiles), tileSize (px), chunkSize (tiles)
+ *     int   chunksX, chunksY
+ *   chunk directory, chunksX * chunksY entries of 16 bytes, row-major
+ *     long  data offset
+ *     int   stored length
+ *     byte  encoding (0 uniform, 1 raw, 2 deflate)
+ *     byte  fill tile (uniform chunks)
+ *     short reserved
+ *   chunk data, chunkSize^2 bytes per raw chunk
+ * </pre>
+ * Uniform chunks have no data at all. Compressed chunks are only kept when
+ * they come out smaller than the raw bytes.
+ *
+ * A reader is not thread-safe (it owns one {@link Inflater}); give each
+ * loading thread its own.
+ */
+public class TileMapFile implements AutoCloseable {
+
+    public static final int MAGIC = 0x314D544F; // "OTM1" in little-endian
+    public static final short VERSION = 1;
+
+    private static final int HEADER_BYTES = 32;
+    private static final int DIR_ENTRY_BYTES = 16;
+
+    private static final byte ENC_UNIFORM = 0;
+    private static final byte ENC_RAW = 1;
+    private static final byte ENC_DEFLATE = 2;
+
+    // MappedByteBuffer tops out at 2 GB, so data is mapped in overlapping
+    // windows: a chunk starting in window k always ends inside it.
+    private static final long WINDOW_BYTES = 1L << 30;
+
+    private final FileChannel channel;
+    private final int width, height, tileSize, chunksX, chunksY;
+    private final MappedByteBuffer directory;
+    private final MappedByteBuffer[] windows;
+    private final Inflater inflater = new Inflater();
+
+    private TileMapFile(FileChannel channel) throws IOException {
+        this.channel = channel;
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC) throw new IOException("Not a tile map file (bad magic)");
+        short version = header.getShort();
+        if (version != VERSION) throw new IOException("Unsupported tile map version " + version);
+        header.getShort(); // flags
+        width = header.getInt();
+        height = header.getInt();
+        tileSize = header.getInt();
+        int chunkSize = header.getInt();
+        if (chunkSize != TileChunk.SIZE) throw new IOException("Unsupported chunk size " + chunkSize);
+        chunksX = header.getInt();
+        chunksY = header.getInt();
+
+        long dirBytes = (long) chunksX * chunksY * DIR_ENTRY_BYTES;
+        directory = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, dirBytes);
+        directory.order(ByteOrder.LITTLE_ENDIAN);
+
+        long size = channel.size();
+        int windowCount = (int) ((size + WINDOW_BYTES - 1) / WINDOW_BYTES);
+        windows = new MappedByteBuffer[windowCount];
+        for (int w = 0; w < windowCount; w++) {
+            long start = w * WINDOW_BYTES;
+            long len = Math.min(size - start, WINDOW_BYTES + TileChunk.AREA);
+            windows[w] = channel.map(FileChannel.MapMode.READ_ONLY, start, len);
+        }
+    }
+
+    public static TileMapFile open(Path path) throws IOException {
+        return new TileMapFile(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    /** Reads every chunk into a regular, fully resident map. */
+    public static TileMap load(Path path) throws IOException {
+        try (TileMapFile file = open(path)) {
+            TileMap map = TileMap.unloaded(file.width, file.height, file.tileSize);
+            for (int cy = 0; cy < file.chunksY; cy++) {
+                for (int cx = 0; cx < file.chunksX; cx++) {
+                    map.installChunk(cx, cy, file.readChunk(cx, cy));
+                }
+            }
+            return map;
+        }
+    }
+
+    /** Empty map of this file's size, for streaming chunks into. */
+    public TileMap createUnloadedMap() {
+        return TileMap.unloaded(width, height, tileSize);
+    }
+
+    TileChunk readChunk(int cx, int cy) throws IOException {
+        int entry = (cy * chunksX + cx) * DIR_ENTRY_BYTES;
+        long offset = directory.getLong(entry);
+        int length = directory.getInt(entry + 8);
+        byte encoding = directory.get(entry + 12);
+        byte fill = directory.get(entry + 13);
+
+        if (encoding == ENC_UNIFORM) return TileChunk.uniform(fill);
+
+        MappedByteBuffer window = windows[(int) (offset / WINDOW_BYTES)];
+        int pos = (int) (offset % WINDOW_BYTES);
+        byte[] tiles = new byte[TileChunk.AREA];
+
+        if (encoding == ENC_RAW) {
+            window.get(pos, tiles, 0, TileChunk.AREA);
+        } else if (encoding == ENC_DEFLATE) {
+            inflater.reset();
+            inflater.setInput(window.slice(pos, length));
+            try {
+                if (inflater.inflate(tiles) != TileChunk.AREA) {
+                    throw new IOException("Corrupt chunk " + cx + "," + cy);
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt chunk " + cx + "," + cy, e);
+            }
+        } else {
+            throw new IOException("Unknown chunk encoding " + encoding);
+        }
+        return TileChunk.of(tiles);
+    }
+
+    /**
+     * Writes every resident chunk of the map. Non-resident chunks are
+     * written as solid walls.
+     */
+    public static void write(TileMap map, Path path, boolean compress) throws IOException {
+        int chunksX = map.getChunksX();
+        int chunksY = map.getChunksY();
+        int count = chunksX * chunksY;
+
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putShort(VERSION).putShort((short) 0)
+                    .putInt(map.getWidth()).putInt(map.getHeight()).putInt(map.getTileSize())
+                    .putInt(TileChunk.SIZE).putInt(chunksX).putInt(chunksY);
+            header.flip();
+            writeFully(ch, header, 0);
+
+            long dirStart = HEADER_BYTES;
+            long dataPos = dirStart + (long) count * DIR_ENTRY_BYTES;
+
+            ByteBuffer dirEntry = ByteBuffer.allocate(DIR_ENTRY_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            byte[] raw = new byte[TileChunk.AREA];
+            byte[] packed = new byte[TileChunk.AREA];
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+            try {
+                for (int cy = 0; cy < chunksY; cy++) {
+                    for (int cx = 0; cx < chunksX; cx++) {
+                        TileChunk chunk = map.getChunk(cx, cy);
+                        if (chunk == null) chunk = TileChunk.uniform(TileMap.WALL);
+                        chunk = chunk.compact();
+
+                        dirEntry.clear();
+                        if (chunk.isUniform()) {
+                            dirEntry.putLong(0).putInt(0).put(ENC_UNIFORM).put((byte) chunk.getFill()).putShort((short) 0);
+                        } else {
+                            chunk.copyTo(raw, 0);
+                            ByteBuffer data = ByteBuffer.wrap(raw);
+                            byte encoding = ENC_RAW;
+
+                            if (compress) {
+                                deflater.reset();
+                                deflater.setInput(raw);
+                                deflater.finish();
+                                int n = deflater.deflate(packed);
+                                if (deflater.finished() && n < TileChunk.AREA) {
+                                    data = ByteBuffer.wrap(packed, 0, n);
+                                    encoding = ENC_DEFLATE;
+                                }
+                            }
+
+                            int len = data.remaining();
+                            dirEntry.putLong(dataPos).putInt(len).put(encoding).put((byte) 0).putShort((short) 0);
+                            writeFully(ch, data, dataPos);
+                            dataPos += len;
+                        }
+                        dirEntry.flip();
+                        writeFully(ch, dirEntry, dirStart + (long) (cy * chunksX + cx) * DIR_ENTRY_BYTES);
+                    }
+                }
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public int getChunksX() {
+        return chunksX;
+    }
+
+    public int getChunksY() {
+        return chunksY;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        channel.close();
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = ch.read(buf, pos);
+            if (n < 0) throw new IOException("Unexpected end of file");
+            pos += n;
+        }
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            pos += ch.write(buf, pos);
+        }
+    }
+
+    /**
+     * Writes a test map of the given size, e.g. for streaming experiments:
+     * {@code TileMapFile out.otm 8192 8192}
+     */
+    public static void main(String[] args) throws IOException {
+        Path out = Path.of(args[0]);
+        int w = Integer.parseInt(args[1]);
+        int h = Integer.parseInt(args[2]);
+        TileMap map = new TileMap(w, h, 32);
+        long start = System.nanoTime();
+        write(map, out, true);
+        System.out.printf("[TileMapFile] wrote %dx%d map to %s in %.1f ms%n",
+                w, h, out, (System.nanoTime() - start) / 1e6);
+    }
+}
@@ -0,0 +1,54 @@
+package fr.oreostudios.runtime;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Lock-free handoff of the latest state from one producer thread to one
+ * consumer thread, with three preallocated buffers.
+ *
+ * The producer fills {@link #back()} and {@link #publish()}es it; the
+ * consumer calls {@link #acquire()} and reads {@link #front()}. Each side
+ * swaps its buffer with the middle one in a single atomic getAndSet, so
+ * neither ever waits for the other: the producer can publish many times
+ * between two reads (only the newest is kept) and the consumer can keep
+ * reading the same front for as long as nothing newer arrives.
+ */
+public class TripleBuffer<T> {
+
+    private static final int INDEX_MASK = 3;
+    private static final int FRESH = 4; // middle holds something the consumer has not seen
+
+    private final Object[] slots = new Object[3];
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back = 0;  // producer only
+    private int front = 2; // consumer only
+
+    public TripleBuffer(Supplier<T> factory) {
+        for (int i = 0; i < 3; i++) slots[i] = factory.get();
+    }
+
+    /** The buffer the producer may write. */
+    @SuppressWarnings("unchecked")
+    public T back() {
+        return (T) slots[back];
+    }
+
+    /** Hands the back buffer over; {@link #back()} then returns another one. */
+    public void publish() {
+        back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+    }
+
+    /** Takes the newest published buffer if there is one; returns whether front changed. */
+    public boolean acquire() {
+        if ((middle.get() & FRESH) == 0) return false;
+        front = middle.getAndSet(front) & INDEX_MASK;
+        return true;
+    }
+
+    /** The buffer the consumer may read. */
+    @SuppressWarnings("unchecked")
+    public T front() {
+        return (T) slots[front];
+    }
+}
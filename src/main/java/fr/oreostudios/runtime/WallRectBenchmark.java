@@ -0,0 +1,151 @@
+package fr.oreostudios.runtime;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Merged wall rectangles (see {@link TileChunk#wallRects()}) against
+ * per-tile work, on three maps: the default test map, a 1024x1024 map of
+ * rooms with long walls, and 1024x1024 of random noise (the worst case).
+ * Reports rectangles per wall tile, the cost of rebuilding a chunk after
+ * an edit, an 800x600 {@link TileMap#render} against one fillRect per
+ * tile, and area queries against a per-tile scan.
+ *
+ * Run with: java -cp target/classes fr.oreostudios.runtime.WallRectBenchmark
+ */
+public class WallRectBenchmark {
+
+    private static final int QUERIES = 1_000_000;
+
+    public static void main(String[] args) {
+        run("test map 30x22", new TileMap(30, 22, 32));
+        run("rooms 1024x1024", rooms(1024, new Random(20)));
+        run("noise 1024x1024", noise(1024, new Random(20)));
+    }
+
+    private static void run(String name, TileMap map) {
+        int walls = 0;
+        for (int y = 0; y < map.getHeight(); y++) {
+            for (int x = 0; x < map.getWidth(); x++) if (map.isWall(x, y)) walls++;
+        }
+        System.out.printf("%s: %d wall tiles -> %d rectangles%n", name, walls, map.countWallRects());
+
+        // rebuild after an edit: toggle one tile per chunk, then ask for the rects again
+        Random rnd = new Random(1);
+        long nanos = 0;
+        int rebuilds = 0;
+        for (int round = 0; round < 4; round++) {
+            for (int cy = 0; cy < map.getChunksY(); cy++) {
+                for (int cx = 0; cx < map.getChunksX(); cx++) {
+                    int tx = Math.min(map.getWidth() - 1, cx * TileMap.CHUNK_SIZE + rnd.nextInt(TileMap.CHUNK_SIZE));
+                    int ty = Math.min(map.getHeight() - 1, cy * TileMap.CHUNK_SIZE + rnd.nextInt(TileMap.CHUNK_SIZE));
+                    map.setTile(tx, ty, map.isWall(tx, ty) ? TileMap.FLOOR : TileMap.WALL);
+                    long t0 = System.nanoTime();
+                    map.getWallRects(cx, cy);
+                    if (round >= 2) {
+                        nanos += System.nanoTime() - t0;
+                        rebuilds++;
+                    }
+                }
+            }
+        }
+        System.out.printf("  chunk rebuild      %8.2f us%n", nanos / 1e3 / rebuilds);
+
+        // rendering
+        BufferedImage img = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+        Graphics g = img.getGraphics();
+        int span = Math.max(1, map.getWidth() * map.getTileSize() - 800);
+        long rectNanos = 0, tileNanos = 0;
+        int frames = 200;
+        for (int f = 0; f < frames * 2; f++) {
+            int camX = (f * 37) % span, camY = (f * 23) % Math.max(1, map.getHeight() * map.getTileSize() - 600);
+            long t0 = System.nanoTime();
+            map.render(g, camX, camY, 800, 600);
+            long t1 = System.nanoTime();
+            renderPerTile(map, g, camX, camY, 800, 600);
+            long t2 = System.nanoTime();
+            if (f >= frames) {
+                rectNanos += t1 - t0;
+                tileNanos += t2 - t1;
+            }
+        }
+        g.dispose();
+        System.out.printf("  render 800x600     %8.3f ms merged, %8.3f ms per tile%n",
+                rectNanos / 1e6 / frames, tileNanos / 1e6 / frames);
+
+        // area queries, 10x10 tiles (actor-sized ones read the tiles directly)
+        TileCollision collision = new TileCollision(map);
+        float w = map.getWidth() * map.getTileSize() - 340, h = map.getHeight() * map.getTileSize() - 340;
+        float[] xs = new float[4096], ys = new float[4096];
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = 8 + rnd.nextFloat() * w;
+            ys[i] = 8 + rnd.nextFloat() * h;
+        }
+        int hitsRect = 0, hitsTile = 0;
+        long qRect = 0, qTile = 0;
+        for (int round = 0; round < 5; round++) {
+            hitsRect = hitsTile = 0;
+            long t0 = System.nanoTime();
+            for (int i = 0; i < QUERIES; i++) {
+                if (collision.overlaps(xs[i & 4095], ys[i & 4095], 320, 320)) hitsRect++;
+            }
+            long t1 = System.nanoTime();
+            for (int i = 0; i < QUERIES; i++) {
+                if (overlapsPerTile(map, xs[i & 4095], ys[i & 4095], 320, 320)) hitsTile++;
+            }
+            long t2 = System.nanoTime();
+            qRect = t1 - t0;
+            qTile = t2 - t1;
+        }
+        System.out.printf("  320x320 box query  %8.1f ns merged, %8.1f ns per tile (%s)%n",
+                (double) qRect / QUERIES, (double) qTile / QUERIES, hitsRect == hitsTile ? "same answers" : "ANSWERS DIFFER");
+    }
+
+    private static void renderPerTile(TileMap map, Graphics g, int camX, int camY, int screenW, int screenH) {
+        int ts = map.getTileSize();
+        int endX = Math.min(map.getWidth(), (camX + screenW) / ts + 2);
+        int endY = Math.min(map.getHeight(), (camY + screenH) / ts + 2);
+        for (int y = Math.max(0, camY / ts); y < endY; y++) {
+            for (int x = Math.max(0, camX / ts); x < endX; x++) {
+                g.setColor(TileMap.tileColor(map.getTile(x, y)));
+                g.fillRect(x * ts - camX, y * ts - camY, ts, ts);
+            }
+        }
+    }
+
+    private static boolean overlapsPerTile(TileMap map, float x, float y, float w, float h) {
+        float ts = map.getTileSize();
+        int tx1 = (int) Math.ceil((x + w) / ts) - 1, ty1 = (int) Math.ceil((y + h) / ts) - 1;
+        for (int ty = (int) Math.floor(y / ts); ty <= ty1; ty++) {
+            for (int tx = (int) Math.floor(x / ts); tx <= tx1; tx++) {
+                if (map.isWall(tx, ty)) return true;
+            }
+        }
+        return false;
+    }
+
+    /** Grid of rooms separated by walls, with doorways. */
+    private static TileMap rooms(int size, Random rnd) {
+        TileMap map = new TileMap(size, size, 32);
+        for (int i = 16; i < size; i += 16) {
+            for (int k = 0; k < size; k++) {
+                map.setTile(i, k, TileMap.WALL);
+                map.setTile(k, i, TileMap.WALL);
+            }
+        }
+        for (int i = 16; i < size; i += 16) {
+            for (int k = 8; k < size; k += 16) {
+                map.setTile(i, k + rnd.nextInt(4) - 2, TileMap.FLOOR);
+                map.setTile(k + rnd.nextInt(4) - 2, i, TileMap.FLOOR);
+            }
+        }
+        return map;
+    }
+
+    private static TileMap noise(int size, Random rnd) {
+        TileMap map = new TileMap(size, size, 32);
+        for (int i = 0; i < size * size / 4; i++) map.setTile(rnd.nextInt(size), rnd.nextInt(size), TileMap.WALL);
+        return map;
+    }
+}
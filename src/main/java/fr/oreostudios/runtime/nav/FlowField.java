@@ -0,0 +1,128 @@
+package fr.oreostudios.runtime.nav;
+
+import fr.oreostudios.runtime.TileMap;
+
+import java.util.Arrays;
+
+/**
+ * Distance to one goal tile from every tile of the map, plus the step to
+ * take from each tile to get closer. Any number of agents heading for the
+ * same goal share one field and just read their tile's direction, instead
+ * of each running a search.
+ *
+ * Built with Dijkstra over a bucket queue: step costs are 10 or 14, so 16
+ * circular buckets hold every pending distance and no heap is needed.
+ */
+public final class FlowField {
+
+    private static final int BUCKETS = 16; // > DIAGONAL
+
+    private final int goalX;
+    private final int goalY;
+    private final int width;
+    private final int height;
+    private final int mapVersion;
+    private final int[] cost;
+    private final byte[] direction; // index into PathSearch.DX/DY, -1 at the goal or unreachable
+
+    private FlowField(TileMap map, int goalX, int goalY) {
+        this.goalX = goalX;
+        this.goalY = goalY;
+        this.width = map.getWidth();
+        this.height = map.getHeight();
+        this.mapVersion = map.getVersion();
+        this.cost = new int[width * height];
+        this.direction = new byte[width * height];
+    }
+
+    public static FlowField build(TileMap map, int goalX, int goalY) {
+        FlowField f = new FlowField(map, goalX, goalY);
+        f.integrate(map);
+        return f;
+    }
+
+    private void integrate(TileMap map) {
+        Arrays.fill(cost, PathSearch.INF);
+        Arrays.fill(direction, (byte) -1);
+        if (map.isWall(goalX, goalY)) return;
+
+        int[][] buckets = new int[BUCKETS][256];
+        int[] sizes = new int[BUCKETS];
+        int pending = 1;
+        int goal = goalY * width + goalX;
+        cost[goal] = 0;
+        buckets[0][sizes[0]++] = goal;
+
+        for (int d = 0; pending > 0; d++) {
+            int b = d & (BUCKETS - 1);
+            // relaxing only adds to later buckets, so this one cannot grow under us
+            int[] bucket = buckets[b];
+            int n = sizes[b];
+            sizes[b] = 0;
+            pending -= n;
+
+            for (int k = 0; k < n; k++) {
+                int node = bucket[k];
+                if (cost[node] != d) continue; // improved since it was queued
+                int x = node % width;
+                int y = node / width;
+
+                for (int dir = 0; dir < 8; dir++) {
+                    int dx = PathSearch.DX[dir];
+                    int dy = PathSearch.DY[dir];
+                    int nx = x + dx;
+                    int ny = y + dy;
+                    if (map.isWall(nx, ny)) continue;
+                    if (dir >= 4 && (map.isWall(nx, y) || map.isWall(x, ny))) continue;
+
+                    int nd = d + (dir < 4 ? PathSearch.STRAIGHT : PathSearch.DIAGONAL);
+                    int next = ny * width + nx;
+                    if (nd >= cost[next]) continue;
+                    cost[next] = nd;
+                    direction[next] = (byte) (dir ^ 1); // DX/DY are laid out in opposite pairs
+
+                    int nb = nd & (BUCKETS - 1);
+                    if (sizes[nb] == buckets[nb].length) buckets[nb] = Arrays.copyOf(buckets[nb], sizes[nb] * 2);
+                    buckets[nb][sizes[nb]++] = next;
+                    pending++;
+                }
+            }
+        }
+    }
+
+    /** True once any tile of the map changed since the field was built. */
+    public boolean isStale(TileMap map) {
+        return map.getVersion() != mapVersion;
+    }
+
+    public int getGoalX() {
+        return goalX;
+    }
+
+    public int getGoalY() {
+        return goalY;
+    }
+
+    /** Path cost to the goal, or {@link Integer#MAX_VALUE} when unreachable. */
+    public int getCost(int tx, int ty) {
+        if (tx < 0 || ty < 0 || tx >= width || ty >= height) return PathSearch.INF;
+        return cost[ty * width + tx];
+    }
+
+    /** -1, 0 or 1: x step from this tile towards the goal (0 at the goal or when unreachable). */
+    public int getStepX(int tx, int ty) {
+        int d = directionAt(tx, ty);
+        return d < 0 ? 0 : PathSearch.DX[d];
+    }
+
+    /** -1, 0 or 1: y step from this tile towards the goal. */
+    public int getStepY(int tx, int ty) {
+        int d = directionAt(tx, ty);
+        return d < 0 ? 0 : PathSearch.DY[d];
+    }
+
+    private int directionAt(int tx, int ty) {
+        if (tx < 0 || ty < 0 || tx >= width || ty >= height) return -1;
+        return direction[ty * width + tx];
+    }
+}
@@ -0,0 +1,157 @@
+package fr.oreostudios.runtime.nav;
+
+import fr.oreostudios.runtime.TileMap;
+
+import java.util.Random;
+
+/**
+ * Paths per second on a 1024x1024 map cluttered with random wall segments:
+ * plain A* against JPS (same costs expected), the portal graph (build,
+ * repair, query, path quality), batched queries through {@link PathService}
+ * and one flow field build.
+ *
+ * Run with: java -cp target/classes fr.oreostudios.runtime.nav.NavBenchmark [threads]
+ */
+public class NavBenchmark {
+
+    private static final int MAP_SIZE = 1024;
+    private static final int QUERIES = 2000;
+    private static final int ASTAR_QUERIES = 200;
+
+    public static void main(String[] args) {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+
+        TileMap map = buildMap(new Random(42));
+        int[][] queries = randomQueries(map, new Random(7), QUERIES);
+        PathSearch search = new PathSearch(map);
+        System.out.printf("%dx%d map, %d random queries, %d worker threads%n", MAP_SIZE, MAP_SIZE, QUERIES, threads);
+
+        // warm up both searches on a few queries first
+        for (int i = 0; i < 50; i++) {
+            int[] q = queries[i];
+            search.findAStar(q[0], q[1], q[2], q[3]);
+            search.findJps(q[0], q[1], q[2], q[3]);
+        }
+
+        long t = System.nanoTime();
+        int[] optimal = new int[ASTAR_QUERIES];
+        for (int i = 0; i < ASTAR_QUERIES; i++) {
+            int[] q = queries[i];
+            TilePath p = search.findAStar(q[0], q[1], q[2], q[3]);
+            optimal[i] = p == null ? -1 : p.getCost();
+        }
+        report("A*", ASTAR_QUERIES, System.nanoTime() - t);
+
+        t = System.nanoTime();
+        int mismatches = 0;
+        int[] jpsCost = new int[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            int[] q = queries[i];
+            TilePath p = search.findJps(q[0], q[1], q[2], q[3]);
+            jpsCost[i] = p == null ? -1 : p.getCost();
+        }
+        report("JPS", QUERIES, System.nanoTime() - t);
+        for (int i = 0; i < ASTAR_QUERIES; i++) {
+            if (jpsCost[i] != optimal[i]) mismatches++;
+        }
+        System.out.printf("  JPS vs A* cost mismatches: %d / %d%n", mismatches, ASTAR_QUERIES);
+
+        PortalGraph graph = new PortalGraph(map);
+        t = System.nanoTime();
+        int clusters = graph.refresh(search);
+        System.out.printf("  portal graph build   %.1f ms (%d clusters, %d portals)%n",
+                (System.nanoTime() - t) / 1e6, clusters, graph.getNodeCount());
+
+        for (int i = 0; i < 50; i++) {
+            int[] q = queries[i];
+            graph.findPath(search, q[0], q[1], q[2], q[3]);
+        }
+        t = System.nanoTime();
+        long sumOptimal = 0, sumHpa = 0;
+        int missing = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            int[] q = queries[i];
+            TilePath p = graph.findPath(search, q[0], q[1], q[2], q[3]);
+            if ((p == null) != (jpsCost[i] < 0)) missing++;
+            if (p != null && jpsCost[i] > 0) {
+                sumOptimal += jpsCost[i];
+                sumHpa += p.getCost();
+            }
+        }
+        report("HPA*", QUERIES, System.nanoTime() - t);
+        System.out.printf("  HPA* path length +%.2f%% over optimal, %d reachability mismatches%n",
+                100.0 * (sumHpa - sumOptimal) / sumOptimal, missing);
+
+        Random rnd = new Random(3);
+        for (int i = 0; i < 100; i++) {
+            map.setTile(1 + rnd.nextInt(MAP_SIZE - 2), 1 + rnd.nextInt(MAP_SIZE - 2), TileMap.WALL);
+        }
+        t = System.nanoTime();
+        int repaired = graph.refresh(search);
+        System.out.printf("  repair after 100 tile edits: %.2f ms (%d clusters rebuilt)%n",
+                (System.nanoTime() - t) / 1e6, repaired);
+        map.setTile(MAP_SIZE / 2, MAP_SIZE / 2, TileMap.WALL);
+        t = System.nanoTime();
+        repaired = graph.refresh(search);
+        System.out.printf("  repair after 1 tile edit:    %.2f ms (%d clusters rebuilt)%n",
+                (System.nanoTime() - t) / 1e6, repaired);
+
+        PathService service = new PathService(map, threads, 4);
+        PathRequest[] requests = new PathRequest[QUERIES];
+        for (int round = 0; round < 2; round++) { // first round warms up and builds the graph
+            t = System.nanoTime();
+            for (int i = 0; i < QUERIES; i++) {
+                int[] q = queries[i];
+                requests[i] = service.findPath(q[0], q[1], q[2], q[3]);
+            }
+            service.update();
+            service.awaitIdle();
+            if (round == 1) report("PathService batch", QUERIES, System.nanoTime() - t);
+        }
+        int done = 0;
+        for (PathRequest r : requests) if (r.isDone()) done++;
+        System.out.printf("  %d / %d requests completed%n", done, QUERIES);
+        service.shutdown();
+
+        t = System.nanoTime();
+        FlowField field = FlowField.build(map, queries[0][2], queries[0][3]);
+        System.out.printf("  flow field build     %.1f ms (cost from query 0 start: %d, JPS said %d)%n",
+                (System.nanoTime() - t) / 1e6, field.getCost(queries[0][0], queries[0][1]),
+                search.findJps(queries[0][0], queries[0][1], queries[0][2], queries[0][3]).getCost());
+    }
+
+    private static void report(String name, int count, long nanos) {
+        System.out.printf("  %-20s %8.0f paths/s (%.3f ms/path)%n", name, count / (nanos / 1e9), nanos / 1e6 / count);
+    }
+
+    /** Border walls plus random horizontal and vertical wall segments (~20% of tiles). */
+    static TileMap buildMap(Random rnd) {
+        TileMap map = new TileMap(MAP_SIZE, MAP_SIZE, 32);
+        int segments = MAP_SIZE * MAP_SIZE / 40;
+        for (int s = 0; s < segments; s++) {
+            int x = rnd.nextInt(MAP_SIZE);
+            int y = rnd.nextInt(MAP_SIZE);
+            int len = 2 + rnd.nextInt(12);
+            boolean horizontal = rnd.nextBoolean();
+            for (int i = 0; i < len; i++) {
+                map.setTile(horizontal ? x + i : x, horizontal ? y : y + i, TileMap.WALL);
+            }
+        }
+        map.compact();
+        return map;
+    }
+
+    static int[][] randomQueries(TileMap map, Random rnd, int count) {
+        int[][] out = new int[count][];
+        for (int i = 0; i < count; i++) {
+            out[i] = new int[]{0, 0, 0, 0};
+            for (int k = 0; k < 4; k += 2) {
+                do {
+                    out[i][k] = rnd.nextInt(map.getWidth());
+                    out[i][k + 1] = rnd.nextInt(map.getHeight());
+                } while (map.isWall(out[i][k], out[i][k + 1]));
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,50 @@
+package fr.oreostudios.runtime.nav;
+
+/**
+ * Handle for a path query submitted to a {@link PathService}. The caller
+ * keeps it and checks {@link #isDone()} on later ticks.
+ */
+public class PathRequest {
+
+    private final int startX, startY, goalX, goalY;
+
+    private TilePath path;
+    private volatile boolean done; // written after path, read before it
+
+    PathRequest(int startX, int startY, int goalX, int goalY) {
+        this.startX = startX;
+        this.startY = startY;
+        this.goalX = goalX;
+        this.goalY = goalY;
+    }
+
+    void complete(TilePath path) {
+        this.path = path;
+        this.done = true;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    /** The path once done, null if the goal is unreachable (or not done yet). */
+    public TilePath getPath() {
+        return done ? path : null;
+    }
+
+    public int getStartX() {
+        return startX;
+    }
+
+    public int getStartY() {
+        return startY;
+    }
+
+    public int getGoalX() {
+        return goalX;
+    }
+
+    public int getGoalY() {
+        return goalY;
+    }
+}
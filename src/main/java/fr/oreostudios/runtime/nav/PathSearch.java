@@ -0,0 +1,362 @@
+package fr.oreostudios.runtime.nav;
+
+import fr.oreostudios.runtime.TileMap;
+
+import java.util.Arrays;
+
+/**
+ * Single grid queries over a {@link TileMap}: plain A* and Jump Point Search.
+ *
+ * Movement is 8-way without corner cutting: a diagonal step needs both
+ * orthogonal neighbours free. Straight steps cost {@link #STRAIGHT},
+ * diagonal ones {@link #DIAGONAL}, and the octile heuristic is exact on an
+ * empty grid, so both searches return optimal paths.
+ *
+ * An instance owns per-tile scratch arrays sized for its map. They are
+ * invalidated with a stamp instead of being cleared, so a query only costs
+ * what it visits. Not thread-safe: keep one per thread.
+ */
+public class PathSearch {
+
+    public static final int STRAIGHT = 10;
+    public static final int DIAGONAL = 14;
+
+    static final int INF = Integer.MAX_VALUE;
+
+    // the 8 directions, straight ones first, each next to its opposite (d ^ 1)
+    static final int[] DX = {1, -1, 0, 0, 1, -1, 1, -1};
+    static final int[] DY = {0, 0, 1, -1, 1, -1, -1, 1};
+
+    private final TileMap map;
+    private final int width;
+
+    private final int[] g;
+    private final int[] parent;
+    private final int[] seen;   // == stamp: g and parent are valid
+    private final int[] closed; // == stamp: expanded
+    private int stamp;
+
+    // binary min-heap of (f << 32 | node)
+    private long[] heap = new long[1024];
+    private int heapSize;
+
+    // current search bounds [minX, maxX) x [minY, maxY)
+    private int minX, minY, maxX, maxY;
+    private int goalX, goalY;
+
+    // abstract-graph scratch for PortalGraph, grown on demand
+    int[] absG = new int[0];
+    int[] absParent = new int[0];
+    int[] absSeen = new int[0];
+    int absStamp;
+
+    // one-chunk local grid and bucket queue for boxDistances; a tile is
+    // queued at most 8 times, so a bucket never outgrows 8 * AREA
+    private final boolean[] boxFree = new boolean[TileMap.CHUNK_SIZE * TileMap.CHUNK_SIZE];
+    private final int[][] buckets = new int[16][8 * TileMap.CHUNK_SIZE * TileMap.CHUNK_SIZE];
+    private final int[] bucketSizes = new int[16];
+    private int boxX, boxY, boxW, boxH;
+
+    // local distance buffers for PortalGraph, one cluster each
+    final int[] startDist = new int[TileMap.CHUNK_SIZE * TileMap.CHUNK_SIZE];
+    final int[] goalDist = new int[TileMap.CHUNK_SIZE * TileMap.CHUNK_SIZE];
+
+    public PathSearch(TileMap map) {
+        this.map = map;
+        this.width = map.getWidth();
+        int n = map.getWidth() * map.getHeight();
+        this.g = new int[n];
+        this.parent = new int[n];
+        this.seen = new int[n];
+        this.closed = new int[n];
+    }
+
+    public TileMap getMap() {
+        return map;
+    }
+
+    /** Plain A*, every tile of the path is a waypoint. Null when unreachable. */
+    public TilePath findAStar(int sx, int sy, int gx, int gy) {
+        return search(false, sx, sy, gx, gy, 0, 0, map.getWidth(), map.getHeight());
+    }
+
+    /** Jump Point Search; waypoints are the jump points. Null when unreachable. */
+    public TilePath findJps(int sx, int sy, int gx, int gy) {
+        return search(true, sx, sy, gx, gy, 0, 0, map.getWidth(), map.getHeight());
+    }
+
+    /** JPS that treats everything outside the box as wall. */
+    TilePath findJps(int sx, int sy, int gx, int gy, int x0, int y0, int x1, int y1) {
+        return search(true, sx, sy, gx, gy, x0, y0, x1, y1);
+    }
+
+    /**
+     * Copies the walls of a box of at most one chunk into the local grid
+     * used by {@link #boxDistances}.
+     */
+    void loadBox(int x0, int y0, int x1, int y1) {
+        boxX = x0;
+        boxY = y0;
+        boxW = x1 - x0;
+        boxH = y1 - y0;
+        for (int y = 0; y < boxH; y++) {
+            for (int x = 0; x < boxW; x++) {
+                boxFree[y * boxW + x] = !map.isWall(x0 + x, y0 + y);
+            }
+        }
+    }
+
+    /**
+     * Dijkstra from (sx, sy) over the loaded box. Writes the cost of every
+     * box tile into {@code out} (row-major over the box, {@link #INF} when
+     * unreachable). Bucket queue instead of the heap: step costs are 10 or
+     * 14, so 16 circular buckets hold every pending distance.
+     */
+    void boxDistances(int sx, int sy, int[] out) {
+        int bw = boxW;
+        int area = bw * boxH;
+        Arrays.fill(out, 0, area, INF);
+        int start = (sy - boxY) * bw + (sx - boxX);
+        if (!boxFree[start]) return;
+
+        out[start] = 0;
+        bucketSizes[0] = 1;
+        buckets[0][0] = start;
+        int pending = 1;
+        for (int d = 0; pending > 0; d++) {
+            int b = d & 15;
+            int[] bucket = buckets[b];
+            int n = bucketSizes[b];
+            bucketSizes[b] = 0;
+            pending -= n;
+            for (int k = 0; k < n; k++) {
+                int node = bucket[k];
+                if (out[node] != d) continue;
+                int x = node % bw;
+                int y = node / bw;
+                for (int dir = 0; dir < 8; dir++) {
+                    int nx = x + DX[dir];
+                    int ny = y + DY[dir];
+                    if (nx < 0 || ny < 0 || nx >= bw || ny >= boxH || !boxFree[ny * bw + nx]) continue;
+                    if (dir >= 4 && (!boxFree[y * bw + nx] || !boxFree[ny * bw + x])) continue;
+                    int nd = d + (dir < 4 ? STRAIGHT : DIAGONAL);
+                    int next = ny * bw + nx;
+                    if (nd >= out[next]) continue;
+                    out[next] = nd;
+                    int nb = nd & 15;
+                    buckets[nb][bucketSizes[nb]++] = next;
+                    pending++;
+                }
+            }
+        }
+    }
+
+    private TilePath search(boolean jump, int sx, int sy, int gx, int gy, int x0, int y0, int x1, int y1) {
+        setBounds(x0, y0, x1, y1);
+        goalX = gx;
+        goalY = gy;
+        if (!open(sx, sy) || !open(gx, gy)) return null;
+
+        nextStamp();
+        heapSize = 0;
+        int start = sy * width + sx;
+        int goal = gy * width + gx;
+        seen[start] = stamp;
+        g[start] = 0;
+        parent[start] = -1;
+        push(heuristic(sx, sy), start);
+
+        while (heapSize > 0) {
+            int node = (int) pop();
+            if (closed[node] == stamp) continue;
+            closed[node] = stamp;
+            if (node == goal) return buildPath(goal);
+
+            int x = node % width;
+            int y = node / width;
+            if (jump) expandJumpPoints(node, x, y);
+            else expandNeighbours(node, x, y);
+        }
+        return null;
+    }
+
+    private void expandNeighbours(int node, int x, int y) {
+        int base = g[node];
+        for (int d = 0; d < 8; d++) {
+            int dx = DX[d];
+            int dy = DY[d];
+            if (canStep(x, y, dx, dy)) {
+                relax(node, x + dx, y + dy, base + (d < 4 ? STRAIGHT : DIAGONAL));
+            }
+        }
+    }
+
+    /**
+     * Only follows the directions that can lead somewhere the parent could
+     * not reach as cheaply on its own; {@link #jump} then skips ahead to the
+     * next tile where that changes.
+     */
+    private void expandJumpPoints(int node, int x, int y) {
+        int p = parent[node];
+        if (p < 0) {
+            for (int d = 0; d < 8; d++) tryJump(node, x, y, DX[d], DY[d]);
+            return;
+        }
+
+        int dx = Integer.signum(x - p % width);
+        int dy = Integer.signum(y - p / width);
+        if (dx != 0 && dy != 0) {
+            tryJump(node, x, y, dx, 0);
+            tryJump(node, x, y, 0, dy);
+            tryJump(node, x, y, dx, dy);
+        } else if (dx != 0) {
+            tryJump(node, x, y, dx, 0);
+            tryJump(node, x, y, dx, -1);
+            tryJump(node, x, y, dx, 1);
+            tryJump(node, x, y, 0, -1);
+            tryJump(node, x, y, 0, 1);
+        } else {
+            tryJump(node, x, y, 0, dy);
+            tryJump(node, x, y, -1, dy);
+            tryJump(node, x, y, 1, dy);
+            tryJump(node, x, y, -1, 0);
+            tryJump(node, x, y, 1, 0);
+        }
+    }
+
+    private void tryJump(int node, int x, int y, int dx, int dy) {
+        int jp = jump(x, y, dx, dy);
+        if (jp < 0) return;
+        int jx = jp % width;
+        int jy = jp / width;
+        relax(node, jx, jy, g[node] + octile(Math.abs(jx - x), Math.abs(jy - y)));
+    }
+
+    /** Next jump point from (x, y) going (dx, dy), or -1. */
+    private int jump(int x, int y, int dx, int dy) {
+        while (true) {
+            if (!canStep(x, y, dx, dy)) return -1;
+            x += dx;
+            y += dy;
+            if (x == goalX && y == goalY) return y * width + x;
+
+            if (dx != 0 && dy != 0) {
+                if (jump(x, y, dx, 0) >= 0 || jump(x, y, 0, dy) >= 0) return y * width + x;
+            } else if (dx != 0) {
+                if ((open(x, y - 1) && !open(x - dx, y - 1)) || (open(x, y + 1) && !open(x - dx, y + 1))) {
+                    return y * width + x;
+                }
+            } else {
+                if ((open(x - 1, y) && !open(x - 1, y - dy)) || (open(x + 1, y) && !open(x + 1, y - dy))) {
+                    return y * width + x;
+                }
+            }
+        }
+    }
+
+    private void relax(int from, int x, int y, int cost) {
+        int n = y * width + x;
+        if (closed[n] == stamp) return;
+        if (seen[n] != stamp || cost < g[n]) {
+            seen[n] = stamp;
+            g[n] = cost;
+            parent[n] = from;
+            push(cost + heuristic(x, y), n);
+        }
+    }
+
+    private TilePath buildPath(int goal) {
+        int count = 0;
+        for (int n = goal; n >= 0; n = parent[n]) count++;
+        int[] packed = new int[count];
+        int i = count;
+        for (int n = goal; n >= 0; n = parent[n]) packed[--i] = n;
+        return new TilePath(packed, count, width, g[goal]);
+    }
+
+    private boolean canStep(int x, int y, int dx, int dy) {
+        if (!open(x + dx, y + dy)) return false;
+        return dx == 0 || dy == 0 || (open(x + dx, y) && open(x, y + dy));
+    }
+
+    private boolean open(int x, int y) {
+        return x >= minX && y >= minY && x < maxX && y < maxY && !map.isWall(x, y);
+    }
+
+    private void setBounds(int x0, int y0, int x1, int y1) {
+        minX = Math.max(0, x0);
+        minY = Math.max(0, y0);
+        maxX = Math.min(map.getWidth(), x1);
+        maxY = Math.min(map.getHeight(), y1);
+    }
+
+    private int heuristic(int x, int y) {
+        return octile(Math.abs(x - goalX), Math.abs(y - goalY));
+    }
+
+    static int octile(int adx, int ady) {
+        return STRAIGHT * Math.max(adx, ady) + (DIAGONAL - STRAIGHT) * Math.min(adx, ady);
+    }
+
+    private void nextStamp() {
+        if (++stamp == INF) {
+            Arrays.fill(seen, 0);
+            Arrays.fill(closed, 0);
+            stamp = 1;
+        }
+    }
+
+    int nextAbstractStamp(int nodes) {
+        if (absG.length < nodes) {
+            absG = new int[nodes];
+            absParent = new int[nodes];
+            absSeen = new int[nodes];
+            absStamp = 0;
+        }
+        if (++absStamp == INF) {
+            Arrays.fill(absSeen, 0);
+            absStamp = 1;
+        }
+        return absStamp;
+    }
+
+    // --- heap, shared with PortalGraph's abstract search ---
+
+    void clearHeap() {
+        heapSize = 0;
+    }
+
+    boolean heapEmpty() {
+        return heapSize == 0;
+    }
+
+    void push(int f, int node) {
+        if (heapSize == heap.length) heap = Arrays.copyOf(heap, heapSize * 2);
+        long key = ((long) f << 32) | node;
+        int i = heapSize++;
+        while (i > 0) {
+            int up = (i - 1) >> 1;
+            if (heap[up] <= key) break;
+            heap[i] = heap[up];
+            i = up;
+        }
+        heap[i] = key;
+    }
+
+    /** Pops the smallest entry: f in the high 32 bits, node in the low ones. */
+    long pop() {
+        long top = heap[0];
+        long last = heap[--heapSize];
+        int i = 0;
+        int half = heapSize >> 1;
+        while (i < half) {
+            int c = 2 * i + 1;
+            if (c + 1 < heapSize && heap[c + 1] < heap[c]) c++;
+            if (last <= heap[c]) break;
+            heap[i] = heap[c];
+            i = c;
+        }
+        heap[i] = last;
+        return top;
+    }
+}
@@ -0,0 +1,193 @@
+package fr.oreostudios.runtime.nav;
+
+import fr.oreostudios.runtime.TileMap;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Navigation front end for the game thread. Path queries and flow field
+ * builds are queued during the tick and run as one batch on worker threads;
+ * the game thread never searches itself.
+ *
+ * Call {@link #update()} once per tick. When the previous batch is finished
+ * it installs the new flow fields, repairs the {@link PortalGraph} for any
+ * chunks edited since, and hands the queued work to the workers. Results
+ * therefore arrive one or more ticks after the request. Workers read the
+ * map while the game keeps running, so a path through a tile edited during
+ * its batch can be out of date, as any path is once the map changes.
+ *
+ * Short trips use JPS directly, longer ones the portal graph.
+ */
+public class PathService {
+
+    // Chebyshev distance (tiles) from which queries go through the portal graph
+    private static final int HIERARCHICAL_DISTANCE = 2 * TileMap.CHUNK_SIZE;
+
+    private final TileMap map;
+    private final PortalGraph graph;
+    private final PathSearch mainSearch;
+    private final PathSearch[] searches; // one per worker
+    private final ExecutorService workers; // null: batches run inline in update()
+
+    private List<PathRequest> pending = new ArrayList<>();
+    private final List<Integer> pendingFields = new ArrayList<>();
+    private final Set<Integer> requestedFields = new HashSet<>(); // pending or in flight
+
+    // access-ordered: the least recently used goal is dropped first
+    private final LinkedHashMap<Integer, FlowField> fields;
+
+    // batch in flight
+    private List<PathRequest> batch;
+    private int[] batchFields;
+    private FlowField[] builtFields;
+    private final AtomicInteger remaining = new AtomicInteger();
+
+    /**
+     * @param threads worker threads, 0 to run every batch inline in {@link #update()}
+     * @param maxFlowFields flow fields kept cached (each costs 5 bytes per tile)
+     */
+    public PathService(TileMap map, int threads, int maxFlowFields) {
+        this.map = map;
+        this.graph = new PortalGraph(map);
+        this.mainSearch = new PathSearch(map);
+        if (threads <= 0) {
+            searches = new PathSearch[]{mainSearch};
+            workers = null;
+        } else {
+            searches = new PathSearch[threads];
+            for (int i = 0; i < threads; i++) searches[i] = new PathSearch(map);
+            AtomicInteger ids = new AtomicInteger();
+            workers = Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "PathWorker-" + ids.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        this.fields = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, FlowField> eldest) {
+                return size() > maxFlowFields;
+            }
+        };
+    }
+
+    /** Queues a path query (tile coordinates); the result shows up on the handle. */
+    public PathRequest findPath(int startX, int startY, int goalX, int goalY) {
+        PathRequest r = new PathRequest(startX, startY, goalX, goalY);
+        pending.add(r);
+        return r;
+    }
+
+    /**
+     * Cached flow field towards a goal tile. Returns null the first time
+     * and queues a build; a field the map changed under keeps being returned
+     * while its replacement is built.
+     */
+    public FlowField getFlowField(int goalX, int goalY) {
+        int key = goalY * map.getWidth() + goalX;
+        FlowField f = fields.get(key);
+        if ((f == null || f.isStale(map)) && requestedFields.add(key)) {
+            pendingFields.add(key);
+        }
+        return f;
+    }
+
+    /** Game thread, once per tick. */
+    public void update() {
+        if (batch != null) {
+            if (remaining.get() > 0) return;
+            finishBatch();
+        }
+        if (pending.isEmpty() && pendingFields.isEmpty()) return;
+
+        graph.refresh(mainSearch);
+
+        batch = pending;
+        pending = new ArrayList<>();
+        batchFields = pendingFields.stream().mapToInt(Integer::intValue).toArray();
+        pendingFields.clear();
+        builtFields = new FlowField[batchFields.length];
+
+        if (workers == null) {
+            runSlice(0, 1);
+            finishBatch();
+            return;
+        }
+
+        int slices = searches.length;
+        remaining.set(slices);
+        for (int s = 0; s < slices; s++) {
+            int slice = s;
+            workers.execute(() -> {
+                try {
+                    runSlice(slice, slices);
+                } finally {
+                    remaining.decrementAndGet();
+                }
+            });
+        }
+    }
+
+    /** Blocks until the batch in flight is done (tests, benchmarks, shutdown). */
+    public void awaitIdle() {
+        while (batch != null) {
+            if (remaining.get() == 0) finishBatch();
+            else Thread.yield();
+        }
+    }
+
+    public void shutdown() {
+        if (workers != null) workers.shutdownNow();
+    }
+
+    public PortalGraph getPortalGraph() {
+        return graph;
+    }
+
+    public int getPendingCount() {
+        return pending.size() + (batch != null ? batch.size() : 0);
+    }
+
+    // interleaved so that a run of long queries is spread over all workers
+    private void runSlice(int slice, int slices) {
+        PathSearch search = searches[slice];
+        for (int i = slice; i < batch.size(); i += slices) {
+            PathRequest r = batch.get(i);
+            TilePath path = null;
+            try {
+                path = find(search, r.getStartX(), r.getStartY(), r.getGoalX(), r.getGoalY());
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+            r.complete(path);
+        }
+        for (int i = slice; i < batchFields.length; i += slices) {
+            int key = batchFields[i];
+            builtFields[i] = FlowField.build(map, key % map.getWidth(), key / map.getWidth());
+        }
+    }
+
+    private TilePath find(PathSearch search, int sx, int sy, int gx, int gy) {
+        int distance = Math.max(Math.abs(gx - sx), Math.abs(gy - sy));
+        if (distance >= HIERARCHICAL_DISTANCE) return graph.findPath(search, sx, sy, gx, gy);
+        return search.findJps(sx, sy, gx, gy);
+    }
+
+    private void finishBatch() {
+        for (int i = 0; i < batchFields.length; i++) {
+            if (builtFields[i] != null) fields.put(batchFields[i], builtFields[i]);
+            requestedFields.remove(batchFields[i]);
+        }
+        batch = null;
+        batchFields = null;
+        builtFields = null;
+    }
+}
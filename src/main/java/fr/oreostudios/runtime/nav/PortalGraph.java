@@ -0,0 +1,375 @@
+package fr.oreostudios.runtime.nav;
+
+import fr.oreostudios.runtime.TileMap;
+
+import java.util.Arrays;
+
+/**
+ * Hierarchical path-finding (HPA*) over the {@link TileMap} chunks.
+ *
+ * Every chunk is a cluster. Along each border between two clusters, every
+ * run of tiles free on both sides is an entrance with one portal in its
+ * middle (or one at each end for wide runs). Each cluster caches the
+ * costs between its own portals, so a long query is an A* over a few
+ * hundred portals followed by short JPS searches inside single clusters.
+ * Paths come out within a few percent of optimal.
+ *
+ * {@link #refresh} compares the chunk versions against the ones each
+ * cluster was built from and only redoes the changed clusters, plus the
+ * neighbours whose shared border actually changed.
+ *
+ * Queries may run on several threads at once, each with its own
+ * {@link PathSearch}; refresh must not run concurrently with them.
+ */
+public class PortalGraph {
+
+    // a cluster has at most one portal per border tile
+    static final int MAX_NODES = 4 * TileMap.CHUNK_SIZE;
+
+    // entrances at least this wide get a portal at each end instead of one in the middle
+    private static final int WIDE_ENTRANCE = 6;
+
+    private static final int LEFT = 0, RIGHT = 1, TOP = 2, BOTTOM = 3;
+
+    private static final class Cluster {
+        int[] tiles = new int[0];      // packed tile index of each portal node
+        int[] sideStart = new int[5];  // nodes of side s are [sideStart[s], sideStart[s + 1])
+        int[] dist = new int[0];       // n * n costs inside the cluster
+    }
+
+    private final TileMap map;
+    private final int width;
+    private final int clustersX;
+    private final int clustersY;
+    private final Cluster[] clusters;
+    private final int[] builtVersions;
+
+    // portals on the border right of cluster i (absolute y) and below it (absolute x)
+    private final int[][] rightBorders;
+    private final int[][] bottomBorders;
+
+    private final int[] scratchDist = new int[TileMap.CHUNK_SIZE * TileMap.CHUNK_SIZE];
+    private int builtMapVersion;
+    private boolean built;
+
+    public PortalGraph(TileMap map) {
+        this.map = map;
+        this.width = map.getWidth();
+        this.clustersX = map.getChunksX();
+        this.clustersY = map.getChunksY();
+        int n = clustersX * clustersY;
+        this.clusters = new Cluster[n];
+        for (int i = 0; i < n; i++) clusters[i] = new Cluster();
+        this.builtVersions = new int[n];
+        this.rightBorders = new int[n][0];
+        this.bottomBorders = new int[n][0];
+    }
+
+    /**
+     * Brings the graph up to date with the map. Returns the number of
+     * clusters rebuilt (all of them the first time).
+     */
+    public int refresh(PathSearch search) {
+        if (built && builtMapVersion == map.getVersion()) return 0;
+
+        int n = clusters.length;
+        boolean[] dirty = new boolean[n];
+        boolean[] rebuild = new boolean[n];
+        for (int c = 0; c < n; c++) {
+            int v = map.getChunkVersion(c % clustersX, c / clustersX);
+            if (!built || v != builtVersions[c]) {
+                dirty[c] = true;
+                builtVersions[c] = v;
+            }
+        }
+
+        for (int c = 0; c < n; c++) {
+            if (!dirty[c]) continue;
+            rebuild[c] = true;
+            int cx = c % clustersX;
+            int cy = c / clustersX;
+            if (cx > 0) updateRightBorder(c - 1, rebuild);
+            if (cx < clustersX - 1) updateRightBorder(c, rebuild);
+            if (cy > 0) updateBottomBorder(c - clustersX, rebuild);
+            if (cy < clustersY - 1) updateBottomBorder(c, rebuild);
+        }
+
+        int count = 0;
+        for (int c = 0; c < n; c++) {
+            if (rebuild[c]) {
+                buildCluster(c, search);
+                count++;
+            }
+        }
+        built = true;
+        builtMapVersion = map.getVersion();
+        return count;
+    }
+
+    /** Total portal nodes, for stats. */
+    public int getNodeCount() {
+        int total = 0;
+        for (Cluster cl : clusters) total += cl.tiles.length;
+        return total;
+    }
+
+    private void updateRightBorder(int c, boolean[] rebuild) {
+        int cs = TileMap.CHUNK_SIZE;
+        int x = (c % clustersX + 1) * cs;
+        int y0 = (c / clustersX) * cs;
+        int[] portals = findPortals(x - 1, y0, x, y0, 0, 1, Math.min(cs, map.getHeight() - y0), false);
+        if (!Arrays.equals(portals, rightBorders[c])) {
+            rightBorders[c] = portals;
+            rebuild[c] = true;
+            rebuild[c + 1] = true;
+        }
+    }
+
+    private void updateBottomBorder(int c, boolean[] rebuild) {
+        int cs = TileMap.CHUNK_SIZE;
+        int y = (c / clustersX + 1) * cs;
+        int x0 = (c % clustersX) * cs;
+        int[] portals = findPortals(x0, y - 1, x0, y, 1, 0, Math.min(cs, map.getWidth() - x0), true);
+        if (!Arrays.equals(portals, bottomBorders[c])) {
+            bottomBorders[c] = portals;
+            rebuild[c] = true;
+            rebuild[c + clustersX] = true;
+        }
+    }
+
+    /**
+     * Walks {@code length} tile pairs ((ax, ay), (bx, by)) + i * (sx, sy) and
+     * returns the portal coordinates along the border (x if {@code alongX}).
+     */
+    private int[] findPortals(int ax, int ay, int bx, int by, int sx, int sy, int length, boolean alongX) {
+        int[] out = new int[length];
+        int count = 0;
+        int runStart = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean free = i < length
+                    && !map.isWall(ax + i * sx, ay + i * sy)
+                    && !map.isWall(bx + i * sx, by + i * sy);
+            if (free) {
+                if (runStart < 0) runStart = i;
+                continue;
+            }
+            if (runStart >= 0) {
+                int runEnd = i - 1;
+                int base = alongX ? ax : ay;
+                if (runEnd - runStart + 1 >= WIDE_ENTRANCE) {
+                    out[count++] = base + runStart;
+                    out[count++] = base + runEnd;
+                } else {
+                    out[count++] = base + (runStart + runEnd) / 2;
+                }
+                runStart = -1;
+            }
+        }
+        return Arrays.copyOf(out, count);
+    }
+
+    private void buildCluster(int c, PathSearch search) {
+        int cx = c % clustersX;
+        int cy = c / clustersX;
+        int cs = TileMap.CHUNK_SIZE;
+        int x0 = cx * cs;
+        int y0 = cy * cs;
+        int x1 = Math.min(map.getWidth(), x0 + cs);
+        int y1 = Math.min(map.getHeight(), y0 + cs);
+
+        int[] left = cx > 0 ? rightBorders[c - 1] : new int[0];
+        int[] right = cx < clustersX - 1 ? rightBorders[c] : new int[0];
+        int[] top = cy > 0 ? bottomBorders[c - clustersX] : new int[0];
+        int[] bottom = cy < clustersY - 1 ? bottomBorders[c] : new int[0];
+
+        Cluster cl = clusters[c];
+        int n = left.length + right.length + top.length + bottom.length;
+        cl.tiles = new int[n];
+        int k = 0;
+        cl.sideStart[LEFT] = k;
+        for (int y : left) cl.tiles[k++] = y * width + x0;
+        cl.sideStart[RIGHT] = k;
+        for (int y : right) cl.tiles[k++] = y * width + x1 - 1;
+        cl.sideStart[TOP] = k;
+        for (int x : top) cl.tiles[k++] = y0 * width + x;
+        cl.sideStart[BOTTOM] = k;
+        for (int x : bottom) cl.tiles[k++] = (y1 - 1) * width + x;
+        cl.sideStart[4] = k;
+
+        int bw = x1 - x0;
+        cl.dist = new int[n * n];
+        search.loadBox(x0, y0, x1, y1);
+        for (int i = 0; i < n; i++) {
+            int ti = cl.tiles[i];
+            search.boxDistances(ti % width, ti / width, scratchDist);
+            for (int j = 0; j < n; j++) {
+                int tj = cl.tiles[j];
+                cl.dist[i * n + j] = scratchDist[(tj / width - y0) * bw + (tj % width - x0)];
+            }
+        }
+    }
+
+    /** Abstract id of the node facing node {@code i} of cluster {@code c}. */
+    private int peerOf(int c, int i) {
+        Cluster cl = clusters[c];
+        int side = LEFT;
+        while (i >= cl.sideStart[side + 1]) side++;
+        int j = i - cl.sideStart[side];
+        int other = switch (side) {
+            case LEFT -> c - 1;
+            case RIGHT -> c + 1;
+            case TOP -> c - clustersX;
+            default -> c + clustersX;
+        };
+        int opposite = side ^ 1; // LEFT <-> RIGHT, TOP <-> BOTTOM
+        return other * MAX_NODES + clusters[other].sideStart[opposite] + j;
+    }
+
+    /** Near-optimal path, or null when unreachable. */
+    public TilePath findPath(PathSearch search, int sx, int sy, int gx, int gy) {
+        if (map.isWall(sx, sy) || map.isWall(gx, gy)) return null;
+        int cs = TileMap.CHUNK_SIZE;
+        int sc = (sy / cs) * clustersX + sx / cs;
+        int gc = (gy / cs) * clustersX + gx / cs;
+
+        if (sc == gc) {
+            TilePath local = searchInCluster(search, sc, sy * width + sx, gy * width + gx);
+            if (local != null) return local;
+        }
+
+        distancesInCluster(search, sc, sx, sy, search.startDist);
+        distancesInCluster(search, gc, gx, gy, search.goalDist);
+
+        int goalId = clusters.length * MAX_NODES;
+        int stamp = search.nextAbstractStamp(goalId + 1);
+        int[] ag = search.absG;
+        int[] ap = search.absParent;
+        int[] as = search.absSeen;
+        search.clearHeap();
+
+        Cluster start = clusters[sc];
+        for (int i = 0; i < start.tiles.length; i++) {
+            int d = search.startDist[localIndex(sc, start.tiles[i])];
+            if (d == PathSearch.INF) continue;
+            int id = sc * MAX_NODES + i;
+            if (as[id] != stamp || d < ag[id]) {
+                as[id] = stamp;
+                ag[id] = d;
+                ap[id] = -1;
+                search.push(d + h(start.tiles[i], gx, gy), id);
+            }
+        }
+
+        // entries are popped in f order and re-pushed on improvement; a stale
+        // entry is recognized by its f no longer matching g + h
+        while (!search.heapEmpty()) {
+            long key = search.pop();
+            int id = (int) key;
+            if (id == goalId) return refine(search, sx, sy, gx, gy, goalId);
+
+            int c = id / MAX_NODES;
+            int i = id % MAX_NODES;
+            Cluster cl = clusters[c];
+            int base = ag[id];
+            int tile = cl.tiles[i];
+            if ((int) (key >>> 32) != base + h(tile, gx, gy)) continue;
+
+            if (c == gc) {
+                int d = search.goalDist[localIndex(gc, tile)];
+                if (d != PathSearch.INF) relaxAbstract(search, stamp, id, goalId, base + d, 0);
+            }
+
+            int peer = peerOf(c, i);
+            int pc = peer / MAX_NODES;
+            int pt = clusters[pc].tiles[peer % MAX_NODES];
+            relaxAbstract(search, stamp, id, peer, base + PathSearch.STRAIGHT, h(pt, gx, gy));
+
+            int n = cl.tiles.length;
+            for (int j = 0; j < n; j++) {
+                int d = cl.dist[i * n + j];
+                if (j == i || d == PathSearch.INF) continue;
+                relaxAbstract(search, stamp, id, c * MAX_NODES + j, base + d, h(cl.tiles[j], gx, gy));
+            }
+        }
+        return null;
+    }
+
+    private void relaxAbstract(PathSearch search, int stamp, int from, int to, int cost, int h) {
+        if (search.absSeen[to] == stamp && cost >= search.absG[to]) return;
+        search.absSeen[to] = stamp;
+        search.absG[to] = cost;
+        search.absParent[to] = from;
+        search.push(cost + h, to);
+    }
+
+    /** Turns the abstract node chain into a tile path, one JPS per cluster leg. */
+    private TilePath refine(PathSearch search, int sx, int sy, int gx, int gy, int goalId) {
+        int legs = 0;
+        for (int id = search.absParent[goalId]; id >= 0; id = search.absParent[id]) legs++;
+        int[] tiles = new int[legs + 2];
+        tiles[0] = sy * width + sx;
+        tiles[legs + 1] = gy * width + gx;
+        int k = legs;
+        for (int id = search.absParent[goalId]; id >= 0; id = search.absParent[id]) {
+            tiles[k--] = clusters[id / MAX_NODES].tiles[id % MAX_NODES];
+        }
+
+        int[] packed = new int[64];
+        int count = 0;
+        int cost = 0;
+        packed[count++] = tiles[0];
+        for (int t = 0; t + 1 < tiles.length; t++) {
+            int a = tiles[t];
+            int b = tiles[t + 1];
+            if (a == b) continue;
+            int ca = clusterOf(a);
+            if (ca != clusterOf(b)) {
+                // portal crossing: one straight step
+                if (count == packed.length) packed = Arrays.copyOf(packed, count * 2);
+                packed[count++] = b;
+                cost += PathSearch.STRAIGHT;
+                continue;
+            }
+            TilePath leg = searchInCluster(search, ca, a, b);
+            if (leg == null) return null; // graph out of date
+            for (int i = 1; i < leg.size(); i++) {
+                if (count == packed.length) packed = Arrays.copyOf(packed, count * 2);
+                packed[count++] = leg.getY(i) * width + leg.getX(i);
+            }
+            cost += leg.getCost();
+        }
+        return new TilePath(packed, count, width, cost);
+    }
+
+    private TilePath searchInCluster(PathSearch search, int c, int from, int to) {
+        int cs = TileMap.CHUNK_SIZE;
+        int x0 = (c % clustersX) * cs;
+        int y0 = (c / clustersX) * cs;
+        return search.findJps(from % width, from / width, to % width, to / width, x0, y0, x0 + cs, y0 + cs);
+    }
+
+    private void distancesInCluster(PathSearch search, int c, int x, int y, int[] out) {
+        int cs = TileMap.CHUNK_SIZE;
+        int x0 = (c % clustersX) * cs;
+        int y0 = (c / clustersX) * cs;
+        search.loadBox(x0, y0, Math.min(map.getWidth(), x0 + cs), Math.min(map.getHeight(), y0 + cs));
+        search.boxDistances(x, y, out);
+    }
+
+    private int localIndex(int c, int tile) {
+        int cs = TileMap.CHUNK_SIZE;
+        int x0 = (c % clustersX) * cs;
+        int y0 = (c / clustersX) * cs;
+        int bw = Math.min(map.getWidth(), x0 + cs) - x0;
+        return (tile / width - y0) * bw + (tile % width - x0);
+    }
+
+    private int clusterOf(int tile) {
+        int cs = TileMap.CHUNK_SIZE;
+        return (tile / width / cs) * clustersX + (tile % width) / cs;
+    }
+
+    private int h(int tile, int gx, int gy) {
+        return PathSearch.octile(Math.abs(tile % width - gx), Math.abs(tile / width - gy));
+    }
+}
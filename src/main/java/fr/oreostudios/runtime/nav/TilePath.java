@@ -0,0 +1,46 @@
+package fr.oreostudios.runtime.nav;
+
+/**
+ * Result of a path query: tile waypoints from start to goal (both
+ * included). Two consecutive waypoints are always joined by a straight or
+ * 45 degree line of free tiles, so agents can steer from one to the next.
+ */
+public final class TilePath {
+
+    private final int[] xs;
+    private final int[] ys;
+    private final int cost;
+
+    /** @param packed tile indices ({@code y * width + x}) */
+    TilePath(int[] packed, int count, int width, int cost) {
+        this.xs = new int[count];
+        this.ys = new int[count];
+        for (int i = 0; i < count; i++) {
+            xs[i] = packed[i] % width;
+            ys[i] = packed[i] / width;
+        }
+        this.cost = cost;
+    }
+
+    public int size() {
+        return xs.length;
+    }
+
+    public int getX(int i) {
+        return xs[i];
+    }
+
+    public int getY(int i) {
+        return ys[i];
+    }
+
+    /** Length in tenths of a tile ({@link PathSearch#STRAIGHT} per straight step). */
+    public int getCost() {
+        return cost;
+    }
+
+    @Override
+    public String toString() {
+        return "TilePath(" + xs.length + " points, cost " + cost + ")";
+    }
+}
@@ -0,0 +1,171 @@
+package fr.oreostudios.runtime.net;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes one client's {@link EntityFrame} as a delta from the last frame
+ * it acknowledged, and decodes it back.
+ *
+ * A snapshot lists the ids that left the client's view, then one record
+ * per entity that is new or changed: the gap to the previous record's id,
+ * a byte of changed fields, and a zigzag varint difference for each of
+ * them (from zero for new entities). Entities identical to the base cost
+ * nothing, so a player standing still in a quiet area gets a near-empty
+ * packet.
+ *
+ * When a packet fills up, the rest is left out and the client simply
+ * keeps its older values; the encoder records exactly what the client
+ * ends up with, so the next delta starts from the truth either way.
+ */
+final class DeltaCodec {
+
+    static final int X = 1;
+    static final int Y = 2;
+    static final int SIZE = 4;
+    static final int COLOR = 8;
+
+    private static final int MAX_RECORD = 5 + 1 + 4 * 5;
+
+    // scratch
+    private boolean[] dropped = new boolean[256];
+    private int[] removed = new int[256];
+    private int[] recIds = new int[256];
+    private int[] recDx = new int[256], recDy = new int[256], recDs = new int[256], recDc = new int[256];
+
+    /**
+     * Writes a SNAPSHOT packet for {@code cur} into {@code out} (whose limit
+     * is the packet budget) and fills {@code sent} with the frame the
+     * client will have after decoding it.
+     *
+     * @param base last frame the client acknowledged, null for a full snapshot
+     */
+    void encode(EntityFrame base, EntityFrame cur, ByteBuffer out, EntityFrame sent) {
+        out.put(Protocol.SNAPSHOT).putLong(cur.tick).putLong(base != null ? base.tick : -1);
+        int checksumAt = out.position();
+        out.putInt(0);
+        int countsAt = out.position();
+        out.putShort((short) 0).putShort((short) 0);
+
+        int bc = base != null ? base.count : 0;
+        int cc = cur.count;
+        if (dropped.length < bc) dropped = new boolean[Math.max(bc, dropped.length * 2)];
+
+        // ids that left the view; they may use at most half the packet
+        int removedLimit = out.position() + out.remaining() / 2;
+        int removedCount = 0;
+        int prev = 0;
+        for (int i = 0, j = 0; i < bc; i++) {
+            int id = base.ids[i];
+            while (j < cc && cur.ids[j] < id) j++;
+            dropped[i] = false;
+            if ((j == cc || cur.ids[j] != id) && out.position() + 5 <= removedLimit) {
+                Protocol.putVarint(out, id - prev);
+                prev = id;
+                dropped[i] = true;
+                removedCount++;
+            }
+        }
+
+        int records = 0;
+        prev = 0;
+        int i = 0, j = 0;
+        while (i < bc || j < cc) {
+            int cmp = i == bc ? 1 : j == cc ? -1 : Integer.compare(base.ids[i], cur.ids[j]);
+            if (cmp < 0) {
+                if (!dropped[i]) sent.add(base, i); // out of view, but the removal did not fit
+                i++;
+            } else if (cmp > 0) {
+                if (out.remaining() >= MAX_RECORD) {
+                    putRecord(out, cur.ids[j] - prev, cur, j, 0, 0, 0, 0);
+                    prev = cur.ids[j];
+                    sent.add(cur, j);
+                    records++;
+                }
+                j++;
+            } else {
+                boolean same = base.x[i] == cur.x[j] && base.y[i] == cur.y[j]
+                        && base.size[i] == cur.size[j] && base.color[i] == cur.color[j];
+                if (same) {
+                    sent.add(base, i);
+                } else if (out.remaining() >= MAX_RECORD) {
+                    putRecord(out, cur.ids[j] - prev, cur, j, base.x[i], base.y[i], base.size[i], base.color[i]);
+                    prev = cur.ids[j];
+                    sent.add(cur, j);
+                    records++;
+                } else {
+                    sent.add(base, i); // stays stale until the next snapshot
+                }
+                i++;
+                j++;
+            }
+        }
+
+        out.putInt(checksumAt, sent.checksum());
+        out.putShort(countsAt, (short) removedCount);
+        out.putShort(countsAt + 2, (short) records);
+    }
+
+    private static void putRecord(ByteBuffer out, int idGap, EntityFrame cur, int j, int bx, int by, int bs, int bcol) {
+        int fields = (cur.x[j] != bx ? X : 0) | (cur.y[j] != by ? Y : 0)
+                | (cur.size[j] != bs ? SIZE : 0) | (cur.color[j] != bcol ? COLOR : 0);
+        Protocol.putVarint(out, idGap);
+        out.put((byte) fields);
+        if ((fields & X) != 0) Protocol.putSigned(out, cur.x[j] - bx);
+        if ((fields & Y) != 0) Protocol.putSigned(out, cur.y[j] - by);
+        if ((fields & SIZE) != 0) Protocol.putSigned(out, cur.size[j] - bs);
+        if ((fields & COLOR) != 0) Protocol.putSigned(out, cur.color[j] - bcol);
+    }
+
+    /**
+     * Reads the body of a SNAPSHOT packet (after its checksum) and rebuilds
+     * the frame into {@code out}, already cleared to the snapshot's tick.
+     */
+    void decode(EntityFrame base, ByteBuffer in, EntityFrame out) {
+        int removedCount = in.getShort() & 0xFFFF;
+        int records = in.getShort() & 0xFFFF;
+        if (removed.length < removedCount) removed = new int[removedCount];
+        if (recIds.length < records) {
+            recIds = new int[records];
+            recDx = new int[records];
+            recDy = new int[records];
+            recDs = new int[records];
+            recDc = new int[records];
+        }
+
+        int prev = 0;
+        for (int r = 0; r < removedCount; r++) {
+            prev += Protocol.getVarint(in);
+            removed[r] = prev;
+        }
+        prev = 0;
+        for (int k = 0; k < records; k++) {
+            prev += Protocol.getVarint(in);
+            recIds[k] = prev;
+            int fields = in.get();
+            recDx[k] = (fields & X) != 0 ? Protocol.getSigned(in) : 0;
+            recDy[k] = (fields & Y) != 0 ? Protocol.getSigned(in) : 0;
+            recDs[k] = (fields & SIZE) != 0 ? Protocol.getSigned(in) : 0;
+            recDc[k] = (fields & COLOR) != 0 ? Protocol.getSigned(in) : 0;
+        }
+
+        int bc = base != null ? base.count : 0;
+        int i = 0, k = 0, r = 0;
+        while (i < bc || k < records) {
+            int cmp = i == bc ? 1 : k == records ? -1 : Integer.compare(base.ids[i], recIds[k]);
+            if (cmp < 0) {
+                int id = base.ids[i];
+                while (r < removedCount && removed[r] < id) r++;
+                if (r == removedCount || removed[r] != id) out.add(base, i);
+                i++;
+            } else if (cmp > 0) {
+                out.add(recIds[k], recDx[k], recDy[k], recDs[k], recDc[k]);
+                k++;
+            } else {
+                out.add(recIds[k], base.x[i] + recDx[k], base.y[i] + recDy[k],
+                        base.size[i] + recDs[k], base.color[i] + recDc[k]);
+                i++;
+                k++;
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package fr.oreostudios.runtime.net;
+
+import fr.oreostudios.runtime.EntityStore;
+
+import java.util.Arrays;
+
+/**
+ * The entities one client knows about at one tick, quantized the way they
+ * go over the wire and sorted by entity handle, so two frames can be
+ * diffed with a single merge walk.
+ */
+final class EntityFrame {
+
+    /** Positions are sent in 1/8 pixel steps. */
+    static final float POSITION_SCALE = 8f;
+
+    long tick = -1;
+    int count;
+    int[] ids = new int[64];
+    int[] x = new int[64];
+    int[] y = new int[64];
+    int[] size = new int[64];  // width << 16 | height, whole pixels
+    int[] color = new int[64];
+
+    void clear(long tick) {
+        this.tick = tick;
+        count = 0;
+    }
+
+    void add(int id, int qx, int qy, int qsize, int qcolor) {
+        if (count == ids.length) {
+            int n = count * 2;
+            ids = Arrays.copyOf(ids, n);
+            x = Arrays.copyOf(x, n);
+            y = Arrays.copyOf(y, n);
+            size = Arrays.copyOf(size, n);
+            color = Arrays.copyOf(color, n);
+        }
+        ids[count] = id;
+        x[count] = qx;
+        y[count] = qy;
+        size[count] = qsize;
+        color[count] = qcolor;
+        count++;
+    }
+
+    void add(EntityFrame from, int i) {
+        add(from.ids[i], from.x[i], from.y[i], from.size[i], from.color[i]);
+    }
+
+    /** Appends entity {@code index} of the store, quantized. */
+    void add(EntityStore store, int index) {
+        add(store.handleAt(index),
+                Math.round(store.x[index] * POSITION_SCALE),
+                Math.round(store.y[index] * POSITION_SCALE),
+                ((int) store.width[index] << 16) | ((int) store.height[index] & 0xFFFF),
+                store.color[index]);
+    }
+
+    // sort scratch
+    private long[] keys = new long[0];
+    private int[] tmp = new int[0];
+
+    /** Sorts by id; the server adds entities in spatial order. */
+    void sort() {
+        if (keys.length < count) {
+            keys = new long[ids.length];
+            tmp = new int[ids.length];
+        }
+        for (int i = 0; i < count; i++) keys[i] = ((long) ids[i] << 32) | i;
+        Arrays.sort(keys, 0, count);
+        for (int k = 0; k < count; k++) ids[k] = (int) (keys[k] >> 32);
+        permute(x);
+        permute(y);
+        permute(size);
+        permute(color);
+    }
+
+    private void permute(int[] a) {
+        for (int k = 0; k < count; k++) tmp[k] = a[(int) keys[k]];
+        System.arraycopy(tmp, 0, a, 0, count);
+    }
+
+    /** FNV-1a over the whole frame; the server sends it so clients can detect a desync. */
+    int checksum() {
+        int h = 0x811C9DC5;
+        for (int i = 0; i < count; i++) {
+            h = (h ^ ids[i]) * 0x01000193;
+            h = (h ^ x[i]) * 0x01000193;
+            h = (h ^ y[i]) * 0x01000193;
+            h = (h ^ size[i]) * 0x01000193;
+            h = (h ^ color[i]) * 0x01000193;
+        }
+        return h;
+    }
+
+    int indexOf(int id) {
+        return Arrays.binarySearch(ids, 0, count, id);
+    }
+}
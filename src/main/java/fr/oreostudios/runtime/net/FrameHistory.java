@@ -0,0 +1,34 @@
+package fr.oreostudios.runtime.net;
+
+/**
+ * The last {@link Protocol#HISTORY} frames of one connection, by tick:
+ * on the server what each snapshot left the client with, on the client
+ * what it decoded. Deltas are only ever made against a frame still in here.
+ */
+final class FrameHistory {
+
+    private final EntityFrame[] frames = new EntityFrame[Protocol.HISTORY];
+
+    FrameHistory() {
+        for (int i = 0; i < frames.length; i++) frames[i] = new EntityFrame();
+    }
+
+    /** The frame of {@code tick}, or null if it is unknown or was overwritten. */
+    EntityFrame get(long tick) {
+        if (tick < 0) return null;
+        EntityFrame f = frames[(int) (tick % frames.length)];
+        return f.tick == tick ? f : null;
+    }
+
+    /** Empties the slot of {@code tick} for reuse; evicts the frame HISTORY ticks older. */
+    EntityFrame claim(long tick) {
+        EntityFrame f = frames[(int) (tick % frames.length)];
+        f.clear(tick);
+        return f;
+    }
+
+    /** Whether a delta from {@code base} to {@code tick} leaves the base frame intact. */
+    static boolean inWindow(long base, long tick) {
+        return base >= 0 && base < tick && tick - base < Protocol.HISTORY;
+    }
+}
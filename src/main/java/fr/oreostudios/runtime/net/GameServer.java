@@ -0,0 +1,446 @@
+package fr.oreostudios.runtime.net;
+
+import fr.oreostudios.runtime.Component;
+import fr.oreostudios.runtime.EntityStore;
+import fr.oreostudios.runtime.GameSystem;
+import fr.oreostudios.runtime.HeadlessRunner;
+import fr.oreostudios.runtime.Player;
+import fr.oreostudios.runtime.Simulation;
+import fr.oreostudios.runtime.SpatialGrid;
+import fr.oreostudios.runtime.TileMap;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Dedicated, authoritative server: runs the {@link Simulation} at its
+ * fixed 60 Hz tick and is the only one to move anything. Clients send key
+ * masks over UDP (see {@link Protocol}) and get snapshots back.
+ *
+ * Everything happens on one thread around a non-blocking NIO
+ * {@link Selector}: between ticks it waits for datagrams, on each tick it
+ * applies the latest inputs, steps the simulation and sends every client
+ * the entities within {@link #setInterestRadius interest radius} of its
+ * player, as a delta against the last snapshot that client acknowledged
+ * (see {@link DeltaCodec}).
+ *
+ * It listens on loopback unless given another address, and takes at most
+ * {@link #setMaxClients max clients}: HELLOs beyond that are ignored, so
+ * nobody can grow the simulation by sending them from many addresses.
+ *
+ * Usage: GameServer [--port=N] [--bind=ADDR] [--max-clients=N] [--map-size=SIZE] [--npcs=N]
+ *                   [--send-every=TICKS] [--radius=PX]
+ */
+public class GameServer implements Runnable {
+
+    public static final int DEFAULT_PORT = 27960;
+    public static final int DEFAULT_MAX_CLIENTS = 256;
+
+    // drop a client we have not heard from for this long
+    private static final long TIMEOUT_NANOS = 5_000_000_000L;
+    // after a stall, skip ahead rather than run a burst of ticks
+    private static final int MAX_LAG_TICKS = 5;
+
+    private static class Client {
+        final SocketAddress address;
+        final int nonce;
+        final int entity;
+        final FrameHistory history = new FrameHistory();
+        int mask;
+        int lastSequence = -1;
+        long ackTick = -1;
+        long lastHeard;
+
+        Client(SocketAddress address, int nonce, int entity) {
+            this.address = address;
+            this.nonce = nonce;
+            this.entity = entity;
+        }
+    }
+
+    /** Turns each client's latest key mask into its entity's velocity. */
+    private class RemoteControl implements GameSystem {
+        @Override
+        public Set<Component> reads() {
+            return EnumSet.noneOf(Component.class);
+        }
+
+        @Override
+        public Set<Component> writes() {
+            return EnumSet.of(Component.VELOCITY);
+        }
+
+        @Override
+        public void update(EntityStore store, float dt) {
+            for (int c = 0, n = clientList.size(); c < n; c++) {
+                Client client = clientList.get(c);
+                int i = store.indexOf(client.entity);
+                if (i >= 0) Player.steer(store, i, client.mask);
+            }
+        }
+    }
+
+    private final Simulation sim;
+    private final DatagramChannel channel;
+    private final Selector selector;
+    private final Map<SocketAddress, Client> clients = new HashMap<>();
+    private final List<Client> clientList = new ArrayList<>();
+    private final Random spawnRandom = new Random(42);
+
+    private final ByteBuffer in = ByteBuffer.allocateDirect(Protocol.MAX_PACKET).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer out = ByteBuffer.allocateDirect(Protocol.MAX_PACKET).order(ByteOrder.LITTLE_ENDIAN);
+    private final DeltaCodec codec = new DeltaCodec();
+    private final EntityFrame visible = new EntityFrame();
+    private int[] query = new int[1024];
+
+    private volatile boolean running;
+    private int sendEvery = 2;
+    private float interestRadius = 640f;
+    private int maxClients = DEFAULT_MAX_CLIENTS;
+
+    // stats, written by the server thread only
+    private volatile long ticks;
+    private volatile long stepNanos;
+    private volatile long sendNanos;
+    private volatile long maxTickNanos;
+    private volatile long bytesOut;
+    private volatile long bytesIn;
+    private volatile long snapshotsSent;
+    private volatile long fullSnapshots;
+    private volatile long sendFailures;
+    private volatile long rejectedHellos;
+
+    /** Listens on loopback only. @param port UDP port to listen on, 0 for any free one */
+    public GameServer(Simulation sim, int port) throws IOException {
+        this(sim, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    /** Listens on {@code address}; a wildcard address accepts clients from any interface. */
+    public GameServer(Simulation sim, InetSocketAddress address) throws IOException {
+        this.sim = sim;
+        sim.addControlSystem(new RemoteControl());
+
+        selector = Selector.open();
+        channel = DatagramChannel.open();
+        channel.bind(address);
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ);
+    }
+
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) channel.getLocalAddress()).getPort();
+    }
+
+    /** Most clients at once; HELLOs from new addresses beyond that are ignored. */
+    public void setMaxClients(int maxClients) {
+        this.maxClients = Math.max(1, maxClients);
+    }
+
+    /** Ticks between two snapshots to each client: 1 is 60 Hz, 2 (default) 30 Hz. */
+    public void setSendEvery(int ticks) {
+        this.sendEvery = Math.max(1, ticks);
+    }
+
+    /** Clients only hear about entities this close to their player, in pixels. */
+    public void setInterestRadius(float radius) {
+        this.interestRadius = radius;
+    }
+
+    public void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        running = true;
+        final long nsPerTick = 1_000_000_000L / Simulation.TICKS_PER_SECOND;
+        long nextTick = System.nanoTime();
+
+        try {
+            while (running) {
+                long wait = nextTick - System.nanoTime();
+                if (wait > 1_000_000) {
+                    selector.select(wait / 1_000_000);
+                } else {
+                    selector.selectNow();
+                }
+                selector.selectedKeys().clear();
+                receive();
+
+                long now = System.nanoTime();
+                if (now >= nextTick) {
+                    tick(now);
+                    nextTick += nsPerTick;
+                    if (now - nextTick > MAX_LAG_TICKS * nsPerTick) nextTick = now;
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("[Server] Network loop stopped: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            try {
+                selector.close();
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void receive() throws IOException {
+        SocketAddress from;
+        while (true) {
+            in.clear();
+            from = channel.receive(in);
+            if (from == null) return;
+            in.flip();
+            bytesIn += in.remaining();
+            if (!in.hasRemaining()) continue;
+
+            byte type = in.get();
+            try {
+                switch (type) {
+                    case Protocol.HELLO -> hello(from, in.getInt());
+                    case Protocol.INPUT -> input(from, in.getInt(), in.getLong(), in.get());
+                    case Protocol.BYE -> {
+                        Client c = clients.get(from);
+                        if (c != null) drop(c);
+                    }
+                    default -> { } // not ours, ignore
+                }
+            } catch (RuntimeException e) {
+                // truncated or garbage datagram: never let it take the server down
+            }
+        }
+    }
+
+    private void hello(SocketAddress from, int nonce) throws IOException {
+        Client c = clients.get(from);
+        if (c == null || c.nonce != nonce) {
+            if (c != null) {
+                drop(c); // same address, new session
+            } else if (clientList.size() >= maxClients) {
+                rejectedHellos++; // full: no entity, no reply
+                return;
+            }
+            c = new Client(from, nonce, spawn());
+            clients.put(from, c);
+            clientList.add(c);
+        }
+        c.lastHeard = System.nanoTime();
+
+        TileMap map = sim.getMap();
+        out.clear();
+        out.put(Protocol.WELCOME).putInt(nonce).putInt(c.entity)
+                .putInt(map.getWidth()).putInt(map.getHeight()).putInt(map.getTileSize())
+                .putInt(Simulation.TICKS_PER_SECOND);
+        out.flip();
+        send(out, from);
+    }
+
+    private void input(SocketAddress from, int sequence, long ackTick, int mask) {
+        Client c = clients.get(from);
+        if (c == null) return;
+        c.lastHeard = System.nanoTime();
+        if (sequence > c.lastSequence) { // UDP may reorder: only newer input counts
+            c.lastSequence = sequence;
+            c.mask = mask & 0xF;
+        }
+        // an ack is only useful while we still have that frame to diff against
+        if (ackTick > c.ackTick && c.history.get(ackTick) != null) c.ackTick = ackTick;
+    }
+
+    /** New player entity on a random floor tile. */
+    private int spawn() {
+        TileMap map = sim.getMap();
+        int ts = map.getTileSize();
+        int tx, ty;
+        do {
+            tx = 1 + spawnRandom.nextInt(map.getWidth() - 2);
+            ty = 1 + spawnRandom.nextInt(map.getHeight() - 2);
+        } while (map.isWall(tx, ty));
+        EntityStore store = sim.getEntities();
+        int e = store.create(tx * ts, ty * ts, ts, ts);
+        store.color[store.indexOf(e)] = 0x40C040;
+        return e;
+    }
+
+    private void drop(Client c) {
+        clients.remove(c.address);
+        clientList.remove(c);
+        sim.getEntities().destroy(c.entity);
+    }
+
+    private void tick(long now) throws IOException {
+        for (int i = clientList.size() - 1; i >= 0; i--) {
+            Client c = clientList.get(i);
+            if (now - c.lastHeard > TIMEOUT_NANOS) drop(c);
+        }
+
+        long t0 = System.nanoTime();
+        sim.step();
+        long t1 = System.nanoTime();
+        if (sim.getTick() % sendEvery == 0) {
+            for (int i = 0, n = clientList.size(); i < n; i++) sendSnapshot(clientList.get(i));
+        }
+        long t2 = System.nanoTime();
+
+        stepNanos += t1 - t0;
+        sendNanos += t2 - t1;
+        maxTickNanos = Math.max(maxTickNanos, t2 - t0);
+        ticks++;
+    }
+
+    private void sendSnapshot(Client c) throws IOException {
+        EntityStore store = sim.getEntities();
+        int p = store.indexOf(c.entity);
+        if (p < 0) return;
+
+        SpatialGrid grid = sim.getSpatialGrid();
+        float cx = store.x[p] + store.width[p] * 0.5f;
+        float cy = store.y[p] + store.height[p] * 0.5f;
+        int n;
+        while ((n = grid.queryRadius(cx, cy, interestRadius, query)) == query.length) {
+            query = new int[query.length * 2];
+        }
+
+        long tick = sim.getTick();
+        visible.clear(tick);
+        for (int k = 0; k < n; k++) visible.add(store, query[k]);
+        visible.sort();
+
+        EntityFrame base = FrameHistory.inWindow(c.ackTick, tick) ? c.history.get(c.ackTick) : null;
+        EntityFrame sent = c.history.claim(tick);
+        out.clear();
+        codec.encode(base, visible, out, sent);
+        out.flip();
+        if (base == null) fullSnapshots++;
+        send(out, c.address);
+        snapshotsSent++;
+    }
+
+    private void send(ByteBuffer packet, SocketAddress to) throws IOException {
+        int size = packet.remaining();
+        if (channel.send(packet, to) == 0) {
+            sendFailures++; // socket buffer full; the client will ack an older tick
+        } else {
+            bytesOut += size;
+        }
+    }
+
+    public int getClientCount() {
+        return clientList.size();
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    /** Total time spent in {@link Simulation#step()}. */
+    public long getStepNanos() {
+        return stepNanos;
+    }
+
+    /** Total time spent culling, encoding and sending snapshots. */
+    public long getSendNanos() {
+        return sendNanos;
+    }
+
+    /** Longest single tick (step + snapshots) so far. */
+    public long getMaxTickNanos() {
+        return maxTickNanos;
+    }
+
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    public long getSnapshotsSent() {
+        return snapshotsSent;
+    }
+
+    /** Snapshots sent without a base, because the client had acknowledged nothing usable. */
+    public long getFullSnapshots() {
+        return fullSnapshots;
+    }
+
+    public long getSendFailures() {
+        return sendFailures;
+    }
+
+    /** HELLOs ignored because the server was full. */
+    public long getRejectedHellos() {
+        return rejectedHellos;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        InetAddress bind = InetAddress.getLoopbackAddress();
+        int maxClients = DEFAULT_MAX_CLIENTS;
+        int mapSize = 256;
+        int npcs = 2_000;
+        int sendEvery = 2;
+        float radius = 640f;
+        for (String arg : args) {
+            if (arg.startsWith("--port=")) port = Integer.parseInt(arg.substring(7));
+            else if (arg.startsWith("--bind=")) bind = InetAddress.getByName(arg.substring(7));
+            else if (arg.startsWith("--max-clients=")) maxClients = Integer.parseInt(arg.substring(14));
+            else if (arg.startsWith("--map-size=")) mapSize = Integer.parseInt(arg.substring(11));
+            else if (arg.startsWith("--npcs=")) npcs = Integer.parseInt(arg.substring(7));
+            else if (arg.startsWith("--send-every=")) sendEvery = Integer.parseInt(arg.substring(13));
+            else if (arg.startsWith("--radius=")) radius = Float.parseFloat(arg.substring(9));
+            else if (!arg.equals("--server")) throw new IllegalArgumentException("Unknown argument: " + arg);
+        }
+
+        Simulation sim = new Simulation(new TileMap(mapSize, mapSize, 32));
+        HeadlessRunner.spawnNpcs(sim, npcs, 1);
+        GameServer server = new GameServer(sim, new InetSocketAddress(bind, port));
+        server.setMaxClients(maxClients);
+        server.setSendEvery(sendEvery);
+        server.setInterestRadius(radius);
+        System.out.printf("[Server] Listening on UDP %s:%d, up to %d clients, %dx%d map, %d NPCs%n",
+                bind.getHostAddress(), server.getPort(), maxClients, mapSize, mapSize, npcs);
+
+        Thread thread = new Thread(server, "GameServer");
+        thread.start();
+        long lastTicks = 0, lastStep = 0, lastSend = 0, lastOut = 0;
+        while (thread.isAlive()) {
+            try {
+                thread.join(5_000);
+            } catch (InterruptedException e) {
+                break;
+            }
+            long t = server.getTicks() - lastTicks;
+            if (t == 0) continue;
+            int clients = server.getClientCount();
+            double step = (server.getStepNanos() - lastStep) / 1e6 / t;
+            double send = (server.getSendNanos() - lastSend) / 1e6 / t;
+            System.out.printf("[Server] %d clients, step %.2f ms, snapshots %.2f ms per tick (%.1f us per client), out %.1f KB/s%n",
+                    clients, step, send, clients > 0 ? send * 1000 / clients : 0,
+                    (server.getBytesOut() - lastOut) / 1024.0 / 5);
+            lastTicks = server.getTicks();
+            lastStep = server.getStepNanos();
+            lastSend = server.getSendNanos();
+            lastOut = server.getBytesOut();
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package fr.oreostudios.runtime.net;
+
+import fr.oreostudios.runtime.HeadlessRunner;
+import fr.oreostudios.runtime.Simulation;
+import fr.oreostudios.runtime.TileMap;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Random;
+
+/**
+ * Loopback load test for {@link GameServer}: hundreds of simulated players
+ * on one thread and one selector, each with its own UDP socket, walking
+ * around at random at 60 Hz, decoding and acknowledging their snapshots.
+ * Every decoded frame is checked against the checksum the server sent.
+ *
+ * Without {@code --port} a server is started in the same process, and its
+ * tick time per player is reported too.
+ *
+ * Usage: LoadTestClient [--clients=N] [--seconds=S] [--host=H --port=N]
+ *                       [--map-size=SIZE] [--npcs=N] [--send-every=TICKS] [--radius=PX] [--no-ack]
+ *
+ * {@code --no-ack} never acknowledges anything, so every snapshot is a
+ * full one: the baseline the deltas are compared against.
+ */
+public class LoadTestClient {
+
+    private static final long WARMUP_NANOS = 2_000_000_000L;
+
+    private static class Connection {
+        final DatagramChannel channel;
+        final int nonce;
+        final FrameHistory history = new FrameHistory();
+        final Random random;
+        int entity = -1;
+        int sequence;
+        int mask;
+        long ack = -1;
+        long lastHello;
+        boolean acks = true;
+
+        long bytesIn, bytesOut, snapshots, fullSnapshots, desyncs, undecodable;
+
+        Connection(DatagramChannel channel, int nonce) {
+            this.channel = channel;
+            this.nonce = nonce;
+            this.random = new Random(nonce);
+        }
+
+        void resetStats() {
+            bytesIn = bytesOut = snapshots = fullSnapshots = desyncs = undecodable = 0;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int clients = 200;
+        double seconds = 10;
+        String host = "127.0.0.1";
+        int port = -1;
+        int mapSize = 256;
+        int npcs = 2_000;
+        int sendEvery = 2;
+        float radius = 640f;
+        boolean ack = true;
+        for (String arg : args) {
+            if (arg.equals("--no-ack")) ack = false;
+            else if (arg.startsWith("--clients=")) clients = Integer.parseInt(arg.substring(10));
+            else if (arg.startsWith("--seconds=")) seconds = Double.parseDouble(arg.substring(10));
+            else if (arg.startsWith("--host=")) host = arg.substring(7);
+            else if (arg.startsWith("--port=")) port = Integer.parseInt(arg.substring(7));
+            else if (arg.startsWith("--map-size=")) mapSize = Integer.parseInt(arg.substring(11));
+            else if (arg.startsWith("--npcs=")) npcs = Integer.parseInt(arg.substring(7));
+            else if (arg.startsWith("--send-every=")) sendEvery = Integer.parseInt(arg.substring(13));
+            else if (arg.startsWith("--radius=")) radius = Float.parseFloat(arg.substring(9));
+            else throw new IllegalArgumentException("Unknown argument: " + arg);
+        }
+
+        GameServer server = null;
+        Thread serverThread = null;
+        if (port < 0) {
+            Simulation sim = new Simulation(new TileMap(mapSize, mapSize, 32));
+            HeadlessRunner.spawnNpcs(sim, npcs, 1);
+            server = new GameServer(sim, 0);
+            server.setMaxClients(clients);
+            server.setSendEvery(sendEvery);
+            server.setInterestRadius(radius);
+            port = server.getPort();
+            serverThread = new Thread(server, "GameServer");
+            serverThread.start();
+            System.out.printf("[LoadTest] In-process server on UDP %d: %dx%d map, %d NPCs, snapshots every %d ticks, radius %.0f px%n",
+                    port, mapSize, mapSize, npcs, sendEvery, radius);
+        }
+
+        run(new InetSocketAddress(host, port), clients, (long) (seconds * 1e9), server, ack);
+
+        if (server != null) {
+            server.stop();
+            serverThread.join();
+        }
+    }
+
+    private static void run(InetSocketAddress address, int count, long measureNanos, GameServer server, boolean ack) throws IOException {
+        Selector selector = Selector.open();
+        Connection[] conns = new Connection[count];
+        for (int i = 0; i < count; i++) {
+            DatagramChannel ch = DatagramChannel.open();
+            ch.configureBlocking(false);
+            ch.connect(address);
+            conns[i] = new Connection(ch, 1000 + i);
+            conns[i].acks = ack;
+            ch.register(selector, SelectionKey.OP_READ, conns[i]);
+        }
+
+        ByteBuffer in = ByteBuffer.allocateDirect(Protocol.MAX_PACKET).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer out = ByteBuffer.allocateDirect(64).order(ByteOrder.LITTLE_ENDIAN);
+        DeltaCodec codec = new DeltaCodec();
+        final long nsPerTick = 1_000_000_000L / Simulation.TICKS_PER_SECOND;
+
+        long start = System.nanoTime();
+        long measureStart = start + WARMUP_NANOS;
+        long end = measureStart + measureNanos;
+        boolean measuring = false;
+        long serverTicks0 = 0, serverStep0 = 0, serverSend0 = 0, serverOut0 = 0, serverFull0 = 0, serverSent0 = 0;
+        long nextTick = start;
+
+        while (true) {
+            long now = System.nanoTime();
+            if (!measuring && now >= measureStart) {
+                measuring = true;
+                for (Connection c : conns) c.resetStats();
+                if (server != null) {
+                    serverTicks0 = server.getTicks();
+                    serverStep0 = server.getStepNanos();
+                    serverSend0 = server.getSendNanos();
+                    serverOut0 = server.getBytesOut();
+                    serverFull0 = server.getFullSnapshots();
+                    serverSent0 = server.getSnapshotsSent();
+                }
+            }
+            if (now >= end) break;
+
+            if (now >= nextTick) {
+                for (Connection c : conns) sendInput(c, out, now);
+                nextTick += nsPerTick;
+                if (now - nextTick > 5 * nsPerTick) nextTick = now;
+            }
+
+            long wait = nextTick - System.nanoTime();
+            if (wait > 1_000_000) selector.select(wait / 1_000_000);
+            else selector.selectNow();
+
+            for (SelectionKey key : selector.selectedKeys()) {
+                Connection c = (Connection) key.attachment();
+                while (true) {
+                    in.clear();
+                    if (c.channel.read(in) <= 0) break;
+                    in.flip();
+                    c.bytesIn += in.remaining();
+                    receive(c, in, codec);
+                }
+            }
+            selector.selectedKeys().clear();
+        }
+
+        double secs = measureNanos / 1e9;
+        long bytesIn = 0, bytesOut = 0, snapshots = 0, fulls = 0, desyncs = 0, undecodable = 0;
+        int connected = 0;
+        for (Connection c : conns) {
+            bytesIn += c.bytesIn;
+            bytesOut += c.bytesOut;
+            snapshots += c.snapshots;
+            fulls += c.fullSnapshots;
+            desyncs += c.desyncs;
+            undecodable += c.undecodable;
+            if (c.entity >= 0) connected++;
+            ByteBuffer bye = ByteBuffer.allocate(1).put(Protocol.BYE).flip();
+            c.channel.write(bye);
+            c.channel.close();
+        }
+        selector.close();
+
+        System.out.printf("[LoadTest] %d/%d clients connected, %.0f s measured%n", connected, count, secs);
+        System.out.printf("[LoadTest] per player: %.1f snapshots/s (%.1f%% full), %.0f B per snapshot, down %.1f KB/s (%.0f kbit/s), up %.2f KB/s%n",
+                snapshots / secs / count, snapshots > 0 ? 100.0 * fulls / snapshots : 0,
+                snapshots > 0 ? (double) bytesIn / snapshots : 0,
+                bytesIn / secs / count / 1024, bytesIn * 8 / secs / count / 1000, bytesOut / secs / count / 1024);
+        System.out.printf("[LoadTest] %d desynced frames, %d snapshots with an unknown base%n", desyncs, undecodable);
+
+        if (server != null) {
+            long ticks = server.getTicks() - serverTicks0;
+            double step = (server.getStepNanos() - serverStep0) / 1e6 / ticks;
+            double send = (server.getSendNanos() - serverSend0) / 1e6 / ticks;
+            long sent = server.getSnapshotsSent() - serverSent0;
+            System.out.printf("[LoadTest] server: %.1f ticks/s, step %.2f ms + snapshots %.2f ms per tick = %.1f us per player per tick, worst tick %.1f ms (incl. warm-up)%n",
+                    ticks / secs, step, send, (step + send) * 1000 / count, server.getMaxTickNanos() / 1e6);
+            System.out.printf("[LoadTest] server: %.0f KB/s out, %.1f%% of snapshots full, %d sends failed%n",
+                    (server.getBytesOut() - serverOut0) / secs / 1024,
+                    sent > 0 ? 100.0 * (server.getFullSnapshots() - serverFull0) / sent : 0, server.getSendFailures());
+        }
+    }
+
+    private static void sendInput(Connection c, ByteBuffer out, long now) throws IOException {
+        out.clear();
+        if (c.entity < 0) {
+            if (now - c.lastHello < 500_000_000L) return;
+            c.lastHello = now;
+            out.put(Protocol.HELLO).putInt(c.nonce);
+        } else {
+            // random walk: a new direction now and then, like ScriptedInput.random
+            if (c.random.nextInt(45) == 0) c.mask = c.random.nextInt(16);
+            out.put(Protocol.INPUT).putInt(c.sequence++).putLong(c.acks ? c.ack : -1).put((byte) c.mask);
+        }
+        out.flip();
+        c.bytesOut += out.remaining();
+        c.channel.write(out);
+    }
+
+    private static void receive(Connection c, ByteBuffer in, DeltaCodec codec) {
+        byte type = in.get();
+        if (type == Protocol.WELCOME) {
+            if (in.getInt() == c.nonce) c.entity = in.getInt();
+        } else if (type == Protocol.SNAPSHOT) {
+            long tick = in.getLong();
+            long baseTick = in.getLong();
+            int checksum = in.getInt();
+            if (tick <= c.ack) return; // late duplicate or reordered
+
+            EntityFrame base = null;
+            if (baseTick >= 0) {
+                base = c.history.get(baseTick);
+                if (base == null) {
+                    c.undecodable++;
+                    return;
+                }
+            }
+            EntityFrame frame = c.history.claim(tick);
+            codec.decode(base, in, frame);
+            c.snapshots++;
+            if (base == null) c.fullSnapshots++;
+            if (frame.checksum() != checksum) {
+                c.desyncs++;
+                frame.clear(-1); // never ack a frame we got wrong
+                return;
+            }
+            c.ack = tick;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package fr.oreostudios.runtime.net;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Packet layout shared by {@link GameServer} and {@link LoadTestClient}.
+ * One UDP datagram per packet, little-endian, first byte is the type.
+ *
+ * <pre>
+ *   client -> server
+ *     HELLO     int nonce
+ *     INPUT     int sequence, long acked tick (-1 if none), byte key mask
+ *     BYE
+ *   server -> client
+ *     WELCOME   int nonce, int entity, int map width, height, tileSize, int ticks per second
+ *     SNAPSHOT  long tick, long base tick (-1: not a delta), int checksum,
+ *               short removed count, short record count,
+ *               removed ids (varint gaps), records (see {@link DeltaCodec})
+ * </pre>
+ */
+final class Protocol {
+
+    static final byte HELLO = 1;
+    static final byte INPUT = 2;
+    static final byte BYE = 3;
+    static final byte WELCOME = 10;
+    static final byte SNAPSHOT = 11;
+
+    /** Keeps snapshots under a typical Ethernet MTU, so they are never fragmented. */
+    static final int MAX_PACKET = 1200;
+
+    /** Past snapshots kept per client to diff against; older acks get a full snapshot. */
+    static final int HISTORY = 64;
+
+    private Protocol() {
+    }
+
+    static void putVarint(ByteBuffer out, int v) {
+        while ((v & ~0x7F) != 0) {
+            out.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.put((byte) v);
+    }
+
+    static int getVarint(ByteBuffer in) {
+        int v = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            v |= (b & 0x7F) << shift;
+            if (b >= 0) return v;
+        }
+    }
+
+    /** Signed values as varints: small magnitudes of either sign stay short. */
+    static void putSigned(ByteBuffer out, int v) {
+        putVarint(out, (v << 1) ^ (v >> 31));
+    }
+
+    static int getSigned(ByteBuffer in) {
+        int v = getVarint(in);
+        return (v >>> 1) ^ -(v & 1);
+    }
+}